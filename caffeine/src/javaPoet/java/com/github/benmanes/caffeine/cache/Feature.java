@@ -39,10 +39,14 @@ public enum Feature {
   EXPIRE_ACCESS,
   EXPIRE_WRITE,
   REFRESH_WRITE,
+  COMPACT_TIME,
 
   MAXIMUM_SIZE,
   MAXIMUM_WEIGHT,
 
+  TAGGED,
+  EMBEDDED_TABLE,
+
   LISTENING,
   STATS;
 
@@ -99,6 +103,15 @@ public enum Feature {
         || features.contains(Feature.REFRESH_WRITE);
   }
 
+  public static boolean usesExpiration(Set<Feature> features) {
+    return features.contains(Feature.EXPIRE_ACCESS)
+        || features.contains(Feature.EXPIRE_WRITE);
+  }
+
+  public static boolean usesCompactTime(Set<Feature> features) {
+    return features.contains(Feature.COMPACT_TIME);
+  }
+
   public static boolean usesMaximum(Set<Feature> features) {
     return features.contains(Feature.MAXIMUM_SIZE)
         || features.contains(Feature.MAXIMUM_WEIGHT);
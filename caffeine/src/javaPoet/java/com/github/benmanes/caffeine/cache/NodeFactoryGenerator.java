@@ -54,10 +54,13 @@ import com.github.benmanes.caffeine.cache.node.AddConstructors;
 import com.github.benmanes.caffeine.cache.node.AddDeques;
 import com.github.benmanes.caffeine.cache.node.AddExpiration;
 import com.github.benmanes.caffeine.cache.node.AddFactoryMethods;
+import com.github.benmanes.caffeine.cache.node.AddGeneration;
 import com.github.benmanes.caffeine.cache.node.AddHealth;
 import com.github.benmanes.caffeine.cache.node.AddKey;
 import com.github.benmanes.caffeine.cache.node.AddMaximum;
 import com.github.benmanes.caffeine.cache.node.AddSubtype;
+import com.github.benmanes.caffeine.cache.node.AddTableLink;
+import com.github.benmanes.caffeine.cache.node.AddTags;
 import com.github.benmanes.caffeine.cache.node.AddValue;
 import com.github.benmanes.caffeine.cache.node.Finalize;
 import com.github.benmanes.caffeine.cache.node.NodeContext;
@@ -84,7 +87,10 @@ import com.squareup.javapoet.TypeSpec;
  *   <li>strong, weak, or soft values
  *   <li>access timestamp
  *   <li>write timestamp
+ *   <li>timestamps encoded as int ticks
  *   <li>weight
+ *   <li>tags
+ *   <li>hash code and link within an embedded hash table
  * </ul>
  * <p>
  * If the cache has either a maximum size or expires after access, then the entry will also contain
@@ -96,11 +102,12 @@ import com.squareup.javapoet.TypeSpec;
 @SuppressWarnings("PMD.AvoidDuplicateLiterals")
 public final class NodeFactoryGenerator {
   final List<NodeRule> rules = ImmutableList.of(new AddSubtype(), new AddConstructors(),
-      new AddKey(), new AddValue(), new AddMaximum(), new AddExpiration(), new AddDeques(),
-      new AddFactoryMethods(),  new AddHealth(), new Finalize());
-  final Feature[] featureByIndex = new Feature[] { null, null,
+      new AddKey(), new AddValue(), new AddGeneration(), new AddMaximum(), new AddExpiration(),
+      new AddDeques(), new AddTags(), new AddTableLink(), new AddFactoryMethods(),
+      new AddHealth(), new Finalize());
+  final Feature[] featureByIndex = new Feature[] { null, null, Feature.COMPACT_TIME,
       Feature.EXPIRE_ACCESS, Feature.EXPIRE_WRITE, Feature.REFRESH_WRITE,
-      Feature.MAXIMUM_SIZE, Feature.MAXIMUM_WEIGHT };
+      Feature.MAXIMUM_SIZE, Feature.MAXIMUM_WEIGHT, Feature.TAGGED, Feature.EMBEDDED_TABLE };
   final Path directory;
 
   TypeSpec.Builder nodeFactory;
@@ -249,6 +256,9 @@ public final class NodeFactoryGenerator {
 
     for (List<Object> combination : combinations()) {
       Set<Feature> features = getFeatures(combination);
+      if (!isValid(features)) {
+        continue;
+      }
       String className = Feature.makeClassName(features);
       classNameToFeatures.put(encode(className), ImmutableSet.copyOf(features));
     }
@@ -270,6 +280,24 @@ public final class NodeFactoryGenerator {
     return features;
   }
 
+  /**
+   * Returns if the combination should be generated. The compact time nodes are restricted to the
+   * fixed expiration policies, plus the base type that they extend. The embedded hash table nodes
+   * are restricted to strong keys and values, a maximum, and no expiration.
+   */
+  private static boolean isValid(Set<Feature> features) {
+    if (features.contains(Feature.EMBEDDED_TABLE)) {
+      return features.contains(Feature.STRONG_KEYS) && features.contains(Feature.STRONG_VALUES)
+          && Feature.usesMaximum(features) && !Feature.usesExpirationTicker(features)
+          && !Feature.usesCompactTime(features);
+    } else if (!Feature.usesCompactTime(features)) {
+      return true;
+    } else if (features.contains(Feature.REFRESH_WRITE)) {
+      return false;
+    }
+    return Feature.usesExpiration(features) || (features.size() == 3);
+  }
+
   private TypeSpec makeNodeSpec(String className, boolean isFinal, Set<Feature> features) {
     TypeName superClass;
     Set<Feature> parentFeatures;
@@ -297,15 +325,19 @@ public final class NodeFactoryGenerator {
     Set<Feature> keyStrengths = ImmutableSet.of(Feature.STRONG_KEYS, Feature.WEAK_KEYS);
     Set<Feature> valueStrengths = ImmutableSet.of(
         Feature.STRONG_VALUES, Feature.WEAK_VALUES, Feature.SOFT_VALUES);
+    Set<Boolean> compactTime = ImmutableSet.of(false, true);
     Set<Boolean> expireAfterAccess = ImmutableSet.of(false, true);
     Set<Boolean> expireAfterWrite = ImmutableSet.of(false, true);
     Set<Boolean> refreshAfterWrite = ImmutableSet.of(false, true);
     Set<Boolean> maximumSize = ImmutableSet.of(false, true);
     Set<Boolean> weighed = ImmutableSet.of(false, true);
+    Set<Boolean> tagged = ImmutableSet.of(false, true);
+    Set<Boolean> embeddedTable = ImmutableSet.of(false, true);
 
     @SuppressWarnings("unchecked")
     Set<List<Object>> combinations = Sets.cartesianProduct(keyStrengths, valueStrengths,
-        expireAfterAccess, expireAfterWrite, refreshAfterWrite, maximumSize, weighed);
+        compactTime, expireAfterAccess, expireAfterWrite, refreshAfterWrite, maximumSize,
+        weighed, tagged, embeddedTable);
     return combinations;
   }
 
@@ -317,12 +349,15 @@ public final class NodeFactoryGenerator {
         .replaceFirst("_STRONG_VALUES", "S")
         .replaceFirst("_WEAK_VALUES", "W")
         .replaceFirst("_SOFT_VALUES", "D") // doux
+        .replaceFirst("_COMPACT_TIME", "C")
         .replaceFirst("_EXPIRE_ACCESS", "A")
         .replaceFirst("_EXPIRE_WRITE", "W")
         .replaceFirst("_REFRESH_WRITE", "R")
         .replaceFirst("_MAXIMUM", "M")
         .replaceFirst("_WEIGHT", "W")
-        .replaceFirst("_SIZE", "S");
+        .replaceFirst("_SIZE", "S")
+        .replaceFirst("_TAGGED", "T")
+        .replaceFirst("_EMBEDDED_TABLE", "E");
   }
 
   public static void main(String[] args) throws IOException {
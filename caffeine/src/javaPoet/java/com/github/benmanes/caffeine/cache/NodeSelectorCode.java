@@ -52,10 +52,18 @@ public final class NodeSelectorCode {
     return this;
   }
 
+  private NodeSelectorCode compactTime() {
+    block
+        .beginControlFlow("if (builder.usesCompactTime(isAsync))")
+            .addStatement("sb.append('C')")
+        .endControlFlow();
+    return this;
+  }
+
   private NodeSelectorCode expires() {
     block
         .beginControlFlow("if (builder.expiresVariable())")
-            .beginControlFlow("if (builder.refreshes())")
+            .beginControlFlow("if (builder.refreshes() || builder.refreshesEarly())")
                 .addStatement("sb.append('A')")
                 .beginControlFlow("if (builder.evicts())")
                     .addStatement("sb.append('W')")
@@ -71,7 +79,7 @@ public final class NodeSelectorCode {
                 .addStatement("sb.append('W')")
             .endControlFlow()
         .endControlFlow()
-        .beginControlFlow("if (builder.refreshes())")
+        .beginControlFlow("if (builder.refreshes() || builder.refreshesEarly())")
             .addStatement("sb.append('R')")
         .endControlFlow();
     return this;
@@ -90,6 +98,22 @@ public final class NodeSelectorCode {
     return this;
   }
 
+  private NodeSelectorCode tags() {
+    block
+        .beginControlFlow("if (builder.getTagger() != null)")
+            .addStatement("sb.append('T')")
+        .endControlFlow();
+    return this;
+  }
+
+  private NodeSelectorCode embeddedTable() {
+    block
+        .beginControlFlow("if (builder.usesEmbeddedHashTable())")
+            .addStatement("sb.append('E')")
+        .endControlFlow();
+    return this;
+  }
+
   private NodeSelectorCode selector() {
     block
         .beginControlFlow("try")
@@ -113,8 +137,11 @@ public final class NodeSelectorCode {
     return new NodeSelectorCode()
         .keys()
         .values()
+        .compactTime()
         .expires()
         .maximum()
+        .tags()
+        .embeddedTable()
         .selector()
         .build();
   }
@@ -71,6 +71,7 @@ public final class Specifications {
   public static final ParameterizedTypeName NODE_FACTORY = ParameterizedTypeName.get(
       ClassName.get(PACKAGE_NAME, "NodeFactory"), kTypeVar, vTypeVar);
   public static final ClassName BUILDER = ClassName.get(PACKAGE_NAME, "Caffeine");
+  public static final ClassName TICKS = ClassName.get(PACKAGE_NAME, "Ticks");
   public static final ParameterSpec BUILDER_PARAM = ParameterSpec.builder(
       ParameterizedTypeName.get(BUILDER, kTypeVar, vTypeVar), "builder").build();
   public static final ParameterizedTypeName BOUNDED_LOCAL_CACHE = ParameterizedTypeName.get(
@@ -103,6 +104,8 @@ public final class Specifications {
       ClassName.get(PACKAGE_NAME, "Expiry"), kTypeVar, vTypeVar);
   public static final TypeName TIMER_WHEEL = ParameterizedTypeName.get(
       ClassName.get(PACKAGE_NAME, "TimerWheel"), kTypeVar, vTypeVar);
+  public static final TypeName PACER = ClassName.get(PACKAGE_NAME, "Pacer");
+  public static final TypeName SCHEDULER = ClassName.get(PACKAGE_NAME, "Scheduler");
 
   public static final TypeName FREQUENCY_SKETCH = ParameterizedTypeName.get(
       ClassName.get(PACKAGE_NAME, "FrequencySketch"), kTypeVar);
@@ -48,6 +48,7 @@ public final class AddMaximum extends LocalCacheRule {
     addWeightedSize("");
     addWeightedSize("eden");
     addWeightedSize("mainProtected");
+    addHillClimber();
     addFrequencySketch();
   }
 
@@ -93,11 +94,35 @@ public final class AddMaximum extends LocalCacheRule {
         .build());
   }
 
+  private void addHillClimber() {
+    addField(double.class, "stepSize");
+    addField(long.class, "adjustment");
+    addField(int.class, "hitsInSample");
+    addField(int.class, "missesInSample");
+    addField(double.class, "previousSampleHitRate");
+  }
+
+  /** Adds a field that is only accessed while holding the eviction lock. */
+  private void addField(Class<?> type, String name) {
+    context.cache.addField(FieldSpec.builder(type, name).build());
+    context.cache.addMethod(MethodSpec.methodBuilder(name)
+        .addModifiers(context.protectedFinalModifiers())
+        .addStatement("return $N", name)
+        .returns(type)
+        .build());
+    String setter = "set" + capitalize(name);
+    context.cache.addMethod(MethodSpec.methodBuilder(setter)
+        .addModifiers(context.protectedFinalModifiers())
+        .addParameter(type, name)
+        .addStatement("this.$N = $N", name, name)
+        .build());
+  }
+
   private void addFrequencySketch() {
     context.cache.addField(FieldSpec.builder(
         FREQUENCY_SKETCH, "sketch", Modifier.FINAL).build());
     context.constructor.addCode(CodeBlock.builder()
-        .addStatement("this.sketch = new $T()", FREQUENCY_SKETCH)
+        .addStatement("this.sketch = new $T(builder.usesDoorkeeper())", FREQUENCY_SKETCH)
         .beginControlFlow("if (builder.hasInitialCapacity())")
             .addStatement("long capacity = Math.min($L, $L)",
                 "builder.getMaximum()", "builder.getInitialCapacity()")
@@ -16,6 +16,7 @@
 package com.github.benmanes.caffeine.cache.node;
 
 import static com.github.benmanes.caffeine.cache.Specifications.NODE;
+import static com.github.benmanes.caffeine.cache.Specifications.TICKS;
 import static com.github.benmanes.caffeine.cache.Specifications.UNSAFE_ACCESS;
 import static com.github.benmanes.caffeine.cache.Specifications.newFieldOffset;
 import static com.github.benmanes.caffeine.cache.Specifications.offsetName;
@@ -49,7 +50,9 @@ public final class AddExpiration extends NodeRule {
   }
 
   private void addVariableExpiration() {
-    if (context.generateFeatures.contains(Feature.EXPIRE_ACCESS)) {
+    if (isCompactTime()) {
+      return;
+    } else if (context.generateFeatures.contains(Feature.EXPIRE_ACCESS)) {
       addLink("previousInVariableOrder", "previousInAccessOrder");
       addLink("nextInVariableOrder", "nextInAccessOrder");
       addVariableTime("accessTime");
@@ -103,6 +106,10 @@ public final class AddExpiration extends NodeRule {
     if (!context.generateFeatures.contains(Feature.EXPIRE_ACCESS)) {
       return;
     }
+    if (isCompactTime()) {
+      addCompactTime("accessTime");
+      return;
+    }
     context.nodeSubtype.addField(newFieldOffset(context.className, "accessTime"))
         .addField(long.class, "accessTime", Modifier.VOLATILE)
         .addMethod(newGetter(Strength.STRONG, TypeName.LONG, "accessTime", Visibility.LAZY))
@@ -114,6 +121,10 @@ public final class AddExpiration extends NodeRule {
   private void addWriteExpiration() {
     if (!Feature.useWriteTime(context.parentFeatures)
         && Feature.useWriteTime(context.generateFeatures)) {
+      if (isCompactTime()) {
+        addCompactTime("writeTime");
+        return;
+      }
       context.nodeSubtype.addField(newFieldOffset(context.className, "writeTime"))
           .addField(long.class, "writeTime", Modifier.VOLATILE)
           .addMethod(newGetter(Strength.STRONG, TypeName.LONG, "writeTime", Visibility.LAZY))
@@ -137,6 +148,40 @@ public final class AddExpiration extends NodeRule {
         .build());
   }
 
+  /** Returns if the timestamps are stored as int ticks rather than as long nanoseconds. */
+  private boolean isCompactTime() {
+    return Feature.usesCompactTime(context.parentFeatures)
+        || Feature.usesCompactTime(context.generateFeatures);
+  }
+
+  /** Adds an int field that stores the timestamp as ticks, with long accessors. */
+  private void addCompactTime(String varName) {
+    MethodSpec getter = MethodSpec.methodBuilder("get" + capitalize(varName))
+        .addModifiers(context.publicFinalModifiers())
+        .addStatement("return $T.decode($T.UNSAFE.getInt(this, $N))",
+            TICKS, UNSAFE_ACCESS, offsetName(varName))
+        .returns(long.class)
+        .build();
+    MethodSpec setter = MethodSpec.methodBuilder("set" + capitalize(varName))
+        .addModifiers(context.publicFinalModifiers())
+        .addParameter(long.class, varName)
+        .addStatement("$T.UNSAFE.putInt(this, $N, $T.encode($N))",
+            UNSAFE_ACCESS, offsetName(varName), TICKS, varName)
+        .build();
+    context.nodeSubtype.addField(newFieldOffset(context.className, varName))
+        .addField(int.class, varName, Modifier.VOLATILE)
+        .addMethod(getter)
+        .addMethod(setter);
+    addCompactTimeConstructorAssignment(context.constructorByKey, varName);
+    addCompactTimeConstructorAssignment(context.constructorByKeyRef, varName);
+  }
+
+  /** Adds an int constructor assignment of the encoded time. */
+  private void addCompactTimeConstructorAssignment(MethodSpec.Builder constructor, String field) {
+    constructor.addStatement("$T.UNSAFE.putInt(this, $N, $T.encode($N))",
+        UNSAFE_ACCESS, offsetName(field), TICKS, "now");
+  }
+
   /** Adds a long constructor assignment. */
   private void addTimeConstructorAssignment(MethodSpec.Builder constructor, String field) {
     constructor.addStatement("$T.UNSAFE.putLong(this, $N, $N)",
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.node;
+
+import com.squareup.javapoet.MethodSpec;
+
+/**
+ * Adds the generation of the cache's contents to the node.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class AddGeneration extends NodeRule {
+
+  @Override
+  protected boolean applies() {
+    return isBaseClass();
+  }
+
+  @Override
+  protected void execute() {
+    context.nodeSubtype.addField(int.class, "generation");
+    context.nodeSubtype.addMethod(MethodSpec.methodBuilder("getGeneration")
+        .addModifiers(context.publicFinalModifiers())
+        .returns(int.class)
+        .addStatement("return generation")
+        .build());
+    context.nodeSubtype.addMethod(MethodSpec.methodBuilder("setGeneration")
+        .addModifiers(context.publicFinalModifiers())
+        .addParameter(int.class, "generation")
+        .addStatement("this.generation = generation")
+        .build());
+  }
+}
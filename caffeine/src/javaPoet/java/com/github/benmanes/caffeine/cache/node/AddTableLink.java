@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.node;
+
+import static com.github.benmanes.caffeine.cache.Specifications.NODE;
+
+import javax.lang.model.element.Modifier;
+
+import com.github.benmanes.caffeine.cache.Feature;
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Adds the key's hash code and the link to the next entry in the bin to a node that is chained
+ * within an embedded hash table.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class AddTableLink extends NodeRule {
+
+  @Override
+  protected boolean applies() {
+    return context.generateFeatures.contains(Feature.EMBEDDED_TABLE);
+  }
+
+  @Override
+  protected void execute() {
+    context.nodeSubtype
+        .addField(int.class, "tableHash")
+        .addField(NODE, "nextInTable", Modifier.VOLATILE)
+        .addMethod(newGetter(Strength.STRONG, TypeName.INT, "tableHash", Visibility.IMMEDIATE))
+        .addMethod(newSetter(TypeName.INT, "tableHash", Visibility.IMMEDIATE))
+        .addMethod(newGetter(Strength.STRONG, NODE, "nextInTable", Visibility.IMMEDIATE))
+        .addMethod(newSetter(NODE, "nextInTable", Visibility.IMMEDIATE));
+  }
+}
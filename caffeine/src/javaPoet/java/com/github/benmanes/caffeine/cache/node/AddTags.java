@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.node;
+
+import com.github.benmanes.caffeine.cache.Feature;
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Adds the tags that the entry is indexed by to the node.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class AddTags extends NodeRule {
+
+  @Override
+  protected boolean applies() {
+    return context.generateFeatures.contains(Feature.TAGGED);
+  }
+
+  @Override
+  protected void execute() {
+    TypeName tagsType = ArrayTypeName.of(Object.class);
+    context.nodeSubtype.addField(tagsType, "tags")
+        .addMethod(newGetter(Strength.STRONG, tagsType, "tags", Visibility.IMMEDIATE))
+        .addMethod(newSetter(tagsType, "tags", Visibility.IMMEDIATE));
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A concurrent benchmark for the cache's striped read buffer, with and without adaptive sampling.
+ * The producers far outnumber the consumer so that the buffers are full most of the time, which
+ * is the case at extreme read rates. The thread counts may be increased further, e.g.
+ * {@code -tg 63,1}, to match the number of cores.
+ *
+ * <pre>{@code
+ *   ./gradlew jmh -PincludePattern=BoundedBufferBenchmark
+ * }</pre>
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@State(Scope.Benchmark)
+public class BoundedBufferBenchmark {
+
+  @Param({"true", "false"})
+  boolean adaptiveSampling;
+
+  BoundedBuffer<Boolean> buffer;
+
+  @AuxCounters
+  @State(Scope.Thread)
+  public static class RecordCounter {
+    public int recordFailed;
+    public int recordSuccess;
+    public int recordFull;
+    public int recordSkipped;
+  }
+
+  @Setup
+  public void setup() {
+    buffer = new BoundedBuffer<>(adaptiveSampling);
+  }
+
+  @Benchmark @Group @GroupThreads(31)
+  public void record(RecordCounter counters) {
+    switch (buffer.offer(Boolean.TRUE)) {
+      case Buffer.FAILED:
+        counters.recordFailed++;
+        break;
+      case Buffer.SUCCESS:
+        counters.recordSuccess++;
+        break;
+      case Buffer.FULL:
+        counters.recordFull++;
+        break;
+      case Buffer.SKIPPED:
+        counters.recordSkipped++;
+        break;
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  @Benchmark @Group @GroupThreads(1)
+  public void drain() {
+    buffer.drainTo(e -> {});
+  }
+}
@@ -22,6 +22,7 @@ import org.jctools.maps.NonBlockingHashMap;
 
 import com.github.benmanes.caffeine.cache.impl.Cache2k;
 import com.github.benmanes.caffeine.cache.impl.CaffeineCache;
+import com.github.benmanes.caffeine.cache.impl.CaffeineLongCache;
 import com.github.benmanes.caffeine.cache.impl.Collision;
 import com.github.benmanes.caffeine.cache.impl.ConcurrentHashMapV7;
 import com.github.benmanes.caffeine.cache.impl.ConcurrentMapCache;
@@ -76,6 +77,16 @@ public enum CacheType {
       return new CaffeineCache<>(maximumSize);
     }
   },
+  Caffeine_EmbeddedHashTable {
+    @Override public <K, V> BasicCache<K, V> create(int maximumSize) {
+      return new CaffeineCache<>(Caffeine.newBuilder().embeddedHashTable(), maximumSize);
+    }
+  },
+  Caffeine_LongKeyed {
+    @Override public <K, V> BasicCache<K, V> create(int maximumSize) {
+      return new CaffeineLongCache<>(maximumSize);
+    }
+  },
   Collision {
     @Override public <K, V> BasicCache<K, V> create(int maximumSize) {
       return new Collision<>(maximumSize);
@@ -27,6 +27,7 @@ import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -42,13 +43,23 @@ public class ComputeBenchmark {
   static final int MASK = SIZE - 1;
   static final int ITEMS = SIZE / 3;
   static final Integer COMPUTE_KEY = SIZE / 2;
+  static final int COLLIDING_SIZE = 64;
+  static final int COLLIDING_MASK = COLLIDING_SIZE - 1;
+  static final int SLOW_LOAD_TOKENS = 10_000;
   static final Function<Integer, Boolean> mappingFunction = any -> Boolean.TRUE;
+  static final Function<Integer, Boolean> slowMappingFunction = any -> {
+    Blackhole.consumeCPU(SLOW_LOAD_TOKENS);
+    return Boolean.TRUE;
+  };
   static final CacheLoader<Integer, Boolean> cacheLoader = CacheLoader.from(key -> Boolean.TRUE);
 
-  @Param({"ConcurrentHashMap", "Caffeine", "Guava", "Rapidoid"})
+  @Param({"ConcurrentHashMap", "Caffeine", "Caffeine_loadOutsideLock",
+      "Caffeine_maximumSize", "Caffeine_embeddedHashTable", "Guava", "Rapidoid"})
   String computeType;
 
+  Function<Integer, Boolean> slowBenchmarkFunction;
   Function<Integer, Boolean> benchmarkFunction;
+  Integer[] collidingInts;
   Integer[] ints;
 
   @State(Scope.Thread)
@@ -63,6 +74,12 @@ public class ComputeBenchmark {
     for (int i = 0; i < SIZE; i++) {
       ints[i] = generator.nextValue().intValue();
     }
+
+    // Keys whose spread hash codes, (h ^ (h >>> 16)), share the first bin of any table size
+    collidingInts = new Integer[COLLIDING_SIZE];
+    for (int i = 0; i < COLLIDING_SIZE; i++) {
+      collidingInts[i] = ((i + 1) << 16) | (i + 1);
+    }
   }
 
   @Setup
@@ -71,7 +88,14 @@ public class ComputeBenchmark {
     if (computeType.equals("ConcurrentHashMap")) {
       setupConcurrentHashMap();
     } else if (computeType.equals("Caffeine")) {
-      setupCaffeine();
+      setupCaffeine(Caffeine.newBuilder());
+    } else if (computeType.equals("Caffeine_loadOutsideLock")) {
+      setupCaffeine(Caffeine.newBuilder().loadOutsideLock());
+    } else if (computeType.equals("Caffeine_maximumSize")) {
+      // The baseline for the embedded table, which requires a bound that is set to never evict
+      setupCaffeine(Caffeine.newBuilder().maximumSize(Long.MAX_VALUE));
+    } else if (computeType.equals("Caffeine_embeddedHashTable")) {
+      setupCaffeine(Caffeine.newBuilder().maximumSize(Long.MAX_VALUE).embeddedHashTable());
     } else if (computeType.equals("Guava")) {
       setupGuava();
     } else {
@@ -90,19 +114,40 @@ public class ComputeBenchmark {
     return benchmarkFunction.apply(ints[threadState.index++ & MASK]);
   }
 
+  /** Slow loads of absent keys that collide in the same hash bin, but are otherwise distinct. */
+  @Benchmark @Threads(32)
+  public Boolean compute_slowLoad_collidingKeys(ThreadState threadState) {
+    return slowBenchmarkFunction.apply(collidingInts[threadState.index++ & COLLIDING_MASK]);
+  }
+
   private void setupConcurrentHashMap() {
     ConcurrentMap<Integer, Boolean> map = new ConcurrentHashMap<>();
     benchmarkFunction = key -> map.computeIfAbsent(key, mappingFunction);
+    slowBenchmarkFunction = key -> {
+      Boolean value = map.computeIfAbsent(key, slowMappingFunction);
+      map.remove(key);
+      return value;
+    };
   }
 
-  private void setupCaffeine() {
-    Cache<Integer, Boolean> cache = Caffeine.newBuilder().build();
+  private void setupCaffeine(Caffeine<Object, Object> builder) {
+    Cache<Integer, Boolean> cache = builder.build();
     benchmarkFunction = key -> cache.get(key, mappingFunction);
+    slowBenchmarkFunction = key -> {
+      Boolean value = cache.get(key, slowMappingFunction);
+      cache.invalidate(key);
+      return value;
+    };
   }
 
   private void setupGuava() {
     com.google.common.cache.LoadingCache<Integer, Boolean> cache =
         CacheBuilder.newBuilder().concurrencyLevel(64).build(cacheLoader);
     benchmarkFunction = cache::getUnchecked;
+    slowBenchmarkFunction = key -> {
+      Boolean value = cache.asMap().computeIfAbsent(key, slowMappingFunction);
+      cache.invalidate(key);
+      return value;
+    };
   }
 }
@@ -16,6 +16,7 @@
 package com.github.benmanes.caffeine.cache;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -34,7 +35,15 @@ import com.yahoo.ycsb.generator.ScrambledZipfianGenerator;
 public class FrequencySketchBenchmark {
   private static final int SIZE = (2 << 14);
   private static final int MASK = SIZE - 1;
-  private static final int ITEMS = SIZE / 3;
+
+  @Param({"10922", "4194304"})
+  int items;
+
+  @Param({"flat", "blocked"})
+  String layout;
+
+  @Param({"false", "true"})
+  boolean doorkeeper;
 
   int index = 0;
   Integer[] ints;
@@ -43,10 +52,11 @@ public class FrequencySketchBenchmark {
   @Setup
   public void setup() {
     ints = new Integer[SIZE];
-    sketch = new FrequencySketch<>();
-    sketch.ensureCapacity(ITEMS);
+    sketch = new FrequencySketch<>(doorkeeper);
+    sketch.ensureCapacity(items);
+    sketch.blocked = layout.equals("blocked");
 
-    NumberGenerator generator = new ScrambledZipfianGenerator(ITEMS);
+    NumberGenerator generator = new ScrambledZipfianGenerator(items);
     for (int i = 0; i < SIZE; i++) {
       ints[i] = generator.nextValue().intValue();
       sketch.increment(i);
@@ -49,6 +49,8 @@ public class GetPutBenchmark {
   @Param({
     "LinkedHashMap_Lru",
     "Caffeine",
+    "Caffeine_EmbeddedHashTable",
+    "Caffeine_LongKeyed",
     "ConcurrentLinkedHashMap",
     "Guava",
     "ElasticSearch",
@@ -101,6 +103,12 @@ public class GetPutBenchmark {
     return cache.get(ints[threadState.index++ & MASK]);
   }
 
+  /** Saturates the read buffers, where the cache adaptively samples the reads that it records. */
+  @Benchmark @Group("read_only_saturated") @GroupThreads(64)
+  public Boolean readOnlySaturated(ThreadState threadState) {
+    return cache.get(ints[threadState.index++ & MASK]);
+  }
+
   @Benchmark @Group("write_only") @GroupThreads(8)
   public void writeOnly(ThreadState threadState) {
     cache.put(ints[threadState.index++ & MASK], Boolean.TRUE);
@@ -20,6 +20,7 @@ import static java.util.function.Function.identity;
 import java.io.PrintStream;
 import java.math.RoundingMode;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -68,6 +69,9 @@ public final class MemoryBenchmark {
     maximumSize_expireAfterWrite();
     maximumSize_refreshAfterWrite();
     maximumWeight();
+    maximumMemory();
+    maximumSize_longKeys();
+    maximumSize_embeddedHashTable();
     expireAfterAccess();
     expireAfterWrite();
     expireAfterAccess_expireAfterWrite();
@@ -76,6 +80,7 @@ public final class MemoryBenchmark {
     weakKeys_weakValues();
     weakKeys_softValues();
     softValues();
+    nodes();
   }
 
   private Caffeine<Object, Object> builder() {
@@ -104,6 +109,52 @@ public final class MemoryBenchmark {
     compare("Maximum Weight", caffeine, guava);
   }
 
+  private void maximumMemory() {
+    Cache<Integer, Integer> caffeine = builder().maximumMemory(Long.MAX_VALUE).build();
+    caffeine.cleanUp();
+
+    // The boxed keys and values are included in the per-entry cost, as the estimator counts them
+    Map<Integer, Integer> map = caffeine.asMap();
+    String[] measured = evaluate("Measured", map, () -> map.putAll(workingSet), 0);
+    long estimated = caffeine.policy().eviction().get().weightedSize().getAsLong();
+    printHeader("Maximum Memory");
+    out.println(FlipTable.of(new String[] { "Cache", "Baseline", "Per Entry" }, new String[][] {
+        measured,
+        { "Estimated", "", String.format("%,d bytes", estimated / FUZZY_SIZE) }
+    }));
+  }
+
+  private void maximumSize_longKeys() {
+    Cache<Long, Integer> caffeine = builder().maximumSize(MAXIMUM_SIZE).build();
+    // The specialization performs its maintenance on the calling threads, without an executor
+    LongCache<Integer> specialized = Caffeine.newBuilder()
+        .maximumSize(MAXIMUM_SIZE).buildLongKeyed();
+    caffeine.cleanUp();
+
+    // The boxed keys are included in the per-entry cost, as the specialization avoids them
+    Map<Long, Integer> map = caffeine.asMap();
+    printHeader("Maximum Size & Long Keys");
+    out.println(FlipTable.of(new String[] { "Cache", "Baseline", "Per Entry" }, new String[][] {
+        evaluate("Caffeine", map, () -> workingSet.forEach((k, v) -> map.put((long) k, v)), 1),
+        evaluate("LongCache", specialized,
+            () -> workingSet.forEach((k, v) -> specialized.put(k, v)), 1)
+    }));
+  }
+
+  private void maximumSize_embeddedHashTable() {
+    Cache<Integer, Integer> caffeine = builder().maximumSize(MAXIMUM_SIZE).build();
+    Cache<Integer, Integer> embedded = builder()
+        .maximumSize(MAXIMUM_SIZE).embeddedHashTable().build();
+    caffeine.cleanUp();
+    embedded.cleanUp();
+
+    printHeader("Maximum Size & Embedded Table");
+    out.println(FlipTable.of(new String[] { "Cache", "Baseline", "Per Entry" }, new String[][] {
+        evaluate("Caffeine", caffeine.asMap()),
+        evaluate("Embedded", embedded.asMap())
+    }));
+  }
+
   private void maximumSize_expireAfterAccess() {
     Cache<Integer, Integer> caffeine = builder()
         .expireAfterAccess(1, TimeUnit.MINUTES)
@@ -207,13 +258,88 @@ public final class MemoryBenchmark {
     compare("Soft Values", caffeine, guava);
   }
 
+  private void nodes() {
+    Map<String, Long> sizes = new TreeMap<>();
+    for (boolean weakKeys : new boolean[] { false, true }) {
+      for (int values = 0; values < 3; values++) {
+        for (int expiration = 0; expiration < 5; expiration++) {
+          for (boolean refresh : new boolean[] { false, true }) {
+            for (int maximum = 0; maximum < 3; maximum++) {
+              for (boolean compactTime : new boolean[] { false, true }) {
+                Caffeine<Object, Object> builder = nodeBuilder(
+                    weakKeys, values, expiration, refresh, maximum, compactTime);
+                Object node = NodeFactory.newFactory(builder, /* isAsync */ false);
+                sizes.put(node.getClass().getSimpleName(), meter.measure(node));
+              }
+            }
+          }
+        }
+      }
+    }
+
+    // The class name encodes the features, e.g. PSAWMW is strong keys, strong values, expire after
+    // access, expire after write, and maximum weight. A "C" after the values marks that the times
+    // are stored as int ticks, so PSCAWMW is the compact form of PSAWMW
+    printHeader("Node");
+    out.println(FlipTable.of(new String[] { "Node", "Size" }, sizes.entrySet().stream()
+        .map(entry -> new String[] { entry.getKey(), String.format("%,d bytes", entry.getValue()) })
+        .toArray(String[][]::new)));
+  }
+
+  private Caffeine<Object, Object> nodeBuilder(boolean weakKeys, int values,
+      int expiration, boolean refresh, int maximum, boolean compactTime) {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder();
+    if (!compactTime) {
+      // A custom ticker requires the exact timestamps
+      builder.ticker(System::nanoTime);
+    }
+    if (weakKeys) {
+      builder.weakKeys();
+    }
+    if (values == 1) {
+      builder.weakValues();
+    } else if (values == 2) {
+      builder.softValues();
+    }
+    if (expiration == 4) {
+      builder.expireAfter(new Expiry<Object, Object>() {
+        @Override public long expireAfterCreate(Object key, Object value, long currentTime) {
+          return Long.MAX_VALUE;
+        }
+        @Override public long expireAfterUpdate(Object key, Object value,
+            long currentTime, long currentDuration) {
+          return currentDuration;
+        }
+        @Override public long expireAfterRead(Object key, Object value,
+            long currentTime, long currentDuration) {
+          return currentDuration;
+        }
+      });
+    } else {
+      if ((expiration & 1) != 0) {
+        builder.expireAfterAccess(1, TimeUnit.MINUTES);
+      }
+      if ((expiration & 2) != 0) {
+        builder.expireAfterWrite(1, TimeUnit.MINUTES);
+      }
+    }
+    if (refresh) {
+      builder.refreshAfterWrite(1, TimeUnit.MINUTES);
+    }
+    if (maximum == 1) {
+      builder.maximumSize(MAXIMUM_SIZE);
+    } else if (maximum == 2) {
+      builder.maximumWeight(MAXIMUM_SIZE).weigher((k, v) -> 1);
+    }
+    return builder;
+  }
+
   private void compare(String label, Cache<Integer, Integer> caffeine,
       com.google.common.cache.Cache<Integer, Integer> guava) {
     caffeine.cleanUp();
     guava.cleanUp();
 
-    int leftPadded = Math.max((36 - label.length()) / 2 - 1, 1);
-    out.printf(" %2$-" + leftPadded + "s %s%n", label, " ");
+    printHeader(label);
     String result = FlipTable.of(new String[] { "Cache", "Baseline", "Per Entry" },new String[][] {
         evaluate("Caffeine", caffeine.asMap()),
         evaluate("Guava", guava.asMap())
@@ -221,12 +347,26 @@ public final class MemoryBenchmark {
     out.println(result);
   }
 
+  private void printHeader(String label) {
+    int leftPadded = Math.max((36 - label.length()) / 2 - 1, 1);
+    out.printf(" %2$-" + leftPadded + "s %s%n", label, " ");
+  }
+
   private String[] evaluate(String label, Map<Integer, Integer> map) {
-    long base = meter.measureDeep(map);
-    map.putAll(workingSet);
+    return evaluate(label, map, () -> map.putAll(workingSet), 2);
+  }
+
+  /**
+   * Returns the measurements of the cache after it is populated by the working set, excluding the
+   * cost of the boxed objects that are shared with the working set.
+   */
+  private String[] evaluate(String label, Object cache, Runnable populate, int sharedPerEntry) {
+    long base = meter.measureDeep(cache);
+    populate.run();
 
-    long populated = meter.measureDeep(map);
-    long entryOverhead = 2 * FUZZY_SIZE * meter.measureDeep(workingSet.keySet().iterator().next());
+    long populated = meter.measureDeep(cache);
+    long entryOverhead = sharedPerEntry * FUZZY_SIZE
+        * meter.measureDeep(workingSet.keySet().iterator().next());
     long perEntry = LongMath.divide(populated - entryOverhead - base,
         FUZZY_SIZE, RoundingMode.HALF_EVEN);
     perEntry += ((perEntry & 1) == 0) ? 0 : 1;
@@ -54,6 +54,7 @@ public class ReadBufferBenchmark {
     public int recordFailed;
     public int recordSuccess;
     public int recordFull;
+    public int recordSkipped;
   }
 
   @Setup
@@ -73,6 +74,9 @@ public class ReadBufferBenchmark {
       case ReadBuffer.FULL:
         counters.recordFull++;
         break;
+      case ReadBuffer.SKIPPED:
+        counters.recordSkipped++;
+        break;
       default:
         throw new IllegalStateException();
     }
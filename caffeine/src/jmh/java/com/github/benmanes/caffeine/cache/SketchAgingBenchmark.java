@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A benchmark of the pause that the frequency sketch's aging adds to a maintenance cycle. The
+ * sample mode reports the distribution, where the maximum is the worst-case pause observed by
+ * the thread performing the maintenance work.
+ *
+ * <pre>{@code
+ *   ./gradlew jmh -PincludePattern=SketchAgingBenchmark
+ * }</pre>
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SketchAgingBenchmark {
+
+  @Param({"1048576", "67108864"})
+  int maximumSize;
+
+  @Param({"periodic", "incremental"})
+  String aging;
+
+  FrequencySketch<Integer> sketch;
+
+  @Setup
+  public void setup() {
+    sketch = new FrequencySketch<>();
+    sketch.ensureCapacity(maximumSize);
+    sketch.incremental = aging.equals("incremental");
+    for (int i = 0; i < sketch.table.length; i++) {
+      sketch.table[i] = ThreadLocalRandom.current().nextLong();
+    }
+  }
+
+  @Benchmark
+  public void maintenance() {
+    if (sketch.incremental) {
+      if (!sketch.isResetting()) {
+        sketch.startIncrementalReset();
+      }
+      sketch.ageIncrementally();
+    } else {
+      sketch.reset();
+    }
+  }
+}
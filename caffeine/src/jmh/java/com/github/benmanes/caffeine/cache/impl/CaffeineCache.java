@@ -29,7 +29,11 @@ public final class CaffeineCache<K, V> implements BasicCache<K, V> {
   private final Map<K, V> map;
 
   public CaffeineCache(int maximumSize) {
-    cache = Caffeine.newBuilder()
+    this(Caffeine.newBuilder(), maximumSize);
+  }
+
+  public CaffeineCache(Caffeine<Object, Object> builder, int maximumSize) {
+    cache = builder
         .initialCapacity(maximumSize)
         .maximumSize(maximumSize)
         .build();
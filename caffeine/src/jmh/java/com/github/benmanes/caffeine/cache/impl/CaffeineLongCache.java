@@ -0,0 +1,51 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.impl;
+
+import com.github.benmanes.caffeine.cache.BasicCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LongCache;
+
+/**
+ * An adapter to the cache specialized for primitive {@code long} keys, which requires that the keys
+ * are numbers.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class CaffeineLongCache<K, V> implements BasicCache<K, V> {
+  private final LongCache<V> cache;
+
+  public CaffeineLongCache(int maximumSize) {
+    cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .buildLongKeyed();
+  }
+
+  @Override
+  public V get(K key) {
+    return cache.getIfPresent(((Number) key).longValue());
+  }
+
+  @Override
+  public void put(K key, V value) {
+    cache.put(((Number) key).longValue(), value);
+  }
+
+  @Override
+  public void clear() {
+    cache.invalidateAll();
+  }
+}
@@ -93,4 +93,27 @@ public interface AsyncCacheLoader<K, V> {
       @NonNull K key, @NonNull V oldValue, @NonNull Executor executor) {
     return asyncLoad(key, executor);
   }
+
+  /**
+   * Asynchronously computes or retrieves the replacement values corresponding to already-cached
+   * {@code keys}. This method is called when the refreshes of stale entries are batched by
+   * {@link Caffeine#batchRefreshes}.
+   * <p>
+   * If the returned map doesn't contain a requested key then its mapping will be removed, as if
+   * {@link #asyncReload} computed {@code null}. If the returned map contains extra keys not present
+   * in {@code oldValues} then those entries are ignored.
+   * <p>
+   * <b>Note:</b> <i>all exceptions thrown by this method will be logged and then swallowed</i>.
+   *
+   * @param oldValues the non-null keys and their old values to reload
+   * @param executor the executor with which the entries are asynchronously loaded
+   * @return a future containing the map from each key in {@code oldValues} to its new value;
+   *         <b>may not contain null values</b>
+   */
+  @NonNull
+  default CompletableFuture<Map<@NonNull K, @NonNull V>> asyncReloadAll(
+      @NonNull Map<? extends @NonNull K, ? extends @NonNull V> oldValues,
+      @NonNull Executor executor) {
+    throw new UnsupportedOperationException();
+  }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A {@link RemovalListener} that receives the notifications of a batch of removals at once. The
+ * removals that occur during a single maintenance cycle of a bounded cache, such as the evictions
+ * after the maximum size was lowered, or during a bulk operation like
+ * {@link Cache#invalidateAll()} or {@link Cache#invalidateAll(Iterable)}, are delivered together
+ * in the order that they occurred, where a bounded cache may split a large bulk operation into
+ * several batches. Any other removal is delivered individually as a batch of one. An
+ * {@link AsyncCache} delivers each removal individually, as it waits for the future of the removed
+ * value to complete.
+ * <p>
+ * An instance may be called concurrently by multiple threads to process different batches.
+ * Implementations of this interface should avoid performing blocking calls or synchronizing on
+ * shared resources.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ * @param <K> the most general type of keys this listener can listen for; for example {@code Object}
+ *        if any key is acceptable
+ * @param <V> the most general type of values this listener can listen for; for example
+ *        {@code Object} if any value is acceptable
+ */
+@FunctionalInterface
+public interface BatchRemovalListener<K, V> extends RemovalListener<K, V> {
+
+  /**
+   * Notifies the listener that the removals occurred at some point in the past.
+   *
+   * @param notifications the removals, in the order that they occurred
+   */
+  void onRemovals(@NonNull List<RemovalNotification<K, V>> notifications);
+
+  @Override
+  default void onRemoval(@Nullable K key, @Nullable V value, @NonNull RemovalCause cause) {
+    onRemovals(Collections.singletonList(new RemovalNotification<>(key, value, cause)));
+  }
+}
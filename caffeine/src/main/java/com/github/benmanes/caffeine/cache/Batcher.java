@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+
+/**
+ * A stage that gathers individual requests into a pending batch, which is dispatched when it
+ * reaches the maximum size or when the delay since the batch's first key was added elapses,
+ * whichever occurs first. Each key's future is then completed from the batch result.
+ * <p>
+ * If the flush cannot be scheduled, such as when the scheduler rejects the task, then the batch is
+ * dispatched immediately on the executor so that a partly filled batch is never stranded.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+abstract class Batcher<K, V> {
+  static final Logger logger = Logger.getLogger(Batcher.class.getName());
+
+  final int maximumBatchSize;
+  final Scheduler scheduler;
+  final long delayNanos;
+
+  @GuardedBy("this")
+  @Nullable Batch<K, V> pending;
+
+  Batcher(Scheduler scheduler, int maximumBatchSize, long delayNanos) {
+    this.scheduler = requireNonNull(scheduler);
+    this.maximumBatchSize = maximumBatchSize;
+    this.delayNanos = delayNanos;
+  }
+
+  /**
+   * Returns a future for the key's mapping in the batch result, adding the key to the pending batch
+   * if it is not already present.
+   *
+   * @param key the key to request
+   * @param oldValue the value currently associated with the key, or null if absent
+   * @param executor the executor that the batch is dispatched with
+   * @return the future value of the key in the batch
+   */
+  CompletableFuture<V> add(K key, @Nullable V oldValue, Executor executor) {
+    requireNonNull(key);
+    requireNonNull(executor);
+
+    CompletableFuture<V> future;
+    Batch<K, V> started = null;
+    Batch<K, V> dispatchable = null;
+    synchronized (this) {
+      if (pending == null) {
+        pending = new Batch<>();
+        started = pending;
+      }
+      future = pending.futures.get(key);
+      if (future == null) {
+        future = new CompletableFuture<>();
+        pending.futures.put(key, future);
+        if (oldValue != null) {
+          pending.oldValues.put(key, oldValue);
+        }
+      }
+      if (pending.futures.size() >= maximumBatchSize) {
+        dispatchable = pending;
+        pending = null;
+      }
+    }
+
+    if (dispatchable != null) {
+      dispatch(dispatchable, executor);
+    } else if (started != null) {
+      schedule(started, executor);
+    }
+    return future;
+  }
+
+  /** Returns the number of keys that the pending batch can accept, or zero if none is pending. */
+  synchronized int pendingCapacity() {
+    return (pending == null) ? 0 : (maximumBatchSize - pending.futures.size());
+  }
+
+  /**
+   * Schedules the batch to be flushed after the delay, or dispatches it on the executor if the
+   * scheduler is disabled, which it indicates by returning a future that will never run the task.
+   */
+  void schedule(Batch<K, V> batch, Executor executor) {
+    Future<?> timer = scheduler.schedule(executor,
+        () -> flush(batch, executor), delayNanos, TimeUnit.NANOSECONDS);
+    if (timer != DisabledFuture.INSTANCE) {
+      return;
+    }
+    try {
+      executor.execute(() -> flush(batch, executor));
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown when submitting a batch to the executor", t);
+      flush(batch, executor);
+    }
+  }
+
+  /** Dispatches the batch if it is still pending, as it may have already reached its size. */
+  void flush(Batch<K, V> batch, Executor executor) {
+    synchronized (this) {
+      if (pending != batch) {
+        return;
+      }
+      pending = null;
+    }
+    dispatch(batch, executor);
+  }
+
+  /** Dispatches the pending batch if it contains the key's future. */
+  void flush(K key, CompletableFuture<V> future, Executor executor) {
+    Batch<K, V> batch;
+    synchronized (this) {
+      batch = pending;
+      if ((batch == null) || (batch.futures.get(key) != future)) {
+        return;
+      }
+    }
+    flush(batch, executor);
+  }
+
+  /**
+   * Performs the batch's request in a single bulk call and completes each future from the result.
+   *
+   * @param batch the batch to dispatch, which is no longer pending
+   * @param executor the executor that the bulk call is performed with
+   */
+  abstract void dispatch(Batch<K, V> batch, Executor executor);
+
+  /** Completes the futures with their mapping in the result, or exceptionally if it failed. */
+  static <K, V> void complete(Map<K, CompletableFuture<V>> futures,
+      @Nullable Map<?, V> result, @Nullable Throwable error) {
+    Throwable failure = ((error == null) && (result == null))
+        ? new NullPointerException("The bulk call completed with a null map")
+        : error;
+    for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+      if (failure == null) {
+        entry.getValue().complete(result.get(entry.getKey()));
+      } else {
+        entry.getValue().completeExceptionally(failure);
+      }
+    }
+  }
+
+  /** The requested keys, their futures, and the values that they were associated with. */
+  static final class Batch<K, V> {
+    final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+    final Map<K, V> oldValues = new LinkedHashMap<>();
+  }
+}
@@ -17,6 +17,7 @@ package com.github.benmanes.caffeine.cache;
 
 import static com.github.benmanes.caffeine.cache.BoundedBuffer.OFFSET;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 
@@ -46,6 +47,19 @@ final class BoundedBuffer<E> extends StripedBuffer<E> {
    * adding new buffers when contention is detected, up to an internal maximum. When rehashing in
    * order to discover an available buffer, the producer may retry adding its element to determine
    * whether it found a satisfactory buffer or if resizing is necessary.
+   *
+   * At extreme read rates the buffers are full most of the time and the producers pay for reading
+   * the counts only to have their element rejected. Each buffer therefore samples its producers,
+   * recording only one in 2^sampleShift elements, where the choice uses the thread's random number
+   * generator so that it is independent of the element. The producers count the elements that were
+   * rejected because the buffer was full and the consumer adjusts the sample rate on every drain,
+   * halving it when most elements were dropped and doubling it once drops are rare. As the sample
+   * is uniform, the consumer observes the same relative frequencies as if every element had been
+   * recorded, only fewer of them.
+   *
+   * The count of dropped elements is padded onto its own cache line, as it is written only when the
+   * buffer is full and would otherwise invalidate the line of the write count that every producer
+   * reads, as well as the buffer's fields that follow it.
    */
 
   /** The maximum number of elements per buffer. */
@@ -56,26 +70,48 @@ final class BoundedBuffer<E> extends StripedBuffer<E> {
   static final int SPACED_MASK = SPACED_SIZE - 1;
   static final int OFFSET = 16;
 
+  /** The largest sample shift, where only one in 2^shift elements is recorded. */
+  static final int MAXIMUM_SAMPLE_SHIFT = 4;
+
+  final int maximumSampleShift;
+
+  /** Creates a buffer that adaptively samples its elements when under heavy contention. */
+  BoundedBuffer() {
+    this(/* adaptiveSampling */ true);
+  }
+
+  BoundedBuffer(boolean adaptiveSampling) {
+    maximumSampleShift = adaptiveSampling ? MAXIMUM_SAMPLE_SHIFT : 0;
+  }
+
   @Override
   protected Buffer<E> create(E e) {
-    return new RingBuffer<>(e);
+    return new RingBuffer<>(e, maximumSampleShift);
   }
 
-  static final class RingBuffer<E> extends BBHeader.ReadAndWriteCounterRef implements Buffer<E> {
+  static final class RingBuffer<E> extends BBHeader.PadDropCounterTail implements Buffer<E> {
     final AtomicReferenceArray<E> buffer;
+    final int maximumSampleShift;
 
     @SuppressWarnings({"unchecked", "cast", "rawtypes"})
-    public RingBuffer(E e) {
+    public RingBuffer(E e, int maximumSampleShift) {
+      this.maximumSampleShift = maximumSampleShift;
       buffer = new AtomicReferenceArray<>(SPACED_SIZE);
       buffer.lazySet(0, e);
     }
 
     @Override
     public int offer(E e) {
+      int shift = sampleShift;
+      if ((shift != 0) && ((ThreadLocalRandom.current().nextInt() & ((1 << shift) - 1)) != 0)) {
+        return Buffer.SKIPPED;
+      }
+
       long head = readCounter;
       long tail = relaxedWriteCounter();
       long size = (tail - head);
       if (size >= SPACED_SIZE) {
+        dropped++;
         return Buffer.FULL;
       }
       if (casWriteCounter(tail, tail + OFFSET)) {
@@ -88,13 +124,10 @@ final class BoundedBuffer<E> extends StripedBuffer<E> {
 
     @Override
     public void drainTo(Consumer<E> consumer) {
-      long head = readCounter;
+      long start = readCounter;
       long tail = relaxedWriteCounter();
-      long size = (tail - head);
-      if (size == 0) {
-        return;
-      }
-      do {
+      long head = start;
+      while (head != tail) {
         int index = (int) (head & SPACED_MASK);
         E e = buffer.get(index);
         if (e == null) {
@@ -104,8 +137,34 @@ final class BoundedBuffer<E> extends StripedBuffer<E> {
         buffer.lazySet(index, null);
         consumer.accept(e);
         head += OFFSET;
-      } while (head != tail);
-      lazySetReadCounter(head);
+      }
+      if (head != start) {
+        lazySetReadCounter(head);
+      }
+      adjustSampleRate((int) ((head - start) / OFFSET));
+    }
+
+    /**
+     * Adjusts the fraction of elements that are recorded based on how many were dropped since the
+     * last drain. The sample rate is halved if most of the elements were rejected because the
+     * buffer was full, and is doubled once the rejections are rare.
+     *
+     * @param drained the number of elements consumed by this drain
+     */
+    void adjustSampleRate(int drained) {
+      int drops = dropped;
+      int shift = sampleShift;
+      if ((drops == 0) && (shift == 0)) {
+        return;
+      }
+      dropped = 0;
+      if (drops > drained) {
+        if (shift < maximumSampleShift) {
+          sampleShift = shift + 1;
+        }
+      } else if ((shift > 0) && (drops <= (drained >>> 3))) {
+        sampleShift = shift - 1;
+      }
     }
 
     @Override
@@ -136,6 +195,9 @@ final class BBHeader {
 
     volatile long readCounter;
 
+    /** The consumer's sample rate, where only one in 2^sampleShift elements is recorded. */
+    int sampleShift;
+
     void lazySetReadCounter(long count) {
       UnsafeAccess.UNSAFE.putOrderedLong(this, READ_OFFSET, count);
     }
@@ -165,4 +227,20 @@ final class BBHeader {
       return UnsafeAccess.UNSAFE.compareAndSwapLong(this, WRITE_OFFSET, expect, update);
     }
   }
+
+  abstract static class PadDropCounter extends ReadAndWriteCounterRef {
+    long p40, p41, p42, p43, p44, p45, p46, p47;
+    long p50, p51, p52, p53, p54, p55, p56;
+  }
+
+  /** Enforces a memory layout to avoid false sharing by padding the count of dropped elements. */
+  abstract static class DropCounterRef extends PadDropCounter {
+    /** The racy count of elements rejected since the last drain because the buffer was full. */
+    int dropped;
+  }
+
+  abstract static class PadDropCounterTail extends DropCounterRef {
+    long p60, p61, p62, p63, p64, p65, p66, p67;
+    long p70, p71, p72, p73, p74, p75, p76;
+  }
 }
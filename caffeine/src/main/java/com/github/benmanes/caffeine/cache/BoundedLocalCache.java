@@ -50,6 +50,7 @@ import java.util.Spliterator;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
@@ -69,7 +70,9 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 
 import com.github.benmanes.caffeine.base.UnsafeAccess;
 import com.github.benmanes.caffeine.cache.Async.AsyncExpiry;
+import com.github.benmanes.caffeine.cache.Async.AsyncWeigher;
 import com.github.benmanes.caffeine.cache.LinkedDeque.PeekingIterator;
+import com.github.benmanes.caffeine.cache.MaintenanceService.Registration;
 import com.github.benmanes.caffeine.cache.References.InternalReference;
 import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import com.google.errorprone.annotations.concurrent.GuardedBy;
@@ -134,6 +137,16 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
    * The windowing allows the policy to have a high hit rate when entries exhibit a bursty (high
    * temporal, low frequency) access pattern. The eden space uses LRU and the main space uses
    * Segmented LRU.
+   *
+   * The optimal size of the eden and main spaces depends on the workload's characteristics. A
+   * large eden favors recency-biased workloads while a small eden favors frequency-biased
+   * workloads. When the eden is too small then recent arrivals are prematurely evicted, but when it
+   * is too large then they pollute the cache and force the eviction of more popular entries. The
+   * configuration is dynamically determined by using hill climbing to walk the hit rate curve. The
+   * hit rate is sampled and the eden's size is adjusted in the direction that is improving (making
+   * a positive or negative step). At each interval the step size is decreased until the climber
+   * converges at the optimal setting. The process is restarted when the hit rate changes over a
+   * threshold, indicating that the workload altered and a new setting may be required.
    */
 
   static final Logger logger = Logger.getLogger(BoundedLocalCache.class.getName());
@@ -148,17 +161,33 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
   static final int WRITE_BUFFER_RETRIES = 100;
   /** The maximum weighted capacity of the map. */
   static final long MAXIMUM_CAPACITY = Long.MAX_VALUE - Integer.MAX_VALUE;
-  /** The percent of the maximum weighted capacity dedicated to the main space. */
+  /** The initial percent of the maximum weighted capacity dedicated to the main space. */
   static final double PERCENT_MAIN = 0.99d;
   /** The percent of the maximum weighted capacity dedicated to the main's protected space. */
   static final double PERCENT_MAIN_PROTECTED = 0.80d;
+  /** The difference in hit rates that restarts the climber. */
+  static final double HILL_CLIMBER_RESTART_THRESHOLD = 0.05d;
+  /** The percent of the total size to adapt the eden space by. */
+  static final double HILL_CLIMBER_STEP_PERCENT = 0.0625d;
+  /** The rate to decrease the step size to adapt by. */
+  static final double HILL_CLIMBER_STEP_DECAY_RATE = 0.98d;
+  /** The maximum number of entries that can be transfered between queues. */
+  static final int QUEUE_TRANSFER_THRESHOLD = 1_000;
+  /** The maximum number of entries that are cleared before yielding the eviction lock. */
+  static final int CLEAR_BATCH_SIZE = 1_000;
   /** The maximum time window between entry updates before the expiration must be reordered. */
   static final long EXPIRE_WRITE_TOLERANCE = TimeUnit.SECONDS.toNanos(1);
   /** The maximum duration before an entry expires. */
   static final long MAXIMUM_EXPIRY = (Long.MAX_VALUE >> 1); // 150 years
 
-  final ConcurrentHashMap<Object, Node<K, V>> data;
+  final ConcurrentMap<Object, Node<K, V>> data;
+  @Nullable final Registration maintenanceRegistration;
+  @Nullable final CacheInstrumentation instrumentation;
+  @Nullable final RefreshBatcher<K, V> refreshBatcher;
+  @Nullable final EarlyRefresh earlyRefresh;
+  @Nullable final PendingLoads<V> pendingLoads;
   @Nullable final CacheLoader<K, V> cacheLoader;
+  @Nullable final TagIndex<K, V> tagIndex;
   final PerformCleanupTask drainBuffersTask;
   final Consumer<Node<K, V>> accessPolicy;
   final Buffer<Node<K, V>> readBuffer;
@@ -166,9 +195,19 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
   final ReentrantLock evictionLock;
   final CacheWriter<K, V> writer;
   final Weigher<K, V> weigher;
+  final long staleAfterWriteNanos;
+  final boolean serveStaleOnError;
   final Executor executor;
   final boolean isAsync;
 
+  @GuardedBy("evictionLock")
+  @Nullable List<RemovalNotification<K, V>> pendingNotifications;
+  @GuardedBy("evictionLock")
+  boolean bufferNotifications;
+
+  /** The generation of the contents, which is advanced to retire all of the entries at once. */
+  volatile int generation;
+
   // The collection views
   @Nullable transient Set<K> keySet;
   @Nullable transient Collection<V> values;
@@ -185,11 +224,29 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     weigher = builder.getWeigher(isAsync);
     drainBuffersTask = new PerformCleanupTask();
     nodeFactory = NodeFactory.newFactory(builder, isAsync);
-    data = new ConcurrentHashMap<>(builder.getInitialCapacity());
+    data = builder.usesEmbeddedHashTable()
+        ? new NodeTable<>(builder.getInitialCapacity())
+        : new ConcurrentHashMap<>(builder.getInitialCapacity());
     readBuffer = evicts() || collectKeys() || collectValues() || expiresAfterAccess()
         ? new BoundedBuffer<>()
         : Buffer.disabled();
     accessPolicy = (evicts() || expiresAfterAccess()) ? this::onAccess : e -> {};
+    refreshBatcher = (builder.batchesRefreshes() && (cacheLoader != null))
+        ? new RefreshBatcher<>(builder, cacheLoader, this::statsCounter)
+        : null;
+    earlyRefresh = (builder.refreshesEarly() && (cacheLoader != null))
+        ? new EarlyRefresh(builder.getEarlyRefreshBeta())
+        : null;
+    pendingLoads = (builder.loadsOutsideLock() && !isAsync) ? new PendingLoads<>() : null;
+    instrumentation = (builder.getInstrumentation() == null)
+        ? null
+        : new GuardedCacheInstrumentation(builder.getInstrumentation());
+    staleAfterWriteNanos = builder.getStaleAfterWriteNanos();
+    serveStaleOnError = builder.servesStaleOnError();
+    tagIndex = (builder.getTagger() == null) ? null : new TagIndex<>(builder.getTagger());
+    maintenanceRegistration = (builder.getMaintenanceService() == null)
+        ? null
+        : builder.getMaintenanceService().register(this);
 
     if (evicts()) {
       setMaximum(builder.getMaximum());
@@ -247,6 +304,11 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     return (writer != CacheWriter.disabledWriter());
   }
 
+  /** Returns whether this cache maintains an index of the entries' tags. */
+  boolean isTagging() {
+    return (tagIndex != null);
+  }
+
   /* ---------------- Stats Support -------------- */
 
   @Override
@@ -278,8 +340,16 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
   }
 
   @Override
+  @SuppressWarnings("GuardedByChecker")
   public void notifyRemoval(@Nullable K key, @Nullable V value, RemovalCause cause) {
     requireState(hasRemovalListener(), "Notification should be guarded with a check");
+    if (bufferNotifications && evictionLock.isHeldByCurrentThread()) {
+      if (pendingNotifications == null) {
+        pendingNotifications = new ArrayList<>();
+      }
+      pendingNotifications.add(new RemovalNotification<>(key, value, cause));
+      return;
+    }
     Runnable task = () -> {
       try {
         removalListener().onRemoval(key, value, cause);
@@ -295,6 +365,63 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     }
   }
 
+  @Override
+  @SuppressWarnings("unchecked")
+  public void notifyRemovals(List<RemovalNotification<K, V>> notifications) {
+    requireState(hasRemovalListener(), "Notification should be guarded with a check");
+    Runnable task = () -> {
+      RemovalListener<K, V> removalListener = removalListener();
+      if (removalListener instanceof BatchRemovalListener<?, ?>) {
+        try {
+          ((BatchRemovalListener<K, V>) removalListener).onRemovals(notifications);
+        } catch (Throwable t) {
+          logger.log(Level.WARNING, "Exception thrown by removal listener", t);
+        }
+        return;
+      }
+      for (RemovalNotification<K, V> notification : notifications) {
+        try {
+          removalListener.onRemoval(
+              notification.getKey(), notification.getValue(), notification.getCause());
+        } catch (Throwable t) {
+          logger.log(Level.WARNING, "Exception thrown by removal listener", t);
+        }
+      }
+    };
+    try {
+      executor().execute(task);
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, "Exception thrown when submitting removal listener", t);
+      task.run();
+    }
+  }
+
+  /**
+   * Begins buffering the removal notifications emitted by the thread holding the eviction lock, so
+   * that they are delivered as a single task by {@link #flushNotifications()}.
+   *
+   * @return if buffering was started by this call, and must be flushed by the caller
+   */
+  @GuardedBy("evictionLock")
+  boolean startBufferingNotifications() {
+    if (!hasRemovalListener() || bufferNotifications) {
+      return false;
+    }
+    bufferNotifications = true;
+    return true;
+  }
+
+  /** Stops buffering and delivers the buffered removal notifications, in order, as a batch. */
+  @GuardedBy("evictionLock")
+  void flushNotifications() {
+    List<RemovalNotification<K, V>> notifications = pendingNotifications;
+    bufferNotifications = false;
+    pendingNotifications = null;
+    if (notifications != null) {
+      notifyRemovals(notifications);
+    }
+  }
+
   /* ---------------- Reference Support -------------- */
 
   /** Returns if the keys are weak reference garbage collected. */
@@ -368,7 +495,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
 
   @Override
   public boolean hasWriteTime() {
-    return expiresAfterWrite() || refreshAfterWrite();
+    return expiresAfterWrite() || refreshAfterWrite() || (earlyRefresh != null);
   }
 
   @SuppressWarnings("NullAway")
@@ -385,6 +512,11 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     throw new UnsupportedOperationException();
   }
 
+  /** Returns the pacer for scheduling the maintenance work when entries expire, if enabled. */
+  protected @Nullable Pacer pacer() {
+    return null;
+  }
+
   /* ---------------- Eviction Support -------------- */
 
   /** Returns if the cache evicts entries due to a maximum size or weight threshold. */
@@ -436,6 +568,61 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     throw new UnsupportedOperationException();
   }
 
+  /** Returns the amount to adjust the eden space's size by when the hill climber next adapts. */
+  @GuardedBy("evictionLock")
+  protected double stepSize() {
+    throw new UnsupportedOperationException();
+  }
+
+  @GuardedBy("evictionLock")
+  protected void setStepSize(double stepSize) {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Returns the remaining amount to transfer between the eden and main spaces. */
+  @GuardedBy("evictionLock")
+  protected long adjustment() {
+    throw new UnsupportedOperationException();
+  }
+
+  @GuardedBy("evictionLock")
+  protected void setAdjustment(long amount) {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Returns the number of hits recorded by the policy since the sample period started. */
+  @GuardedBy("evictionLock")
+  protected int hitsInSample() {
+    throw new UnsupportedOperationException();
+  }
+
+  @GuardedBy("evictionLock")
+  protected void setHitsInSample(int hitCount) {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Returns the number of misses recorded by the policy since the sample period started. */
+  @GuardedBy("evictionLock")
+  protected int missesInSample() {
+    throw new UnsupportedOperationException();
+  }
+
+  @GuardedBy("evictionLock")
+  protected void setMissesInSample(int missCount) {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Returns the hit rate observed by the policy during the previous sample period. */
+  @GuardedBy("evictionLock")
+  protected double previousSampleHitRate() {
+    throw new UnsupportedOperationException();
+  }
+
+  @GuardedBy("evictionLock")
+  protected void setPreviousSampleHitRate(double hitRate) {
+    throw new UnsupportedOperationException();
+  }
+
   /**
    * Sets the maximum weighted size of the cache. The caller may need to perform a maintenance cycle
    * to eagerly evicts entries until the cache shrinks to the appropriate size.
@@ -452,6 +639,12 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     lazySetEdenMaximum(eden);
     lazySetMainProtectedMaximum(mainProtected);
 
+    setHitsInSample(0);
+    setMissesInSample(0);
+    setAdjustment(0L);
+    setPreviousSampleHitRate(0.0);
+    setStepSize(-HILL_CLIMBER_STEP_PERCENT * max);
+
     if ((frequencySketch() != null) && !isWeighted() && (weightedSize() >= (max >>> 1))) {
       // Lazily initialize when close to the maximum size
       frequencySketch().ensureCapacity(max);
@@ -665,6 +858,164 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     return ((random & 127) == 0);
   }
 
+  /** Adapts the eviction policy to towards the optimal recency / frequency configuration. */
+  @GuardedBy("evictionLock")
+  void climb() {
+    if (!evicts()) {
+      return;
+    }
+
+    determineAdjustment();
+    demoteFromMainProtected();
+    long amount = adjustment();
+    if (amount == 0) {
+      return;
+    } else if (amount > 0) {
+      increaseEden();
+    } else {
+      decreaseEden();
+    }
+  }
+
+  /** Calculates the amount to adapt the eden by and sets {@link #adjustment()} accordingly. */
+  @GuardedBy("evictionLock")
+  void determineAdjustment() {
+    if (frequencySketch().isNotInitialized()) {
+      setPreviousSampleHitRate(0.0);
+      setMissesInSample(0);
+      setHitsInSample(0);
+      return;
+    }
+
+    int requestCount = hitsInSample() + missesInSample();
+    if (requestCount < frequencySketch().sampleSize) {
+      return;
+    }
+
+    double hitRate = (double) hitsInSample() / requestCount;
+    double hitRateChange = hitRate - previousSampleHitRate();
+    double amount = (hitRateChange >= 0) ? stepSize() : -stepSize();
+    double nextStepSize = (Math.abs(hitRateChange) >= HILL_CLIMBER_RESTART_THRESHOLD)
+        ? HILL_CLIMBER_STEP_PERCENT * maximum() * ((amount >= 0) ? 1 : -1)
+        : HILL_CLIMBER_STEP_DECAY_RATE * amount;
+    setPreviousSampleHitRate(hitRate);
+    setAdjustment((long) amount);
+    setStepSize(nextStepSize);
+    setMissesInSample(0);
+    setHitsInSample(0);
+  }
+
+  /**
+   * Increases the size of the eden space by shrinking the portion allocated to the main space. As
+   * the main space is partitioned into probation and protected regions (20% / 80%), for simplicity
+   * only the protected is reduced. If the regions exceed their maximums, this may cause protected
+   * entries to be demoted to the probation region and probation entries to be moved to the eden.
+   */
+  @GuardedBy("evictionLock")
+  void increaseEden() {
+    if (mainProtectedMaximum() == 0) {
+      return;
+    }
+
+    long quota = Math.min(adjustment(), mainProtectedMaximum());
+    lazySetMainProtectedMaximum(mainProtectedMaximum() - quota);
+    lazySetEdenMaximum(edenMaximum() + quota);
+    demoteFromMainProtected();
+
+    for (int i = 0; i < QUEUE_TRANSFER_THRESHOLD; i++) {
+      Node<K, V> candidate = accessOrderProbationDeque().peek();
+      boolean probation = true;
+      if ((candidate == null) || (quota < candidate.getPolicyWeight())) {
+        candidate = accessOrderProtectedDeque().peek();
+        probation = false;
+      }
+      if (candidate == null) {
+        break;
+      }
+
+      int weight = candidate.getPolicyWeight();
+      if (quota < weight) {
+        break;
+      }
+
+      quota -= weight;
+      if (probation) {
+        accessOrderProbationDeque().remove(candidate);
+      } else {
+        lazySetMainProtectedWeightedSize(mainProtectedWeightedSize() - weight);
+        accessOrderProtectedDeque().remove(candidate);
+      }
+      lazySetEdenWeightedSize(edenWeightedSize() + weight);
+      accessOrderEdenDeque().add(candidate);
+      candidate.makeEden();
+    }
+
+    // Return the unused quota so that the remainder is transferred on the next maintenance cycle
+    lazySetMainProtectedMaximum(mainProtectedMaximum() + quota);
+    lazySetEdenMaximum(edenMaximum() - quota);
+    setAdjustment(quota);
+  }
+
+  /** Decreases the size of the eden space and increases the main's protected region. */
+  @GuardedBy("evictionLock")
+  void decreaseEden() {
+    if (edenMaximum() <= 1) {
+      return;
+    }
+
+    long quota = Math.min(-adjustment(), Math.max(0, edenMaximum() - 1));
+    lazySetMainProtectedMaximum(mainProtectedMaximum() + quota);
+    lazySetEdenMaximum(edenMaximum() - quota);
+
+    for (int i = 0; i < QUEUE_TRANSFER_THRESHOLD; i++) {
+      Node<K, V> candidate = accessOrderEdenDeque().peek();
+      if (candidate == null) {
+        break;
+      }
+
+      int weight = candidate.getPolicyWeight();
+      if (quota < weight) {
+        break;
+      }
+
+      quota -= weight;
+      lazySetEdenWeightedSize(edenWeightedSize() - weight);
+      accessOrderEdenDeque().remove(candidate);
+      accessOrderProbationDeque().add(candidate);
+      candidate.makeMainProbation();
+    }
+
+    // Return the unused quota so that the remainder is transferred on the next maintenance cycle
+    lazySetMainProtectedMaximum(mainProtectedMaximum() - quota);
+    lazySetEdenMaximum(edenMaximum() + quota);
+    setAdjustment(-quota);
+  }
+
+  /** Transfers the nodes from the protected to the probation region if it exceeds the maximum. */
+  @GuardedBy("evictionLock")
+  void demoteFromMainProtected() {
+    long mainProtectedMaximum = mainProtectedMaximum();
+    long mainProtectedWeightedSize = mainProtectedWeightedSize();
+    if (mainProtectedWeightedSize <= mainProtectedMaximum) {
+      return;
+    }
+
+    for (int i = 0; i < QUEUE_TRANSFER_THRESHOLD; i++) {
+      if (mainProtectedWeightedSize <= mainProtectedMaximum) {
+        break;
+      }
+
+      Node<K, V> demoted = accessOrderProtectedDeque().poll();
+      if (demoted == null) {
+        break;
+      }
+      demoted.makeMainProbation();
+      accessOrderProbationDeque().add(demoted);
+      mainProtectedWeightedSize -= demoted.getPolicyWeight();
+    }
+    lazySetMainProtectedWeightedSize(mainProtectedWeightedSize);
+  }
+
   /** Expires entries that have expired by access, write, or variable. */
   @GuardedBy("evictionLock")
   void expireEntries() {
@@ -672,6 +1023,16 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     expireAfterAccessEntries(now);
     expireAfterWriteEntries(now);
     expireVariableEntries(now);
+
+    Pacer pacer = pacer();
+    if (pacer != null) {
+      long delay = getExpirationDelay(now);
+      if (delay == Long.MAX_VALUE) {
+        pacer.cancel();
+      } else {
+        pacer.schedule(executor, drainBuffersTask, now, delay);
+      }
+    }
   }
 
   /** Expires entries in the access-order queue. */
@@ -710,7 +1071,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     long duration = expiresAfterWriteNanos();
     for (;;) {
       final Node<K, V> node = writeOrderDeque().peekFirst();
-      if ((node == null) || ((now - node.getWriteTime()) < duration)) {
+      if ((node == null) || ((now - writeTimeOf(node, now)) < duration)) {
         break;
       }
       evictEntry(node, RemovalCause.EXPIRED, now);
@@ -725,12 +1086,60 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     }
   }
 
-  /** Returns if the entry has expired. */
+  /**
+   * Returns the duration until the next item expires, or {@link Long#MAX_VALUE} if none.
+   *
+   * @param now the current time, in nanoseconds
+   * @return the duration until the next item expires, or {@link Long#MAX_VALUE} if none
+   */
+  @GuardedBy("evictionLock")
+  long getExpirationDelay(long now) {
+    long delay = Long.MAX_VALUE;
+    if (expiresAfterAccess()) {
+      Node<K, V> node = accessOrderEdenDeque().peekFirst();
+      if (node != null) {
+        delay = Math.min(delay, expiresAfterAccessNanos() - (now - node.getAccessTime()));
+      }
+      if (evicts()) {
+        node = accessOrderProbationDeque().peekFirst();
+        if (node != null) {
+          delay = Math.min(delay, expiresAfterAccessNanos() - (now - node.getAccessTime()));
+        }
+        node = accessOrderProtectedDeque().peekFirst();
+        if (node != null) {
+          delay = Math.min(delay, expiresAfterAccessNanos() - (now - node.getAccessTime()));
+        }
+      }
+    }
+    if (expiresAfterWrite()) {
+      Node<K, V> node = writeOrderDeque().peekFirst();
+      if (node != null) {
+        delay = Math.min(delay, expiresAfterWriteNanos() - (now - writeTimeOf(node, now)));
+      }
+    }
+    if (expiresVariable()) {
+      delay = Math.min(delay, timerWheel().getExpirationDelay());
+    }
+    return delay;
+  }
+
+  /** Returns if the entry has expired or was retired by a clear that has not reclaimed it yet. */
   @SuppressWarnings("ShortCircuitBoolean")
   boolean hasExpired(Node<K, V> node, long now) {
     return (expiresAfterAccess() && (now - node.getAccessTime() >= expiresAfterAccessNanos()))
-        | (expiresAfterWrite() && (now - node.getWriteTime() >= expiresAfterWriteNanos()))
-        | (expiresVariable() && (now - node.getVariableTime() >= 0));
+        | (expiresAfterWrite() && (now - writeTimeOf(node, now) >= expiresAfterWriteNanos()))
+        | (expiresVariable() && (now - node.getVariableTime() >= 0))
+        | isCleared(node);
+  }
+
+  /** Returns if the entry was added before the most recent clear and is logically absent. */
+  boolean isCleared(Node<K, V> node) {
+    return (node.getGeneration() != generation);
+  }
+
+  /** Returns the cause to report for an entry that {@link #hasExpired} when it is removed. */
+  RemovalCause expiredCause(Node<K, V> node) {
+    return isCleared(node) ? RemovalCause.EXPLICIT : RemovalCause.EXPIRED;
   }
 
   /**
@@ -759,14 +1168,18 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       synchronized (n) {
         value[0] = n.getValue();
 
-        actualCause[0] = (key == null) || (value[0] == null) ? RemovalCause.COLLECTED : cause;
+        if ((key == null) || (value[0] == null)) {
+          actualCause[0] = RemovalCause.COLLECTED;
+        } else {
+          actualCause[0] = isCleared(n) ? RemovalCause.EXPLICIT : cause;
+        }
         if (actualCause[0] == RemovalCause.EXPIRED) {
           boolean expired = false;
           if (expiresAfterAccess()) {
             expired |= ((now - n.getAccessTime()) >= expiresAfterAccessNanos());
           }
           if (expiresAfterWrite()) {
-            expired |= ((now - n.getWriteTime()) >= expiresAfterWriteNanos());
+            expired |= ((now - writeTimeOf(n, now)) >= expiresAfterWriteNanos());
           }
           if (expiresVariable()) {
             expired |= (n.getVariableTime() <= now);
@@ -811,9 +1224,14 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     } else if (expiresVariable()) {
       timerWheel().deschedule(node);
     }
+    if (tagIndex != null) {
+      tagIndex.remove(node);
+    }
 
     if (removed[0]) {
-      statsCounter().recordEviction(node.getWeight());
+      if (actualCause[0].wasEvicted()) {
+        statsCounter().recordEviction(node.getWeight());
+      }
       if (hasRemovalListener()) {
         // Notify the listener only if the entry was evicted. This must be performed as the last
         // step during eviction to safe guard against the executor rejecting the notification task.
@@ -838,15 +1256,45 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
   void afterRead(Node<K, V> node, long now, boolean recordHit) {
     if (recordHit) {
       statsCounter().recordHits(1);
+      if (isStale(node, now)) {
+        statsCounter().recordStaleHits(1);
+      }
     }
 
-    boolean delayable = skipReadBuffer() || (readBuffer.offer(node) != Buffer.FULL);
+    boolean delayable = true;
+    if (!skipReadBuffer()) {
+      int result = readBuffer.offer(node);
+      delayable = (result != Buffer.FULL);
+      if (((result == Buffer.FULL) || (result == Buffer.FAILED)) && (instrumentation != null)) {
+        instrumentation.recordDroppedRead();
+      }
+    }
     if (shouldDrainBuffers(delayable)) {
       scheduleDrainBuffers();
     }
     refreshIfNeeded(node, now);
   }
 
+  /**
+   * Returns the time that the entry was last written. When a reload keeps the entry's deadline, it
+   * holds the write time in the distant future by offsetting it with {@link Async#ASYNC_EXPIRY},
+   * which is undone here so that the entry still expires when its deadline passes.
+   */
+  long writeTimeOf(Node<K, V> node, long now) {
+    long writeTime = node.getWriteTime();
+    if (refreshKeepsDeadline()
+        && ((now - writeTime) < -(Long.MAX_VALUE >> 1)) && !isComputingAsync(node)) {
+      return writeTime - ASYNC_EXPIRY;
+    }
+    return writeTime;
+  }
+
+  /** Returns if the entry is being served during its grace period after expiring. */
+  boolean isStale(Node<K, V> node, long now) {
+    return (staleAfterWriteNanos != Long.MAX_VALUE)
+        && ((now - writeTimeOf(node, now)) > staleAfterWriteNanos);
+  }
+
   /** Returns if the cache should bypass the read buffer. */
   boolean skipReadBuffer() {
     return fastpath() && frequencySketch().isNotInitialized();
@@ -860,14 +1308,16 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
    */
   @SuppressWarnings("FutureReturnValueIgnored")
   void refreshIfNeeded(Node<K, V> node, long now) {
-    if (!refreshAfterWrite()) {
+    if (!refreshAfterWrite() && (earlyRefresh == null)) {
       return;
     }
     K key;
     V oldValue;
     long oldWriteTime = node.getWriteTime();
-    long refreshWriteTime = (now + ASYNC_EXPIRY);
-    if (((now - oldWriteTime) > refreshAfterWriteNanos())
+    long refreshWriteTime = refreshKeepsDeadline()
+        ? (oldWriteTime + ASYNC_EXPIRY)
+        : (now + ASYNC_EXPIRY);
+    if (isRefreshDue(node, now, oldWriteTime)
         && ((key = node.getKey()) != null) && ((oldValue = node.getValue()) != null)
         && node.casWriteTime(oldWriteTime, refreshWriteTime)) {
       try {
@@ -878,8 +1328,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           CompletableFuture<V> future = (CompletableFuture<V>) oldValue;
           if (Async.isReady(future)) {
             @SuppressWarnings("NullAway")
-            CompletableFuture<V> refresh = future.thenCompose(value ->
-              cacheLoader.asyncReload(key, value, executor));
+            CompletableFuture<V> refresh = future.thenCompose(value -> (refreshBatcher == null)
+                ? cacheLoader.asyncReload(key, value, executor)
+                : refreshBatcher.reload(key, value, executor));
             refreshFuture = refresh;
           } else {
             // no-op if load is pending
@@ -888,18 +1339,32 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           }
         } else {
           @SuppressWarnings("NullAway")
-          CompletableFuture<V> refresh = cacheLoader.asyncReload(key, oldValue, executor);
+          CompletableFuture<V> refresh = (refreshBatcher == null)
+              ? cacheLoader.asyncReload(key, oldValue, executor)
+              : refreshBatcher.reload(key, oldValue, executor);
           refreshFuture = refresh;
         }
         refreshFuture.whenComplete((newValue, error) -> {
           long loadTime = statsTicker().read() - startTime;
           if (error != null) {
             logger.log(Level.WARNING, "Exception thrown during refresh", error);
-            node.casWriteTime(refreshWriteTime, oldWriteTime);
+            if ((staleAfterWriteNanos == Long.MAX_VALUE) || serveStaleOnError) {
+              node.casWriteTime(refreshWriteTime, oldWriteTime);
+            } else {
+              // discard the stale entry so that the next read loads it synchronously
+              long expiredWriteTime = expirationTicker().read() - expiresAfterWriteNanos();
+              if (node.casWriteTime(refreshWriteTime, expiredWriteTime)) {
+                scheduleDrainBuffers();
+              }
+            }
             statsCounter().recordLoadFailure(loadTime);
             return;
           }
 
+          if ((earlyRefresh != null) && (newValue != null)) {
+            earlyRefresh.recordLoadTime(expirationTicker().read() - now);
+          }
+
           @SuppressWarnings("unchecked")
           V value = (isAsync && (newValue != null)) ? (V) refreshFuture : newValue;
 
@@ -930,6 +1395,36 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     }
   }
 
+  /**
+   * Returns if an entry written at the given time should be refreshed, possibly ahead of its
+   * deadline. Without {@code refreshAfterWrite} the deadline is when the entry expires, which for a
+   * variable expiration policy is the entry's own expiration time.
+   */
+  boolean isRefreshDue(Node<K, V> node, long now, long writeTime) {
+    long age = now - writeTime;
+    if (refreshAfterWrite()) {
+      return (age > refreshAfterWriteNanos())
+          || ((earlyRefresh != null) && earlyRefresh.shouldRefresh(age, refreshAfterWriteNanos()));
+    } else if (earlyRefresh == null) {
+      return false;
+    } else if (expiresVariable()) {
+      // a negative age is an in-flight load or reload, whose write time is held in the future
+      return (age >= 0L) && earlyRefresh.shouldRefresh(age, node.getVariableTime() - writeTime);
+    }
+    return earlyRefresh.shouldRefresh(age, expiresAfterWriteNanos());
+  }
+
+  /**
+   * Returns if an in-flight reload retains the entry's expiration deadline, rather than extending
+   * it until the reload completes. This is the case when serving stale entries during a grace
+   * period, or when refreshing early without {@code refreshAfterWrite}, as the entry must not be
+   * served past its expiration.
+   */
+  boolean refreshKeepsDeadline() {
+    return (staleAfterWriteNanos != Long.MAX_VALUE)
+        || ((earlyRefresh != null) && !refreshAfterWrite());
+  }
+
   /**
    * Returns the expiration time for the entry after being created.
    *
@@ -994,7 +1489,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
   }
 
   void setWriteTime(Node<K, V> node, long now) {
-    if (expiresAfterWrite() || refreshAfterWrite()) {
+    if (hasWriteTime()) {
       node.setWriteTime(now);
     }
   }
@@ -1017,12 +1512,18 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           scheduleAfterWrite();
           return;
         }
+        if (instrumentation != null) {
+          instrumentation.recordWriteBufferRetry();
+        }
         scheduleDrainBuffers();
       }
 
       // The maintenance task may be scheduled but not running due to all of the executor's threads
       // being busy. If all of the threads are writing into the cache then no progress can be made
       // without assistance.
+      if (instrumentation != null) {
+        instrumentation.recordCallerRunsCleanup();
+      }
       try {
         performCleanUp(task);
       } catch (RuntimeException e) {
@@ -1064,7 +1565,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
 
   /**
    * Attempts to schedule an asynchronous task to apply the pending operations to the page
-   * replacement policy. If the executor rejects the task then it is run directly.
+   * replacement policy. The task is submitted to the maintenance service if one is configured, and
+   * otherwise to the executor. If the task is rejected, or the service was shut down, then it is
+   * run directly.
    */
   void scheduleDrainBuffers() {
     if (drainStatus() >= PROCESSING_TO_IDLE) {
@@ -1077,7 +1580,12 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           return;
         }
         lazySetDrainStatus(PROCESSING_TO_IDLE);
-        executor().execute(drainBuffersTask);
+        if (maintenanceRegistration == null) {
+          executor().execute(drainBuffersTask);
+        } else if (!maintenanceRegistration.schedule()) {
+          // the service was shut down, so the calling thread performs the maintenance instead
+          maintenance(/* ignored */ null);
+        }
       } catch (Throwable t) {
         logger.log(Level.WARNING, "Exception thrown when submitting maintenance task", t);
         maintenance(/* ignored */ null);
@@ -1103,17 +1611,36 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
    * @param task an additional pending task to run, or {@code null} if not present
    */
   void performCleanUp(@Nullable Runnable task) {
-    evictionLock.lock();
+    lockEviction();
     try {
       maintenance(task);
     } finally {
       evictionLock.unlock();
     }
-    if ((drainStatus() == REQUIRED) && (executor == ForkJoinPool.commonPool())) {
+    if ((drainStatus() == REQUIRED)
+        && ((executor == ForkJoinPool.commonPool()) || (maintenanceRegistration != null))) {
       scheduleDrainBuffers();
     }
   }
 
+  /** Acquires the eviction lock, recording the time spent waiting for it if instrumented. */
+  void lockEviction() {
+    if (instrumentation == null) {
+      evictionLock.lock();
+      return;
+    }
+    long startTime = System.nanoTime();
+    evictionLock.lock();
+    instrumentation.recordEvictionLockWait(System.nanoTime() - startTime);
+  }
+
+  /** Returns the approximate number of buffered reads and writes that await the maintenance. */
+  int pendingWork() {
+    return buffersWrites()
+        ? readBuffer.size() + writeBuffer().size()
+        : readBuffer.size();
+  }
+
   /**
    * Performs the pending maintenance work and sets the state flags during processing to avoid
    * excess scheduling attempts. The read buffer, write buffer, and reference queues are
@@ -1124,6 +1651,8 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
   @GuardedBy("evictionLock")
   void maintenance(@Nullable Runnable task) {
     lazySetDrainStatus(PROCESSING_TO_IDLE);
+    boolean buffering = startBufferingNotifications();
+    long startTime = (instrumentation == null) ? 0L : System.nanoTime();
 
     try {
       drainReadBuffer();
@@ -1138,10 +1667,63 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
 
       expireEntries();
       evictEntries();
+      gatherStaleEntries();
+
+      climb();
+      ageFrequencySketch();
     } finally {
       if ((drainStatus() != PROCESSING_TO_IDLE) || !casDrainStatus(PROCESSING_TO_IDLE, IDLE)) {
         lazySetDrainStatus(REQUIRED);
       }
+      if (buffering) {
+        flushNotifications();
+      }
+      if (instrumentation != null) {
+        instrumentation.recordMaintenance(System.nanoTime() - startTime);
+      }
+    }
+  }
+
+  /**
+   * Adds the entries that are due to be refreshed to a pending refresh batch, so that a batch that
+   * was started by a read is filled by the other stale entries rather than only by later reads.
+   * The candidates are the oldest writes if the write order is maintained, and otherwise the most
+   * recently used entries of the protected space. The scan is bounded by the batch's remaining
+   * capacity.
+   */
+  @GuardedBy("evictionLock")
+  void gatherStaleEntries() {
+    if (refreshBatcher == null) {
+      return;
+    }
+    int capacity = refreshBatcher.pendingCapacity();
+    if (capacity == 0) {
+      return;
+    }
+
+    Iterator<Node<K, V>> iterator;
+    if (expiresAfterWrite()) {
+      iterator = writeOrderDeque().iterator();
+    } else if (evicts()) {
+      iterator = accessOrderProtectedDeque().descendingIterator();
+    } else {
+      return;
+    }
+    List<Node<K, V>> candidates = new ArrayList<>(capacity);
+    while ((candidates.size() < capacity) && iterator.hasNext()) {
+      candidates.add(iterator.next());
+    }
+    long now = expirationTicker().read();
+    for (Node<K, V> node : candidates) {
+      refreshIfNeeded(node, now);
+    }
+  }
+
+  /** Performs a bounded amount of the frequency sketch's pending aging work. */
+  @GuardedBy("evictionLock")
+  void ageFrequencySketch() {
+    if (evicts()) {
+      frequencySketch().ageIncrementally();
     }
   }
 
@@ -1201,6 +1783,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       } else {
         reorder(accessOrderProtectedDeque(), node);
       }
+      setHitsInSample(hitsInSample() + 1);
     } else if (expiresAfterAccess()) {
       reorder(accessOrderEdenDeque(), node);
     }
@@ -1313,7 +1896,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         long maximum = maximum();
         if (weightedSize >= (maximum >>> 1)) {
           // Lazily initialize when close to the maximum
-          long capacity = isWeighted() ? data.mappingCount() : maximum;
+          long capacity = isWeighted() ? estimatedSize() : maximum;
           frequencySketch().ensureCapacity(capacity);
         }
 
@@ -1321,6 +1904,8 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         if (key != null) {
           frequencySketch().increment(key);
         }
+
+        setMissesInSample(missesInSample() + 1);
       }
 
       // ignore out-of-order write operations
@@ -1338,6 +1923,10 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         if (expiresVariable()) {
           timerWheel().schedule(node);
         }
+        if (tagIndex != null) {
+          // an update may have been processed first due to the writes being reordered
+          tagIndex.update(node);
+        }
       }
 
       // Ensure that in-flight async computation cannot expire (reset on a completion callback)
@@ -1351,6 +1940,11 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           }
         }
       }
+
+      // A clear may have retired the entry before its sweep could observe it in the hash table
+      if (isAlive && isCleared(node)) {
+        removeNode(node, expirationTicker().read(), /* onlyIfCleared */ true);
+      }
     }
   }
 
@@ -1380,6 +1974,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       } else if (expiresVariable()) {
         timerWheel().deschedule(node);
       }
+      if (tagIndex != null) {
+        tagIndex.remove(node);
+      }
       makeDead(node);
     }
   }
@@ -1401,7 +1998,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         if (node.inEden()) {
           lazySetEdenWeightedSize(edenWeightedSize() + weightDifference);
         } else if (node.inMainProtected()) {
-          lazySetMainProtectedWeightedSize(mainProtectedMaximum() + weightDifference);
+          lazySetMainProtectedWeightedSize(mainProtectedWeightedSize() + weightDifference);
         }
         lazySetWeightedSize(weightedSize() + weightDifference);
         node.setPolicyWeight(node.getPolicyWeight() + weightDifference);
@@ -1414,6 +2011,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       } else if (expiresVariable()) {
         timerWheel().reschedule(node);
       }
+      if ((tagIndex != null) && node.isAlive()) {
+        tagIndex.update(node);
+      }
     }
   }
 
@@ -1431,13 +2031,96 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
 
   @Override
   public long estimatedSize() {
-    return data.mappingCount();
+    return usesEmbeddedHashTable()
+        ? ((NodeTable<?, ?>) data).mappingCount()
+        : ((ConcurrentHashMap<?, ?>) data).mappingCount();
+  }
+
+  /** Returns if the entries are chained directly within the hash table. */
+  boolean usesEmbeddedHashTable() {
+    return (data instanceof NodeTable<?, ?>);
   }
 
+  /**
+   * Discards all of the entries. When there is no writer to veto a removal, the entries are retired
+   * at once by advancing the generation so that reads miss immediately, and the executor reclaims
+   * them afterwards. Like an expired entry, a retired entry is included in the size until then.
+   * Otherwise the entries are discarded by the caller, as the writer may fail a removal.
+   */
   @Override
-  @SuppressWarnings("FutureReturnValueIgnored")
   public void clear() {
-    evictionLock.lock();
+    if (pendingLoads != null) {
+      pendingLoads.discardAll();
+    }
+    if (hasWriter()) {
+      Iterator<Node<K, V>> iterator = data.values().iterator();
+      boolean done;
+      do {
+        done = clearBatch(iterator, /* onlyIfCleared */ false);
+      } while (!done);
+      return;
+    }
+
+    lockEviction();
+    try {
+      generation++;
+    } finally {
+      evictionLock.unlock();
+    }
+
+    Iterator<Node<K, V>> iterator = data.values().iterator();
+    Runnable reclaim = () -> {
+      boolean done;
+      do {
+        done = clearBatch(iterator, /* onlyIfCleared */ true);
+      } while (!done);
+    };
+    try {
+      executor.execute(reclaim);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown when submitting clear task", t);
+      reclaim.run();
+    }
+  }
+
+  @Override
+  public void invalidateAll(Iterable<?> keys) {
+    if (!hasRemovalListener()) {
+      LocalCache.super.invalidateAll(keys);
+      return;
+    }
+
+    // Deliver the notifications of each batch of removals as a single task
+    Iterator<?> iterator = keys.iterator();
+    while (iterator.hasNext()) {
+      lockEviction();
+      boolean buffering = startBufferingNotifications();
+      try {
+        for (int i = 0; (i < CLEAR_BATCH_SIZE) && iterator.hasNext(); i++) {
+          remove(iterator.next());
+        }
+      } finally {
+        if (buffering) {
+          flushNotifications();
+        }
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Discards a bounded number of entries while holding the eviction lock. The lock is released
+   * between batches so that a large cache does not stall the writers and maintenance cycles that
+   * are waiting on it for the entire duration of the clear.
+   *
+   * @param iterator the entries to discard
+   * @param onlyIfCleared if an entry that was added or revived since the clear is retained
+   * @return if all of the entries have been discarded
+   */
+  @SuppressWarnings("FutureReturnValueIgnored")
+  boolean clearBatch(Iterator<Node<K, V>> iterator, boolean onlyIfCleared) {
+    lockEviction();
+    boolean buffering = startBufferingNotifications();
     try {
       long now = expirationTicker().read();
 
@@ -1447,37 +2130,103 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         task.run();
       }
 
-      // Discard all entries
-      for (Node<K, V> node : data.values()) {
-        removeNode(node, now);
+      // Discard the next batch of entries
+      for (int i = 0; (i < CLEAR_BATCH_SIZE) && iterator.hasNext(); i++) {
+        removeNode(iterator.next(), now, onlyIfCleared);
+      }
+      if (iterator.hasNext()) {
+        return false;
       }
 
       // Discard all pending reads
       readBuffer.drainTo(e -> {});
+      return true;
+    } finally {
+      if (buffering) {
+        flushNotifications();
+      }
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the keys of the entries that have the tag, after applying the pending writes to the
+   * tag index.
+   */
+  @SuppressWarnings("NullAway")
+  Set<K> tagged(Object tag) {
+    requireNonNull(tag);
+    lockEviction();
+    try {
+      drainWriteBuffer();
+
+      long now = expirationTicker().read();
+      Set<K> keys = new LinkedHashSet<>();
+      for (Node<K, V> node : tagIndex.members(tag)) {
+        K key = node.getKey();
+        if ((key != null) && (node.getValue() != null)
+            && node.isAlive() && !hasExpired(node, now)) {
+          keys.add(key);
+        }
+      }
+      return Collections.unmodifiableSet(keys);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /** Discards all of the entries that have the tag, after applying the pending writes. */
+  @SuppressWarnings("NullAway")
+  void invalidateTag(Object tag) {
+    requireNonNull(tag);
+    lockEviction();
+    boolean buffering = startBufferingNotifications();
+    try {
+      drainWriteBuffer();
+
+      long now = expirationTicker().read();
+      for (Node<K, V> node : tagIndex.members(tag)) {
+        removeNode(node, now, /* onlyIfCleared */ false);
+      }
     } finally {
+      if (buffering) {
+        flushNotifications();
+      }
       evictionLock.unlock();
     }
   }
 
+  /**
+   * Removes the entry from the hash table and the page replacement policy.
+   *
+   * @param node the entry to remove
+   * @param now the current time, used to determine the removal cause
+   * @param onlyIfCleared if the entry is retained unless a clear has retired it
+   */
   @GuardedBy("evictionLock")
   @SuppressWarnings("GuardedByChecker")
-  void removeNode(Node<K, V> node, long now) {
+  void removeNode(Node<K, V> node, long now, boolean onlyIfCleared) {
     K key = node.getKey();
     @SuppressWarnings("unchecked")
     V[] value = (V[]) new Object[1];
     RemovalCause[] cause = new RemovalCause[1];
+    boolean[] retained = new boolean[1];
 
     data.computeIfPresent(node.getKeyReference(), (k, n) -> {
       if (n != node) {
         return n;
       }
       synchronized (n) {
+        if (onlyIfCleared && !isCleared(n)) {
+          retained[0] = true;
+          return n;
+        }
         value[0] = n.getValue();
 
         if ((key == null) || (value[0] == null)) {
           cause[0] = RemovalCause.COLLECTED;
         } else if (hasExpired(n, now)) {
-          cause[0] = RemovalCause.EXPIRED;
+          cause[0] = expiredCause(n);
         } else {
           cause[0] = RemovalCause.EXPLICIT;
         }
@@ -1487,6 +2236,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         return null;
       }
     });
+    if (retained[0]) {
+      return;
+    }
 
     if (node.inEden() && (evicts() || expiresAfterAccess())) {
       accessOrderEdenDeque().remove(node);
@@ -1502,6 +2254,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     } else if (expiresVariable()) {
       timerWheel().deschedule(node);
     }
+    if (tagIndex != null) {
+      tagIndex.remove(node);
+    }
 
     if ((cause[0] != null) && hasRemovalListener()) {
       notifyRemoval(key, value[0], cause[0]);
@@ -1583,6 +2338,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     }
 
     int misses = 0;
+    int staleHits = 0;
     long now = expirationTicker().read();
     Map<Object, Object> result = new LinkedHashMap<>(uniqueKeys.size());
     for (Object key : uniqueKeys) {
@@ -1592,6 +2348,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         misses++;
       } else {
         result.put(key, value);
+        if (isStale(node, now)) {
+          staleHits++;
+        }
 
         if (!isComputingAsync(node)) {
           @SuppressWarnings("unchecked")
@@ -1604,6 +2363,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     }
     statsCounter().recordMisses(misses);
     statsCounter().recordHits(result.size());
+    if (staleHits > 0) {
+      statsCounter().recordStaleHits(staleHits);
+    }
 
     @SuppressWarnings("unchecked")
     Map<K, V> castedResult = (Map<K, V>) result;
@@ -1650,6 +2412,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           node = nodeFactory.newNode(key, keyReferenceQueue(),
               value, valueReferenceQueue(), newWeight, now);
           setVariableTime(node, expireAfterCreate(key, value, expiry, now));
+          node.setGeneration(generation);
         }
         if (notifyWriter && hasWriter()) {
           Node<K, V> computed = node;
@@ -1676,6 +2439,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       boolean expired = false;
       boolean mayUpdate = true;
       boolean withinTolerance = true;
+      RemovalCause expiredCause = RemovalCause.EXPIRED;
       synchronized (prior) {
         if (!prior.isAlive()) {
           continue;
@@ -1685,10 +2449,13 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         if (oldValue == null) {
           varTime = expireAfterCreate(key, value, expiry, now);
           writer.delete(key, null, RemovalCause.COLLECTED);
+          prior.setGeneration(generation);
         } else if (hasExpired(prior, now)) {
           expired = true;
+          expiredCause = expiredCause(prior);
           varTime = expireAfterCreate(key, value, expiry, now);
-          writer.delete(key, oldValue, RemovalCause.EXPIRED);
+          writer.delete(key, oldValue, expiredCause);
+          prior.setGeneration(generation);
         } else if (onlyIfAbsent) {
           mayUpdate = false;
           varTime = expireAfterRead(prior, key, value, expiry, now);
@@ -1713,7 +2480,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
 
       if (hasRemovalListener()) {
         if (expired) {
-          notifyRemoval(key, oldValue, RemovalCause.EXPIRED);
+          notifyRemoval(key, oldValue, expiredCause);
         } else if (oldValue == null) {
           notifyRemoval(key, /* oldValue */ null, RemovalCause.COLLECTED);
         } else if (mayUpdate && (value != oldValue)) {
@@ -1722,7 +2489,8 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       }
 
       int weightedDifference = mayUpdate ? (newWeight - oldWeight) : 0;
-      if ((oldValue == null) || (weightedDifference != 0) || expired) {
+      if ((oldValue == null) || (weightedDifference != 0) || expired
+          || (isTagging() && mayUpdate)) {
         afterWrite(new UpdateTask(prior, weightedDifference));
       } else if (!onlyIfAbsent && expiresAfterWrite() && withinTolerance) {
         afterWrite(new UpdateTask(prior, weightedDifference));
@@ -1739,6 +2507,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
 
   @Override
   public @Nullable V remove(Object key) {
+    if (pendingLoads != null) {
+      pendingLoads.discard(nodeFactory.newLookupKey(key));
+    }
     return hasWriter()
         ? removeWithWriter(key)
         : removeNoWriter(key);
@@ -1765,12 +2536,14 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     }
 
     RemovalCause cause;
+    boolean present = false;
     if (oldValue == null) {
       cause = RemovalCause.COLLECTED;
     } else if (hasExpired(node, expirationTicker().read())) {
-      cause = RemovalCause.EXPIRED;
+      cause = expiredCause(node);
     } else {
       cause = RemovalCause.EXPLICIT;
+      present = true;
     }
 
     if (hasRemovalListener()) {
@@ -1779,7 +2552,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       notifyRemoval(castKey, oldValue, cause);
     }
     afterWrite(new RemovalTask(node));
-    return (cause == RemovalCause.EXPLICIT) ? oldValue : null;
+    return present ? oldValue : null;
   }
 
   /**
@@ -1837,6 +2610,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     @SuppressWarnings("unchecked")
     V[] oldValue = (V[]) new Object[1];
     RemovalCause[] cause = new RemovalCause[1];
+    boolean[] present = new boolean[1];
 
     data.computeIfPresent(nodeFactory.newLookupKey(key), (kR, node) -> {
       synchronized (node) {
@@ -1845,9 +2619,10 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         if (oldKey[0] == null) {
           cause[0] = RemovalCause.COLLECTED;
         } else if (hasExpired(node, expirationTicker().read())) {
-          cause[0] = RemovalCause.EXPIRED;
+          cause[0] = expiredCause(node);
         } else if (node.containsValue(value)) {
           cause[0] = RemovalCause.EXPLICIT;
+          present[0] = true;
         } else {
           return node;
         }
@@ -1864,7 +2639,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       notifyRemoval(oldKey[0], oldValue[0], cause[0]);
     }
     afterWrite(new RemovalTask(removed[0]));
-    return (cause[0] == RemovalCause.EXPLICIT);
+    return present[0];
   }
 
   @Override
@@ -1909,7 +2684,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     }
 
     int weightedDifference = (weight - oldWeight[0]);
-    if (expiresAfterWrite() || (weightedDifference != 0)) {
+    if (expiresAfterWrite() || (weightedDifference != 0) || isTagging()) {
       afterWrite(new UpdateTask(node, weightedDifference));
     } else {
       afterRead(node, now[0], /* recordHit */ false);
@@ -1965,7 +2740,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     }
 
     int weightedDifference = (weight - oldWeight[0]);
-    if (expiresAfterWrite() || (weightedDifference != 0)) {
+    if (expiresAfterWrite() || (weightedDifference != 0) || isTagging()) {
       afterWrite(new UpdateTask(node, weightedDifference));
     } else {
       afterRead(node, now[0], /* recordHit */ false);
@@ -2020,9 +2795,43 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       mappingFunction = statsAware(mappingFunction, recordLoad);
     }
     Object keyRef = nodeFactory.newReferenceKey(key, keyReferenceQueue());
+    if (pendingLoads != null) {
+      return loadOutsideLock(key, keyRef, mappingFunction, recordStats);
+    }
     return doComputeIfAbsent(key, keyRef, mappingFunction, new long[] { now });
   }
 
+  /**
+   * Returns the current value from a computeIfAbsent invocation that evaluates the mapping function
+   * outside of the hash bin's lock. The entry is re-read after the load is claimed, as a prior load
+   * may have completed since the optimistic read, and the loaded value is published only if the
+   * entry is still absent and the key was not removed during the load. A removed key's value is
+   * returned to the callers without being published.
+   */
+  @Nullable V loadOutsideLock(K key, Object keyRef,
+      Function<? super K, ? extends V> mappingFunction, boolean recordStats) {
+    boolean[] joined = new boolean[1];
+    @SuppressWarnings("NullAway")
+    V value = pendingLoads.loadOrJoin(nodeFactory.newLookupKey(key), joined, placeholder -> {
+      V present = getIfPresent(key, /* recordStats */ false);
+      if (present != null) {
+        joined[0] = true;
+        return present;
+      }
+      V newValue = mappingFunction.apply(key);
+      if (newValue == null) {
+        return null;
+      }
+      V published = doComputeIfAbsent(key, keyRef, k -> placeholder.discarded ? null : newValue,
+          new long[] { expirationTicker().read() });
+      return (published == null) ? newValue : published;
+    });
+    if (joined[0] && recordStats && (value != null)) {
+      statsCounter().recordHits(1);
+    }
+    return value;
+  }
+
   /** Returns the current value from a computeIfAbsent invocation. */
   @Nullable V doComputeIfAbsent(K key, Object keyRef,
       Function<? super K, ? extends V> mappingFunction, long[/* 1 */] now) {
@@ -2048,6 +2857,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         n = nodeFactory.newNode(key, keyReferenceQueue(),
             newValue[0], valueReferenceQueue(), weight[1], now[0]);
         setVariableTime(n, expireAfterCreate(key, newValue[0], expiry(), now[0]));
+        n.setGeneration(generation);
         return n;
       }
 
@@ -2058,7 +2868,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         if ((nodeKey[0] == null) || (oldValue[0] == null)) {
           cause[0] = RemovalCause.COLLECTED;
         } else if (hasExpired(n, now[0])) {
-          cause[0] = RemovalCause.EXPIRED;
+          cause[0] = expiredCause(n);
         } else {
           return n;
         }
@@ -2078,6 +2888,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         setVariableTime(n, expireAfterCreate(key, newValue[0], expiry(), now[0]));
         setAccessTime(n, now[0]);
         setWriteTime(n, now[0]);
+        n.setGeneration(generation);
         return n;
       }
     });
@@ -2092,7 +2903,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       if (hasRemovalListener()) {
         notifyRemoval(nodeKey[0], oldValue[0], cause[0]);
       }
-      statsCounter().recordEviction(weight[0]);
+      if (cause[0].wasEvicted()) {
+        statsCounter().recordEviction(weight[0]);
+      }
     }
     if (newValue[0] == null) {
       if (!isComputingAsync(node)) {
@@ -2208,6 +3021,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         n = nodeFactory.newNode(keyRef, newValue[0],
             valueReferenceQueue(), weight[1], now[0]);
         setVariableTime(n, expireAfterCreate(key, newValue[0], expiry(), now[0]));
+        n.setGeneration(generation);
         return n;
       }
 
@@ -2217,7 +3031,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         if ((nodeKey[0] == null) || (oldValue[0] == null)) {
           cause[0] = RemovalCause.COLLECTED;
         } else if (hasExpired(n, now[0])) {
-          cause[0] = RemovalCause.EXPIRED;
+          cause[0] = expiredCause(n);
         }
         if (cause[0] != null) {
           writer.delete(nodeKey[0], oldValue[0], cause[0]);
@@ -2249,6 +3063,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           setVariableTime(n, expireAfterUpdate(n, key, newValue[0], expiry(), now[0]));
         } else {
           setVariableTime(n, expireAfterCreate(key, newValue[0], expiry(), now[0]));
+          n.setGeneration(generation);
         }
         n.setValue(newValue[0], valueReferenceQueue());
         n.setWeight(weight[1]);
@@ -2275,7 +3090,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       afterWrite(new AddTask(node, weight[1]));
     } else {
       int weightedDifference = weight[1] - weight[0];
-      if (expiresAfterWrite() || (weightedDifference != 0)) {
+      if (expiresAfterWrite() || (weightedDifference != 0) || isTagging()) {
         afterWrite(new UpdateTask(node, weightedDifference));
       } else {
         if (cause[0] == null) {
@@ -2322,24 +3137,33 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
    */
   @SuppressWarnings("GuardedByChecker")
   Map<K, V> evictionOrder(int limit, Function<V, V> transformer, boolean hottest) {
-    Supplier<Iterator<Node<K, V>>> iteratorSupplier = () -> {
-      Comparator<Node<K, V>> comparator = Comparator.comparingInt(node -> {
-          K key = node.getKey();
-          return (key == null) ? 0 : frequencySketch().frequency(key);
-      });
-      if (hottest) {
-        PeekingIterator<Node<K, V>> secondary = PeekingIterator.comparing(
-            accessOrderProbationDeque().descendingIterator(),
-            accessOrderEdenDeque().descendingIterator(), comparator);
-        return PeekingIterator.concat(accessOrderProtectedDeque().descendingIterator(), secondary);
-      } else {
-        PeekingIterator<Node<K, V>> primary = PeekingIterator.comparing(
-            accessOrderEdenDeque().iterator(), accessOrderProbationDeque().iterator(),
-            comparator.reversed());
-        return PeekingIterator.concat(primary, accessOrderProtectedDeque().iterator());
-      }
-    };
-    return fixedSnapshot(iteratorSupplier, limit, transformer);
+    return fixedSnapshot(() -> evictionOrderIterator(hottest), limit, transformer);
+  }
+
+  /**
+   * Returns an iterator over the nodes in the order in which they are likely to be evicted, either
+   * the hottest or the coldest first.
+   *
+   * @param hottest the iteration order
+   * @return an iterator over the nodes in the page replacement policy
+   */
+  @GuardedBy("evictionLock")
+  Iterator<Node<K, V>> evictionOrderIterator(boolean hottest) {
+    Comparator<Node<K, V>> comparator = Comparator.comparingInt(node -> {
+        K key = node.getKey();
+        return (key == null) ? 0 : frequencySketch().frequency(key);
+    });
+    if (hottest) {
+      PeekingIterator<Node<K, V>> secondary = PeekingIterator.comparing(
+          accessOrderProbationDeque().descendingIterator(),
+          accessOrderEdenDeque().descendingIterator(), comparator);
+      return PeekingIterator.concat(accessOrderProtectedDeque().descendingIterator(), secondary);
+    } else {
+      PeekingIterator<Node<K, V>> primary = PeekingIterator.comparing(
+          accessOrderEdenDeque().iterator(), accessOrderProbationDeque().iterator(),
+          comparator.reversed());
+      return PeekingIterator.concat(primary, accessOrderProtectedDeque().iterator());
+    }
   }
 
   /**
@@ -2408,7 +3232,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
   Map<K, V> fixedSnapshot(Supplier<Iterator<Node<K, V>>> iteratorSupplier,
       int limit, Function<V, V> transformer) {
     requireArgument(limit >= 0);
-    evictionLock.lock();
+    lockEviction();
     try {
       maintenance(/* ignored */ null);
 
@@ -2440,7 +3264,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
    * @return an unmodifiable snapshot in the desired order
    */
   Map<K, V> variableSnapshot(boolean ascending, int limit, Function<V, V> transformer) {
-    evictionLock.lock();
+    lockEviction();
     try {
       maintenance(/* ignored */ null);
       return timerWheel().snapshot(ascending, limit, transformer);
@@ -3001,6 +3825,9 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       BoundedLocalCache<?, ?> cache, boolean isWeighted) {
     SerializationProxy<K, V> proxy = new SerializationProxy<>();
     proxy.weakKeys = cache.collectKeys();
+    proxy.loadOutsideLock = (cache.pendingLoads != null);
+    proxy.embeddedHashTable = cache.usesEmbeddedHashTable();
+    proxy.doorkeeper = cache.evicts() && cache.frequencySketch().useDoorkeeper;
     proxy.weakValues = cache.nodeFactory.weakValues();
     proxy.softValues = cache.nodeFactory.softValues();
     proxy.isRecordingStats = cache.isRecordingStats();
@@ -3013,11 +3840,26 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     if (cache.expiresAfterWrite()) {
       proxy.expiresAfterWriteNanos = cache.expiresAfterWriteNanos();
     }
+    if (cache.staleAfterWriteNanos != Long.MAX_VALUE) {
+      proxy.gracePeriodNanos = cache.expiresAfterWriteNanos() - cache.staleAfterWriteNanos;
+      proxy.expiresAfterWriteNanos = cache.staleAfterWriteNanos;
+      proxy.serveStaleOnError = cache.serveStaleOnError;
+    }
+    if (cache.earlyRefresh != null) {
+      proxy.earlyRefreshBeta = cache.earlyRefresh.beta;
+    }
     if (cache.expiresVariable()) {
       proxy.expiry = cache.expiry();
     }
     if (cache.evicts()) {
-      if (isWeighted) {
+      Weigher<?, ?> weigher = (cache.weigher instanceof AsyncWeigher<?, ?>)
+          ? ((AsyncWeigher<?, ?>) cache.weigher).delegate
+          : cache.weigher;
+      if (weigher instanceof MemoryWeigher<?, ?>) {
+        // rebuilt from the budget so that the entry overhead is recalculated for the running JVM
+        proxy.sizeEstimator = ((MemoryWeigher<?, ?>) weigher).estimator;
+        proxy.maximumMemory = cache.maximum();
+      } else if (isWeighted) {
         proxy.weigher = cache.weigher;
         proxy.maximumWeight = cache.maximum();
       } else {
@@ -3077,6 +3919,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
     @Nullable Optional<Expiration<K, V>> afterWrite;
     @Nullable Optional<Expiration<K, V>> afterAccess;
     @Nullable Optional<VarExpiration<K, V>> variable;
+    @Nullable Optional<Tagging<K, V>> tagging;
 
     BoundedPolicy(BoundedLocalCache<K, V> cache, Function<V, V> transformer, boolean isWeighted) {
       this.transformer = transformer;
@@ -3124,6 +3967,14 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           ? (refreshes = Optional.of(new BoundedRefreshAfterWrite()))
           : refreshes;
     }
+    @Override public Optional<Tagging<K, V>> tagging() {
+      if (!cache.isTagging()) {
+        return Optional.empty();
+      }
+      return (tagging == null)
+          ? (tagging = Optional.of(new BoundedTagging()))
+          : tagging;
+    }
 
     final class BoundedEviction implements Eviction<K, V> {
       @Override public boolean isWeighted() {
@@ -3144,7 +3995,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       }
       @Override public OptionalLong weightedSize() {
         if (cache.evicts() && isWeighted()) {
-          cache.evictionLock.lock();
+          cache.lockEviction();
           try {
             return OptionalLong.of(cache.adjustedWeightedSize());
           } finally {
@@ -3157,7 +4008,7 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         return cache.maximum();
       }
       @Override public void setMaximum(long maximum) {
-        cache.evictionLock.lock();
+        cache.lockEviction();
         try {
           cache.setMaximum(maximum);
           cache.maintenance(/* ignored */ null);
@@ -3165,6 +4016,12 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           cache.evictionLock.unlock();
         }
       }
+      @Override public OptionalLong edenMaximum() {
+        return OptionalLong.of(cache.edenMaximum());
+      }
+      @Override public OptionalLong mainProtectedMaximum() {
+        return OptionalLong.of(cache.mainProtectedMaximum());
+      }
       @Override public Map<K, V> coldest(int limit) {
         return cache.evictionOrder(limit, transformer, /* hottest */ false);
       }
@@ -3182,7 +4039,8 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         if (node == null) {
           return OptionalLong.empty();
         }
-        long age = cache.expirationTicker().read() - node.getAccessTime();
+        // a compact timestamp is rounded up, so it may be slightly ahead of the ticker
+        long age = Math.max(0L, cache.expirationTicker().read() - node.getAccessTime());
         return (age > cache.expiresAfterAccessNanos())
             ? OptionalLong.empty()
             : OptionalLong.of(unit.convert(age, TimeUnit.NANOSECONDS));
@@ -3208,11 +4066,12 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         requireNonNull(key);
         requireNonNull(unit);
         Object lookupKey = cache.nodeFactory.newLookupKey(key);
-        Node<?, ?> node = cache.data.get(lookupKey);
+        Node<K, V> node = cache.data.get(lookupKey);
         if (node == null) {
           return OptionalLong.empty();
         }
-        long age = cache.expirationTicker().read() - node.getWriteTime();
+        long now = cache.expirationTicker().read();
+        long age = Math.max(0L, now - cache.writeTimeOf(node, now));
         return (age > cache.expiresAfterWriteNanos())
             ? OptionalLong.empty()
             : OptionalLong.of(unit.convert(age, TimeUnit.NANOSECONDS));
@@ -3348,6 +4207,15 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
         return cache.fixedSnapshot(() -> iterator, limit, transformer);
       }
     }
+
+    final class BoundedTagging implements Tagging<K, V> {
+      @Override public Set<K> keys(Object tag) {
+        return cache.tagged(tag);
+      }
+      @Override public void invalidateTag(Object tag) {
+        cache.invalidateTag(tag);
+      }
+    }
   }
 
   /* ---------------- Loading Cache -------------- */
@@ -3358,14 +4226,28 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
 
     final boolean hasBulkLoader;
     final Function<K, V> mappingFunction;
+    final @Nullable CoalescingBulkLoader<K, V> coalescer;
+    final ConcurrentMap<K, CompletableFuture<V>> inFlightLoads;
 
     BoundedLocalLoadingCache(Caffeine<K, V> builder, CacheLoader<? super K, V> loader) {
       super(builder, loader);
       requireNonNull(loader);
       hasBulkLoader = hasLoadAll(loader);
-      mappingFunction = key -> {
+      coalescer = builder.coalescesLoads()
+          ? new CoalescingBulkLoader<>(builder, loader, cache::statsCounter,
+              (key, value) -> cache.put(key, value, /* notifyWriter */ false))
+          : null;
+      CacheLoader<? super K, V> singleLoader = (coalescer == null) ? loader : coalescer;
+      EarlyRefresh earlyRefresh = cache.earlyRefresh;
+      Function<K, V> loadingFunction = key -> {
         try {
-          return loader.load(key);
+          if (earlyRefresh == null) {
+            return singleLoader.load(key);
+          }
+          long startTime = cache.expirationTicker().read();
+          V value = singleLoader.load(key);
+          earlyRefresh.recordLoadTime(cache.expirationTicker().read() - startTime);
+          return value;
         } catch (RuntimeException e) {
           throw e;
         } catch (InterruptedException e) {
@@ -3375,6 +4257,10 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
           throw new CompletionException(e);
         }
       };
+      inFlightLoads = new ConcurrentHashMap<>();
+      mappingFunction = hasBulkLoader
+          ? key -> loadOrJoin(key, loadingFunction)
+          : loadingFunction;
     }
 
     @Override
@@ -3393,6 +4279,11 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       return hasBulkLoader;
     }
 
+    @Override
+    public ConcurrentMap<K, CompletableFuture<V>> inFlightLoads() {
+      return inFlightLoads;
+    }
+
     private void readObject(ObjectInputStream stream) throws InvalidObjectException {
       throw new InvalidObjectException("Proxy required");
     }
@@ -3404,6 +4295,14 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       if (cache.refreshAfterWrite()) {
         proxy.refreshAfterWriteNanos = cache.refreshAfterWriteNanos();
       }
+      if (coalescer != null) {
+        proxy.maximumBatchSize = coalescer.maximumBatchSize;
+        proxy.batchDelayNanos = coalescer.delayNanos;
+      }
+      if (cache.refreshBatcher != null) {
+        proxy.maximumRefreshBatchSize = cache.refreshBatcher.maximumBatchSize;
+        proxy.refreshBatchDelayNanos = cache.refreshBatcher.delayNanos;
+      }
       proxy.loader = cache.cacheLoader;
       return proxy;
     }
@@ -3477,10 +4376,30 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
 
     @SuppressWarnings("unchecked")
     BoundedLocalAsyncLoadingCache(Caffeine<K, V> builder, AsyncCacheLoader<? super K, V> loader) {
-      super(loader);
+      super(builder, loader);
       isWeighted = builder.isWeighted();
+      AsyncCacheLoader<? super K, V> reloader = (hedger == null) ? loader : hedger;
       cache = (BoundedLocalCache<K, CompletableFuture<V>>) LocalCacheFactory
-          .newBoundedLocalCache(builder, new AsyncLoader<>(loader, builder), /* async */ true);
+          .newBoundedLocalCache(builder, new AsyncLoader<>(reloader, builder), /* async */ true);
+    }
+
+    @Override
+    @SuppressWarnings("FutureReturnValueIgnored")
+    BiFunction<? super K, Executor, CompletableFuture<V>> mappingFunction() {
+      BiFunction<? super K, Executor, CompletableFuture<V>> mappingFunction =
+          super.mappingFunction();
+      EarlyRefresh earlyRefresh = cache.earlyRefresh;
+      if (earlyRefresh == null) {
+        return mappingFunction;
+      }
+      // the load time is measured until the future completes, as a synchronous load would be
+      return (key, executor) -> {
+        long startTime = cache.expirationTicker().read();
+        CompletableFuture<V> future = mappingFunction.apply(key, executor);
+        future.thenRun(() ->
+            earlyRefresh.recordLoadTime(cache.expirationTicker().read() - startTime));
+        return future;
+      };
     }
 
     @Override
@@ -3510,6 +4429,19 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       if (cache.refreshAfterWrite()) {
         proxy.refreshAfterWriteNanos = cache.refreshAfterWriteNanos();
       }
+      if (coalescer != null) {
+        proxy.maximumBatchSize = coalescer.maximumBatchSize;
+        proxy.batchDelayNanos = coalescer.delayNanos;
+      }
+      if (cache.refreshBatcher != null) {
+        proxy.maximumRefreshBatchSize = cache.refreshBatcher.maximumBatchSize;
+        proxy.refreshBatchDelayNanos = cache.refreshBatcher.delayNanos;
+      }
+      if (hedger != null) {
+        proxy.hedgeDelayNanos = hedger.hedgeDelayNanos;
+        proxy.hedgePercentile = hedger.hedgePercentile;
+        proxy.loadTimeoutNanos = hedger.timeoutNanos;
+      }
       proxy.loader = loader;
       proxy.async = true;
       return proxy;
@@ -3537,6 +4469,13 @@ abstract class BoundedLocalCache<K, V> extends BLCHeader.DrainStatusRef<K, V>
       @Override public CompletableFuture<V> asyncReload(K key, V oldValue, Executor executor) {
         return loader.asyncReload(key, oldValue, executor);
       }
+      @Override public CompletableFuture<Map<K, V>> asyncReloadAll(
+          Map<? extends K, ? extends V> oldValues, Executor executor) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Map<K, V>> newValues = (CompletableFuture<Map<K, V>>)
+            (CompletableFuture<?>) loader.asyncReloadAll(oldValues, executor);
+        return newValues;
+      }
     }
   }
 }
@@ -0,0 +1,647 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+
+/**
+ * A bounded cache that is specialized for primitive {@code long} keys. The cache is partitioned
+ * into segments that are each guarded by a lock and bounded to a share of the maximum size.
+ * <p>
+ * A segment stores its entries in parallel primitive arrays and indexes them with an open
+ * addressing hash table of entry indexes, so that an entry does not require a boxed key, a hash
+ * table entry, or a node object. The segment evicts using the W-TinyLFU policy, where an entry is
+ * first retained in an admission window and afterwards moves into the main space only if the
+ * segment's frequency sketch estimates it to be more popular than the main space's victim.
+ * <p>
+ * Reads are performed optimistically without locking and record the access into the segment's
+ * lossy read buffer, similar to {@link BoundedLocalCache}. The buffer is drained under the
+ * segment's lock when it fills, if the lock is immediately available, and by the writes to the
+ * segment. A full buffer is overwritten rather than blocking the reader, so under contention the
+ * policy's recency and frequency updates are dropped instead of invalidating the optimistic reads
+ * of the other threads.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class BoundedLongCache<V> implements LongCache<V> {
+  /** The maximum number of segments, which bounds the concurrency of writes. */
+  static final int MAXIMUM_SEGMENTS =
+      BoundedLocalCache.ceilingPowerOfTwo(4 * BoundedLocalCache.NCPU);
+  /** The minimum share of the maximum size for each segment, to retain the policy's accuracy. */
+  static final int MINIMUM_SEGMENT_SIZE = 64;
+  /** The percent of a segment's maximum size allotted to the main space. */
+  static final double PERCENT_MAIN = 0.99d;
+
+  final Segment<V>[] segments;
+  final PendingLoads<V> pendingLoads;
+  final StatsCounter statsCounter;
+  final Ticker statsTicker;
+  final int segmentMask;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  BoundedLongCache(Caffeine<?, ?> builder) {
+    long maximum = builder.getMaximum();
+    int segmentCount = (int) Math.min(MAXIMUM_SEGMENTS,
+        Math.max(1L, Long.highestOneBit(maximum / MINIMUM_SEGMENT_SIZE)));
+    segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      long share = (maximum / segmentCount) + ((i < (maximum % segmentCount)) ? 1 : 0);
+      segments[i] = new Segment<>(share, builder.usesDoorkeeper());
+    }
+    statsTicker = builder.isRecordingStats() ? builder.getTicker() : Ticker.disabledTicker();
+    statsCounter = builder.getStatsCounterSupplier().get();
+    pendingLoads = new PendingLoads<>();
+    segmentMask = segmentCount - 1;
+  }
+
+  /**
+   * Returns the key's hash, where the upper half selects the segment and the lower half selects the
+   * slot within the segment's table.
+   */
+  static long hash(long key) {
+    // MurmurHash3's 64-bit finalizer
+    key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+    key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return key ^ (key >>> 33);
+  }
+
+  /** Returns the segment that the hash belongs to. */
+  Segment<V> segmentFor(long hash) {
+    return segments[(int) (hash >>> 32) & segmentMask];
+  }
+
+  @Override
+  public @Nullable V getIfPresent(long key) {
+    long hash = hash(key);
+    V value = segmentFor(hash).get(key, (int) hash);
+    if (value == null) {
+      statsCounter.recordMisses(1);
+    } else {
+      statsCounter.recordHits(1);
+    }
+    return value;
+  }
+
+  @Override
+  public @Nullable V get(long key, LongFunction<? extends V> mappingFunction) {
+    requireNonNull(mappingFunction);
+    long hash = hash(key);
+    Segment<V> segment = segmentFor(hash);
+    V value = segment.get(key, (int) hash);
+    if (value != null) {
+      statsCounter.recordHits(1);
+      return value;
+    }
+
+    // A load is performed outside of the segment's lock and deduplicated per key
+    boolean[] joined = new boolean[1];
+    value = pendingLoads.loadOrJoin(key, joined, placeholder -> {
+      V present = segment.getQuietly(key, (int) hash);
+      if (present != null) {
+        joined[0] = true;
+        return present;
+      }
+      V newValue = load(key, mappingFunction);
+      if (newValue == null) {
+        return null;
+      }
+      V prior = segment.putIfAbsent(key, (int) hash, newValue, placeholder, statsCounter);
+      return (prior == null) ? newValue : prior;
+    });
+    if (joined[0] && (value != null)) {
+      statsCounter.recordHits(1);
+    }
+    return value;
+  }
+
+  /** Returns the value computed by the mapping function, while recording the statistics. */
+  @Nullable V load(long key, LongFunction<? extends V> mappingFunction) {
+    statsCounter.recordMisses(1);
+    long startTime = statsTicker.read();
+    V value;
+    try {
+      value = mappingFunction.apply(key);
+    } catch (RuntimeException | Error e) {
+      statsCounter.recordLoadFailure(statsTicker.read() - startTime);
+      throw e;
+    }
+    long loadTime = statsTicker.read() - startTime;
+    if (value == null) {
+      statsCounter.recordLoadFailure(loadTime);
+    } else {
+      statsCounter.recordLoadSuccess(loadTime);
+    }
+    return value;
+  }
+
+  @Override
+  public void put(long key, V value) {
+    requireNonNull(value);
+    long hash = hash(key);
+    segmentFor(hash).put(key, (int) hash, value, /* onlyIfAbsent */ false, statsCounter);
+  }
+
+  @Override
+  public void invalidate(long key) {
+    pendingLoads.discard(key);
+    long hash = hash(key);
+    segmentFor(hash).remove(key, (int) hash);
+  }
+
+  @Override
+  public void invalidateAll() {
+    pendingLoads.discardAll();
+    for (Segment<V> segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public long estimatedSize() {
+    long size = 0L;
+    for (Segment<V> segment : segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  @Override
+  public CacheStats stats() {
+    return statsCounter.snapshot();
+  }
+
+  /** A partition of the cache's entries and of the eviction policy, guarded by a lock. */
+  static final class Segment<V> {
+    static final int NIL = -1;
+    static final int INITIAL_CAPACITY = 8;
+    /** The number of reads that are buffered before the segment attempts to drain them. */
+    static final int READ_BUFFER_SIZE = 16;
+    static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+    final FrequencySketch<Long> sketch;
+    final StampedLock lock;
+
+    /** The keys of the recorded reads, where a slot is pending if its mark is set. */
+    final AtomicLongArray readBufferKeys;
+    final AtomicIntegerArray readBufferMarks;
+    final AtomicInteger readBufferWriteCount;
+    final long windowMaximum;
+    final long maximum;
+
+    /** The hash table of entry indexes, offset by one so that zero marks an empty slot. */
+    @GuardedBy("lock") int[] table;
+
+    /* The entries, as parallel arrays that are indexed by the entry's index. */
+    @GuardedBy("lock") long[] keys;
+    @GuardedBy("lock") Object[] values;
+    @GuardedBy("lock") boolean[] main;
+    @GuardedBy("lock") int[] prev;
+    @GuardedBy("lock") int[] next;
+
+    /** The head of the free list of entry indexes, which is linked by the next array. */
+    @GuardedBy("lock") int free;
+    /** The number of entry indexes that have been handed out. */
+    @GuardedBy("lock") int allocated;
+
+    @GuardedBy("lock") int windowHead;
+    @GuardedBy("lock") int windowTail;
+    @GuardedBy("lock") int mainHead;
+    @GuardedBy("lock") int mainTail;
+    @GuardedBy("lock") int windowSize;
+    int size;
+
+    Segment(long maximum, boolean doorkeeper) {
+      this.maximum = maximum;
+      this.lock = new StampedLock();
+      this.sketch = new FrequencySketch<>(doorkeeper);
+      this.readBufferWriteCount = new AtomicInteger();
+      this.readBufferKeys = new AtomicLongArray(READ_BUFFER_SIZE);
+      this.readBufferMarks = new AtomicIntegerArray(READ_BUFFER_SIZE);
+      this.windowMaximum = maximum - (long) (PERCENT_MAIN * maximum);
+      sketch.ensureCapacity(maximum);
+      reset();
+    }
+
+    /** Returns the value associated with the key and records the access, or null if absent. */
+    @Nullable V get(long key, int hash) {
+      V value = getQuietly(key, hash);
+      if (value != null) {
+        afterRead(key);
+      }
+      return value;
+    }
+
+    /** Returns the value associated with the key, or null if absent. */
+    @Nullable V getQuietly(long key, int hash) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0L) {
+        V value = read(key, hash);
+        if (lock.validate(stamp)) {
+          return value;
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        return read(key, hash);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+
+    /**
+     * Returns the value associated with the key, tolerating the arrays being concurrently resized.
+     */
+    @SuppressWarnings({"unchecked", "GuardedBy"})
+    @Nullable V read(long key, int hash) {
+      int[] table = this.table;
+      long[] keys = this.keys;
+      Object[] values = this.values;
+      int index = indexOf(key, hash, table, keys);
+      return ((index == NIL) || (index >= values.length)) ? null : (V) values[index];
+    }
+
+    /**
+     * Records the read into the lossy read buffer and, once per buffer's worth of reads, drains it
+     * if the lock is immediately available. A slot that was not drained yet is overwritten, which
+     * drops the earlier access.
+     */
+    void afterRead(long key) {
+      int count = readBufferWriteCount.getAndIncrement();
+      int slot = count & READ_BUFFER_MASK;
+      readBufferKeys.lazySet(slot, key);
+      readBufferMarks.lazySet(slot, 1);
+
+      if (slot == READ_BUFFER_MASK) {
+        long stamp = lock.tryWriteLock();
+        if (stamp != 0L) {
+          try {
+            drainReadBuffer();
+          } finally {
+            lock.unlockWrite(stamp);
+          }
+        }
+      }
+    }
+
+    /**
+     * Applies the pending reads to the policy and performs a bounded amount of the sketch's aging.
+     * A read of an entry that was since removed is discarded.
+     */
+    @GuardedBy("lock")
+    void drainReadBuffer() {
+      for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+        if ((readBufferMarks.get(i) != 0) && (readBufferMarks.getAndSet(i, 0) != 0)) {
+          long key = readBufferKeys.get(i);
+          sketch.incrementLong(key);
+          int index = indexOf(key, (int) hash(key), table, keys);
+          if (index != NIL) {
+            moveToTail(index);
+          }
+        }
+      }
+      sketch.ageIncrementally();
+    }
+
+    /**
+     * Associates the value with the key and evicts if the segment exceeds its maximum size.
+     *
+     * @return the prior value associated with the key, or null if absent
+     */
+    @Nullable V put(long key, int hash, V value, boolean onlyIfAbsent, StatsCounter statsCounter) {
+      long stamp = lock.writeLock();
+      try {
+        return putLocked(key, hash, value, onlyIfAbsent, statsCounter);
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /** Associates the value with the key while holding the lock, as described by {@link #put}. */
+    @GuardedBy("lock")
+    @Nullable V putLocked(long key, int hash, V value,
+        boolean onlyIfAbsent, StatsCounter statsCounter) {
+      drainReadBuffer();
+      sketch.incrementLong(key);
+      int index = indexOf(key, hash, table, keys);
+      if (index != NIL) {
+        @SuppressWarnings("unchecked")
+        V oldValue = (V) values[index];
+        if (!onlyIfAbsent) {
+          values[index] = value;
+        }
+        moveToTail(index);
+        return oldValue;
+      }
+      add(key, hash, value);
+      evict(statsCounter);
+      return null;
+    }
+
+    /**
+     * Associates the loaded value with the key if it is absent and the load was not discarded by a
+     * removal of the key.
+     *
+     * @return the value associated with the key, or null if the loaded value should be returned
+     */
+    @Nullable V putIfAbsent(long key, int hash, V value,
+        PendingLoads.Placeholder<V> placeholder, StatsCounter statsCounter) {
+      long stamp = lock.writeLock();
+      try {
+        if (placeholder.discarded) {
+          return null;
+        }
+        return putLocked(key, hash, value, /* onlyIfAbsent */ true, statsCounter);
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /** Removes the entry associated with the key, if present. */
+    void remove(long key, int hash) {
+      long stamp = lock.writeLock();
+      try {
+        int index = indexOf(key, hash, table, keys);
+        if (index != NIL) {
+          removeEntry(index, hash);
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /** Removes all of the entries. */
+    void clear() {
+      long stamp = lock.writeLock();
+      try {
+        reset();
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /**
+     * Returns the index of the entry associated with the key, or {@code NIL} if absent. The table
+     * and keys may be from different generations when read optimistically, so the probe is bounded
+     * and any out of range index is ignored.
+     */
+    static int indexOf(long key, int hash, int[] table, long[] keys) {
+      int mask = table.length - 1;
+      int slot = hash & mask;
+      for (int probes = 0; probes < table.length; probes++) {
+        int ref = table[slot];
+        if (ref == 0) {
+          return NIL;
+        }
+        int index = ref - 1;
+        if ((index < keys.length) && (keys[index] == key)) {
+          return index;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return NIL;
+    }
+
+    /** Adds the entry into the table and the admission window. */
+    @GuardedBy("lock")
+    void add(long key, int hash, V value) {
+      if ((free == NIL) && (allocated == keys.length)) {
+        resize();
+      }
+      int index;
+      if (free == NIL) {
+        index = allocated++;
+      } else {
+        index = free;
+        free = next[index];
+      }
+      keys[index] = key;
+      values[index] = value;
+      main[index] = false;
+
+      int mask = table.length - 1;
+      int slot = hash & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = index + 1;
+
+      linkLast(index);
+      windowSize++;
+      size++;
+    }
+
+    /** Removes the entry from the table and its queue, and releases its index. */
+    @GuardedBy("lock")
+    void removeEntry(int index, int hash) {
+      int mask = table.length - 1;
+      int hole = hash & mask;
+      while (table[hole] != (index + 1)) {
+        hole = (hole + 1) & mask;
+      }
+
+      // Shift the following entries of the probe sequence backwards to fill the hole
+      for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+        int ref = table[slot];
+        int home = (int) hash(keys[ref - 1]) & mask;
+        if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+          table[hole] = ref;
+          hole = slot;
+        }
+      }
+      table[hole] = 0;
+
+      unlink(index);
+      if (!main[index]) {
+        windowSize--;
+      }
+      values[index] = null;
+      next[index] = free;
+      free = index;
+      size--;
+    }
+
+    /**
+     * Moves the entries that overflow the admission window into the main space, and then evicts
+     * until the segment is within its maximum size. A candidate from the window is admitted only if
+     * it is estimated to be more popular than the main space's victim.
+     */
+    @GuardedBy("lock")
+    void evict(StatsCounter statsCounter) {
+      int candidate = NIL;
+      while (windowSize > windowMaximum) {
+        int index = windowHead;
+        unlink(index);
+        windowSize--;
+        main[index] = true;
+        linkLast(index);
+        if (candidate == NIL) {
+          candidate = index;
+        }
+      }
+
+      while (size > maximum) {
+        int victim = mainHead;
+        int evict;
+        if ((candidate == NIL) || (candidate == victim)) {
+          evict = victim;
+          if (candidate != NIL) {
+            candidate = next[candidate];
+          }
+        } else if (admit(keys[candidate], keys[victim])) {
+          evict = victim;
+        } else {
+          evict = candidate;
+          candidate = next[candidate];
+        }
+        removeEntry(evict, (int) hash(keys[evict]));
+        statsCounter.recordEviction(1);
+      }
+    }
+
+    /**
+     * Determines if the candidate should be accepted into the main space, as determined by its
+     * frequency relative to the victim. See {@link BoundedLocalCache#admit} for the protection
+     * against hash flooding by randomly admitting a warm candidate.
+     */
+    @GuardedBy("lock")
+    boolean admit(long candidateKey, long victimKey) {
+      int victimFreq = sketch.frequencyLong(victimKey);
+      int candidateFreq = sketch.frequencyLong(candidateKey);
+      if (candidateFreq > victimFreq) {
+        return true;
+      } else if (candidateFreq <= 5) {
+        return false;
+      }
+      int random = ThreadLocalRandom.current().nextInt();
+      return ((random & 127) == 0);
+    }
+
+    /** Doubles the capacity of the entry arrays and rehashes the table. */
+    @GuardedBy("lock")
+    void resize() {
+      int capacity = 2 * keys.length;
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+      main = Arrays.copyOf(main, capacity);
+      prev = Arrays.copyOf(prev, capacity);
+      next = Arrays.copyOf(next, capacity);
+
+      int[] resized = new int[2 * capacity];
+      int mask = resized.length - 1;
+      for (int ref : table) {
+        if (ref != 0) {
+          int slot = (int) hash(keys[ref - 1]) & mask;
+          while (resized[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          resized[slot] = ref;
+        }
+      }
+      table = resized;
+    }
+
+    /** Discards all of the entries and shrinks the arrays to their initial capacity. */
+    @GuardedBy("lock")
+    void reset() {
+      table = new int[2 * INITIAL_CAPACITY];
+      keys = new long[INITIAL_CAPACITY];
+      values = new Object[INITIAL_CAPACITY];
+      main = new boolean[INITIAL_CAPACITY];
+      prev = new int[INITIAL_CAPACITY];
+      next = new int[INITIAL_CAPACITY];
+      windowHead = windowTail = NIL;
+      mainHead = mainTail = NIL;
+      windowSize = 0;
+      allocated = 0;
+      free = NIL;
+      size = 0;
+    }
+
+    /** Appends the entry to the tail of its queue, the most recently used position. */
+    @GuardedBy("lock")
+    void linkLast(int index) {
+      next[index] = NIL;
+      if (main[index]) {
+        prev[index] = mainTail;
+        if (mainTail == NIL) {
+          mainHead = index;
+        } else {
+          next[mainTail] = index;
+        }
+        mainTail = index;
+      } else {
+        prev[index] = windowTail;
+        if (windowTail == NIL) {
+          windowHead = index;
+        } else {
+          next[windowTail] = index;
+        }
+        windowTail = index;
+      }
+    }
+
+    /** Removes the entry from its queue. */
+    @GuardedBy("lock")
+    void unlink(int index) {
+      int previous = prev[index];
+      int following = next[index];
+      if (main[index]) {
+        if (previous == NIL) {
+          mainHead = following;
+        } else {
+          next[previous] = following;
+        }
+        if (following == NIL) {
+          mainTail = previous;
+        } else {
+          prev[following] = previous;
+        }
+      } else {
+        if (previous == NIL) {
+          windowHead = following;
+        } else {
+          next[previous] = following;
+        }
+        if (following == NIL) {
+          windowTail = previous;
+        } else {
+          prev[following] = previous;
+        }
+      }
+    }
+
+    /** Moves the entry to the tail of its queue, the most recently used position. */
+    @GuardedBy("lock")
+    void moveToTail(int index) {
+      unlink(index);
+      linkLast(index);
+    }
+  }
+}
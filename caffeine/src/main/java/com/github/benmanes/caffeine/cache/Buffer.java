@@ -32,6 +32,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
  * @author ben.manes@gmail.com (Ben Manes)
  */
 interface Buffer<E> {
+  int SKIPPED = 2;
   int FULL = 1;
   int SUCCESS = 0;
   int FAILED = -1;
@@ -48,7 +49,8 @@ interface Buffer<E> {
    * threads insert concurrently.
    *
    * @param e the element to add
-   * @return {@code 1} if the buffer is full, {@code -1} if the CAS failed, or {@code 0} if added
+   * @return {@code 1} if the buffer is full, {@code -1} if the CAS failed, {@code 2} if the element
+   *         was not sampled, or {@code 0} if added
    */
   int offer(@NonNull E e);
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+
+/**
+ * Receives the internal events of a bounded cache that are useful for diagnosing its tail latency,
+ * such as the duration of the maintenance work and the contention on its buffers and lock. The
+ * cache reports these events only if an instance is configured by
+ * {@link Caffeine#instrumentation(CacheInstrumentation)}, so the instrumentation costs nothing when
+ * it is not used.
+ * <p>
+ * The methods are called on the threads that use the cache, often while holding its lock, so an
+ * implementation should be thread-safe and return quickly, e.g. by incrementing counters. Any
+ * exception thrown by an implementation is logged and suppressed, so that it cannot fail the cache
+ * operation or leave the maintenance work incomplete. All of the methods are no-ops by default, so
+ * that an implementation only needs to observe the events of interest.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public interface CacheInstrumentation {
+
+  /**
+   * Records the time spent performing the maintenance work, during which the eviction lock is held
+   * and other maintenance and bulk operations must wait.
+   *
+   * @param durationNanos the number of nanoseconds spent performing the maintenance
+   */
+  default void recordMaintenance(@NonNegative long durationNanos) {}
+
+  /**
+   * Records the time spent waiting to acquire the eviction lock on the calling thread, in order to
+   * perform the maintenance work or an operation that requires it, such as clearing the cache or
+   * inspecting and changing its policy.
+   *
+   * @param waitNanos the number of nanoseconds spent waiting to acquire the lock
+   */
+  default void recordEvictionLockWait(@NonNegative long waitNanos) {}
+
+  /**
+   * Records that a read was not applied to the eviction policy because the read buffer was full or
+   * contended. This loss is by design, but a high rate indicates that the maintenance work is not
+   * keeping up with the reads.
+   */
+  default void recordDroppedRead() {}
+
+  /**
+   * Records that a write could not be added to the full write buffer and the writer retried after
+   * scheduling the maintenance work.
+   */
+  default void recordWriteBufferRetry() {}
+
+  /**
+   * Records that a writer exhausted its retries to add to the write buffer and instead performed
+   * the maintenance work on its own thread, blocking until the eviction lock was acquired.
+   */
+  default void recordCallerRunsCleanup() {}
+}
@@ -195,4 +195,64 @@ public interface CacheLoader<K, V> extends AsyncCacheLoader<K, V> {
       }
     }, executor);
   }
+
+  /**
+   * Computes or retrieves the replacement values corresponding to already-cached keys. This method
+   * is called when the refreshes of stale entries are batched by {@link Caffeine#batchRefreshes}.
+   * <p>
+   * If the returned map doesn't contain a requested key then its mapping will be removed, as if
+   * {@link #reload} returned {@code null}. If the returned map contains extra keys not present in
+   * {@code oldValues} then those entries are ignored.
+   * <p>
+   * This method should be overridden when bulk retrieval is significantly more efficient than many
+   * individual reloads.
+   * <p>
+   * <b>Note:</b> <i>all exceptions thrown by this method will be logged and then swallowed</i>.
+   *
+   * @param oldValues the non-null keys and their old values to reload
+   * @return a map from each key in {@code oldValues} to its new value; <b>may not contain null
+   *         values</b>
+   * @throws Exception or Error, in which case the mappings are unchanged
+   * @throws InterruptedException if this method is interrupted. {@code InterruptedException} is
+   *         treated like any other {@code Exception} in all respects except that, when it is
+   *         caught, the thread's interrupt status is set
+   */
+  @NonNull
+  default Map<@NonNull K, @NonNull V> reloadAll(
+      @NonNull Map<? extends @NonNull K, ? extends @NonNull V> oldValues) throws Exception {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Asynchronously computes or retrieves the replacement values corresponding to already-cached
+   * keys. This method is called when the refreshes of stale entries are batched by
+   * {@link Caffeine#batchRefreshes}.
+   * <p>
+   * If the returned map doesn't contain a requested key then its mapping will be removed, as if
+   * {@link #asyncReload} computed {@code null}. If the returned map contains extra keys not present
+   * in {@code oldValues} then those entries are ignored.
+   * <p>
+   * <b>Note:</b> <i>all exceptions thrown by this method will be logged and then swallowed</i>.
+   *
+   * @param oldValues the non-null keys and their old values to reload
+   * @param executor the executor with which the entries are asynchronously loaded
+   * @return a future containing the map from each key in {@code oldValues} to its new value;
+   *         <b>may not contain null values</b>
+   */
+  @Override @NonNull
+  default CompletableFuture<Map<@NonNull K, @NonNull V>> asyncReloadAll(
+      @NonNull Map<? extends @NonNull K, ? extends @NonNull V> oldValues,
+      @NonNull Executor executor) {
+    requireNonNull(oldValues);
+    requireNonNull(executor);
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return reloadAll(oldValues);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
 }
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.cache.Caffeine.requireArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A facility to save the hottest entries of a cache to a file and to restore them into a new
+ * cache, such as after a restart, so that it does not start cold. Along with each entry the
+ * snapshot records the popularity estimated by the eviction policy and the time remaining until
+ * the entry expires.
+ * <p>
+ * When restored, the eviction policy is first seeded with the entries' popularity so that they are
+ * not rejected by the admission policy in favor of the entries already present. The entries are
+ * then inserted from the coldest to the hottest, which approximates their original eviction order,
+ * and any entry whose expiration time elapsed while the cache was offline is discarded.
+ * <p>
+ * The snapshot is written through a memory-mapped buffer to a uniquely named temporary file in the
+ * target's directory and then moved into place, so that a reader never observes a partially
+ * written snapshot and concurrent saves to the same path do not interfere with each other. The
+ * keys and values are converted to bytes by a {@link Serializer}. When restored, the entry count
+ * and lengths are validated against the file's size so that a corrupted snapshot is rejected
+ * rather than causing a large allocation.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class CacheSnapshot {
+  static final int MAGIC = 0x43534E50; // "CSNP"
+  static final int VERSION = 1;
+  /** The magic number, version, entry count, and wall clock time when saved. */
+  static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+  /** The frequency, time to expiration, key length, and value length. */
+  static final int ENTRY_HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES;
+  /** The time to expiration of an entry that does not expire. */
+  static final long NEVER = Long.MAX_VALUE;
+  /** The largest popularity that the eviction policy can record. */
+  static final int MAXIMUM_FREQUENCY = 15;
+
+  private CacheSnapshot() {}
+
+  /**
+   * Writes the hottest entries of the cache to the file, replacing its contents. The entries are
+   * those that are least likely to be evicted, as determined by {@link Policy.Eviction#hottest}.
+   *
+   * @param cache the cache to save, which must be bounded by a maximum size or weight
+   * @param path the file to write the snapshot to
+   * @param limit the maximum number of entries
+   * @param serializer the conversion of the keys and values to bytes
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   * @return the number of entries written
+   * @throws IllegalArgumentException if the limit is negative or the cache is not a synchronous
+   *         cache that is bounded by a maximum size or weight
+   * @throws IOException if the snapshot could not be written
+   */
+  public static <K, V> int save(@NonNull Cache<K, V> cache, @NonNull Path path,
+      @NonNegative int limit, @NonNull Serializer<K, V> serializer) throws IOException {
+    requireArgument(limit >= 0);
+    requireNonNull(serializer);
+    requireNonNull(path);
+    BoundedLocalCache<K, V> local = asBoundedLocalCache(cache);
+    requireArgument((local != null) && local.evicts(),
+        "The cache must be bounded by a maximum size or weight");
+
+    List<Entry<K, V>> entries = hottest(local, limit);
+    List<byte[]> serialized = new ArrayList<>(2 * entries.size());
+    long size = HEADER_SIZE;
+    for (Entry<K, V> entry : entries) {
+      byte[] key = requireNonNull(serializer.serializeKey(entry.key));
+      byte[] value = requireNonNull(serializer.serializeValue(entry.value));
+      size += ENTRY_HEADER_SIZE + key.length + value.length;
+      serialized.add(key);
+      serialized.add(value);
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("The snapshot exceeds the maximum file size: " + size);
+    }
+
+    Path absolute = path.toAbsolutePath();
+    Path temp = Files.createTempFile(
+        absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp,
+          StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(entries.size());
+        buffer.putLong(System.currentTimeMillis());
+        for (int i = 0; i < entries.size(); i++) {
+          Entry<K, V> entry = entries.get(i);
+          byte[] key = serialized.get(2 * i);
+          byte[] value = serialized.get(2 * i + 1);
+          buffer.putInt(entry.frequency);
+          buffer.putLong(entry.expiresInNanos);
+          buffer.putInt(key.length);
+          buffer.put(key);
+          buffer.putInt(value.length);
+          buffer.put(value);
+        }
+        buffer.force();
+      }
+      Files.move(temp, absolute,
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    return entries.size();
+  }
+
+  /**
+   * Reads the entries from the snapshot file and inserts them into the cache. If the cache is
+   * bounded by a maximum size or weight then its eviction policy is seeded with the entries'
+   * popularity before they are inserted from the coldest to the hottest. An entry whose expiration
+   * time has elapsed since the snapshot was saved is not restored, and a restored entry does not
+   * live longer than the time that remained when saved nor than the cache's expiration allows.
+   *
+   * @param cache the cache to populate
+   * @param path the file to read the snapshot from
+   * @param serializer the conversion of the bytes to keys and values
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   * @return the number of entries restored
+   * @throws IOException if the snapshot could not be read or is not a valid snapshot
+   */
+  public static <K, V> int restore(@NonNull Cache<K, V> cache, @NonNull Path path,
+      @NonNull Serializer<K, V> serializer) throws IOException {
+    requireNonNull(serializer);
+    requireNonNull(cache);
+    long savedAt;
+    List<Entry<K, V>> entries;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      if ((buffer.remaining() < HEADER_SIZE)
+          || (buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+        throw new IOException("Not a cache snapshot: " + path);
+      }
+      int count = buffer.getInt();
+      savedAt = buffer.getLong();
+      if ((count < 0) || (count > (buffer.remaining() / ENTRY_HEADER_SIZE))) {
+        throw new IOException("Corrupted cache snapshot: " + path);
+      }
+      entries = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        if (buffer.remaining() < ENTRY_HEADER_SIZE) {
+          throw new IOException("Truncated cache snapshot: " + path);
+        }
+        int frequency = buffer.getInt();
+        long expiresInNanos = buffer.getLong();
+        byte[] key = readBytes(buffer, path);
+        if (buffer.remaining() < Integer.BYTES) {
+          throw new IOException("Truncated cache snapshot: " + path);
+        }
+        byte[] value = readBytes(buffer, path);
+        entries.add(new Entry<>(requireNonNull(serializer.deserializeKey(key)),
+            requireNonNull(serializer.deserializeValue(value)), frequency, expiresInNanos));
+      }
+    }
+
+    long offlineNanos = TimeUnit.MILLISECONDS.toNanos(
+        Math.max(0L, System.currentTimeMillis() - savedAt));
+    BoundedLocalCache<K, V> local = asBoundedLocalCache(cache);
+    if ((local != null) && local.evicts()) {
+      seed(local, entries);
+    }
+
+    int restored = 0;
+    for (int i = entries.size() - 1; i >= 0; i--) {
+      Entry<K, V> entry = entries.get(i);
+      long expiresInNanos = (entry.expiresInNanos == NEVER)
+          ? NEVER
+          : entry.expiresInNanos - offlineNanos;
+      if (expiresInNanos <= 0) {
+        continue;
+      }
+      if ((local != null) && local.expiresVariable() && (expiresInNanos != NEVER)) {
+        cache.policy().expireVariably().get().put(
+            entry.key, entry.value, expiresInNanos, TimeUnit.NANOSECONDS);
+      } else {
+        cache.put(entry.key, entry.value);
+        if ((local != null) && (expiresInNanos != NEVER)) {
+          backdate(local, entry.key, entry.value, expiresInNanos);
+        }
+      }
+      restored++;
+    }
+    cache.cleanUp();
+    return restored;
+  }
+
+  /**
+   * Returns the length-prefixed bytes at the buffer's position, where the length is validated
+   * against the remaining contents so that a corrupted snapshot cannot force a large allocation.
+   */
+  static byte[] readBytes(ByteBuffer buffer, Path path) throws IOException {
+    int length = buffer.getInt();
+    if (length < 0) {
+      throw new IOException("Corrupted cache snapshot: " + path);
+    } else if (length > buffer.remaining()) {
+      throw new IOException("Truncated cache snapshot: " + path);
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  /** Returns the cache's implementation if it is a bounded synchronous cache, else null. */
+  static <K, V> @Nullable BoundedLocalCache<K, V> asBoundedLocalCache(Cache<K, V> cache) {
+    if (cache instanceof LocalManualCache<?, ?>) {
+      LocalCache<K, V> local = ((LocalManualCache<K, V>) cache).cache();
+      if (local instanceof BoundedLocalCache<?, ?>) {
+        return (BoundedLocalCache<K, V>) local;
+      }
+    }
+    return null;
+  }
+
+  /** Returns the hottest entries, with their popularity and time to expiration. */
+  @SuppressWarnings("GuardedByChecker")
+  static <K, V> List<Entry<K, V>> hottest(BoundedLocalCache<K, V> cache, int limit) {
+    List<Entry<K, V>> entries = new ArrayList<>(Math.min(limit, cache.size()));
+    cache.lockEviction();
+    try {
+      cache.maintenance(/* ignored */ null);
+
+      long now = cache.expirationTicker().read();
+      Iterator<Node<K, V>> iterator = cache.evictionOrderIterator(/* hottest */ true);
+      while ((entries.size() < limit) && iterator.hasNext()) {
+        Node<K, V> node = iterator.next();
+        K key = node.getKey();
+        V value = node.getValue();
+        if ((key == null) || (value == null) || !node.isAlive()) {
+          continue;
+        }
+        long expiresInNanos = expiresIn(cache, node, now);
+        if (expiresInNanos > 0) {
+          int frequency = cache.frequencySketch().frequency(key);
+          entries.add(new Entry<>(key, value, frequency, expiresInNanos));
+        }
+      }
+    } finally {
+      cache.evictionLock.unlock();
+    }
+    return entries;
+  }
+
+  /** Returns the duration until the entry expires, or {@link #NEVER} if it does not expire. */
+  static <K, V> long expiresIn(BoundedLocalCache<K, V> cache, Node<K, V> node, long now) {
+    long expiresIn = NEVER;
+    if (cache.expiresAfterAccess()) {
+      expiresIn = Math.min(expiresIn,
+          node.getAccessTime() + cache.expiresAfterAccessNanos() - now);
+    }
+    if (cache.expiresAfterWrite()) {
+      expiresIn = Math.min(expiresIn, node.getWriteTime() + cache.expiresAfterWriteNanos() - now);
+    }
+    if (cache.expiresVariable()) {
+      expiresIn = Math.min(expiresIn, node.getVariableTime() - now);
+    }
+    return expiresIn;
+  }
+
+  /** Increments the popularity of the entries so that they are favored by the admission policy. */
+  @SuppressWarnings("GuardedByChecker")
+  static <K, V> void seed(BoundedLocalCache<K, V> cache, List<Entry<K, V>> entries) {
+    cache.lockEviction();
+    try {
+      FrequencySketch<K> sketch = cache.frequencySketch();
+      sketch.ensureCapacity(cache.maximum());
+      for (Entry<K, V> entry : entries) {
+        int frequency = Math.min(entry.frequency, MAXIMUM_FREQUENCY);
+        for (int i = sketch.frequency(entry.key); i < frequency; i++) {
+          sketch.increment(entry.key);
+        }
+      }
+    } finally {
+      cache.evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Ages the inserted entry so that its fixed expiration occurs after the remaining duration. The
+   * entry may now expire before the entries that precede it in the expiration order, in which case
+   * it is hidden from lookups when it expires but is removed only once its predecessors expire.
+   */
+  static <K, V> void backdate(BoundedLocalCache<K, V> cache, K key, V value, long expiresInNanos) {
+    Node<K, V> node = cache.data.get(cache.nodeFactory.newLookupKey(key));
+    if ((node == null) || (node.getValue() != value)) {
+      return;
+    }
+    long now = cache.expirationTicker().read();
+    if (cache.expiresAfterAccess()) {
+      long age = Math.max(0L, cache.expiresAfterAccessNanos() - expiresInNanos);
+      node.setAccessTime(now - age);
+    }
+    if (cache.expiresAfterWrite()) {
+      long age = Math.max(0L, cache.expiresAfterWriteNanos() - expiresInNanos);
+      node.setWriteTime(now - age);
+    }
+  }
+
+  /**
+   * The conversion of a cache's keys and values to and from their binary form. The key and value
+   * must be restored to an equivalent instance of the original.
+   *
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   */
+  public interface Serializer<K, V> {
+
+    /**
+     * Returns the binary form of the key.
+     *
+     * @param key the key to serialize
+     * @return the bytes representing the key
+     */
+    byte @NonNull [] serializeKey(@NonNull K key);
+
+    /**
+     * Returns the binary form of the value.
+     *
+     * @param value the value to serialize
+     * @return the bytes representing the value
+     */
+    byte @NonNull [] serializeValue(@NonNull V value);
+
+    /**
+     * Returns the key represented by the bytes.
+     *
+     * @param bytes the binary form of the key
+     * @return the key
+     */
+    @NonNull
+    K deserializeKey(byte @NonNull [] bytes);
+
+    /**
+     * Returns the value represented by the bytes.
+     *
+     * @param bytes the binary form of the value
+     * @return the value
+     */
+    @NonNull
+    V deserializeValue(byte @NonNull [] bytes);
+  }
+
+  /** An entry in the snapshot. */
+  static final class Entry<K, V> {
+    final K key;
+    final V value;
+    final int frequency;
+    final long expiresInNanos;
+
+    Entry(K key, V value, int frequency, long expiresInNanos) {
+      this.key = key;
+      this.value = value;
+      this.frequency = frequency;
+      this.expiresInNanos = expiresInNanos;
+    }
+  }
+}
@@ -29,6 +29,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.logging.Level;
@@ -145,20 +146,39 @@ public final class Caffeine<K, V> {
   static final int DEFAULT_REFRESH_NANOS = 0;
 
   boolean strictParsing = true;
+  boolean loadOutsideLock;
+  boolean serveStaleOnError;
+  boolean embeddedHashTable;
+  boolean doorkeeper;
 
   long maximumSize = UNSET_INT;
   long maximumWeight = UNSET_INT;
   int initialCapacity = UNSET_INT;
 
   long refreshNanos = UNSET_INT;
+  long gracePeriodNanos = UNSET_INT;
   long expireAfterWriteNanos = UNSET_INT;
   long expireAfterAccessNanos = UNSET_INT;
 
+  int maximumBatchSize = UNSET_INT;
+  long batchDelayNanos = UNSET_INT;
+  int maximumRefreshBatchSize = UNSET_INT;
+  long refreshBatchDelayNanos = UNSET_INT;
+  double earlyRefreshBeta = UNSET_INT;
+  long hedgeDelayNanos = UNSET_INT;
+  double hedgePercentile = UNSET_INT;
+  long loadTimeoutNanos = UNSET_INT;
+
   @Nullable RemovalListener<? super K, ? super V> removalListener;
   @Nullable Supplier<StatsCounter> statsCounterSupplier;
   @Nullable CacheWriter<? super K, ? super V> writer;
   @Nullable Weigher<? super K, ? super V> weigher;
+  @Nullable Tagger<? super K, ? super V> tagger;
+  @Nullable SizeEstimator<? super K, ? super V> sizeEstimator;
   @Nullable Expiry<? super K, ? super V> expiry;
+  @Nullable CacheInstrumentation instrumentation;
+  @Nullable MaintenanceService maintenanceService;
+  @Nullable Scheduler scheduler;
   @Nullable Executor executor;
   @Nullable Ticker ticker;
 
@@ -289,6 +309,98 @@ public final class Caffeine<K, V> {
     return (executor == null) ? ForkJoinPool.commonPool() : executor;
   }
 
+  /**
+   * Specifies the scheduler to use when scheduling routine maintenance based on an expiration
+   * event. This augments the periodic maintenance that occurs during normal cache operations to
+   * allow for the prompt removal of expired entries regardless of whether any cache activity is
+   * occurring at that time. By default, {@link Scheduler#disabledScheduler()} is used.
+   * <p>
+   * The scheduling between expiration events is paced to exploit batching and to minimize
+   * executions in short succession. This minimum difference between the scheduled executions is
+   * implementation-specific, currently at ~1 second (2^30 ns). In addition, the provided scheduler
+   * may not offer real-time guarantees (including {@link ScheduledThreadPoolExecutor}). The
+   * scheduling is best-effort and does not make any hard guarantees of when an expired entry will
+   * be removed.
+   * <p>
+   * <b>Note for Java 8 users:</b> the {@link Scheduler#systemScheduler()} uses a single, shared
+   * daemon thread that only submits the maintenance task to the cache's {@link #executor}.
+   *
+   * @param scheduler the scheduler that submits a task to the {@link #executor(Executor)} after a
+   *        given delay
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws NullPointerException if the specified scheduler is null
+   */
+  @NonNull
+  public Caffeine<K, V> scheduler(@NonNull Scheduler scheduler) {
+    requireState(this.scheduler == null, "scheduler was already set to %s", this.scheduler);
+    this.scheduler = requireNonNull(scheduler);
+    return this;
+  }
+
+  @NonNull
+  Scheduler getScheduler() {
+    if ((scheduler == null) || (scheduler == Scheduler.disabledScheduler())) {
+      return Scheduler.disabledScheduler();
+    } else if (scheduler == Scheduler.systemScheduler()) {
+      return scheduler;
+    }
+    return Scheduler.guardedScheduler(scheduler);
+  }
+
+  /**
+   * Specifies the shared service that performs the cache's routine maintenance, such as draining
+   * its read and write buffers, instead of submitting the maintenance task to the cache's
+   * {@link #executor(Executor)}. This allows an application with many caches to bound the number of
+   * threads performing the maintenance work and to observe its cost with
+   * {@link MaintenanceService#metrics(Cache)}. By default, the maintenance is performed by the
+   * executor.
+   * <p>
+   * The service is only used by a cache that is bounded or expires its entries, as an unbounded
+   * cache does not perform maintenance work.
+   *
+   * @param maintenanceService the service that performs the maintenance work of many caches
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if a maintenance service was already set
+   * @throws NullPointerException if the specified maintenance service is null
+   */
+  @NonNull
+  public Caffeine<K, V> maintenanceService(@NonNull MaintenanceService maintenanceService) {
+    requireState(this.maintenanceService == null,
+        "maintenance service was already set to %s", this.maintenanceService);
+    this.maintenanceService = requireNonNull(maintenanceService);
+    return this;
+  }
+
+  @Nullable
+  MaintenanceService getMaintenanceService() {
+    return maintenanceService;
+  }
+
+  /**
+   * Specifies the instrumentation that receives the internal events of the cache's maintenance,
+   * such as how long the maintenance work holds the eviction lock, how often reads are dropped by
+   * the read buffer, and how often writers are forced to perform the maintenance work themselves.
+   * These events are only reported by a cache that is bounded or expires its entries, as an
+   * unbounded cache does not perform maintenance work. By default, no events are reported.
+   *
+   * @param instrumentation the receiver of the cache's internal events
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if an instrumentation was already set
+   * @throws NullPointerException if the specified instrumentation is null
+   */
+  @NonNull
+  public Caffeine<K, V> instrumentation(@NonNull CacheInstrumentation instrumentation) {
+    requireState(this.instrumentation == null,
+        "instrumentation was already set to %s", this.instrumentation);
+    this.instrumentation = requireNonNull(instrumentation);
+    return this;
+  }
+
+  @Nullable
+  CacheInstrumentation getInstrumentation() {
+    return instrumentation;
+  }
+
   /**
    * Specifies the maximum number of entries the cache may contain. Note that the cache <b>may evict
    * an entry before this limit is exceeded or temporarily exceed the threshold while evicting</b>.
@@ -388,6 +500,7 @@ public final class Caffeine<K, V> {
       @NonNull Weigher<? super K1, ? super V1> weigher) {
     requireNonNull(weigher);
     requireState(this.weigher == null, "weigher was already set to %s", this.weigher);
+    requireState(this.sizeEstimator == null, "weigher can not be combined with maximum memory");
     requireState(!strictParsing || this.maximumSize == UNSET_INT,
         "weigher can not be combined with maximum size", this.maximumSize);
 
@@ -397,12 +510,82 @@ public final class Caffeine<K, V> {
     return self;
   }
 
+  /**
+   * Specifies the approximate number of bytes that the entries in the cache may retain. The size of
+   * an entry is estimated by {@link SizeEstimator#sampling()}, which traverses the key and value
+   * object graphs, and the cost of the cache's own structures is added to it. The estimate is used
+   * as the entry's weight and is enforced in the same manner as {@link #maximumWeight(long)}.
+   * <p>
+   * Note that the cache <b>may evict an entry before this limit is exceeded or temporarily exceed
+   * the threshold while evicting</b>. The budget is an estimate that excludes the fixed cost of the
+   * cache itself, such as its buffers and frequency sketch, and objects shared between entries are
+   * counted by each of them.
+   * <p>
+   * This feature cannot be used in conjunction with {@link #maximumSize}, {@link #maximumWeight},
+   * or {@link #weigher}.
+   *
+   * @param bytes the approximate maximum number of bytes retained by the cache's entries
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code bytes} is negative
+   * @throws IllegalStateException if a maximum size, weight, or memory was already set
+   */
+  @NonNull
+  public Caffeine<K, V> maximumMemory(@NonNegative long bytes) {
+    return maximumMemory(bytes, SizeEstimator.sampling());
+  }
+
+  /**
+   * Specifies the approximate number of bytes that the entries in the cache may retain. The size of
+   * an entry is determined by the {@link SizeEstimator}, and the cost of the cache's own structures
+   * is added to it. The estimate is used as the entry's weight and is enforced in the same manner
+   * as {@link #maximumWeight(long)}, so an entry that is estimated to be larger than
+   * {@link Integer#MAX_VALUE} bytes is capped at that weight.
+   * <p>
+   * Note that the cache <b>may evict an entry before this limit is exceeded or temporarily exceed
+   * the threshold while evicting</b>. The budget is an estimate that excludes the fixed cost of the
+   * cache itself, such as its buffers and frequency sketch.
+   * <p>
+   * This feature cannot be used in conjunction with {@link #maximumSize}, {@link #maximumWeight},
+   * or {@link #weigher}.
+   * <p>
+   * <b>Important note:</b> Instead of returning <em>this</em> as a {@code Caffeine} instance, this
+   * method returns {@code Caffeine<K1, V1>}, with the same caveats as {@link #weigher}.
+   *
+   * @param bytes the approximate maximum number of bytes retained by the cache's entries
+   * @param estimator the estimator to use in calculating the size of cache entries
+   * @param <K1> key type of the estimator
+   * @param <V1> value type of the estimator
+   * @return the cache builder reference that should be used instead of {@code this} for any
+   *         remaining configuration and cache building
+   * @throws IllegalArgumentException if {@code bytes} is negative
+   * @throws IllegalStateException if a maximum size, weight, or memory was already set
+   */
+  @NonNull
+  public <K1 extends K, V1 extends V> Caffeine<K1, V1> maximumMemory(@NonNegative long bytes,
+      @NonNull SizeEstimator<? super K1, ? super V1> estimator) {
+    requireNonNull(estimator);
+    requireState(this.sizeEstimator == null,
+        "maximum memory was already set to %s", this.maximumWeight);
+    requireState(this.maximumWeight == UNSET_INT,
+        "maximum weight was already set to %s", this.maximumWeight);
+    requireState(this.maximumSize == UNSET_INT,
+        "maximum size was already set to %s", this.maximumSize);
+    requireState(this.weigher == null, "maximum memory can not be combined with weigher");
+    requireArgument(bytes >= 0, "maximum memory must not be negative");
+
+    @SuppressWarnings("unchecked")
+    Caffeine<K1, V1> self = (Caffeine<K1, V1>) this;
+    self.sizeEstimator = estimator;
+    self.maximumWeight = bytes;
+    return self;
+  }
+
   boolean evicts() {
     return getMaximum() != UNSET_INT;
   }
 
   boolean isWeighted() {
-    return (weigher != null);
+    return (weigher != null) || (sizeEstimator != null);
   }
 
   long getMaximum() {
@@ -411,9 +594,15 @@ public final class Caffeine<K, V> {
 
   @NonNull @SuppressWarnings({"unchecked", "rawtypes"})
   <K1 extends K, V1 extends V> Weigher<K1, V1> getWeigher(boolean isAsync) {
-    Weigher<K1, V1> delegate = (weigher == null) || (weigher == Weigher.singletonWeigher())
-        ? Weigher.singletonWeigher()
-        : Weigher.boundedWeigher((Weigher<K1, V1>) weigher);
+    Weigher<K1, V1> delegate;
+    if (sizeEstimator != null) {
+      delegate = new MemoryWeigher<>((SizeEstimator<K1, V1>) sizeEstimator,
+          MemoryWeigher.entryOverhead(this, isAsync));
+    } else {
+      delegate = (weigher == null) || (weigher == Weigher.singletonWeigher())
+          ? Weigher.singletonWeigher()
+          : Weigher.boundedWeigher((Weigher<K1, V1>) weigher);
+    }
     return isAsync ? (Weigher<K1, V1>) new AsyncWeigher(delegate) : delegate;
   }
 
@@ -539,6 +728,10 @@ public final class Caffeine<K, V> {
    * read or write operations. Expired entries are cleaned up as part of the routine maintenance
    * described in the class javadoc.
    * <p>
+   * When a synchronous cache uses the system ticker, does not refresh, and the duration is at least
+   * one second, then the timestamps are stored with a coarser precision of approximately 67ms. An
+   * entry in this configuration may remain visible for up to that long after its duration elapses.
+   * <p>
    * If you can represent the duration as a {@link java.time.Duration} (which should be preferred
    * when feasible), use {@link #expireAfterWrite(Duration)} instead.
    *
@@ -560,7 +753,22 @@ public final class Caffeine<K, V> {
   }
 
   long getExpiresAfterWriteNanos() {
-    return expiresAfterWrite() ? expireAfterWriteNanos : DEFAULT_EXPIRATION_NANOS;
+    if (!expiresAfterWrite()) {
+      return DEFAULT_EXPIRATION_NANOS;
+    }
+    return staleWhileRevalidates()
+        ? saturatedAdd(expireAfterWriteNanos, gracePeriodNanos)
+        : expireAfterWriteNanos;
+  }
+
+  /** Returns the duration after an entry is written that it is served as stale, if applicable. */
+  long getStaleAfterWriteNanos() {
+    return staleWhileRevalidates() ? expireAfterWriteNanos : Long.MAX_VALUE;
+  }
+
+  static long saturatedAdd(long a, long b) {
+    long sum = a + b;
+    return (((a ^ sum) & (b ^ sum)) < 0) ? Long.MAX_VALUE : sum;
   }
 
   boolean expiresAfterWrite() {
@@ -601,6 +809,10 @@ public final class Caffeine<K, V> {
    * read or write operations. Expired entries are cleaned up as part of the routine maintenance
    * described in the class javadoc.
    * <p>
+   * When a synchronous cache uses the system ticker, does not refresh, and the duration is at least
+   * one second, then the timestamps are stored with a coarser precision of approximately 67ms. An
+   * entry in this configuration may remain visible for up to that long after its duration elapses.
+   * <p>
    * If you can represent the duration as a {@link java.time.Duration} (which should be preferred
    * when feasible), use {@link #expireAfterAccess(Duration)} instead.
    *
@@ -729,11 +941,564 @@ public final class Caffeine<K, V> {
   }
 
   long getRefreshAfterWriteNanos() {
-    return refreshes() ? refreshNanos : DEFAULT_REFRESH_NANOS;
+    if (refreshNanos != UNSET_INT) {
+      return refreshNanos;
+    }
+    return refreshes() ? expireAfterWriteNanos : DEFAULT_REFRESH_NANOS;
   }
 
   boolean refreshes() {
-    return refreshNanos != UNSET_INT;
+    return (refreshNanos != UNSET_INT) || staleWhileRevalidates();
+  }
+
+  /**
+   * Specifies that an entry remains readable for a grace period after it has expired due to
+   * {@link #expireAfterWrite}, while it is reloaded in the background. The first read of the stale
+   * entry triggers a single asynchronous call to {@link CacheLoader#reload} and, like all of the
+   * reads during the grace period, immediately returns the stale value. The entry is removed once
+   * the grace period has elapsed, so that a subsequent read loads the value synchronously. These
+   * reads are counted by {@link com.github.benmanes.caffeine.cache.stats.CacheStats#staleHitCount}.
+   * <p>
+   * By default a failed reload discards the stale entry. Use {@link #serveStaleOnError} to instead
+   * continue serving it, and retrying the reload, for the remainder of the grace period.
+   * <p>
+   * This setting requires {@link #expireAfterWrite} and a loading cache, and cannot be combined
+   * with {@link #refreshAfterWrite}. The cache's {@code policy().expireAfterWrite()} reports the
+   * duration until the grace period ends.
+   *
+   * @param gracePeriod the length of time after an entry expires that it may be served as stale
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code gracePeriod} is negative
+   * @throws IllegalStateException if the grace period was already set
+   * @throws ArithmeticException for durations greater than +/- approximately 292 years
+   */
+  @NonNull
+  public Caffeine<K, V> staleWhileRevalidate(@NonNull Duration gracePeriod) {
+    return staleWhileRevalidate(gracePeriod.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Specifies that an entry remains readable for a grace period after it has expired due to
+   * {@link #expireAfterWrite}, while it is reloaded in the background. The first read of the stale
+   * entry triggers a single asynchronous call to {@link CacheLoader#reload} and, like all of the
+   * reads during the grace period, immediately returns the stale value. The entry is removed once
+   * the grace period has elapsed, so that a subsequent read loads the value synchronously.
+   * <p>
+   * If you can represent the duration as a {@link java.time.Duration} (which should be preferred
+   * when feasible), use {@link #staleWhileRevalidate(Duration)} instead.
+   *
+   * @param duration the length of time after an entry expires that it may be served as stale
+   * @param unit the unit that {@code duration} is expressed in
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code duration} is negative
+   * @throws IllegalStateException if the grace period was already set
+   */
+  @NonNull
+  public Caffeine<K, V> staleWhileRevalidate(@NonNegative long duration, @NonNull TimeUnit unit) {
+    requireNonNull(unit);
+    requireState(gracePeriodNanos == UNSET_INT,
+        "staleWhileRevalidate was already set to %s ns", gracePeriodNanos);
+    requireArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
+    this.gracePeriodNanos = unit.toNanos(duration);
+    return this;
+  }
+
+  boolean staleWhileRevalidates() {
+    return (gracePeriodNanos != UNSET_INT);
+  }
+
+  /**
+   * Specifies that a stale entry continues to be served when its reload fails, for the remainder of
+   * its {@link #staleWhileRevalidate} grace period. A later read of the entry retries the reload.
+   * By default a failed reload discards the stale entry, so that the next read loads it
+   * synchronously and observes the failure.
+   *
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if this setting was already enabled
+   */
+  @NonNull
+  public Caffeine<K, V> serveStaleOnError() {
+    requireState(!serveStaleOnError, "serveStaleOnError was already set");
+    serveStaleOnError = true;
+    return this;
+  }
+
+  boolean servesStaleOnError() {
+    return serveStaleOnError;
+  }
+
+  /**
+   * Specifies that a read may refresh an entry shortly before it is due, so that entries which were
+   * loaded together do not all reload at the same moment. The deadline is the
+   * {@link #refreshAfterWrite} duration if set, and otherwise the {@link #expireAfterWrite}
+   * duration or the entry's expiration time as given by {@link #expireAfter(Expiry)}. Each read of
+   * an entry that is nearing its deadline triggers an asynchronous call to
+   * {@link CacheLoader#reload} with a probability that rises as the deadline approaches.
+   * <p>
+   * The probability is scaled by a moving average of the time that the cache's loads and reloads
+   * have taken, so that slower loads begin refreshing earlier. A {@code beta} of {@code 1.0} is a
+   * reasonable default, a larger value favors refreshing earlier, and a smaller value favors
+   * refreshing later. This technique is described in <a
+   * href="http://www.vldb.org/pvldb/vol8/p886-vattani.pdf">Optimal Probabilistic Cache Stampede
+   * Prevention</a>.
+   * <p>
+   * This setting requires a loading cache with {@link #refreshAfterWrite},
+   * {@link #expireAfterWrite}, or {@link #expireAfter(Expiry)}. When used without
+   * {@code refreshAfterWrite}, an entry that is being reloaded still expires at its original
+   * deadline and the cache's {@code policy().refreshAfterWrite()} remains absent.
+   *
+   * @param beta the scaling factor applied to the average load time
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code beta} is not positive and finite
+   * @throws IllegalStateException if early refresh was already set
+   */
+  @NonNull
+  public Caffeine<K, V> earlyRefresh(double beta) {
+    requireState(earlyRefreshBeta == UNSET_INT,
+        "earlyRefresh was already set to %s", earlyRefreshBeta);
+    requireArgument((beta > 0.0) && !Double.isInfinite(beta),
+        "beta must be positive and finite: %s", beta);
+    this.earlyRefreshBeta = beta;
+    return this;
+  }
+
+  boolean refreshesEarly() {
+    return (earlyRefreshBeta != UNSET_INT);
+  }
+
+  double getEarlyRefreshBeta() {
+    return earlyRefreshBeta;
+  }
+
+  /**
+   * Specifies that a load which has not completed after the given delay should be hedged by a
+   * second call to {@link AsyncCacheLoader#asyncLoad}. The cache's future is completed by whichever
+   * load completes successfully first, and the other load's future is cancelled. A load that fails
+   * before the delay elapses is not retried. The automatic refreshes of an entry, as configured by
+   * {@link #refreshAfterWrite}, are hedged by calls to {@link AsyncCacheLoader#asyncReload}.
+   * <p>
+   * The delay is scheduled by the configured {@link #scheduler(Scheduler)}, or by
+   * {@link Scheduler#systemScheduler()} if none is set. The bulk loads of
+   * {@link AsyncLoadingCache#getAll} are not hedged. This setting requires an
+   * {@link AsyncLoadingCache}.
+   *
+   * @param delay the length of time to wait for a load before issuing a second one
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code delay} is negative
+   * @throws IllegalStateException if hedging was already set
+   * @throws ArithmeticException for durations greater than +/- approximately 292 years
+   */
+  @NonNull
+  public Caffeine<K, V> hedgeLoads(@NonNull Duration delay) {
+    return hedgeLoads(delay.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Specifies that a load which has not completed after the given delay should be hedged by a
+   * second call to {@link AsyncCacheLoader#asyncLoad}. The cache's future is completed by whichever
+   * load completes successfully first, and the other load's future is cancelled. A load that fails
+   * before the delay elapses is not retried.
+   * <p>
+   * If you can represent the duration as a {@link java.time.Duration} (which should be preferred
+   * when feasible), use {@link #hedgeLoads(Duration)} instead.
+   *
+   * @param delay the length of time to wait for a load before issuing a second one
+   * @param unit the unit that {@code delay} is expressed in
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code delay} is negative
+   * @throws IllegalStateException if hedging was already set
+   */
+  @NonNull
+  public Caffeine<K, V> hedgeLoads(@NonNegative long delay, @NonNull TimeUnit unit) {
+    requireNonNull(unit);
+    requireState(!hedgesLoads(), "hedgeLoads was already set");
+    requireArgument(delay >= 0, "delay must not be negative: %s %s", delay, unit);
+    this.hedgeDelayNanos = unit.toNanos(delay);
+    return this;
+  }
+
+  /**
+   * Specifies that a load which is slower than the given percentile of the observed load latencies
+   * should be hedged by a second call to {@link AsyncCacheLoader#asyncLoad}. This adapts the delay
+   * of {@link #hedgeLoads(Duration)} to the loader, so that only the tail of slow loads is hedged.
+   * The latencies of the successful loads are sampled with a decay, so that the delay follows a
+   * change in the loader's performance, and loads are not hedged until enough have been observed.
+   * <p>
+   * For example, a percentile of {@code 95.0} issues a second load for about one in twenty loads.
+   *
+   * @param percentile the percentile of the load latencies to wait for before issuing a second load
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code percentile} is not greater than 0 and at most 100
+   * @throws IllegalStateException if hedging was already set
+   */
+  @NonNull
+  public Caffeine<K, V> hedgeLoadsAtPercentile(double percentile) {
+    requireState(!hedgesLoads(), "hedgeLoads was already set");
+    requireArgument((percentile > 0.0) && (percentile <= 100.0),
+        "percentile must be greater than 0 and at most 100: %s", percentile);
+    this.hedgePercentile = percentile;
+    return this;
+  }
+
+  boolean hedgesLoads() {
+    return (hedgeDelayNanos != UNSET_INT) || (hedgePercentile != UNSET_INT);
+  }
+
+  long getHedgeDelayNanos() {
+    return hedgeDelayNanos;
+  }
+
+  double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  /**
+   * Specifies that a load which has not completed within the given duration should fail with a
+   * {@link java.util.concurrent.TimeoutException}, and its futures are cancelled. A timed out load
+   * of an absent entry is discarded, whereas a timed out refresh leaves the entry with its stale
+   * value. When combined with {@link #hedgeLoads(Duration)}, the timeout bounds the duration of
+   * both loads.
+   * <p>
+   * The timeout is scheduled by the configured {@link #scheduler(Scheduler)}, or by
+   * {@link Scheduler#systemScheduler()} if none is set. The bulk loads of
+   * {@link AsyncLoadingCache#getAll} are not bounded. This setting requires an
+   * {@link AsyncLoadingCache}.
+   *
+   * @param timeout the length of time to wait for a load before failing it
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code timeout} is not positive
+   * @throws IllegalStateException if the load timeout was already set
+   * @throws ArithmeticException for durations greater than +/- approximately 292 years
+   */
+  @NonNull
+  public Caffeine<K, V> loadTimeout(@NonNull Duration timeout) {
+    return loadTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Specifies that a load which has not completed within the given duration should fail with a
+   * {@link java.util.concurrent.TimeoutException}, and its futures are cancelled. A timed out load
+   * of an absent entry is discarded, whereas a timed out refresh leaves the entry with its stale
+   * value.
+   * <p>
+   * If you can represent the duration as a {@link java.time.Duration} (which should be preferred
+   * when feasible), use {@link #loadTimeout(Duration)} instead.
+   *
+   * @param timeout the length of time to wait for a load before failing it
+   * @param unit the unit that {@code timeout} is expressed in
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code timeout} is not positive
+   * @throws IllegalStateException if the load timeout was already set
+   */
+  @NonNull
+  public Caffeine<K, V> loadTimeout(@NonNegative long timeout, @NonNull TimeUnit unit) {
+    requireNonNull(unit);
+    requireState(loadTimeoutNanos == UNSET_INT,
+        "loadTimeout was already set to %s ns", loadTimeoutNanos);
+    requireArgument(timeout > 0, "timeout must be positive: %s %s", timeout, unit);
+    this.loadTimeoutNanos = unit.toNanos(timeout);
+    return this;
+  }
+
+  boolean timesOutLoads() {
+    return (loadTimeoutNanos != UNSET_INT);
+  }
+
+  long getLoadTimeoutNanos() {
+    return loadTimeoutNanos;
+  }
+
+  /**
+   * Specifies that independent loads of absent entries should be coalesced into bulk loads. The
+   * keys of individual misses, such as by {@link LoadingCache#get} or
+   * {@link AsyncLoadingCache#get}, are gathered for up to the given delay or until the batch size
+   * is reached, whichever occurs first, and are then loaded by a single call to
+   * {@link AsyncCacheLoader#asyncLoadAll}. Each caller is completed with its key's value from the
+   * batch result, or with {@code null} if the key is absent from it. Concurrent requests for the
+   * same key continue to share a single load.
+   * <p>
+   * The delay is scheduled by the configured {@link #scheduler(Scheduler)}, or by
+   * {@link Scheduler#systemScheduler()} if none is set, and the batch is loaded on the cache's
+   * {@link #executor(Executor)}. A caller of the synchronous {@link LoadingCache} waits for its
+   * batch to be loaded. The cache loader must implement either {@link CacheLoader#loadAll} or
+   * {@link AsyncCacheLoader#asyncLoadAll}.
+   *
+   * @param maximumBatchSize the maximum number of keys to gather before dispatching a bulk load
+   * @param delay the maximum length of time to gather keys after the first miss in a batch
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maximumBatchSize} is not positive or if
+   *         {@code delay} is negative
+   * @throws IllegalStateException if load coalescing was already set
+   * @throws ArithmeticException for durations greater than +/- approximately 292 years
+   */
+  @NonNull
+  public Caffeine<K, V> coalesceLoads(@NonNegative int maximumBatchSize, @NonNull Duration delay) {
+    return coalesceLoads(maximumBatchSize, delay.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Specifies that independent loads of absent entries should be coalesced into bulk loads. The
+   * keys of individual misses, such as by {@link LoadingCache#get} or
+   * {@link AsyncLoadingCache#get}, are gathered for up to the given delay or until the batch size
+   * is reached, whichever occurs first, and are then loaded by a single call to
+   * {@link AsyncCacheLoader#asyncLoadAll}. Each caller is completed with its key's value from the
+   * batch result, or with {@code null} if the key is absent from it. Concurrent requests for the
+   * same key continue to share a single load.
+   * <p>
+   * The delay is scheduled by the configured {@link #scheduler(Scheduler)}, or by
+   * {@link Scheduler#systemScheduler()} if none is set, and the batch is loaded on the cache's
+   * {@link #executor(Executor)}. A caller of the synchronous {@link LoadingCache} waits for its
+   * batch to be loaded. The cache loader must implement either {@link CacheLoader#loadAll} or
+   * {@link AsyncCacheLoader#asyncLoadAll}.
+   * <p>
+   * If you can represent the duration as a {@link java.time.Duration} (which should be preferred
+   * when feasible), use {@link #coalesceLoads(int, Duration)} instead.
+   *
+   * @param maximumBatchSize the maximum number of keys to gather before dispatching a bulk load
+   * @param delay the maximum length of time to gather keys after the first miss in a batch
+   * @param unit the unit that {@code delay} is expressed in
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maximumBatchSize} is not positive or if
+   *         {@code delay} is negative
+   * @throws IllegalStateException if load coalescing was already set
+   */
+  @NonNull
+  public Caffeine<K, V> coalesceLoads(@NonNegative int maximumBatchSize,
+      @NonNegative long delay, @NonNull TimeUnit unit) {
+    requireNonNull(unit);
+    requireState(this.maximumBatchSize == UNSET_INT,
+        "coalesceLoads was already set to %s", this.maximumBatchSize);
+    requireArgument(maximumBatchSize > 0,
+        "maximum batch size must be positive: %s", maximumBatchSize);
+    requireArgument(delay >= 0, "delay must not be negative: %s %s", delay, unit);
+    this.maximumBatchSize = maximumBatchSize;
+    this.batchDelayNanos = unit.toNanos(delay);
+    return this;
+  }
+
+  boolean coalescesLoads() {
+    return (maximumBatchSize != UNSET_INT);
+  }
+
+  int getMaximumBatchSize() {
+    return maximumBatchSize;
+  }
+
+  long getBatchDelayNanos() {
+    return batchDelayNanos;
+  }
+
+  /**
+   * Specifies that the automatic refreshes of stale entries should be batched into bulk reloads.
+   * The stale entries found by reads, as configured by {@link #refreshAfterWrite}, are gathered for
+   * up to the given delay or until the batch size is reached, whichever occurs first, and are then
+   * reloaded by a single call to {@link AsyncCacheLoader#asyncReloadAll}. Each entry is replaced by
+   * its value in the batch result, or removed if the key is absent from it.
+   * <p>
+   * The delay is scheduled by the configured {@link #scheduler(Scheduler)}, or by
+   * {@link Scheduler#systemScheduler()} if none is set, and the batch is reloaded on the cache's
+   * {@link #executor(Executor)}. This setting requires {@link #refreshAfterWrite} and a cache
+   * loader that implements either {@link CacheLoader#reloadAll} or
+   * {@link AsyncCacheLoader#asyncReloadAll}. Explicit calls to {@link LoadingCache#refresh} are not
+   * batched.
+   *
+   * @param maximumBatchSize the maximum number of stale entries to gather before reloading them
+   * @param delay the maximum length of time to gather stale entries after the first in a batch
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maximumBatchSize} is not positive or if
+   *         {@code delay} is negative
+   * @throws IllegalStateException if refresh batching was already set
+   * @throws ArithmeticException for durations greater than +/- approximately 292 years
+   */
+  @NonNull
+  public Caffeine<K, V> batchRefreshes(@NonNegative int maximumBatchSize, @NonNull Duration delay) {
+    return batchRefreshes(maximumBatchSize, delay.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Specifies that the automatic refreshes of stale entries should be batched into bulk reloads.
+   * The stale entries found by reads, as configured by {@link #refreshAfterWrite}, are gathered for
+   * up to the given delay or until the batch size is reached, whichever occurs first, and are then
+   * reloaded by a single call to {@link AsyncCacheLoader#asyncReloadAll}. Each entry is replaced by
+   * its value in the batch result, or removed if the key is absent from it.
+   * <p>
+   * The delay is scheduled by the configured {@link #scheduler(Scheduler)}, or by
+   * {@link Scheduler#systemScheduler()} if none is set, and the batch is reloaded on the cache's
+   * {@link #executor(Executor)}. This setting requires {@link #refreshAfterWrite} and a cache
+   * loader that implements either {@link CacheLoader#reloadAll} or
+   * {@link AsyncCacheLoader#asyncReloadAll}. Explicit calls to {@link LoadingCache#refresh} are not
+   * batched.
+   * <p>
+   * If you can represent the duration as a {@link java.time.Duration} (which should be preferred
+   * when feasible), use {@link #batchRefreshes(int, Duration)} instead.
+   *
+   * @param maximumBatchSize the maximum number of stale entries to gather before reloading them
+   * @param delay the maximum length of time to gather stale entries after the first in a batch
+   * @param unit the unit that {@code delay} is expressed in
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maximumBatchSize} is not positive or if
+   *         {@code delay} is negative
+   * @throws IllegalStateException if refresh batching was already set
+   */
+  @NonNull
+  public Caffeine<K, V> batchRefreshes(@NonNegative int maximumBatchSize,
+      @NonNegative long delay, @NonNull TimeUnit unit) {
+    requireNonNull(unit);
+    requireState(this.maximumRefreshBatchSize == UNSET_INT,
+        "batchRefreshes was already set to %s", this.maximumRefreshBatchSize);
+    requireArgument(maximumBatchSize > 0,
+        "maximum batch size must be positive: %s", maximumBatchSize);
+    requireArgument(delay >= 0, "delay must not be negative: %s %s", delay, unit);
+    this.maximumRefreshBatchSize = maximumBatchSize;
+    this.refreshBatchDelayNanos = unit.toNanos(delay);
+    return this;
+  }
+
+  boolean batchesRefreshes() {
+    return (maximumRefreshBatchSize != UNSET_INT);
+  }
+
+  int getMaximumRefreshBatchSize() {
+    return maximumRefreshBatchSize;
+  }
+
+  long getRefreshBatchDelayNanos() {
+    return refreshBatchDelayNanos;
+  }
+
+  /**
+   * Specifies that the computation of an absent entry should be performed outside of the hash
+   * table's lock. By default the mapping function, such as a {@link CacheLoader}, is evaluated
+   * while holding the lock of the hash bin that the key resides in. A long-running load may
+   * therefore block the writes to unrelated keys that share that bin, and pins the carrier thread
+   * if called from a virtual thread.
+   * <p>
+   * When this setting is enabled, an absent entry is loaded by first registering a placeholder for
+   * the key. The mapping function is then evaluated without holding the lock and its result is
+   * published only if the entry is still absent. Concurrent callers for the same key wait for the
+   * in-flight load rather than performing a redundant one. However, unlike the default mode, a
+   * write to the key during the load does not wait for it to complete; a concurrent insertion
+   * takes precedence over the loaded value, and a removal does not discard the load's result. A
+   * mapping function that attempts to compute the same key will fail with an
+   * {@link IllegalStateException}.
+   * <p>
+   * This setting cannot be used with an {@link AsyncCache}, whose entries are already computed
+   * outside of the lock.
+   *
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if this setting was already enabled
+   */
+  @NonNull
+  public Caffeine<K, V> loadOutsideLock() {
+    requireState(!loadOutsideLock, "loadOutsideLock was already set");
+    loadOutsideLock = true;
+    return this;
+  }
+
+  boolean loadsOutsideLock() {
+    return loadOutsideLock;
+  }
+
+  /**
+   * Specifies the tagger to use in grouping the entries. The tags are maintained as a secondary
+   * index by the cache's policy, which stays consistent with the removal of entries by eviction,
+   * expiration, and invalidation. All of the entries that have a tag can be discarded together by
+   * using {@link Policy.Tagging#invalidateTag(Object)}, which is obtained from
+   * {@code cache.policy().tagging()}.
+   * <p>
+   * This setting requires a maximum size, maximum weight, expiration, or refresh policy and cannot
+   * be combined with an asynchronous cache.
+   * <p>
+   * <b>Important note:</b> Instead of returning <em>this</em> as a {@code Caffeine} instance, this
+   * method returns {@code Caffeine<K1, V1>}. From this point on, either the original reference or
+   * the returned reference may be used to complete configuration and build the cache, but only the
+   * "generic" one is type-safe. That is, it will properly prevent you from building caches whose
+   * key or value types are incompatible with the types accepted by the tagger already provided;
+   * the {@code Caffeine} type cannot do this.
+   *
+   * @param tagger the tagger to use in calculating the tags of cache entries
+   * @param <K1> key type of the tagger
+   * @param <V1> value type of the tagger
+   * @return the cache builder reference that should be used instead of {@code this} for any
+   *         remaining configuration and cache building
+   * @throws IllegalStateException if a tagger was already set
+   */
+  @NonNull
+  public <K1 extends K, V1 extends V> Caffeine<K1, V1> tagger(
+      @NonNull Tagger<? super K1, ? super V1> tagger) {
+    requireNonNull(tagger);
+    requireState(this.tagger == null, "tagger was already set to %s", this.tagger);
+
+    @SuppressWarnings("unchecked")
+    Caffeine<K1, V1> self = (Caffeine<K1, V1>) this;
+    self.tagger = tagger;
+    return self;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Nullable <K1 extends K, V1 extends V> Tagger<K1, V1> getTagger() {
+    return (Tagger<K1, V1>) tagger;
+  }
+
+  /**
+   * Specifies that the cache's entries should be stored in a hash table that embeds them, rather
+   * than in a {@link java.util.concurrent.ConcurrentHashMap}. By default each mapping is held by
+   * both a cache entry and the hash table's own entry object. When this setting is enabled the
+   * cache entry is chained directly within the hash table, which removes the table's entry and
+   * reduces the memory overhead of each mapping.
+   * <p>
+   * The table does not acquire a lock on reads and a computation locks only its key, so that a
+   * long-running load does not block the writes to other keys. This setting is best suited for
+   * large caches of small entries.
+   * <p>
+   * This setting requires {@link #maximumSize(long)} or {@link #maximumWeight(long)} and cannot be
+   * combined with expiration, refresh, or weak or soft references.
+   *
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if this setting was already enabled
+   */
+  @NonNull
+  public Caffeine<K, V> embeddedHashTable() {
+    requireState(!embeddedHashTable, "embeddedHashTable was already set");
+    embeddedHashTable = true;
+    return this;
+  }
+
+  boolean usesEmbeddedHashTable() {
+    return embeddedHashTable;
+  }
+
+  /**
+   * Specifies that the eviction policy's frequency sketch should place a doorkeeper in front of its
+   * counters. The doorkeeper is a Bloom filter that absorbs the first occurrence of a key within
+   * each sample period, so that the keys that are accessed only once do not occupy the counters.
+   * This allows the sketch to use a counter table of half the size at a similar accuracy, which
+   * reduces the memory overhead of caches that hold many millions of entries, at the cost of an
+   * additional lookup when the popularity of a key is recorded or estimated.
+   * <p>
+   * This setting requires {@link #maximumSize(long)} or {@link #maximumWeight(long)}.
+   *
+   * @return this {@code Caffeine} instance (for chaining)
+   * @throws IllegalStateException if this setting was already enabled
+   */
+  @NonNull
+  public Caffeine<K, V> doorkeeper() {
+    requireState(!doorkeeper, "doorkeeper was already set");
+    doorkeeper = true;
+    return this;
+  }
+
+  boolean usesDoorkeeper() {
+    return doorkeeper;
+  }
+
+  /** Returns the scheduler for dispatching batches and hedged loads, which must not be disabled. */
+  @NonNull
+  Scheduler getBatchScheduler() {
+    Scheduler batchScheduler = getScheduler();
+    return (batchScheduler == Scheduler.disabledScheduler())
+        ? Scheduler.systemScheduler()
+        : batchScheduler;
   }
 
   /**
@@ -758,12 +1523,26 @@ public final class Caffeine<K, V> {
   @NonNull
   Ticker getTicker() {
     boolean useTicker = expiresVariable() || expiresAfterAccess()
-        || expiresAfterWrite() || refreshes() || isRecordingStats();
+        || expiresAfterWrite() || refreshes() || isRecordingStats() || hedgesLoads();
     return useTicker
         ? (ticker == null) ? Ticker.systemTicker() : ticker
         : Ticker.disabledTicker();
   }
 
+  /**
+   * Returns if the nodes may store their access and write times as coarse {@link Ticks}. This is
+   * restricted to a synchronous cache that reads the system ticker and expires after a fixed
+   * duration of at least a second, as the other configurations rely on exact timestamps or encode
+   * sentinels in them.
+   */
+  boolean usesCompactTime(boolean isAsync) {
+    boolean systemTicker = (ticker == null) || (ticker == Ticker.systemTicker());
+    return !isAsync && systemTicker && (expiresAfterAccess() || expiresAfterWrite())
+        && !expiresVariable() && !refreshes() && !refreshesEarly()
+        && (!expiresAfterAccess() || (expireAfterAccessNanos >= Ticks.MINIMUM_DURATION))
+        && (!expiresAfterWrite() || (expireAfterWriteNanos >= Ticks.MINIMUM_DURATION));
+  }
+
   /**
    * Specifies a listener instance that caches should notify each time an entry is removed for any
    * {@linkplain RemovalCause reason}. Each cache created by this builder will invoke this listener
@@ -929,6 +1708,10 @@ public final class Caffeine<K, V> {
   public <K1 extends K, V1 extends V> Cache<K1, V1> build() {
     requireWeightWithWeigher();
     requireNonLoadingCache();
+    requireNonAsyncLoadingCache();
+    requireEmbeddableEntries();
+    requireEvictionWithDoorkeeper();
+    requireTaggablePolicy();
 
     @SuppressWarnings("unchecked")
     Caffeine<K1, V1> self = (Caffeine<K1, V1>) this;
@@ -955,6 +1738,14 @@ public final class Caffeine<K, V> {
   public <K1 extends K, V1 extends V> LoadingCache<K1, V1> build(
       @NonNull CacheLoader<? super K1, V1> loader) {
     requireWeightWithWeigher();
+    requireBulkLoaderWithCoalescing(loader);
+    requireBulkReloaderWithBatchRefreshes(loader);
+    requireStaleWhileRevalidate();
+    requireEarlyRefreshDeadline();
+    requireNonAsyncLoadingCache();
+    requireEmbeddableEntries();
+    requireEvictionWithDoorkeeper();
+    requireTaggablePolicy();
 
     @SuppressWarnings("unchecked")
     Caffeine<K1, V1> self = (Caffeine<K1, V1>) this;
@@ -987,8 +1778,13 @@ public final class Caffeine<K, V> {
   public <K1 extends K, V1 extends V> AsyncCache<K1, V1> buildAsync() {
     requireState(valueStrength == null, "Weak or soft values can not be combined with AsyncCache");
     requireState(writer == null, "CacheWriter can not be combined with AsyncCache");
+    requireState(!loadOutsideLock, "loadOutsideLock can not be combined with AsyncCache");
+    requireState(tagger == null, "tagger can not be combined with AsyncCache");
     requireWeightWithWeigher();
     requireNonLoadingCache();
+    requireNonAsyncLoadingCache();
+    requireEmbeddableEntries();
+    requireEvictionWithDoorkeeper();
 
     @SuppressWarnings("unchecked")
     Caffeine<K1, V1> self = (Caffeine<K1, V1>) this;
@@ -1045,8 +1841,16 @@ public final class Caffeine<K, V> {
     requireState(valueStrength == null,
         "Weak or soft values can not be combined with AsyncLoadingCache");
     requireState(writer == null, "CacheWriter can not be combined with AsyncLoadingCache");
+    requireState(!loadOutsideLock, "loadOutsideLock can not be combined with AsyncLoadingCache");
+    requireState(tagger == null, "tagger can not be combined with AsyncLoadingCache");
     requireWeightWithWeigher();
     requireNonNull(loader);
+    requireBulkLoaderWithCoalescing(loader);
+    requireBulkReloaderWithBatchRefreshes(loader);
+    requireStaleWhileRevalidate();
+    requireEarlyRefreshDeadline();
+    requireEmbeddableEntries();
+    requireEvictionWithDoorkeeper();
 
     @SuppressWarnings("unchecked")
     Caffeine<K1, V1> self = (Caffeine<K1, V1>) this;
@@ -1055,12 +1859,122 @@ public final class Caffeine<K, V> {
         : new UnboundedLocalCache.UnboundedLocalAsyncLoadingCache<>(self, loader);
   }
 
+  /**
+   * Builds a cache that is specialized for primitive {@code long} keys, which avoids the memory
+   * overhead of a boxed key and of a hash table entry for each mapping. The cache evicts entries
+   * based on a maximum size, is partitioned into independently locked segments, and loads absent
+   * values outside of those locks.
+   * <p>
+   * This method does not alter the state of this {@code Caffeine} instance, so it can be invoked
+   * again to create multiple independent caches.
+   * <p>
+   * This construction requires {@link #maximumSize(long)} and cannot be used with a weigher,
+   * expiration, refresh, weak or soft references, a {@link #removalListener(RemovalListener)}, a
+   * {@link #writer(CacheWriter)}, a {@link #tagger(Tagger)}, an {@link #executor(Executor)}, a
+   * {@link #maintenanceService(MaintenanceService)}, an
+   * {@link #instrumentation(CacheInstrumentation)}, an {@link #embeddedHashTable()}, or an
+   * {@link #initialCapacity(int)}, as the cache does not use them. A {@link #ticker(Ticker)} may
+   * only be used to {@link #recordStats()}.
+   *
+   * @param <V1> the value type of the cache
+   * @return a cache having the requested features
+   */
+  @NonNull
+  public <V1 extends V> LongCache<V1> buildLongKeyed() {
+    requireWeightWithWeigher();
+    requireState(evicts() && !isWeighted(), "buildLongKeyed requires maximumSize");
+    requireState(isStrongKeys() && isStrongValues(),
+        "Weak or soft references can not be combined with buildLongKeyed");
+    requireState(!expiresAfterAccess() && !expiresAfterWrite() && !expiresVariable(),
+        "Expiration can not be combined with buildLongKeyed");
+    requireState(removalListener == null,
+        "RemovalListener can not be combined with buildLongKeyed");
+    requireState(writer == null, "CacheWriter can not be combined with buildLongKeyed");
+    requireState(tagger == null, "tagger can not be combined with buildLongKeyed");
+    requireState(executor == null, "executor can not be combined with buildLongKeyed");
+    requireState((ticker == null) || isRecordingStats(),
+        "ticker requires recordStats when combined with buildLongKeyed");
+    requireState(maintenanceService == null,
+        "maintenanceService can not be combined with buildLongKeyed");
+    requireState(instrumentation == null,
+        "instrumentation can not be combined with buildLongKeyed");
+    requireState(!embeddedHashTable, "embeddedHashTable can not be combined with buildLongKeyed");
+    requireState(initialCapacity == UNSET_INT,
+        "initialCapacity can not be combined with buildLongKeyed");
+    requireNonLoadingCache();
+    requireNonAsyncLoadingCache();
+
+    return new BoundedLongCache<>(this);
+  }
+
   void requireNonLoadingCache() {
     requireState(refreshNanos == UNSET_INT, "refreshAfterWrite requires a LoadingCache");
+    requireState(gracePeriodNanos == UNSET_INT, "staleWhileRevalidate requires a LoadingCache");
+    requireState(!serveStaleOnError, "serveStaleOnError requires a LoadingCache");
+    requireState(earlyRefreshBeta == UNSET_INT, "earlyRefresh requires a LoadingCache");
+    requireState(maximumBatchSize == UNSET_INT, "coalesceLoads requires a LoadingCache");
+    requireState(maximumRefreshBatchSize == UNSET_INT, "batchRefreshes requires a LoadingCache");
+  }
+
+  void requireNonAsyncLoadingCache() {
+    requireState(!hedgesLoads(), "hedgeLoads requires an AsyncLoadingCache");
+    requireState(loadTimeoutNanos == UNSET_INT, "loadTimeout requires an AsyncLoadingCache");
+  }
+
+  void requireBulkLoaderWithCoalescing(AsyncCacheLoader<?, ?> loader) {
+    requireState(!coalescesLoads() || LocalAsyncLoadingCache.canBulkLoad(loader),
+        "coalesceLoads requires a loader that implements loadAll or asyncLoadAll");
+  }
+
+  void requireBulkReloaderWithBatchRefreshes(AsyncCacheLoader<?, ?> loader) {
+    if (batchesRefreshes()) {
+      requireState(refreshes(), "batchRefreshes requires refreshAfterWrite");
+      requireState(LocalAsyncLoadingCache.canBulkReload(loader),
+          "batchRefreshes requires a loader that implements reloadAll or asyncReloadAll");
+    }
+  }
+
+  void requireStaleWhileRevalidate() {
+    if (staleWhileRevalidates()) {
+      requireState(expiresAfterWrite(), "staleWhileRevalidate requires expireAfterWrite");
+      requireState(refreshNanos == UNSET_INT,
+          "staleWhileRevalidate can not be combined with refreshAfterWrite");
+    } else {
+      requireState(!serveStaleOnError, "serveStaleOnError requires staleWhileRevalidate");
+    }
+  }
+
+  void requireEarlyRefreshDeadline() {
+    requireState(!refreshesEarly() || (refreshNanos != UNSET_INT) || expiresAfterWrite()
+        || expiresVariable(), "earlyRefresh requires refreshAfterWrite, expireAfterWrite, or "
+        + "expireAfter");
+  }
+
+  void requireTaggablePolicy() {
+    requireState((tagger == null) || evicts() || expiresAfterAccess() || expiresAfterWrite()
+        || expiresVariable() || refreshes(),
+        "tagger requires a maximum size, maximum weight, expiration, or refresh policy");
+  }
+
+  void requireEvictionWithDoorkeeper() {
+    requireState(!doorkeeper || evicts(), "doorkeeper requires maximumSize or maximumWeight");
+  }
+
+  void requireEmbeddableEntries() {
+    if (embeddedHashTable) {
+      requireState(evicts(), "embeddedHashTable requires maximumSize or maximumWeight");
+      requireState(isStrongKeys() && isStrongValues(),
+          "Weak or soft references can not be combined with embeddedHashTable");
+      requireState(!expiresAfterAccess() && !expiresAfterWrite() && !expiresVariable(),
+          "Expiration can not be combined with embeddedHashTable");
+      requireState(!refreshes(), "refreshAfterWrite can not be combined with embeddedHashTable");
+    }
   }
 
   void requireWeightWithWeigher() {
-    if (weigher == null) {
+    if (sizeEstimator != null) {
+      return;
+    } else if (weigher == null) {
       requireState(maximumWeight == UNSET_INT, "maximumWeight requires weigher");
     } else if (strictParsing) {
       requireState(maximumWeight != UNSET_INT, "weigher requires maximumWeight");
@@ -1085,7 +1999,8 @@ public final class Caffeine<K, V> {
       s.append("maximumSize=").append(maximumSize).append(", ");
     }
     if (maximumWeight != UNSET_INT) {
-      s.append("maximumWeight=").append(maximumWeight).append(", ");
+      s.append((sizeEstimator == null) ? "maximumWeight=" : "maximumMemory=")
+          .append(maximumWeight).append(", ");
     }
     if (expireAfterWriteNanos != UNSET_INT) {
       s.append("expireAfterWrite=").append(expireAfterWriteNanos).append("ns, ");
@@ -1099,6 +2014,44 @@ public final class Caffeine<K, V> {
     if (refreshNanos != UNSET_INT) {
       s.append("refreshNanos=").append(refreshNanos).append("ns, ");
     }
+    if (maximumBatchSize != UNSET_INT) {
+      s.append("maximumBatchSize=").append(maximumBatchSize).append(", ");
+      s.append("batchDelay=").append(batchDelayNanos).append("ns, ");
+    }
+    if (maximumRefreshBatchSize != UNSET_INT) {
+      s.append("maximumRefreshBatchSize=").append(maximumRefreshBatchSize).append(", ");
+      s.append("refreshBatchDelay=").append(refreshBatchDelayNanos).append("ns, ");
+    }
+    if (gracePeriodNanos != UNSET_INT) {
+      s.append("staleWhileRevalidate=").append(gracePeriodNanos).append("ns, ");
+    }
+    if (serveStaleOnError) {
+      s.append("serveStaleOnError, ");
+    }
+    if (earlyRefreshBeta != UNSET_INT) {
+      s.append("earlyRefresh=").append(earlyRefreshBeta).append(", ");
+    }
+    if (hedgeDelayNanos != UNSET_INT) {
+      s.append("hedgeDelay=").append(hedgeDelayNanos).append("ns, ");
+    }
+    if (hedgePercentile != UNSET_INT) {
+      s.append("hedgePercentile=").append(hedgePercentile).append(", ");
+    }
+    if (loadTimeoutNanos != UNSET_INT) {
+      s.append("loadTimeout=").append(loadTimeoutNanos).append("ns, ");
+    }
+    if (loadOutsideLock) {
+      s.append("loadOutsideLock, ");
+    }
+    if (embeddedHashTable) {
+      s.append("embeddedHashTable, ");
+    }
+    if (doorkeeper) {
+      s.append("doorkeeper, ");
+    }
+    if (tagger != null) {
+      s.append("tagger, ");
+    }
     if (keyStrength != null) {
       s.append("keyStrength=").append(keyStrength.toString().toLowerCase(US)).append(", ");
     }
@@ -1111,6 +2064,15 @@ public final class Caffeine<K, V> {
     if (writer != null) {
       s.append("writer, ");
     }
+    if (scheduler != null) {
+      s.append("scheduler, ");
+    }
+    if (maintenanceService != null) {
+      s.append("maintenanceService, ");
+    }
+    if (instrumentation != null) {
+      s.append("instrumentation, ");
+    }
     if (s.length() > baseLength) {
       s.deleteCharAt(s.length() - 2);
     }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+/**
+ * A loader that coalesces individual loads into bulk loads. The keys are gathered into a pending
+ * batch that is dispatched to {@link AsyncCacheLoader#asyncLoadAll} when it reaches the maximum
+ * size, or when the delay since the batch's first key was added elapses, whichever occurs first.
+ * Each key's future is then completed from the batch result, and any extra entries that the bulk
+ * load returned are inserted into the cache, as {@code getAll} does. A synchronous load waits at
+ * most the delay before dispatching its batch itself.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class CoalescingBulkLoader<K, V> extends Batcher<K, V> implements CacheLoader<K, V> {
+  final Supplier<StatsCounter> statsCounter;
+  final BiConsumer<K, V> extraEntries;
+  final AsyncCacheLoader<? super K, V> delegate;
+  final Executor executor;
+
+  /**
+   * Creates a loader that coalesces the individual loads into bulk loads.
+   *
+   * @param builder the configuration of the batches
+   * @param delegate the loader to dispatch the batches to
+   * @param statsCounter the supplier of the cache's statistics counter
+   * @param extraEntries the consumer that inserts the entries that were not requested
+   */
+  CoalescingBulkLoader(Caffeine<?, ?> builder, AsyncCacheLoader<? super K, V> delegate,
+      Supplier<StatsCounter> statsCounter, BiConsumer<K, V> extraEntries) {
+    super(builder.getBatchScheduler(), builder.getMaximumBatchSize(),
+        builder.getBatchDelayNanos());
+    this.extraEntries = requireNonNull(extraEntries);
+    this.statsCounter = requireNonNull(statsCounter);
+    this.executor = builder.getExecutor();
+    this.delegate = requireNonNull(delegate);
+  }
+
+  @Override
+  @SuppressWarnings("PMD.PreserveStackTrace")
+  public V load(K key) throws Exception {
+    CompletableFuture<V> future = asyncLoad(key, executor);
+    try {
+      try {
+        return future.get(delayNanos, TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        flush(key, future, executor);
+        return future.get();
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public CompletableFuture<V> asyncLoad(K key, Executor executor) {
+    return add(key, /* oldValue */ null, executor);
+  }
+
+  @Override
+  public CompletableFuture<V> asyncReload(K key, V oldValue, Executor executor) {
+    return delegate.asyncReload(key, oldValue, executor);
+  }
+
+  /** Loads the keys in a single bulk call and completes each caller's future from the result. */
+  @Override
+  @SuppressWarnings("FutureReturnValueIgnored")
+  void dispatch(Batch<K, V> batch, Executor executor) {
+    statsCounter.get().recordBatchLoad(batch.futures.size());
+    try {
+      delegate.asyncLoadAll(batch.futures.keySet(), executor)
+          .whenComplete((result, error) -> {
+            complete(batch.futures, result, error);
+            addExtraEntries(batch.futures, result, executor);
+          });
+    } catch (Throwable t) {
+      complete(batch.futures, /* result */ null, t);
+    }
+  }
+
+  /**
+   * Inserts the entries that the bulk load returned beyond the requested keys. This is performed
+   * on the executor, as the load may have completed on a thread that holds a lock in the cache.
+   */
+  @SuppressWarnings("unchecked")
+  void addExtraEntries(Map<K, CompletableFuture<V>> batch,
+      @Nullable Map<?, V> result, Executor executor) {
+    if ((result == null) || batch.keySet().containsAll(result.keySet())) {
+      return;
+    }
+    try {
+      executor.execute(() -> result.forEach((key, value) -> {
+        if (!batch.containsKey(key) && (value != null)) {
+          extraEntries.accept((K) key, value);
+        }
+      }));
+    } catch (RejectedExecutionException e) {
+      logger.log(Level.WARNING, "Discarded the extra entries of a bulk load", e);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A probabilistic early refresh policy that desynchronizes the reloading of entries that were
+ * written at around the same time. This is an implementation of the XFetch algorithm,
+ * where a read triggers a refresh if {@code -delta * beta * ln(random)} is at least the time
+ * remaining until the entry's deadline. The {@code delta} is an exponentially weighted moving
+ * average of the observed load times, so the probability rises as the deadline approaches and a
+ * slower load begins refreshing earlier.
+ * <p>
+ * The moving average is updated racily as a lost sample does not materially skew the estimate.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class EarlyRefresh {
+  /** The smoothing shift of the moving average, where a sample has a weight of 1/8. */
+  static final int SMOOTHING_SHIFT = 3;
+  /** The scaled distance beyond which a refresh has a negligible probability (e^-20). */
+  static final double MAXIMUM_GAP = 20.0;
+
+  final double beta;
+
+  volatile long averageLoadTime;
+
+  EarlyRefresh(double beta) {
+    this.beta = beta;
+  }
+
+  /** Records the time taken to load or reload an entry. */
+  @SuppressWarnings("NonAtomicVolatileUpdate")
+  void recordLoadTime(long loadTime) {
+    if (loadTime <= 0L) {
+      return;
+    }
+    long average = averageLoadTime;
+    averageLoadTime = (average == 0L)
+        ? loadTime
+        : average + ((loadTime - average) >> SMOOTHING_SHIFT);
+  }
+
+  /**
+   * Returns if an entry should be refreshed ahead of its deadline.
+   *
+   * @param age the time since the entry was written
+   * @param deadline the age at which the entry must be refreshed
+   * @return if the entry was selected to refresh early
+   */
+  boolean shouldRefresh(long age, long deadline) {
+    long average = averageLoadTime;
+    if (average == 0L) {
+      return false;
+    }
+    double scale = average * beta;
+    double remaining = (double) deadline - age;
+    if (remaining > (MAXIMUM_GAP * scale)) {
+      return false;
+    }
+    double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+    return (-scale * Math.log(random)) >= remaining;
+  }
+}
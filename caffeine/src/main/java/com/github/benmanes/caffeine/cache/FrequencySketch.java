@@ -17,6 +17,7 @@ package com.github.benmanes.caffeine.cache;
 
 import static com.github.benmanes.caffeine.cache.Caffeine.requireArgument;
 
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.checkerframework.checker.index.qual.NonNegative;
@@ -48,6 +49,26 @@ final class FrequencySketch<E> {
    * counters found. The O(n) cost of aging is amortized, ideal for hardware prefetching, and uses
    * inexpensive bit manipulations per array location.
    *
+   * For large tables the four counters for an element are likely to reside in different cache
+   * lines, so that an increment or estimate incurs up to four cache misses. When the table exceeds
+   * a typical L2 cache the sketch switches to a blocked layout [4], where an element is first
+   * hashed to a 64-byte block of eight longs and then the rehashed value selects one counter from
+   * each pair of longs within that block. The aging process is unaffected by the layout.
+   *
+   * The O(n) reset of a large table may take milliseconds, which would be observed as a latency
+   * spike by the thread that happens to perform the maintenance work. When the table is large the
+   * reset is instead performed incrementally, where each maintenance cycle halves a bounded chunk
+   * of the table (and clears the corresponding portion of the doorkeeper) until the sweep is
+   * complete. If the next sample period ends while a sweep is in progress then the remainder is
+   * completed immediately.
+   *
+   * An optional doorkeeper [2] may be placed in front of the counters. The doorkeeper is a Bloom
+   * filter that absorbs the first occurrence of an element within the sample period, so that the
+   * long tail of one-hit wonders does not pollute the counters. This allows for a smaller counter
+   * table at a similar accuracy, with the doorkeeper contributing one to an element's estimate when
+   * present. The doorkeeper is cleared as part of the reset operation. It is enabled by the cache
+   * when the builder specifies {@link Caffeine#doorkeeper()}.
+   *
    * A per instance smear is used to help protect against hash flooding [3], which would result
    * in the admission policy always rejecting new candidates. The use of a pseudo random hashing
    * function resolves the concern of a denial of service attack by exploiting the hash codes.
@@ -58,6 +79,8 @@ final class FrequencySketch<E> {
    * http://arxiv.org/pdf/1512.00727.pdf
    * [3] Denial of Service via Algorithmic Complexity Attack
    * https://www.usenix.org/legacy/events/sec03/tech/full_papers/crosby/crosby.pdf
+   * [4] Cache-, Hash- and Space-Efficient Bloom Filters
+   * http://algo2.iti.kit.edu/documents/cacheefficientbloomfilters-jea.pdf
    */
 
   static final long[] SEED = new long[] { // A mixture of seeds from FNV-1a, CityHash, and Murmur3
@@ -65,9 +88,34 @@ final class FrequencySketch<E> {
   static final long RESET_MASK = 0x7777777777777777L;
   static final long ONE_MASK = 0x1111111111111111L;
 
+  /** The table length (512 KB) at which the counters are laid out in 64-byte blocks. */
+  static final int BLOCKED_TABLE_THRESHOLD = 1 << 16;
+  /** The number of longs in a 64-byte block. */
+  static final int BLOCK_SHIFT = 3;
+  /** The table length (512 KB) at which the aging is performed incrementally. */
+  static final int INCREMENTAL_RESET_THRESHOLD = 1 << 16;
+  /** The maximum number of table slots (32 KB) that are halved by an incremental aging step. */
+  static final int RESET_STEP = 1 << 12;
+
+  /** The false positive probability of the doorkeeper. */
+  static final double DOORKEEPER_FPP = 0.1d;
+  /** The multiple of the maximum size indicating the expected number of doorkeeper insertions. */
+  static final int DOORKEEPER_INSERTIONS_MULTIPLIER = 3;
+  static final int BITS_PER_LONG_SHIFT = 6; // 64-bits
+  static final int BITS_PER_LONG_MASK = Long.SIZE - 1;
+
+  final boolean useDoorkeeper;
   final int randomSeed;
 
+  long[] doorkeeper;
+  int doorkeeperMask;
+
   int sampleSize;
+  boolean incremental;
+  int resetOddCount;
+  int resetIndex;
+  boolean blocked;
+  int blockMask;
   int tableMask;
   long[] table;
   int size;
@@ -76,9 +124,21 @@ final class FrequencySketch<E> {
    * Creates a lazily initialized frequency sketch, requiring {@link #ensureCapacity} be called
    * when the maximum size of the cache has been determined.
    */
-  @SuppressWarnings("NullAway.Init")
   public FrequencySketch() {
+    this(/* doorkeeper */ false);
+  }
+
+  /**
+   * Creates a lazily initialized frequency sketch, requiring {@link #ensureCapacity} be called
+   * when the maximum size of the cache has been determined.
+   *
+   * @param doorkeeper if the first occurrence of an element should be recorded by a membership
+   *        filter instead of the counters, which allows for a smaller counter table
+   */
+  @SuppressWarnings("NullAway.Init")
+  public FrequencySketch(boolean doorkeeper) {
     this.randomSeed = 1 | ThreadLocalRandom.current().nextInt();
+    this.useDoorkeeper = doorkeeper;
   }
 
   /**
@@ -91,19 +151,41 @@ final class FrequencySketch<E> {
   public void ensureCapacity(@NonNegative long maximumSize) {
     requireArgument(maximumSize >= 0);
     int maximum = (int) Math.min(maximumSize, Integer.MAX_VALUE >>> 1);
-    if ((table != null) && (table.length >= maximum)) {
+    int counters = useDoorkeeper ? (maximum >>> 1) : maximum;
+    if ((table != null) && (table.length >= counters)) {
       return;
     }
 
-    table = new long[(maximum == 0) ? 1 : ceilingNextPowerOfTwo(maximum)];
+    table = new long[(counters == 0) ? 1 : ceilingNextPowerOfTwo(counters)];
     tableMask = Math.max(0, table.length - 1);
+    blockMask = Math.max(0, (table.length >>> BLOCK_SHIFT) - 1);
+    blocked = (table.length >= BLOCKED_TABLE_THRESHOLD);
+    incremental = (table.length >= INCREMENTAL_RESET_THRESHOLD);
+    resetIndex = table.length;
     sampleSize = (maximumSize == 0) ? 10 : (10 * maximum);
     if (sampleSize <= 0) {
       sampleSize = Integer.MAX_VALUE;
     }
+    if (useDoorkeeper) {
+      ensureDoorkeeperCapacity(maximum);
+    }
     size = 0;
   }
 
+  /**
+   * Allocates the doorkeeper's bit array to satisfy the false positive probability for the
+   * expected number of insertions within a sample period.
+   *
+   * @param maximum the maximum size of the cache
+   */
+  void ensureDoorkeeperCapacity(int maximum) {
+    double bitsPerInsertion = -Math.log(DOORKEEPER_FPP) / (Math.log(2) * Math.log(2));
+    long bits = (long) (bitsPerInsertion * DOORKEEPER_INSERTIONS_MULTIPLIER * maximum);
+    int length = (int) Math.min(bits >>> BITS_PER_LONG_SHIFT, Integer.MAX_VALUE >>> 1);
+    doorkeeper = new long[(length <= 1) ? 1 : ceilingNextPowerOfTwo(length)];
+    doorkeeperMask = doorkeeper.length - 1;
+  }
+
   /**
    * Returns if the sketch has not yet been initialized, requiring that {@link #ensureCapacity} is
    * called before it begins to track frequencies.
@@ -123,14 +205,29 @@ final class FrequencySketch<E> {
     if (isNotInitialized()) {
       return 0;
     }
+    return frequencyOf(spread(e.hashCode()));
+  }
 
-    int hash = spread(e.hashCode());
-    int start = (hash & 3) << 2;
-    int frequency = Integer.MAX_VALUE;
-    for (int i = 0; i < 4; i++) {
-      int index = indexOf(hash, i);
-      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
-      frequency = Math.min(frequency, count);
+  /**
+   * Returns the estimated number of occurrences of a primitive key, up to the maximum (15). The
+   * key is hashed directly, which avoids boxing, and is counted as equal to its boxed {@link Long}.
+   *
+   * @param key the key to count occurrences of
+   * @return the estimated number of occurrences of the key; possibly zero but never negative
+   */
+  @NonNegative
+  public int frequencyLong(long key) {
+    if (isNotInitialized()) {
+      return 0;
+    }
+    return frequencyOf(spread(Long.hashCode(key)));
+  }
+
+  /** Returns the estimated number of occurrences of the element with the spread hash. */
+  int frequencyOf(int hash) {
+    int frequency = blocked ? blockFrequency(hash) : tableFrequency(hash);
+    if ((doorkeeper != null) && (frequency < 15) && doorkeeperContains(hash)) {
+      frequency++;
     }
     return frequency;
   }
@@ -146,8 +243,61 @@ final class FrequencySketch<E> {
     if (isNotInitialized()) {
       return;
     }
+    incrementOf(spread(e.hashCode()));
+  }
+
+  /**
+   * Increments the popularity of a primitive key if it does not exceed the maximum (15). The key
+   * is hashed directly, which avoids boxing, and is counted as equal to its boxed {@link Long}.
+   *
+   * @param key the key to add
+   */
+  public void incrementLong(long key) {
+    if (isNotInitialized()) {
+      return;
+    }
+    incrementOf(spread(Long.hashCode(key)));
+  }
+
+  /** Increments the popularity of the element with the spread hash. */
+  void incrementOf(int hash) {
+    if ((doorkeeper != null) && doorkeeperPut(hash)) {
+      if (++size == sampleSize) {
+        age();
+      }
+      return;
+    }
+
+    boolean added = blocked ? blockIncrement(hash) : tableIncrement(hash);
+    if (added && (++size == sampleSize)) {
+      age();
+    }
+  }
+
+  /**
+   * Returns the estimated frequency from the counters spread across the table.
+   *
+   * @param hash the element's hash
+   * @return the minimum of the element's counters
+   */
+  int tableFrequency(int hash) {
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
 
-    int hash = spread(e.hashCode());
+  /**
+   * Increments the counters spread across the table.
+   *
+   * @param hash the element's hash
+   * @return if any counter was incremented
+   */
+  boolean tableIncrement(int hash) {
     int start = (hash & 3) << 2;
 
     // Loop unrolling improves throughput by 5m ops/s
@@ -160,10 +310,49 @@ final class FrequencySketch<E> {
     added |= incrementAt(index1, start + 1);
     added |= incrementAt(index2, start + 2);
     added |= incrementAt(index3, start + 3);
+    return added;
+  }
 
-    if (added && (++size == sampleSize)) {
-      reset();
+  /**
+   * Returns the estimated frequency from the counters within the element's block.
+   *
+   * @param hash the element's hash
+   * @return the minimum of the element's counters
+   */
+  int blockFrequency(int hash) {
+    int block = (hash & blockMask) << BLOCK_SHIFT;
+    int counterHash = rehash(hash);
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int h = counterHash >>> (i << 3);
+      int index = (h >>> 1) & 15;
+      int slot = block + (h & 1) + (i << 1);
+      int count = (int) ((table[slot] >>> (index << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
     }
+    return frequency;
+  }
+
+  /**
+   * Increments the counters within the element's block.
+   *
+   * @param hash the element's hash
+   * @return if any counter was incremented
+   */
+  boolean blockIncrement(int hash) {
+    int block = (hash & blockMask) << BLOCK_SHIFT;
+    int counterHash = rehash(hash);
+
+    int h0 = counterHash;
+    int h1 = counterHash >>> 8;
+    int h2 = counterHash >>> 16;
+    int h3 = counterHash >>> 24;
+
+    boolean added = incrementAt(block + (h0 & 1), (h0 >>> 1) & 15);
+    added |= incrementAt(block + (h1 & 1) + 2, (h1 >>> 1) & 15);
+    added |= incrementAt(block + (h2 & 1) + 4, (h2 >>> 1) & 15);
+    added |= incrementAt(block + (h3 & 1) + 6, (h3 >>> 1) & 15);
+    return added;
   }
 
   /**
@@ -183,7 +372,60 @@ final class FrequencySketch<E> {
     return false;
   }
 
-  /** Reduces every counter by half of its original value. */
+  /**
+   * Returns if the doorkeeper has recorded the element.
+   *
+   * @param item the element's hash
+   * @return if the element might have been recorded
+   */
+  boolean doorkeeperContains(int item) {
+    for (int i = 0; i < 4; i++) {
+      int hash = doorkeeperHash(item, i);
+      int index = (hash >>> BITS_PER_LONG_SHIFT) & doorkeeperMask;
+      if ((doorkeeper[index] & bitmask(hash)) == 0L) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Records the element in the doorkeeper.
+   *
+   * @param item the element's hash
+   * @return if the doorkeeper changed as a result of this operation
+   */
+  @SuppressWarnings("ShortCircuitBoolean")
+  boolean doorkeeperPut(int item) {
+    return doorkeeperSetAt(item, 0) | doorkeeperSetAt(item, 1)
+        | doorkeeperSetAt(item, 2) | doorkeeperSetAt(item, 3);
+  }
+
+  /**
+   * Sets the membership flag for the computed bit location.
+   *
+   * @param item the element's hash
+   * @param i the hash seed index
+   * @return if the membership changed as a result of this operation
+   */
+  boolean doorkeeperSetAt(int item, int i) {
+    int hash = doorkeeperHash(item, i);
+    int index = (hash >>> BITS_PER_LONG_SHIFT) & doorkeeperMask;
+    long previous = doorkeeper[index];
+    doorkeeper[index] |= bitmask(hash);
+    return (doorkeeper[index] != previous);
+  }
+
+  /** Ages the counters when the sample period ends, either immediately or incrementally. */
+  void age() {
+    if (incremental) {
+      startIncrementalReset();
+    } else {
+      reset();
+    }
+  }
+
+  /** Reduces every counter by half of its original value and clears the doorkeeper. */
   void reset() {
     int count = 0;
     for (int i = 0; i < table.length; i++) {
@@ -191,6 +433,66 @@ final class FrequencySketch<E> {
       table[i] = (table[i] >>> 1) & RESET_MASK;
     }
     size = (size >>> 1) - (count >>> 2);
+    if (doorkeeper != null) {
+      Arrays.fill(doorkeeper, 0L);
+    }
+    resetIndex = table.length;
+  }
+
+  /** Returns if an incremental reset is in progress. */
+  boolean isResetting() {
+    return !isNotInitialized() && (resetIndex < table.length);
+  }
+
+  /**
+   * Begins a sweep that halves the counters in chunks, completing the previous sweep if it is
+   * still in progress.
+   */
+  void startIncrementalReset() {
+    if (isResetting()) {
+      resetChunk(table.length);
+    }
+    size = (size >>> 1);
+    resetOddCount = 0;
+    resetIndex = 0;
+  }
+
+  /**
+   * Performs a bounded amount of the pending aging work, if an incremental reset is in progress.
+   * This is expected to be called by each maintenance cycle.
+   */
+  public void ageIncrementally() {
+    if (isResetting()) {
+      resetChunk(RESET_STEP);
+    }
+  }
+
+  /**
+   * Halves the counters of the next chunk of the table and clears the doorkeeper's corresponding
+   * portion. When the sweep completes the size is reduced by the number of odd counters found.
+   *
+   * @param step the maximum number of table slots to halve
+   */
+  void resetChunk(int step) {
+    int from = resetIndex;
+    int to = (int) Math.min(table.length, (long) from + step);
+
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      count += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    if (doorkeeper != null) {
+      int start = (int) (((long) from * doorkeeper.length) / table.length);
+      int end = (int) (((long) to * doorkeeper.length) / table.length);
+      Arrays.fill(doorkeeper, start, end, 0L);
+    }
+
+    resetOddCount += count;
+    resetIndex = to;
+    if (resetIndex == table.length) {
+      size = Math.max(0, size - (resetOddCount >>> 2));
+    }
   }
 
   /**
@@ -206,6 +508,39 @@ final class FrequencySketch<E> {
     return ((int) hash) & tableMask;
   }
 
+  /**
+   * Returns the doorkeeper's hash for the specified seed index. This uses the upper half of the
+   * seeded product, whereas the counter's index is primarily determined by the lower half.
+   *
+   * @param item the element's hash
+   * @param i the hash seed index
+   * @return the doorkeeper's hash
+   */
+  static int doorkeeperHash(int item, int i) {
+    long hash = SEED[i] * item;
+    return (int) (hash >>> 32);
+  }
+
+  /**
+   * Applies a hash function to determine the index of the bit.
+   *
+   * @param hash the seeded hash code
+   * @return the mask to the bit
+   */
+  static long bitmask(int hash) {
+    return 1L << (hash & BITS_PER_LONG_MASK);
+  }
+
+  /**
+   * Applies another round of hashing to select the counters within the block independently of the
+   * bits that selected the block.
+   */
+  static int rehash(int x) {
+    x *= 0x31848bab;
+    x ^= x >>> 14;
+    return x;
+  }
+
   /**
    * Applies a supplemental hash function to a given hashCode, which defends against poor quality
    * hash functions.
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link CacheInstrumentation} implementation that suppresses and logs any exception thrown by
+ * the delegate <tt>instrumentation</tt>.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@SuppressWarnings("PMD.AvoidDuplicateLiterals")
+final class GuardedCacheInstrumentation implements CacheInstrumentation {
+  static final Logger logger = Logger.getLogger(GuardedCacheInstrumentation.class.getName());
+
+  final CacheInstrumentation delegate;
+
+  GuardedCacheInstrumentation(CacheInstrumentation delegate) {
+    this.delegate = requireNonNull(delegate);
+  }
+
+  @Override
+  public void recordMaintenance(long durationNanos) {
+    try {
+      delegate.recordMaintenance(durationNanos);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by cache instrumentation", t);
+    }
+  }
+
+  @Override
+  public void recordEvictionLockWait(long waitNanos) {
+    try {
+      delegate.recordEvictionLockWait(waitNanos);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by cache instrumentation", t);
+    }
+  }
+
+  @Override
+  public void recordDroppedRead() {
+    try {
+      delegate.recordDroppedRead();
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by cache instrumentation", t);
+    }
+  }
+
+  @Override
+  public void recordWriteBufferRetry() {
+    try {
+      delegate.recordWriteBufferRetry();
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by cache instrumentation", t);
+    }
+  }
+
+  @Override
+  public void recordCallerRunsCleanup() {
+    try {
+      delegate.recordCallerRunsCleanup();
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by cache instrumentation", t);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return delegate.toString();
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.cache.Caffeine.UNSET_INT;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.github.benmanes.caffeine.cache.stats.Histogram;
+
+/**
+ * A loader that hedges slow loads and bounds their duration. If a load has not completed after the
+ * hedging delay then a second load is issued, the cache's future is completed by whichever load
+ * succeeds first, and the other load's future is cancelled. The delay is either fixed or follows a
+ * percentile of the observed load latencies. If the loads have not completed by the timeout then
+ * the cache's future fails with a {@link TimeoutException}.
+ * <p>
+ * The latencies are recorded into two log-linear {@link Histogram}s that are reset in turn after
+ * every window of samples. The older histogram holds the current window and the one before it, so
+ * the estimate taken from it follows the loader's recent performance. A load that is cancelled
+ * because the other one won is censored, as its elapsed time is only a lower bound of its latency,
+ * so that the estimate is not biased towards the faster loads. The delay is recalculated
+ * periodically rather than on every load.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class HedgingLoader<K, V> implements AsyncCacheLoader<K, V> {
+  /** The number of samples that are observed before the window is rotated. */
+  static final int SAMPLE_PERIOD = 1 << 10;
+  /** The shift that maps a sample's sequence number to its window. */
+  static final int SAMPLE_PERIOD_SHIFT = Integer.numberOfTrailingZeros(SAMPLE_PERIOD);
+  /**
+   * The number of successful samples that are observed before the adaptive delay is used, and the
+   * number of samples between recalculations of the delay.
+   */
+  static final int MINIMUM_SAMPLES = 1 << 5;
+  /** The indicator that a load should not be hedged. */
+  static final long NO_HEDGE = -1L;
+
+  final AsyncCacheLoader<? super K, V> delegate;
+  final double hedgePercentile;
+  final long hedgeDelayNanos;
+  final long timeoutNanos;
+  final Scheduler scheduler;
+  final Ticker ticker;
+
+  final Histogram[] completedLatencies;
+  final Histogram[] censoredLatencies;
+  final AtomicInteger samples;
+
+  volatile long adaptiveDelayNanos;
+
+  HedgingLoader(Caffeine<?, ?> builder, AsyncCacheLoader<? super K, V> delegate) {
+    this.hedgePercentile = builder.getHedgePercentile();
+    this.hedgeDelayNanos = builder.getHedgeDelayNanos();
+    this.timeoutNanos = builder.getLoadTimeoutNanos();
+    this.scheduler = builder.getBatchScheduler();
+    this.delegate = requireNonNull(delegate);
+    this.completedLatencies = new Histogram[] { new Histogram(), new Histogram() };
+    this.censoredLatencies = new Histogram[] { new Histogram(), new Histogram() };
+    this.samples = new AtomicInteger();
+    this.adaptiveDelayNanos = NO_HEDGE;
+    this.ticker = builder.getTicker();
+  }
+
+  @Override
+  public CompletableFuture<V> asyncLoad(K key, Executor executor) {
+    requireNonNull(key);
+    return hedge(() -> delegate.asyncLoad(key, executor), executor);
+  }
+
+  @Override
+  public CompletableFuture<Map<K, V>> asyncLoadAll(Iterable<? extends K> keys, Executor executor) {
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Map<K, V>> result = (CompletableFuture<Map<K, V>>)
+        (CompletableFuture<?>) delegate.asyncLoadAll(keys, executor);
+    return result;
+  }
+
+  @Override
+  public CompletableFuture<V> asyncReload(K key, V oldValue, Executor executor) {
+    requireNonNull(key);
+    requireNonNull(oldValue);
+    return hedge(() -> delegate.asyncReload(key, oldValue, executor), executor);
+  }
+
+  @Override
+  public CompletableFuture<Map<K, V>> asyncReloadAll(
+      Map<? extends K, ? extends V> oldValues, Executor executor) {
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Map<K, V>> result = (CompletableFuture<Map<K, V>>)
+        (CompletableFuture<?>) delegate.asyncReloadAll(oldValues, executor);
+    return result;
+  }
+
+  /**
+   * Returns a future that is completed by the first successful load, where a second load is issued
+   * if the first is slow, and that fails if the loads do not complete before the timeout.
+   */
+  @SuppressWarnings("FutureReturnValueIgnored")
+  CompletableFuture<V> hedge(Supplier<CompletableFuture<V>> load, Executor executor) {
+    CompletableFuture<V> result = new CompletableFuture<>();
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    CompletableFuture<V>[] attempts = new CompletableFuture[2];
+    AtomicInteger pending = new AtomicInteger(1);
+
+    attempts[0] = attempt(load, result, pending);
+    if (result.isDone()) {
+      return result;
+    }
+
+    long delay = hedgeDelay();
+    if (delay != NO_HEDGE) {
+      Future<?> hedge = scheduler.schedule(executor, () -> {
+        if (result.isDone()) {
+          return;
+        }
+        pending.incrementAndGet();
+        try {
+          attempts[1] = attempt(load, result, pending);
+        } catch (Throwable t) {
+          onComplete(result, pending, /* value */ null, t);
+          return;
+        }
+        if (result.isDone()) {
+          attempts[1].cancel(/* mayInterruptIfRunning */ false);
+        }
+      }, delay, TimeUnit.NANOSECONDS);
+      result.whenComplete((value, error) -> hedge.cancel(/* mayInterruptIfRunning */ false));
+    }
+    if (timeoutNanos != UNSET_INT) {
+      Future<?> timeout = scheduler.schedule(executor, () -> result.completeExceptionally(
+          new TimeoutException("Load did not complete within " + timeoutNanos + "ns")),
+          timeoutNanos, TimeUnit.NANOSECONDS);
+      result.whenComplete((value, error) -> timeout.cancel(/* mayInterruptIfRunning */ false));
+    }
+    result.whenComplete((value, error) -> {
+      for (CompletableFuture<V> attempt : attempts) {
+        if ((attempt != null) && !attempt.isDone()) {
+          attempt.cancel(/* mayInterruptIfRunning */ false);
+        }
+      }
+    });
+    return result;
+  }
+
+  /** Issues a load that completes the result if successful, or if it is the last to fail. */
+  @SuppressWarnings("FutureReturnValueIgnored")
+  CompletableFuture<V> attempt(Supplier<CompletableFuture<V>> load,
+      CompletableFuture<V> result, AtomicInteger pending) {
+    long startTime = (hedgePercentile == UNSET_INT) ? 0L : ticker.read();
+    CompletableFuture<V> future = requireNonNull(load.get());
+    future.whenComplete((value, error) -> {
+      if (hedgePercentile != UNSET_INT) {
+        if (error == null) {
+          recordLatency(ticker.read() - startTime, /* censored */ false);
+        } else if (future.isCancelled()) {
+          recordLatency(ticker.read() - startTime, /* censored */ true);
+        }
+      }
+      onComplete(result, pending, value, error);
+    });
+    return future;
+  }
+
+  /** Completes the result with a successful load, or with the failure if no loads are pending. */
+  void onComplete(CompletableFuture<V> result, AtomicInteger pending,
+      @Nullable V value, @Nullable Throwable error) {
+    if (error == null) {
+      result.complete(value);
+    } else if (pending.decrementAndGet() == 0) {
+      result.completeExceptionally(error);
+    }
+  }
+
+  /** Returns the delay before a second load is issued, or {@link #NO_HEDGE} if not hedging. */
+  long hedgeDelay() {
+    if (hedgeDelayNanos != UNSET_INT) {
+      return hedgeDelayNanos;
+    } else if (hedgePercentile == UNSET_INT) {
+      return NO_HEDGE;
+    }
+    return adaptiveDelayNanos;
+  }
+
+  /**
+   * Records the elapsed time of a load, where a censored load was cancelled before it completed.
+   * The sample is recorded into both histograms, the delay is recalculated from the older one every
+   * {@link #MINIMUM_SAMPLES} samples, and the older one is reset after every {@link #SAMPLE_PERIOD}
+   * samples. The reset is not atomic with concurrent recordings, which may rarely lose a sample.
+   */
+  void recordLatency(long latency, boolean censored) {
+    Histogram[] histograms = censored ? censoredLatencies : completedLatencies;
+    histograms[0].record(latency);
+    histograms[1].record(latency);
+
+    int sample = samples.incrementAndGet();
+    if ((sample & (MINIMUM_SAMPLES - 1)) != 0) {
+      return;
+    }
+
+    int older = ((sample - 1) >>> SAMPLE_PERIOD_SHIFT) & 1;
+    adaptiveDelayNanos = (completedLatencies[older].count() < MINIMUM_SAMPLES)
+        ? NO_HEDGE
+        : completedLatencies[older].percentile(hedgePercentile, censoredLatencies[older]);
+    if ((sample & (SAMPLE_PERIOD - 1)) == 0) {
+      completedLatencies[older].reset();
+      censoredLatencies[older].reset();
+    }
+  }
+}
@@ -62,7 +62,15 @@ interface LocalAsyncCache<K, V> extends AsyncCache<K, V> {
 
   @Override
   default @Nullable CompletableFuture<V> getIfPresent(@NonNull Object key) {
-    return cache().getIfPresent(key, /* recordStats */ true);
+    if (!cache().isRecordingOperationLatency()) {
+      return cache().getIfPresent(key, /* recordStats */ true);
+    }
+    long startTime = cache().statsTicker().read();
+    try {
+      return cache().getIfPresent(key, /* recordStats */ true);
+    } finally {
+      cache().statsCounter().recordGet(cache().statsTicker().read() - startTime);
+    }
   }
 
   @Override
@@ -74,9 +82,19 @@ interface LocalAsyncCache<K, V> extends AsyncCache<K, V> {
   }
 
   @Override
+  @SuppressWarnings("FutureReturnValueIgnored")
   default CompletableFuture<V> get(K key,
       BiFunction<? super K, Executor, CompletableFuture<V>> mappingFunction) {
-    return get(key, mappingFunction, /* recordStats */ true);
+    if (!cache().isRecordingOperationLatency()) {
+      return get(key, mappingFunction, /* recordStats */ true);
+    }
+
+    // the latency includes the time to load the value, as it does for a synchronous cache
+    long startTime = cache().statsTicker().read();
+    CompletableFuture<V> future = get(key, mappingFunction, /* recordStats */ true);
+    future.whenComplete((value, error) ->
+        cache().statsCounter().recordGet(cache().statsTicker().read() - startTime));
+    return future;
   }
 
   @SuppressWarnings({"FutureReturnValueIgnored", "NullAway"})
@@ -125,6 +143,9 @@ interface LocalAsyncCache<K, V> extends AsyncCache<K, V> {
     AtomicBoolean completed = new AtomicBoolean();
     long startTime = cache().statsTicker().read();
     cache().put(key, valueFuture);
+    if (cache().isRecordingOperationLatency()) {
+      cache().statsCounter().recordPut(cache().statsTicker().read() - startTime);
+    }
     valueFuture.whenComplete((value, error) -> {
       if (!completed.compareAndSet(false, true)) {
         // Ignore multiple invocations due to ForkJoinPool retrying on delays
@@ -168,7 +189,7 @@ interface LocalAsyncCache<K, V> extends AsyncCache<K, V> {
 
     @Override
     public @Nullable V getIfPresent(Object key) {
-      CompletableFuture<V> future = asyncCache().cache().getIfPresent(key, /* recordStats */ true);
+      CompletableFuture<V> future = asyncCache().getIfPresent(key);
       return Async.getIfReady(future);
     }
 
@@ -221,7 +242,17 @@ interface LocalAsyncCache<K, V> extends AsyncCache<K, V> {
     @Override
     public void put(K key, V value) {
       requireNonNull(value);
-      asyncCache().cache().put(key, CompletableFuture.completedFuture(value));
+      LocalCache<K, CompletableFuture<V>> cache = asyncCache().cache();
+      if (!cache.isRecordingOperationLatency()) {
+        cache.put(key, CompletableFuture.completedFuture(value));
+        return;
+      }
+      long startTime = cache.statsTicker().read();
+      try {
+        cache.put(key, CompletableFuture.completedFuture(value));
+      } finally {
+        cache.statsCounter().recordPut(cache.statsTicker().read() - startTime);
+      }
     }
 
     @Override
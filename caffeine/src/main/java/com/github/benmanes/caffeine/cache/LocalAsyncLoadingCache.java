@@ -28,6 +28,7 @@ import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,17 +47,26 @@ abstract class LocalAsyncLoadingCache<K, V>
 
   final boolean canBulkLoad;
   final AsyncCacheLoader<K, V> loader;
+  final @Nullable CoalescingBulkLoader<K, V> coalescer;
+  final @Nullable HedgingLoader<K, V> hedger;
 
   @Nullable LoadingCacheView<K, V> cacheView;
 
   @SuppressWarnings("unchecked")
-  LocalAsyncLoadingCache(AsyncCacheLoader<? super K, V> loader) {
+  LocalAsyncLoadingCache(Caffeine<?, ?> builder, AsyncCacheLoader<? super K, V> loader) {
     this.loader = (AsyncCacheLoader<K, V>) loader;
     this.canBulkLoad = canBulkLoad(loader);
+    this.coalescer = builder.coalescesLoads()
+        ? new CoalescingBulkLoader<>(builder, loader, () -> cache().statsCounter(),
+            (key, value) -> cache().put(key, CompletableFuture.completedFuture(value)))
+        : null;
+    this.hedger = (builder.hedgesLoads() || builder.timesOutLoads())
+        ? new HedgingLoader<>(builder, (coalescer == null) ? loader : coalescer)
+        : null;
   }
 
   /** Returns whether the supplied cache loader has bulk load functionality. */
-  private static boolean canBulkLoad(AsyncCacheLoader<?, ?> loader) {
+  static boolean canBulkLoad(AsyncCacheLoader<?, ?> loader) {
     try {
       Class<?> defaultLoaderClass = AsyncCacheLoader.class;
       if (loader instanceof CacheLoader<?, ?>) {
@@ -80,9 +90,42 @@ abstract class LocalAsyncLoadingCache<K, V>
     }
   }
 
+  /** Returns whether the supplied cache loader has bulk reload functionality. */
+  static boolean canBulkReload(AsyncCacheLoader<?, ?> loader) {
+    try {
+      Class<?> defaultLoaderClass = AsyncCacheLoader.class;
+      if (loader instanceof CacheLoader<?, ?>) {
+        defaultLoaderClass = CacheLoader.class;
+
+        Method classReloadAll = loader.getClass().getMethod("reloadAll", Map.class);
+        Method defaultReloadAll = CacheLoader.class.getMethod("reloadAll", Map.class);
+        if (!classReloadAll.equals(defaultReloadAll)) {
+          return true;
+        }
+      }
+
+      Method classAsyncReloadAll = loader.getClass().getMethod(
+          "asyncReloadAll", Map.class, Executor.class);
+      Method defaultAsyncReloadAll = defaultLoaderClass.getMethod(
+          "asyncReloadAll", Map.class, Executor.class);
+      return !classAsyncReloadAll.equals(defaultAsyncReloadAll);
+    } catch (NoSuchMethodException | SecurityException e) {
+      logger.log(Level.WARNING, "Cannot determine if CacheLoader can bulk reload", e);
+      return false;
+    }
+  }
+
   @Override
   public CompletableFuture<V> get(K key) {
-    return get(key, loader::asyncLoad);
+    return get(key, mappingFunction());
+  }
+
+  /** Returns the function that loads an absent entry. */
+  BiFunction<? super K, Executor, CompletableFuture<V>> mappingFunction() {
+    if (hedger != null) {
+      return hedger::asyncLoad;
+    }
+    return (coalescer == null) ? loader::asyncLoad : coalescer::asyncLoad;
   }
 
   @Override
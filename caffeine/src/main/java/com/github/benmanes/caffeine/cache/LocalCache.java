@@ -15,6 +15,7 @@
  */
 package com.github.benmanes.caffeine.cache;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
@@ -40,6 +41,11 @@ interface LocalCache<K, V> extends ConcurrentMap<K, V> {
   /** Returns the {@link StatsCounter} used by this cache. */
   @NonNull StatsCounter statsCounter();
 
+  /** Returns whether this cache records the latencies of its read and write operations. */
+  default boolean isRecordingOperationLatency() {
+    return isRecordingStats() && statsCounter().isRecordingOperationLatency();
+  }
+
   /** Returns whether this cache notifies when an entry is removed. */
   boolean hasRemovalListener();
 
@@ -49,6 +55,9 @@ interface LocalCache<K, V> extends ConcurrentMap<K, V> {
   /** Asynchronously sends a removal notification to the listener. */
   void notifyRemoval(@Nullable K key, @Nullable V value, RemovalCause cause);
 
+  /** Asynchronously sends the removal notifications to the listener, in order, as a single task. */
+  void notifyRemovals(@NonNull List<RemovalNotification<K, V>> notifications);
+
   /** Returns the {@link Executor} used by this cache. */
   @NonNull
   Executor executor();
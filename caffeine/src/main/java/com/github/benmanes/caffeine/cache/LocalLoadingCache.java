@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,6 +50,9 @@ interface LocalLoadingCache<K, V> extends LocalManualCache<K, V>, LoadingCache<K
   /** Returns whether the cache loader supports bulk loading. */
   boolean hasBulkLoader();
 
+  /** Returns the loads in progress for absent entries, used to deduplicate bulk loads. */
+  ConcurrentMap<K, CompletableFuture<V>> inFlightLoads();
+
   /** Returns whether the supplied cache loader has bulk load functionality. */
   default boolean hasLoadAll(CacheLoader<? super K, V> loader) {
     try {
@@ -63,7 +67,15 @@ interface LocalLoadingCache<K, V> extends LocalManualCache<K, V>, LoadingCache<K
 
   @Override
   default @Nullable V get(K key) {
-    return cache().computeIfAbsent(key, mappingFunction());
+    if (!cache().isRecordingOperationLatency()) {
+      return cache().computeIfAbsent(key, mappingFunction());
+    }
+    long startTime = cache().statsTicker().read();
+    try {
+      return cache().computeIfAbsent(key, mappingFunction());
+    } finally {
+      cache().statsCounter().recordGet(cache().statsTicker().read() - startTime);
+    }
   }
 
   @Override
@@ -96,48 +108,93 @@ interface LocalLoadingCache<K, V> extends LocalManualCache<K, V>, LoadingCache<K
     return Collections.unmodifiableMap(result);
   }
 
+  /**
+   * Loads the value for an absent entry while registering the load as in-flight, or waits for the
+   * result of the bulk load that is already in progress for the key. This is performed within the
+   * entry's computation, so a bulk load completes its in-flight loads before inserting the loaded
+   * entries into the cache.
+   */
+  default @Nullable V loadOrJoin(K key, Function<K, V> loadingFunction) {
+    CompletableFuture<V> proxy = new CompletableFuture<>();
+    CompletableFuture<V> inFlight = inFlightLoads().putIfAbsent(key, proxy);
+    if (inFlight != null) {
+      return join(inFlight);
+    }
+    try {
+      V value = loadingFunction.apply(key);
+      proxy.complete(value);
+      return value;
+    } catch (Throwable t) {
+      proxy.completeExceptionally(t);
+      throw t;
+    } finally {
+      inFlightLoads().remove(key, proxy);
+    }
+  }
+
   /** Batch loads the missing entries. */
   default Map<K, V> loadInBulk(Iterable<? extends K> keys) {
     Map<K, V> found = cache().getAllPresent(keys);
-    Set<K> keysToLoad = new LinkedHashSet<>();
+    Map<K, CompletableFuture<V>> proxies = new LinkedHashMap<>();
+    Map<K, CompletableFuture<V>> inFlight = new LinkedHashMap<>();
     for (K key : keys) {
-      if (!found.containsKey(key)) {
-        keysToLoad.add(key);
+      if (found.containsKey(key) || proxies.containsKey(key) || inFlight.containsKey(key)) {
+        continue;
+      }
+      CompletableFuture<V> proxy = new CompletableFuture<>();
+      CompletableFuture<V> future = inFlightLoads().putIfAbsent(key, proxy);
+      if (future == null) {
+        proxies.put(key, proxy);
+      } else {
+        inFlight.put(key, future);
       }
     }
-    if (keysToLoad.isEmpty()) {
+    if (proxies.isEmpty() && inFlight.isEmpty()) {
       return found;
     }
 
     Map<K, V> result = new LinkedHashMap<>(found);
-    bulkLoad(keysToLoad, result);
+    if (!proxies.isEmpty()) {
+      bulkLoad(proxies, result);
+    }
+    inFlight.forEach((key, future) -> {
+      V value = join(future);
+      if (value != null) {
+        result.put(key, value);
+      }
+    });
     return Collections.unmodifiableMap(result);
   }
 
   /**
    * Performs a non-blocking bulk load of the missing keys. Any missing entry that materializes
-   * during the load are replaced when the loaded entries are inserted into the cache.
+   * during the load are replaced when the loaded entries are inserted into the cache. The in-flight
+   * loads are completed before the insertion so that any computation waiting on them may proceed.
    */
-  default void bulkLoad(Set<K> keysToLoad, Map<K, V> result) {
+  default void bulkLoad(Map<K, CompletableFuture<V>> proxies, Map<K, V> result) {
     boolean success = false;
+    Throwable error = null;
     long startTime = cache().statsTicker().read();
     try {
       @SuppressWarnings("unchecked")
-      Map<K, V> loaded = (Map<K, V>) cacheLoader().loadAll(keysToLoad);
+      Map<K, V> loaded = (Map<K, V>) cacheLoader().loadAll(proxies.keySet());
+      proxies.forEach((key, proxy) -> proxy.complete(loaded.get(key)));
       loaded.forEach((key, value) -> {
         cache().put(key, value, /* notifyWriter */ false);
       });
-      for (K key : keysToLoad) {
+      for (K key : proxies.keySet()) {
         V value = loaded.get(key);
         if (value != null) {
           result.put(key, value);
         }
       }
       success = !loaded.isEmpty();
-    } catch (RuntimeException e) {
+    } catch (RuntimeException | Error e) {
+      error = e;
       throw e;
     } catch (Exception e) {
-      throw new CompletionException(e);
+      error = new CompletionException(e);
+      throw (CompletionException) error;
     } finally {
       long loadTime = cache().statsTicker().read() - startTime;
       if (success) {
@@ -145,6 +202,27 @@ interface LocalLoadingCache<K, V> extends LocalManualCache<K, V>, LoadingCache<K
       } else {
         cache().statsCounter().recordLoadFailure(loadTime);
       }
+      for (Map.Entry<K, CompletableFuture<V>> entry : proxies.entrySet()) {
+        if (error != null) {
+          entry.getValue().completeExceptionally(error);
+        }
+        inFlightLoads().remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /** Waits for the in-flight load to complete and rethrows its failure, if any. */
+  @SuppressWarnings("PMD.PreserveStackTrace")
+  static <V> @Nullable V join(CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
     }
   }
 
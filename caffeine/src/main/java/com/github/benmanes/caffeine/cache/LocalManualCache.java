@@ -46,12 +46,28 @@ interface LocalManualCache<K, V> extends Cache<K, V> {
 
   @Override
   default @Nullable V getIfPresent(Object key) {
-    return cache().getIfPresent(key, /* recordStats */ true);
+    if (!cache().isRecordingOperationLatency()) {
+      return cache().getIfPresent(key, /* recordStats */ true);
+    }
+    long startTime = cache().statsTicker().read();
+    try {
+      return cache().getIfPresent(key, /* recordStats */ true);
+    } finally {
+      cache().statsCounter().recordGet(cache().statsTicker().read() - startTime);
+    }
   }
 
   @Override
   default @Nullable V get(K key, Function<? super K, ? extends V> mappingFunction) {
-    return cache().computeIfAbsent(key, mappingFunction);
+    if (!cache().isRecordingOperationLatency()) {
+      return cache().computeIfAbsent(key, mappingFunction);
+    }
+    long startTime = cache().statsTicker().read();
+    try {
+      return cache().computeIfAbsent(key, mappingFunction);
+    } finally {
+      cache().statsCounter().recordGet(cache().statsTicker().read() - startTime);
+    }
   }
 
   @Override
@@ -61,7 +77,16 @@ interface LocalManualCache<K, V> extends Cache<K, V> {
 
   @Override
   default void put(K key, V value) {
-    cache().put(key, value);
+    if (!cache().isRecordingOperationLatency()) {
+      cache().put(key, value);
+      return;
+    }
+    long startTime = cache().statsTicker().read();
+    try {
+      cache().put(key, value);
+    } finally {
+      cache().statsCounter().recordPut(cache().statsTicker().read() - startTime);
+    }
   }
 
   @Override
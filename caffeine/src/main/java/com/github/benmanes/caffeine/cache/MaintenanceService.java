@@ -0,0 +1,321 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.cache.Caffeine.requireArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.checkerframework.checker.index.qual.Positive;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+
+/**
+ * A small, fixed set of threads that perform the maintenance work of many caches. By default a
+ * cache submits its maintenance task to its
+ * {@link Caffeine#executor(java.util.concurrent.Executor) executor} whenever its read or write
+ * buffers need to be drained, so an application with many caches may crowd its executor with
+ * maintenance tasks that compete with the application's work and with each other. A cache that is
+ * built with {@link Caffeine#maintenanceService(MaintenanceService)} instead queues itself with
+ * this service.
+ * <p>
+ * The threads drain the cache with the most buffered work first, except that a cache which has
+ * waited for longer than a short bound is drained in the order that it was queued, so that a busy
+ * cache cannot starve the quiet ones. The time spent performing the maintenance, and the lag
+ * between a cache requesting the maintenance and a thread starting it, are recorded per cache and
+ * may be inspected by {@link #metrics(Cache)}.
+ * <p>
+ * After {@link #shutdown()} the threads complete the queued work and terminate, and the caches then
+ * perform their maintenance on the calling threads.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class MaintenanceService {
+  static final Logger logger = Logger.getLogger(MaintenanceService.class.getName());
+  /** The lag after which a queued cache is drained ahead of the caches with more work. */
+  static final long MAXIMUM_LAG = TimeUnit.MILLISECONDS.toNanos(10);
+
+  final ReentrantLock lock;
+  final Condition notEmpty;
+  final List<Thread> threads;
+
+  @GuardedBy("lock")
+  final List<Registration> pending;
+  @GuardedBy("lock")
+  boolean shutdown;
+
+  MaintenanceService(int threadCount, ThreadFactory threadFactory) {
+    lock = new ReentrantLock();
+    pending = new ArrayList<>();
+    notEmpty = lock.newCondition();
+    threads = new ArrayList<>(threadCount);
+    for (int i = 0; i < threadCount; i++) {
+      Thread thread = threadFactory.newThread(this::work);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  /**
+   * Returns a maintenance service that uses the given number of daemon threads.
+   *
+   * @param threads the number of threads that perform the maintenance work
+   * @return a maintenance service
+   * @throws IllegalArgumentException if {@code threads} is not positive
+   */
+  public static @NonNull MaintenanceService create(@Positive int threads) {
+    AtomicInteger count = new AtomicInteger();
+    return create(threads, runnable -> {
+      Thread thread = new Thread(runnable, "Caffeine-Maintenance-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns a maintenance service that uses the given number of threads, created by the factory.
+   *
+   * @param threads the number of threads that perform the maintenance work
+   * @param threadFactory the factory to create the threads with
+   * @return a maintenance service
+   * @throws IllegalArgumentException if {@code threads} is not positive
+   * @throws NullPointerException if the thread factory is null
+   */
+  public static @NonNull MaintenanceService create(
+      @Positive int threads, @NonNull ThreadFactory threadFactory) {
+    requireArgument(threads > 0, "threads must be positive: %s", threads);
+    return new MaintenanceService(threads, requireNonNull(threadFactory));
+  }
+
+  /**
+   * Returns the maintenance metrics of the cache, if it was built with this service.
+   *
+   * @param cache the cache whose maintenance is performed by this service
+   * @return the metrics of the cache, or empty if the cache is not maintained by this service
+   */
+  public @NonNull Optional<Metrics> metrics(@NonNull Cache<?, ?> cache) {
+    LocalCache<?, ?> localCache = null;
+    if (cache instanceof LocalManualCache<?, ?>) {
+      localCache = ((LocalManualCache<?, ?>) cache).cache();
+    } else if (cache instanceof LocalAsyncCache.AbstractCacheView<?, ?>) {
+      localCache = ((LocalAsyncCache.AbstractCacheView<?, ?>) cache).asyncCache().cache();
+    }
+    if (localCache instanceof BoundedLocalCache<?, ?>) {
+      Registration registration = ((BoundedLocalCache<?, ?>) localCache).maintenanceRegistration;
+      if ((registration != null) && (registration.service == this)) {
+        return Optional.of(registration.metrics);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Initiates an orderly shutdown where the queued maintenance is performed, but no new requests
+   * will be accepted.
+   */
+  public void shutdown() {
+    lock.lock();
+    try {
+      shutdown = true;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns if this service has been shut down. */
+  public boolean isShutdown() {
+    lock.lock();
+    try {
+      return shutdown;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns a registration through which the cache requests its maintenance. */
+  Registration register(BoundedLocalCache<?, ?> cache) {
+    return new Registration(this, cache);
+  }
+
+  /** Queues the cache for maintenance and returns if accepted, or false if shut down. */
+  boolean schedule(Registration registration) {
+    lock.lock();
+    try {
+      if (shutdown) {
+        return false;
+      }
+      registration.scheduledTime = System.nanoTime();
+      pending.add(registration);
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Performs the queued maintenance until the service is shut down and the queue is empty. */
+  void work() {
+    for (;;) {
+      Registration registration = take();
+      if (registration == null) {
+        return;
+      }
+      registration.run();
+    }
+  }
+
+  /**
+   * Returns the queued cache with the most buffered work, preferring the earliest queued, or null
+   * if the service was shut down and no work remains. The earliest queued cache is returned
+   * instead if it has waited for longer than the {@link #MAXIMUM_LAG}.
+   */
+  @Nullable Registration take() {
+    lock.lock();
+    try {
+      while (pending.isEmpty()) {
+        if (shutdown) {
+          return null;
+        }
+        notEmpty.awaitUninterruptibly();
+      }
+      // the queue is in the order of the requests, as a cache is queued at most once at a time
+      if ((System.nanoTime() - pending.get(0).scheduledTime) > MAXIMUM_LAG) {
+        return pending.remove(0);
+      }
+      int index = 0;
+      int maxPendingWork = -1;
+      for (int i = 0; i < pending.size(); i++) {
+        int pendingWork = pending.get(i).cache.pendingWork();
+        if (pendingWork > maxPendingWork) {
+          maxPendingWork = pendingWork;
+          index = i;
+        }
+      }
+      return pending.remove(index);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{threads=" + threads.size()
+        + ", shutdown=" + isShutdown() + "}";
+  }
+
+  /** The association of a cache with the service. */
+  static final class Registration implements Runnable {
+    final BoundedLocalCache<?, ?> cache;
+    final MaintenanceService service;
+    final Metrics metrics;
+
+    volatile long scheduledTime;
+
+    Registration(MaintenanceService service, BoundedLocalCache<?, ?> cache) {
+      this.metrics = new Metrics();
+      this.service = service;
+      this.cache = cache;
+    }
+
+    /** Queues the cache for maintenance and returns if accepted, or false if shut down. */
+    boolean schedule() {
+      return service.schedule(this);
+    }
+
+    @Override
+    public void run() {
+      long startTime = System.nanoTime();
+      try {
+        cache.performCleanUp(/* ignored */ null);
+      } catch (Throwable t) {
+        logger.log(Level.SEVERE, "Exception thrown when performing the maintenance task", t);
+      }
+      long endTime = System.nanoTime();
+      metrics.record(startTime - scheduledTime, endTime - startTime);
+    }
+  }
+
+  /** The statistics about the maintenance of a cache by the service. */
+  public static final class Metrics {
+    long maintenanceCount;
+    long totalMaintenanceTime;
+    long maxMaintenanceTime;
+    long totalLag;
+    long maxLag;
+
+    Metrics() {}
+
+    synchronized void record(long lag, long maintenanceTime) {
+      maintenanceCount++;
+      totalLag += lag;
+      maxLag = Math.max(maxLag, lag);
+      totalMaintenanceTime += maintenanceTime;
+      maxMaintenanceTime = Math.max(maxMaintenanceTime, maintenanceTime);
+    }
+
+    /** Returns the number of times that the service performed the cache's maintenance. */
+    public synchronized long maintenanceCount() {
+      return maintenanceCount;
+    }
+
+    /** Returns the total number of nanoseconds spent performing the cache's maintenance. */
+    public synchronized long totalMaintenanceTime() {
+      return totalMaintenanceTime;
+    }
+
+    /** Returns the longest number of nanoseconds spent performing the cache's maintenance. */
+    public synchronized long maxMaintenanceTime() {
+      return maxMaintenanceTime;
+    }
+
+    /**
+     * Returns the total number of nanoseconds between the cache requesting its maintenance and the
+     * service starting it.
+     */
+    public synchronized long totalLag() {
+      return totalLag;
+    }
+
+    /**
+     * Returns the longest number of nanoseconds between the cache requesting its maintenance and
+     * the service starting it.
+     */
+    public synchronized long maxLag() {
+      return maxLag;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return getClass().getSimpleName() + "{maintenanceCount=" + maintenanceCount
+          + ", totalMaintenanceTime=" + totalMaintenanceTime
+          + ", maxMaintenanceTime=" + maxMaintenanceTime
+          + ", totalLag=" + totalLag + ", maxLag=" + maxLag + "}";
+    }
+  }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.cache.Caffeine.requireArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import com.github.benmanes.caffeine.cache.Policy.Eviction;
+import com.google.errorprone.annotations.concurrent.GuardedBy;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * A controller that adapts the maximum size of caches to the pressure on the old generation of the
+ * heap. The tenured memory pools are given a {@link MemoryPoolMXBean#setCollectionUsageThreshold
+ * collection usage threshold}, whose notifications are observed along with those of each garbage
+ * collection. After a collection of the tenured pools, their usage as reported by the collection's
+ * {@link GcInfo} is compared to the threshold. A young collection that only promoted into them is
+ * instead used to re-evaluate their {@link MemoryPoolMXBean#getCollectionUsage() usage} after they
+ * were last collected, which allows the caches to grow back while the old generation is rarely
+ * collected, but never shrinks them. When the live data exceeds the threshold, every
+ * registered cache is shrunk by a quarter of its current maximum through
+ * {@link Eviction#setMaximum(long)}, which evicts the excess entries in a single batch during the
+ * cache's maintenance. A shrink is not repeated until the collections have had time to observe
+ * the reclaimed entries. When the pressure subsides below the threshold, the caches are grown back
+ * towards the maximum that they were registered with in small, periodic steps.
+ * <p>
+ * This is intended as a replacement for {@link Caffeine#softValues()}, whose reclamation is left
+ * to the garbage collector and disregards the cache's eviction policy. Instead, the shedding is
+ * ordered by the policy and the cache remains bounded while the heap has room to spare. A cache is
+ * held weakly by the controller and its maximum should not be changed elsewhere while it is
+ * registered.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class MemoryPressureController {
+  static final Logger logger = Logger.getLogger(MemoryPressureController.class.getName());
+
+  /** The default fraction of the tenured pools that may be live after a collection. */
+  static final double DEFAULT_THRESHOLD = 0.85;
+  /** The fraction of the current maximum that is shed when the threshold is exceeded. */
+  static final double SHRINK_RATIO = 0.25;
+  /** The fraction of the registered maximum that is restored at each growth step. */
+  static final double GROWTH_RATIO = 0.05;
+  /** The fraction of the registered maximum that a cache will not be shrunk below. */
+  static final double MINIMUM_RATIO = 0.05;
+  /** The distance below the threshold that the usage must fall to before growing. */
+  static final double HYSTERESIS = 0.10;
+  /** The minimum duration between growth steps. */
+  static final long GROWTH_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+  /** The minimum duration between shrink steps. */
+  static final long SHRINK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+  /** The action reported by a collection of the old generation. */
+  static final String MAJOR_GC_ACTION = "end of major GC";
+
+  final List<NotificationEmitter> emitters;
+  final Map<MemoryPoolMXBean, Long> thresholds;
+  final NotificationListener listener;
+  final Set<String> tenuredPools;
+  final Executor executor;
+  final double threshold;
+
+  @GuardedBy("this")
+  final List<Registration> registrations;
+  @GuardedBy("this")
+  long lastGrowthTime;
+  @GuardedBy("this")
+  long lastShrinkTime;
+  @GuardedBy("this")
+  boolean hasShrunk;
+  @GuardedBy("this")
+  boolean shutdown;
+
+  MemoryPressureController(double threshold, Set<String> tenuredPools, Executor executor) {
+    this.registrations = new ArrayList<>();
+    this.listener = this::onNotification;
+    this.tenuredPools = tenuredPools;
+    this.emitters = new ArrayList<>();
+    this.thresholds = new HashMap<>();
+    this.threshold = threshold;
+    this.executor = executor;
+  }
+
+  /**
+   * Returns a controller that shrinks the registered caches when the live data in the old
+   * generation exceeds 85% of its capacity.
+   *
+   * @return a controller that listens to the garbage collections of this JVM
+   */
+  public static @NonNull MemoryPressureController create() {
+    return create(DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Returns a controller that shrinks the registered caches when the live data in the old
+   * generation exceeds the given fraction of its capacity.
+   *
+   * @param threshold the fraction of the tenured pools that may be live after a collection
+   * @return a controller that listens to the garbage collections of this JVM
+   * @throws IllegalArgumentException if {@code threshold} is not between zero and one
+   */
+  public static @NonNull MemoryPressureController create(double threshold) {
+    requireArgument((threshold > 0.0) && (threshold < 1.0),
+        "threshold must be between zero and one: %s", threshold);
+    MemoryPressureController controller = new MemoryPressureController(
+        threshold, tenuredPools(), ForkJoinPool.commonPool());
+    controller.listen(ManagementFactory.getGarbageCollectorMXBeans());
+    controller.watch(ManagementFactory.getMemoryMXBean(), ManagementFactory.getMemoryPoolMXBeans());
+    return controller;
+  }
+
+  /** Returns the names of the heap pools that hold the long-lived objects. */
+  static Set<String> tenuredPools() {
+    // The young generation's pools do not support a usage threshold
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP)
+        .filter(pool -> pool.isUsageThresholdSupported())
+        .filter(pool -> pool.isCollectionUsageThresholdSupported())
+        .map(MemoryPoolMXBean::getName)
+        .collect(Collectors.toSet());
+  }
+
+  /** Subscribes to the notifications emitted after each garbage collection. */
+  void listen(List<GarbageCollectorMXBean> collectors) {
+    for (GarbageCollectorMXBean collector : collectors) {
+      if (collector instanceof NotificationEmitter) {
+        NotificationEmitter emitter = (NotificationEmitter) collector;
+        emitter.addNotificationListener(listener, /* filter */ null, /* handback */ null);
+        emitters.add(emitter);
+      }
+    }
+  }
+
+  /**
+   * Sets the collection usage threshold of the tenured pools and subscribes to the notifications
+   * that are emitted when a collection leaves a pool above it. A threshold that was already set,
+   * such as by a monitoring agent, is restored on shutdown.
+   */
+  synchronized void watch(MemoryMXBean memoryBean, List<MemoryPoolMXBean> pools) {
+    for (MemoryPoolMXBean pool : pools) {
+      long max = pool.getUsage().getMax();
+      if (tenuredPools.contains(pool.getName())
+          && pool.isCollectionUsageThresholdSupported() && (max > 0)) {
+        thresholds.put(pool, pool.getCollectionUsageThreshold());
+        pool.setCollectionUsageThreshold((long) (threshold * max));
+      }
+    }
+    if (memoryBean instanceof NotificationEmitter) {
+      NotificationEmitter emitter = (NotificationEmitter) memoryBean;
+      emitter.addNotificationListener(listener, /* filter */ null, /* handback */ null);
+      emitters.add(emitter);
+    }
+  }
+
+  /**
+   * Adapts the maximum size or weight of the cache to the memory pressure. The cache's current
+   * maximum is the limit that it will be grown back to when the pressure subsides.
+   *
+   * @param cache the cache to adapt
+   * @throws IllegalArgumentException if the cache is not bounded by a maximum size or weight
+   * @throws IllegalStateException if the controller has been shut down
+   */
+  public synchronized void register(@NonNull Cache<?, ?> cache) {
+    Eviction<?, ?> eviction = cache.policy().eviction().orElseThrow(() ->
+        new IllegalArgumentException("The cache must be bounded by a maximum size or weight"));
+    Caffeine.requireState(!shutdown, "The memory pressure controller has been shut down");
+    if (indexOf(cache) < 0) {
+      registrations.add(new Registration(cache, eviction.getMaximum()));
+    }
+  }
+
+  /**
+   * Stops adapting the cache to the memory pressure and restores the maximum that it was
+   * registered with.
+   *
+   * @param cache the cache to no longer adapt
+   */
+  public synchronized void unregister(@NonNull Cache<?, ?> cache) {
+    int index = indexOf(requireNonNull(cache));
+    if (index >= 0) {
+      registrations.remove(index).restore();
+    }
+  }
+
+  /**
+   * Stops listening to the garbage collections and restores the maximum that each of the registered
+   * caches was registered with.
+   */
+  public synchronized void shutdown() {
+    shutdown = true;
+    for (NotificationEmitter emitter : emitters) {
+      try {
+        emitter.removeNotificationListener(listener);
+      } catch (ListenerNotFoundException e) {
+        logger.log(Level.FINE, "Listener was already removed", e);
+      }
+    }
+    emitters.clear();
+    thresholds.forEach(MemoryPoolMXBean::setCollectionUsageThreshold);
+    thresholds.clear();
+    registrations.forEach(Registration::restore);
+    registrations.clear();
+  }
+
+  @GuardedBy("this")
+  int indexOf(Cache<?, ?> cache) {
+    for (int i = 0; i < registrations.size(); i++) {
+      if (registrations.get(i).cacheRef.get() == cache) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Evaluates the usage of the tenured pools after a garbage collection or when a collection left a
+   * pool above its threshold.
+   */
+  void onNotification(Notification notification, Object handback) {
+    try {
+      if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(
+          notification.getType())) {
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+            (CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+        double usage = tenuredUsage(info.getGcAction(),
+            gcInfo.getMemoryUsageBeforeGc(), gcInfo.getMemoryUsageAfterGc());
+        if (usage >= 0.0) {
+          onCollection(usage, System.nanoTime());
+        } else {
+          onYoungCollection(collectionUsage(), System.nanoTime());
+        }
+      } else if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(
+          notification.getType())) {
+        MemoryNotificationInfo info = MemoryNotificationInfo.from(
+            (CompositeData) notification.getUserData());
+        double usage = liveFraction(Collections.singletonMap(info.getPoolName(), info.getUsage()));
+        onCollection(usage, System.nanoTime());
+      }
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown when adapting to the memory pressure", t);
+    }
+  }
+
+  /** Returns the fraction of the tenured pools that were live after they were last collected. */
+  double collectionUsage() {
+    Map<String, MemoryUsage> usages = new HashMap<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      MemoryUsage usage = tenuredPools.contains(pool.getName()) ? pool.getCollectionUsage() : null;
+      if (usage != null) {
+        usages.put(pool.getName(), usage);
+      }
+    }
+    return liveFraction(usages);
+  }
+
+  /**
+   * Returns the fraction of the tenured pools that are live after the collection, or a negative
+   * value if the collection did not collect them. A young collection only promotes into the
+   * tenured pools, whereas a major collection or a mixed one (which G1 reports as minor) reclaims
+   * from them.
+   *
+   * @param gcAction the action reported by the collector
+   * @param before the usage of the memory pools prior to the collection
+   * @param after the usage of the memory pools after the collection
+   * @return the fraction of the largest tenured pool that is live, or negative if not collected
+   */
+  double tenuredUsage(String gcAction,
+      Map<String, MemoryUsage> before, Map<String, MemoryUsage> after) {
+    boolean collected = MAJOR_GC_ACTION.equals(gcAction);
+    for (String pool : tenuredPools) {
+      MemoryUsage priorUsage = before.get(pool);
+      MemoryUsage collectionUsage = after.get(pool);
+      if ((priorUsage != null) && (collectionUsage != null)
+          && (collectionUsage.getUsed() < priorUsage.getUsed())) {
+        collected = true;
+      }
+    }
+    return collected ? liveFraction(after) : -1.0;
+  }
+
+  /** Returns the fraction of the largest tenured pool that is used, or zero if none are present. */
+  double liveFraction(Map<String, MemoryUsage> usages) {
+    double usage = 0.0;
+    for (String pool : tenuredPools) {
+      MemoryUsage poolUsage = usages.get(pool);
+      if (poolUsage == null) {
+        continue;
+      }
+      long capacity = (poolUsage.getMax() > 0) ? poolUsage.getMax() : poolUsage.getCommitted();
+      if (capacity > 0) {
+        usage = Math.max(usage, (double) poolUsage.getUsed() / capacity);
+      }
+    }
+    return usage;
+  }
+
+  /**
+   * Shrinks the caches if the usage exceeds the threshold and a shrink step is due, or grows them
+   * if the pressure has subsided and a growth step is due.
+   *
+   * @param usage the fraction of the tenured pools that are live after the collection
+   * @param now the current time, in nanoseconds
+   */
+  synchronized void onCollection(double usage, long now) {
+    if (shutdown) {
+      return;
+    }
+    registrations.removeIf(registration -> registration.cacheRef.get() == null);
+    if (usage >= threshold) {
+      lastGrowthTime = now;
+      if (!hasShrunk || ((now - lastShrinkTime) >= SHRINK_INTERVAL)) {
+        hasShrunk = true;
+        lastShrinkTime = now;
+        registrations.forEach(Registration::shrink);
+      }
+    } else {
+      growIfDue(usage, now);
+    }
+  }
+
+  /**
+   * Grows the caches if the pressure has subsided and a growth step is due. This is evaluated after
+   * a collection that did not collect the tenured pools, so their usage may be stale and the caches
+   * are not shrunk if it exceeds the threshold.
+   *
+   * @param usage the fraction of the tenured pools that were live after they were last collected
+   * @param now the current time, in nanoseconds
+   */
+  synchronized void onYoungCollection(double usage, long now) {
+    if (!shutdown) {
+      registrations.removeIf(registration -> registration.cacheRef.get() == null);
+      growIfDue(usage, now);
+    }
+  }
+
+  @GuardedBy("this")
+  void growIfDue(double usage, long now) {
+    if ((usage < (threshold - HYSTERESIS)) && ((now - lastGrowthTime) >= GROWTH_INTERVAL)) {
+      lastGrowthTime = now;
+      registrations.forEach(Registration::grow);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getSimpleName() + "{threshold=" + threshold
+        + ", caches=" + registrations.size() + ", shutdown=" + shutdown + "}";
+  }
+
+  /** The association of a cache with the controller. */
+  final class Registration {
+    final WeakReference<Cache<?, ?>> cacheRef;
+    final long registeredMaximum;
+    final long minimum;
+
+    volatile long maximum;
+
+    Registration(Cache<?, ?> cache, long registeredMaximum) {
+      this.minimum = (long) (MINIMUM_RATIO * registeredMaximum);
+      this.cacheRef = new WeakReference<>(cache);
+      this.registeredMaximum = registeredMaximum;
+      this.maximum = registeredMaximum;
+    }
+
+    /** Sheds a fraction of the cache's current capacity. */
+    void shrink() {
+      long shrunk = (long) ((1.0 - SHRINK_RATIO) * maximum);
+      update(Math.max(minimum, shrunk));
+    }
+
+    /** Restores a fraction of the cache's registered capacity. */
+    void grow() {
+      long step = Math.max(1L, (long) (GROWTH_RATIO * registeredMaximum));
+      update(Math.min(registeredMaximum, maximum + step));
+    }
+
+    /** Restores the cache's registered capacity. */
+    void restore() {
+      update(registeredMaximum);
+    }
+
+    /** Sets the cache's maximum, which evicts any excess entries during its maintenance. */
+    void update(long newMaximum) {
+      Cache<?, ?> cache = cacheRef.get();
+      if ((cache == null) || (newMaximum == maximum)) {
+        return;
+      }
+      maximum = newMaximum;
+
+      // Applies the latest maximum, as the tasks may be run out of order
+      executor.execute(() -> cache.policy().eviction().ifPresent(eviction -> {
+        eviction.setMaximum(maximum);
+      }));
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.cache.SamplingSizeEstimator.OBJECT_HEADER;
+import static com.github.benmanes.caffeine.cache.SamplingSizeEstimator.REFERENCE_SIZE;
+import static com.github.benmanes.caffeine.cache.SamplingSizeEstimator.align;
+import static com.github.benmanes.caffeine.cache.SamplingSizeEstimator.shallowSizeOf;
+import static java.util.Objects.requireNonNull;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+import com.github.benmanes.caffeine.cache.References.SoftValueReference;
+import com.github.benmanes.caffeine.cache.References.WeakKeyReference;
+import com.github.benmanes.caffeine.cache.References.WeakValueReference;
+
+/**
+ * A weigher whose weight is the estimated number of bytes retained by the entry.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class MemoryWeigher<K, V> implements Weigher<K, V>, Serializable {
+  static final long serialVersionUID = 1;
+  final SizeEstimator<? super K, ? super V> estimator;
+  final long entryOverhead;
+
+  MemoryWeigher(SizeEstimator<? super K, ? super V> estimator, long entryOverhead) {
+    this.estimator = requireNonNull(estimator);
+    this.entryOverhead = entryOverhead;
+  }
+
+  @Override
+  public int weigh(K key, V value) {
+    long size = estimator.estimate(key, value);
+    Caffeine.requireArgument(size >= 0);
+    return (int) Math.min(entryOverhead + size, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the estimated number of bytes used by the cache to hold an entry, which is the
+   * generated node, the hash table's node and its amortized share of the table, and any reference
+   * or future that wraps the key and value. An embedded hash table chains the cache's node directly
+   * and does not have its own node.
+   */
+  static long entryOverhead(Caffeine<?, ?> builder, boolean isAsync) {
+    long overhead = shallowSizeOf(NodeFactory.newFactory(builder, isAsync).getClass())
+        + 2 * REFERENCE_SIZE;
+    if (!builder.usesEmbeddedHashTable()) {
+      overhead += align(OBJECT_HEADER + Integer.BYTES + 3 * REFERENCE_SIZE);
+    }
+    if (!builder.isStrongKeys()) {
+      overhead += shallowSizeOf(WeakKeyReference.class);
+    }
+    if (builder.isWeakValues()) {
+      overhead += shallowSizeOf(WeakValueReference.class);
+    } else if (!builder.isStrongValues()) {
+      overhead += shallowSizeOf(SoftValueReference.class);
+    }
+    if (isAsync) {
+      overhead += shallowSizeOf(CompletableFuture.class);
+    }
+    return overhead;
+  }
+}
@@ -91,6 +91,52 @@ abstract class Node<K, V> implements AccessOrder<Node<K, V>>, WriteOrder<Node<K,
   @GuardedBy("evictionLock")
   public void setPolicyWeight(@NonNegative int weight) {}
 
+  /* ---------------- Generation -------------- */
+
+  /** Returns the generation of the cache's contents that the entry was added in. */
+  public int getGeneration() {
+    return 0;
+  }
+
+  /** Sets the generation of the cache's contents, before the entry is published. */
+  public void setGeneration(int generation) {}
+
+  /* ---------------- Tags -------------- */
+
+  /** Returns the tags that the entry is indexed by, or null if it is not a member of any. */
+  @GuardedBy("evictionLock")
+  public Object @Nullable [] getTags() {
+    return null;
+  }
+
+  /** Sets the tags that the entry is indexed by. */
+  @GuardedBy("evictionLock")
+  public void setTags(Object @Nullable [] tags) {
+    throw new UnsupportedOperationException();
+  }
+
+  /* ---------------- Hash table -------------- */
+
+  /** Returns the spread hash code of the key that the embedded hash table assigned. */
+  public int getTableHash() {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Sets the spread hash code of the key, while holding the lock of the table's bin. */
+  public void setTableHash(int hash) {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Returns the next entry in the embedded hash table's bin. */
+  public @Nullable Node<K, V> getNextInTable() {
+    throw new UnsupportedOperationException();
+  }
+
+  /** Sets the next entry in the bin, while holding the lock of the table's bin. */
+  public void setNextInTable(@Nullable Node<K, V> next) {
+    throw new UnsupportedOperationException();
+  }
+
   /* ---------------- Health -------------- */
 
   /** If the entry is available in the hash-table and page replacement policy. */
@@ -170,6 +216,11 @@ abstract class Node<K, V> implements AccessOrder<Node<K, V>>, WriteOrder<Node<K,
     return getQueueType() == PROTECTED;
   }
 
+  /** Sets the status to the Eden queue. */
+  public void makeEden() {
+    setQueueType(EDEN);
+  }
+
   /** Sets the status to the Main space's probation queue. */
   public void makeMainProbation() {
     setQueueType(PROBATION);
@@ -0,0 +1,905 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.github.benmanes.caffeine.base.UnsafeAccess;
+
+/**
+ * A concurrent hash table whose entries are the cache's nodes. A {@code ConcurrentHashMap} wraps
+ * each mapping in its own entry object, so a cache that stores its nodes in one pays for two
+ * objects per entry. This table instead chains the nodes directly through a field that the node
+ * reserves for it, which removes the hash table's entry and its references.
+ * <p>
+ * Reads do not acquire a lock. A computation locks only its key, by synchronizing on the present
+ * node or on a reservation that is linked into the bin while an absent mapping is computed, so that
+ * a long-running load does not block the other keys. A bin is locked only while its links are
+ * changed, by replacing its first node with a marker that readers traverse through, and that lock
+ * is never held while calling out of the table. The cache synchronizes on its nodes as well, which
+ * is compatible because it does so for the same key's computation or without calling back into
+ * the table. The nodes are restricted to strong keys and values, whose key is retired only while
+ * the node's lock is held or after the node was removed from the table.
+ * <p>
+ * A resize is performed cooperatively, like {@code ConcurrentHashMap}, by the inserting threads
+ * that claim strides of bins and move each bin into the table of twice the length. A moved bin is
+ * replaced by a forwarding marker so that the operations on it continue in the next table, while
+ * the bins that have not been moved yet remain usable. As a bin's lock is never held by a
+ * computation, a resize proceeds around the keys whose loads are in flight. A read that missed
+ * while the bin was being split retries, as it may have followed a link into the other half.
+ * <p>
+ * The iterators are weakly consistent. A bin is copied while holding its lock and, if it was moved
+ * by a resize, the bins in the next table that it was split into are copied instead.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class NodeTable<K, V> extends AbstractMap<Object, Node<K, V>>
+    implements ConcurrentMap<Object, Node<K, V>> {
+  static final int NCPU = Runtime.getRuntime().availableProcessors();
+  /** The smallest table length, which is also the fewest bins that a resizing thread claims. */
+  static final int MINIMUM_CAPACITY = 16;
+  /** The largest possible table length. */
+  static final int MAXIMUM_CAPACITY = 1 << 30;
+  /** The usable bits of a spread hash code. */
+  static final int HASH_BITS = 0x7fffffff;
+  /** The ratio of mappings to the table length that triggers a resize. */
+  static final float LOAD_FACTOR = 0.75f;
+
+  /** The hash code of a marker that locks a bin while a writer changes its links. */
+  static final int LOCKED = -1;
+  /** The hash code of a marker that locks a bin while a resize splits it. */
+  static final int MOVING = -2;
+  /** The hash code of a marker for a bin whose nodes were moved to the next table. */
+  static final int MOVED = -3;
+
+  static final long TRANSFER_OFFSET = UnsafeAccess.objectFieldOffset(NodeTable.class, "transfer");
+
+  final LongAdder count;
+
+  volatile AtomicReferenceArray<Node<K, V>> table;
+  /** The resize in progress, or null if the table is not being resized. */
+  volatile @Nullable Transfer<K, V> transfer;
+  volatile int threshold;
+
+  // The collection views
+  @Nullable transient Set<Object> keySet;
+  @Nullable transient Collection<Node<K, V>> values;
+  @Nullable transient Set<Entry<Object, Node<K, V>>> entrySet;
+
+  NodeTable(int initialCapacity) {
+    int capacity = (int) Math.min(MAXIMUM_CAPACITY, (long) (initialCapacity / LOAD_FACTOR) + 1);
+    int length = Math.max(MINIMUM_CAPACITY, BoundedLocalCache.ceilingPowerOfTwo(capacity));
+    table = new AtomicReferenceArray<>(length);
+    threshold = (int) (length * LOAD_FACTOR);
+    count = new LongAdder();
+  }
+
+  /** Spreads the higher bits of the hash code to the lower bits, like {@code ConcurrentHashMap}. */
+  static int spread(int h) {
+    return (h ^ (h >>> 16)) & HASH_BITS;
+  }
+
+  /**
+   * Returns the node in the chain that is mapped to the key, or null if absent. The markers are
+   * skipped as their hash codes are negative.
+   */
+  static <K, V> @Nullable Node<K, V> find(@Nullable Node<K, V> first, int hash, Object key) {
+    for (Node<K, V> node = first; node != null; node = node.getNextInTable()) {
+      if (node.getTableHash() == hash) {
+        Object nodeKey = node.getKeyReference();
+        if ((nodeKey == key) || key.equals(nodeKey)) {
+          return node;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the node that is mapped to the key, which may be the reservation of an in-flight
+   * computation, or null if absent. A miss is retried if the bin was being split by a resize, as
+   * the traversal may have followed a link that was redirected into the other half.
+   */
+  @Nullable Node<K, V> lookup(int hash, Object key) {
+    AtomicReferenceArray<Node<K, V>> tab = table;
+    for (;;) {
+      int index = hash & (tab.length() - 1);
+      Node<K, V> first = tab.get(index);
+      if (first == null) {
+        return null;
+      } else if (first.getTableHash() == MOVED) {
+        tab = ((ForwardingNode<K, V>) first).nextTable;
+        continue;
+      } else if (first.getTableHash() == MOVING) {
+        Thread.yield();
+        continue;
+      }
+
+      Node<K, V> node = find(first, hash, key);
+      if (node != null) {
+        return node;
+      }
+      Node<K, V> current = tab.get(index);
+      if (current == null) {
+        return null;
+      }
+      int state = current.getTableHash();
+      if ((state != MOVING) && (state != MOVED)) {
+        return null;
+      }
+    }
+  }
+
+  @Override
+  public @Nullable Node<K, V> get(Object key) {
+    Node<K, V> node = lookup(spread(key.hashCode()), key);
+    return (node instanceof Reservation<?, ?>) ? null : node;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return (get(key) != null);
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    requireNonNull(value);
+    for (Node<K, V> node : values()) {
+      if (node.equals(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return (mappingCount() == 0L);
+  }
+
+  @Override
+  public int size() {
+    return (int) Math.min(mappingCount(), Integer.MAX_VALUE);
+  }
+
+  /** Returns the number of mappings, which may exceed {@link Integer#MAX_VALUE}. */
+  public long mappingCount() {
+    long n = count.sum();
+    return (n < 0L) ? 0L : n; // ignore transient negative values
+  }
+
+  @Override
+  public void clear() {
+    for (Iterator<Node<K, V>> iterator = values().iterator(); iterator.hasNext();) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  @Override
+  public @Nullable Node<K, V> put(Object key, Node<K, V> value) {
+    requireNonNull(value);
+    @SuppressWarnings("unchecked")
+    Node<K, V>[] prior = (Node<K, V>[]) new Node<?, ?>[1];
+    doCompute(key, (k, node) -> {
+      prior[0] = node;
+      return value;
+    }, /* ifAbsent */ true, /* ifPresent */ true);
+    return prior[0];
+  }
+
+  @Override
+  public @Nullable Node<K, V> putIfAbsent(Object key, Node<K, V> value) {
+    requireNonNull(value);
+    int hash = spread(key.hashCode());
+    for (;;) {
+      Node<K, V> current = lookup(hash, key);
+      if (current instanceof Reservation<?, ?>) {
+        awaitComputation(current);
+      } else if (current != null) {
+        return current;
+      } else if (link(hash, key, value)) {
+        count.increment();
+        resizeIfNeeded();
+        return null;
+      }
+    }
+  }
+
+  @Override
+  public @Nullable Node<K, V> remove(Object key) {
+    @SuppressWarnings("unchecked")
+    Node<K, V>[] prior = (Node<K, V>[]) new Node<?, ?>[1];
+    doCompute(key, (k, node) -> {
+      prior[0] = node;
+      return null;
+    }, /* ifAbsent */ false, /* ifPresent */ true);
+    return prior[0];
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    requireNonNull(key);
+    if (value == null) {
+      return false;
+    }
+    boolean[] removed = new boolean[1];
+    doCompute(key, (k, node) -> {
+      if (!node.equals(value)) {
+        return node;
+      }
+      removed[0] = true;
+      return null;
+    }, /* ifAbsent */ false, /* ifPresent */ true);
+    return removed[0];
+  }
+
+  @Override
+  public @Nullable Node<K, V> replace(Object key, Node<K, V> value) {
+    requireNonNull(value);
+    @SuppressWarnings("unchecked")
+    Node<K, V>[] prior = (Node<K, V>[]) new Node<?, ?>[1];
+    doCompute(key, (k, node) -> {
+      prior[0] = node;
+      return value;
+    }, /* ifAbsent */ false, /* ifPresent */ true);
+    return prior[0];
+  }
+
+  @Override
+  public boolean replace(Object key, Node<K, V> oldValue, Node<K, V> newValue) {
+    requireNonNull(oldValue);
+    requireNonNull(newValue);
+    boolean[] replaced = new boolean[1];
+    doCompute(key, (k, node) -> {
+      if (!node.equals(oldValue)) {
+        return node;
+      }
+      replaced[0] = true;
+      return newValue;
+    }, /* ifAbsent */ false, /* ifPresent */ true);
+    return replaced[0];
+  }
+
+  @Override
+  public @Nullable Node<K, V> computeIfAbsent(Object key,
+      Function<? super Object, ? extends Node<K, V>> mappingFunction) {
+    requireNonNull(mappingFunction);
+    return doCompute(key, (k, node) -> mappingFunction.apply(k),
+        /* ifAbsent */ true, /* ifPresent */ false);
+  }
+
+  @Override
+  public @Nullable Node<K, V> computeIfPresent(Object key, BiFunction<? super Object,
+      ? super Node<K, V>, ? extends Node<K, V>> remappingFunction) {
+    requireNonNull(remappingFunction);
+    return doCompute(key, remappingFunction, /* ifAbsent */ false, /* ifPresent */ true);
+  }
+
+  @Override
+  public @Nullable Node<K, V> compute(Object key, BiFunction<? super Object,
+      ? super Node<K, V>, ? extends Node<K, V>> remappingFunction) {
+    requireNonNull(remappingFunction);
+    return doCompute(key, remappingFunction, /* ifAbsent */ true, /* ifPresent */ true);
+  }
+
+  /**
+   * Computes the mapping for the key while holding only the key's lock. A present node is locked
+   * and revalidated, while an absent mapping is reserved by linking a locked placeholder into the
+   * bin, which the other operations on the key wait for.
+   *
+   * @param key the key to compute the mapping for
+   * @param remappingFunction the function that is given the present node, or null if absent
+   * @param ifAbsent if the function should be invoked when the mapping is absent
+   * @param ifPresent if the function should be invoked when the mapping is present
+   * @return the resulting node, or the present node if the function was not invoked
+   * @throws IllegalStateException if the mapping was modified by a recursive computation
+   */
+  @Nullable Node<K, V> doCompute(Object key, BiFunction<? super Object,
+      ? super Node<K, V>, ? extends Node<K, V>> remappingFunction,
+      boolean ifAbsent, boolean ifPresent) {
+    int hash = spread(key.hashCode());
+    for (;;) {
+      Node<K, V> current = lookup(hash, key);
+      if (current == null) {
+        if (!ifAbsent) {
+          return null;
+        }
+        Node<K, V> result;
+        Reservation<K, V> reservation = new Reservation<>(key, hash);
+        synchronized (reservation) {
+          if (!link(hash, key, reservation)) {
+            continue;
+          }
+          result = computeAbsent(key, hash, reservation, remappingFunction);
+        }
+        if (result != null) {
+          resizeIfNeeded();
+        }
+        return result;
+      } else if (current instanceof Reservation<?, ?>) {
+        awaitComputation(current);
+      } else if (!ifPresent) {
+        return current;
+      } else {
+        synchronized (current) {
+          if (lookup(hash, key) != current) {
+            continue;
+          }
+          Node<K, V> result = remappingFunction.apply(key, current);
+          if (result != current) {
+            if (!relink(hash, current, result)) {
+              throw new IllegalStateException("Recursive update");
+            }
+            if (result == null) {
+              count.decrement();
+            }
+          }
+          return result;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the result of computing an absent mapping, which replaces the reservation or, if null,
+   * discards it. This must be called while holding the reservation's lock.
+   */
+  @Nullable Node<K, V> computeAbsent(Object key, int hash, Reservation<K, V> reservation,
+      BiFunction<? super Object, ? super Node<K, V>, ? extends Node<K, V>> remappingFunction) {
+    Node<K, V> result;
+    try {
+      result = remappingFunction.apply(key, null);
+    } catch (Throwable t) {
+      relink(hash, reservation, /* replacement */ null);
+      throw t;
+    }
+    if (!relink(hash, reservation, result)) {
+      throw new IllegalStateException("Recursive update");
+    }
+    if (result != null) {
+      count.increment();
+    }
+    return result;
+  }
+
+  /**
+   * Waits for the computation that reserved the key to publish its result.
+   *
+   * @throws IllegalStateException if the key was reserved by this thread's computation
+   */
+  @SuppressWarnings("PMD.EmptySynchronizedBlock")
+  static void awaitComputation(Node<?, ?> reservation) {
+    if (Thread.holdsLock(reservation)) {
+      throw new IllegalStateException("Recursive update");
+    }
+    synchronized (reservation) {
+      // The reservation is locked by its owner until it is replaced or discarded
+    }
+  }
+
+  /**
+   * Adds the node to the key's bin if the key is absent.
+   *
+   * @return if the node was added
+   */
+  boolean link(int hash, Object key, Node<K, V> node) {
+    BinLock<K, V> lock = lockBin(hash);
+    try {
+      if (find(lock.getNextInTable(), hash, key) != null) {
+        return false;
+      }
+      node.setTableHash(hash);
+      node.setNextInTable(lock.getNextInTable());
+      lock.setNextInTable(node);
+      return true;
+    } finally {
+      unlock(lock);
+    }
+  }
+
+  /**
+   * Replaces the expected node, which is found by identity as the computation may have retired its
+   * key, with the replacement or removes it if null. The removed node's link is left intact so that
+   * a concurrent reader that is positioned on it may continue its traversal.
+   *
+   * @return if the expected node was found
+   */
+  boolean relink(int hash, Node<K, V> expected, @Nullable Node<K, V> replacement) {
+    BinLock<K, V> lock = lockBin(hash);
+    try {
+      Node<K, V> predecessor = lock;
+      Node<K, V> current = lock.getNextInTable();
+      while ((current != null) && (current != expected)) {
+        predecessor = current;
+        current = current.getNextInTable();
+      }
+      if (current == null) {
+        return false;
+      } else if (replacement == null) {
+        predecessor.setNextInTable(current.getNextInTable());
+      } else {
+        replacement.setTableHash(hash);
+        replacement.setNextInTable(current.getNextInTable());
+        predecessor.setNextInTable(replacement);
+      }
+      return true;
+    } finally {
+      unlock(lock);
+    }
+  }
+
+  /** Locks the hash code's bin in the current table, following the bins that were moved. */
+  BinLock<K, V> lockBin(int hash) {
+    AtomicReferenceArray<Node<K, V>> tab = table;
+    for (;;) {
+      Node<K, V> marker = lockBin(tab, hash & (tab.length() - 1), LOCKED);
+      if (marker.getTableHash() != MOVED) {
+        return (BinLock<K, V>) marker;
+      }
+      tab = ((ForwardingNode<K, V>) marker).nextTable;
+    }
+  }
+
+  /**
+   * Locks the bin by replacing its first node with a marker of the given type that links to it,
+   * spinning while another thread holds the bin's lock, as it is held only to change a few links.
+   *
+   * @return the locking marker, or the forwarding marker if the bin was moved to the next table
+   */
+  static <K, V> Node<K, V> lockBin(
+      AtomicReferenceArray<Node<K, V>> tab, int index, int type) {
+    BinLock<K, V> lock = null;
+    for (;;) {
+      Node<K, V> first = tab.get(index);
+      if (first != null) {
+        if (first.getTableHash() == MOVED) {
+          return first;
+        } else if (first.getTableHash() < 0) {
+          Thread.yield();
+          continue;
+        }
+      }
+      if (lock == null) {
+        lock = new BinLock<>(type, tab, index);
+      }
+      lock.setNextInTable(first);
+      if (tab.compareAndSet(index, first, lock)) {
+        return lock;
+      }
+    }
+  }
+
+  /** Unlocks the bin by restoring the chain that follows the marker. */
+  static <K, V> void unlock(BinLock<K, V> lock) {
+    lock.table.set(lock.index, lock.getNextInTable());
+  }
+
+  /** Starts or helps a resize if the number of mappings has exceeded the threshold. */
+  void resizeIfNeeded() {
+    Transfer<K, V> current = transfer;
+    if (current == null) {
+      AtomicReferenceArray<Node<K, V>> tab = table;
+      if ((count.sum() <= threshold) || (tab.length() >= MAXIMUM_CAPACITY)) {
+        return;
+      }
+      Transfer<K, V> started = new Transfer<>(tab);
+      current = UnsafeAccess.UNSAFE.compareAndSwapObject(this, TRANSFER_OFFSET, null, started)
+          ? started
+          : transfer;
+      if (current == null) {
+        return;
+      }
+    }
+    helpTransfer(current);
+  }
+
+  /**
+   * Moves the bins in the strides that this thread claims. The thread that moves the last bin
+   * publishes the next table, unless a prior resize already replaced the source while this one was
+   * being started, in which case all of its bins were found to be forwarded.
+   */
+  void helpTransfer(Transfer<K, V> resize) {
+    int length = resize.source.length();
+    while (resize.nextIndex.get() < length) {
+      int start = resize.nextIndex.getAndAdd(resize.stride);
+      if (start >= length) {
+        return;
+      }
+      int end = Math.min(start + resize.stride, length);
+      for (int i = start; i < end; i++) {
+        transferBin(resize, i);
+      }
+      if (resize.remaining.addAndGet(start - end) == 0) {
+        if (table == resize.source) {
+          threshold = (int) (resize.target.length() * LOAD_FACTOR);
+          table = resize.target;
+        }
+        transfer = null;
+      }
+    }
+  }
+
+  /**
+   * Splits the bin into the two bins of the next table that its nodes now hash to. The nodes are
+   * relinked in place, so a reader that misses while the bin is marked as moving retries.
+   */
+  static <K, V> void transferBin(Transfer<K, V> resize, int index) {
+    Node<K, V> marker = lockBin(resize.source, index, MOVING);
+    if (marker.getTableHash() == MOVED) {
+      return;
+    }
+
+    int bit = resize.source.length();
+    Node<K, V> lower = null;
+    Node<K, V> upper = null;
+    for (Node<K, V> node = marker.getNextInTable(); node != null;) {
+      Node<K, V> next = node.getNextInTable();
+      if ((node.getTableHash() & bit) == 0) {
+        node.setNextInTable(lower);
+        lower = node;
+      } else {
+        node.setNextInTable(upper);
+        upper = node;
+      }
+      node = next;
+    }
+    resize.target.set(index, lower);
+    resize.target.set(index + bit, upper);
+    resize.source.set(index, resize.forwarding);
+  }
+
+  @Override
+  public Set<Object> keySet() {
+    Set<Object> ks = keySet;
+    return (ks == null) ? (keySet = new KeySetView()) : ks;
+  }
+
+  @Override
+  public Collection<Node<K, V>> values() {
+    Collection<Node<K, V>> vs = values;
+    return (vs == null) ? (values = new ValuesView()) : vs;
+  }
+
+  @Override
+  public Set<Entry<Object, Node<K, V>>> entrySet() {
+    Set<Entry<Object, Node<K, V>>> es = entrySet;
+    return (es == null) ? (entrySet = new EntrySetView()) : es;
+  }
+
+  /** An adapter to safely externalize the keys. */
+  final class KeySetView extends AbstractSet<Object> {
+    @Override public int size() {
+      return NodeTable.this.size();
+    }
+    @Override public void clear() {
+      NodeTable.this.clear();
+    }
+    @Override public boolean contains(Object o) {
+      return containsKey(o);
+    }
+    @Override public boolean remove(Object o) {
+      return (NodeTable.this.remove(o) != null);
+    }
+    @Override public Iterator<Object> iterator() {
+      NodeIterator iterator = new NodeIterator();
+      return new Iterator<Object>() {
+        @Override public boolean hasNext() {
+          return iterator.hasNext();
+        }
+        @Override public Object next() {
+          iterator.next();
+          return iterator.key;
+        }
+        @Override public void remove() {
+          iterator.remove();
+        }
+      };
+    }
+    @Override public Spliterator<Object> spliterator() {
+      return Spliterators.spliterator(this, Spliterator.CONCURRENT
+          | Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+  }
+
+  /** An adapter to safely externalize the nodes. */
+  final class ValuesView extends AbstractCollection<Node<K, V>> {
+    @Override public int size() {
+      return NodeTable.this.size();
+    }
+    @Override public void clear() {
+      NodeTable.this.clear();
+    }
+    @Override public Iterator<Node<K, V>> iterator() {
+      return new NodeIterator();
+    }
+    @Override public Spliterator<Node<K, V>> spliterator() {
+      return Spliterators.spliterator(this, Spliterator.CONCURRENT | Spliterator.NONNULL);
+    }
+  }
+
+  /** An adapter to safely externalize the mappings. */
+  final class EntrySetView extends AbstractSet<Entry<Object, Node<K, V>>> {
+    @Override public int size() {
+      return NodeTable.this.size();
+    }
+    @Override public void clear() {
+      NodeTable.this.clear();
+    }
+    @Override public boolean contains(Object o) {
+      if (!(o instanceof Entry<?, ?>)) {
+        return false;
+      }
+      Entry<?, ?> entry = (Entry<?, ?>) o;
+      Object key = entry.getKey();
+      Node<K, V> node = (key == null) ? null : get(key);
+      return (node != null) && node.equals(entry.getValue());
+    }
+    @Override public boolean remove(Object o) {
+      if (!(o instanceof Entry<?, ?>)) {
+        return false;
+      }
+      Entry<?, ?> entry = (Entry<?, ?>) o;
+      Object key = entry.getKey();
+      return (key != null) && NodeTable.this.remove(key, entry.getValue());
+    }
+    @Override public Iterator<Entry<Object, Node<K, V>>> iterator() {
+      NodeIterator iterator = new NodeIterator();
+      return new Iterator<Entry<Object, Node<K, V>>>() {
+        @Override public boolean hasNext() {
+          return iterator.hasNext();
+        }
+        @Override public Entry<Object, Node<K, V>> next() {
+          Node<K, V> node = iterator.next();
+          return new SimpleImmutableEntry<>(iterator.key, node);
+        }
+        @Override public void remove() {
+          iterator.remove();
+        }
+      };
+    }
+    @Override public Spliterator<Entry<Object, Node<K, V>>> spliterator() {
+      return Spliterators.spliterator(this, Spliterator.CONCURRENT
+          | Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+  }
+
+
+  /**
+   * An iterator that copies each bin of the table that it started on, along with its keys, while
+   * holding the bin's lock. A bin that was moved by a resize is copied from the bins in the next
+   * table that it was split into, so that each mapping is visited at most once.
+   */
+  final class NodeIterator implements Iterator<Node<K, V>> {
+    final AtomicReferenceArray<Node<K, V>> tab;
+    final ArrayList<Node<K, V>> nodes;
+    final ArrayList<Object> keys;
+
+    int position;
+    int index;
+
+    @Nullable Node<K, V> next;
+    @Nullable Object nextKey;
+    @Nullable Node<K, V> current;
+    @Nullable Object key;
+
+    NodeIterator() {
+      nodes = new ArrayList<>();
+      keys = new ArrayList<>();
+      tab = table;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next != null) {
+        return true;
+      }
+      for (;;) {
+        if (position < nodes.size()) {
+          nextKey = keys.get(position);
+          next = nodes.get(position++);
+          return true;
+        } else if (index == tab.length()) {
+          return false;
+        }
+        nodes.clear();
+        keys.clear();
+        position = 0;
+        copyBin(tab, index++);
+      }
+    }
+
+    /** Copies the nodes in the bin, or in the bins that it was split into if it was moved. */
+    void copyBin(AtomicReferenceArray<Node<K, V>> bins, int i) {
+      if (bins.get(i) == null) {
+        return;
+      }
+      Node<K, V> marker = lockBin(bins, i, LOCKED);
+      if (marker.getTableHash() == MOVED) {
+        AtomicReferenceArray<Node<K, V>> nextTable = ((ForwardingNode<K, V>) marker).nextTable;
+        copyBin(nextTable, i);
+        copyBin(nextTable, i + bins.length());
+        return;
+      }
+
+      BinLock<K, V> lock = (BinLock<K, V>) marker;
+      try {
+        for (Node<K, V> node = lock.getNextInTable(); node != null; node = node.getNextInTable()) {
+          if (!(node instanceof Reservation<?, ?>)) {
+            nodes.add(node);
+            keys.add(node.getKeyReference());
+          }
+        }
+      } finally {
+        unlock(lock);
+      }
+    }
+
+    @Override
+    public Node<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      current = next;
+      key = nextKey;
+      next = null;
+      nextKey = null;
+      return current;
+    }
+
+    @Override
+    public void remove() {
+      if (current == null) {
+        throw new IllegalStateException();
+      }
+      NodeTable.this.remove(key, current);
+      current = null;
+    }
+  }
+
+  /** The state of a resize, whose bins are claimed in strides by the threads that help it. */
+  static final class Transfer<K, V> {
+    final AtomicReferenceArray<Node<K, V>> source;
+    final AtomicReferenceArray<Node<K, V>> target;
+    final ForwardingNode<K, V> forwarding;
+    /** The index of the next stride to be claimed. */
+    final AtomicInteger nextIndex;
+    /** The number of bins that have not been moved yet. */
+    final AtomicInteger remaining;
+    final int stride;
+
+    Transfer(AtomicReferenceArray<Node<K, V>> source) {
+      int length = source.length();
+      this.source = source;
+      this.target = new AtomicReferenceArray<>(length << 1);
+      this.forwarding = new ForwardingNode<>(target);
+      this.stride = Math.max(MINIMUM_CAPACITY, (NCPU > 1) ? (length >>> 3) / NCPU : length);
+      this.remaining = new AtomicInteger(length);
+      this.nextIndex = new AtomicInteger();
+    }
+  }
+
+  /**
+   * An internal entry of the table that is not a cache entry, which holds a key's lock or marks the
+   * state of a bin. Its hash code is negative, except for a reservation that takes its key's.
+   */
+  abstract static class Marker<K, V> extends Node<K, V> {
+    int hash;
+    volatile @Nullable Node<K, V> nextInTable;
+
+    @Override public @Nullable K getKey() {
+      return null;
+    }
+    @Override public @Nullable Object getKeyReference() {
+      return null;
+    }
+    @Override public @Nullable V getValue() {
+      return null;
+    }
+    @Override public @Nullable Object getValueReference() {
+      return null;
+    }
+    @Override public void setValue(V value, @Nullable ReferenceQueue<V> referenceQueue) {
+      throw new UnsupportedOperationException();
+    }
+    @Override public boolean containsValue(Object value) {
+      return false;
+    }
+    @Override public boolean isAlive() {
+      return false;
+    }
+    @Override public boolean isRetired() {
+      return false;
+    }
+    @Override public boolean isDead() {
+      return false;
+    }
+    @Override public void retire() {
+      throw new UnsupportedOperationException();
+    }
+    @Override public void die() {
+      throw new UnsupportedOperationException();
+    }
+    @Override public final int getTableHash() {
+      return hash;
+    }
+    @Override public final void setTableHash(int hash) {
+      this.hash = hash;
+    }
+    @Override public final @Nullable Node<K, V> getNextInTable() {
+      return nextInTable;
+    }
+    @Override public final void setNextInTable(@Nullable Node<K, V> nextInTable) {
+      this.nextInTable = nextInTable;
+    }
+  }
+
+  /** A placeholder that holds the lock for an absent key while its mapping is computed. */
+  static final class Reservation<K, V> extends Marker<K, V> {
+    final Object key;
+
+    Reservation(Object key, int hash) {
+      this.key = key;
+      this.hash = hash;
+    }
+
+    @Override public Object getKeyReference() {
+      return key;
+    }
+  }
+
+  /** A marker at the head of a locked bin, whose next link is the bin's first node. */
+  static final class BinLock<K, V> extends Marker<K, V> {
+    final AtomicReferenceArray<Node<K, V>> table;
+    final int index;
+
+    BinLock(int type, AtomicReferenceArray<Node<K, V>> table, int index) {
+      this.table = table;
+      this.index = index;
+      this.hash = type;
+    }
+  }
+
+  /** A marker for a bin whose nodes were moved to the next table. */
+  static final class ForwardingNode<K, V> extends Marker<K, V> {
+    final AtomicReferenceArray<Node<K, V>> nextTable;
+
+    ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+      this.nextTable = nextTable;
+      this.hash = MOVED;
+    }
+  }
+}
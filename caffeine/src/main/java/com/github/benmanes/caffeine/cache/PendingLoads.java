@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The loads of absent entries that are performed outside of the hash table's lock. A load is
+ * claimed by atomically installing a placeholder for the key, so that concurrent callers for the
+ * same key wait on the single in-flight load, while the hash bin's lock is only held when the
+ * loaded value is published.
+ * <p>
+ * A removal of the key discards its placeholder before removing the mapping, and the load checks
+ * the placeholder while holding the hash bin's lock to publish its value. A load that is discarded
+ * returns its value to the callers without publishing it, so that an invalidation during the load
+ * is not lost.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class PendingLoads<V> {
+  final ConcurrentHashMap<Object, Placeholder<V>> placeholders = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the value of the in-flight load for the key, or performs the load if none is in
+   * progress. The supplied load is responsible for publishing its value into the cache, unless the
+   * placeholder was discarded, and returns the value associated with the key afterwards.
+   *
+   * @param lookupKey the key in the form used by the hash table
+   * @param joined set to true if the result was obtained from another caller's load
+   * @param load the function that loads and publishes the value
+   * @return the current value associated with the key, or null if absent
+   * @throws IllegalStateException if the load is being performed by the current thread
+   */
+  @Nullable V loadOrJoin(Object lookupKey,
+      boolean[/* 1 */] joined, Function<Placeholder<V>, V> load) {
+    Placeholder<V> placeholder = new Placeholder<>();
+    Placeholder<V> inFlight = placeholders.putIfAbsent(lookupKey, placeholder);
+    if (inFlight != null) {
+      if (inFlight.owner == Thread.currentThread()) {
+        throw new IllegalStateException("Recursive load");
+      }
+      joined[0] = true;
+      return LocalLoadingCache.join(inFlight);
+    }
+    try {
+      V value = load.apply(placeholder);
+      placeholder.complete(value);
+      return value;
+    } catch (Throwable t) {
+      placeholder.completeExceptionally(t);
+      throw t;
+    } finally {
+      placeholders.remove(lookupKey, placeholder);
+    }
+  }
+
+  /**
+   * Discards the in-flight load of the key, if any, so that its value is not published and a later
+   * caller performs a new load. This must be called before the key's mapping is removed.
+   *
+   * @param lookupKey the key in the form used by the hash table
+   */
+  void discard(Object lookupKey) {
+    Placeholder<V> placeholder = placeholders.remove(lookupKey);
+    if (placeholder != null) {
+      placeholder.discarded = true;
+    }
+  }
+
+  /** Discards all of the in-flight loads. This must be called before the mappings are removed. */
+  void discardAll() {
+    for (Object lookupKey : placeholders.keySet()) {
+      discard(lookupKey);
+    }
+  }
+
+  /** A marker for an in-flight load that records the thread performing it. */
+  static final class Placeholder<V> extends CompletableFuture<V> {
+    final Thread owner = Thread.currentThread();
+
+    /** If the key was removed during the load, so that its value must not be published. */
+    volatile boolean discarded;
+  }
+}
@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.checkerframework.checker.index.qual.NonNegative;
@@ -111,6 +112,18 @@ public interface Policy<K, V> {
   @NonNull
   Optional<Expiration<K, V>> refreshAfterWrite();
 
+  /**
+   * Returns access to perform operations based on the tags that a {@link Tagger} assigned to the
+   * entries. If the cache was not constructed with a tagger or the implementation does not support
+   * these operations, an empty {@link Optional} is returned.
+   *
+   * @return access to low-level operations for this cache if the entries are tagged
+   */
+  @NonNull
+  default Optional<Tagging<K, V>> tagging() {
+    return Optional.empty();
+  }
+
   /** The low-level operations for a cache with a size-based eviction policy. */
   interface Eviction<K, V> {
 
@@ -167,6 +180,35 @@ public interface Policy<K, V> {
      */
     void setMaximum(@NonNegative long maximum);
 
+    /**
+     * Returns the portion of the maximum size that is currently dedicated to the admission window
+     * (eden space), where recently added entries are retained before being evaluated for long-term
+     * retention by the main space. The eviction policy adapts this partitioning in response to the
+     * workload, so the value may change over the lifetime of the cache. If the cache does not
+     * support querying for the partitioning, then the {@link OptionalLong} will be empty.
+     *
+     * @return the maximum size of the admission window, which may be either weighted or unweighted
+     */
+    @NonNull
+    default OptionalLong edenMaximum() {
+      return OptionalLong.empty();
+    }
+
+    /**
+     * Returns the portion of the maximum size that is currently dedicated to the main space's
+     * protected region, which retains the entries that were accessed after being admitted into the
+     * main space. The remainder of the main space is used by the probation region. The eviction
+     * policy adapts this partitioning in response to the workload, so the value may change over the
+     * lifetime of the cache. If the cache does not support querying for the partitioning, then the
+     * {@link OptionalLong} will be empty.
+     *
+     * @return the maximum size of the protected region, which may be either weighted or unweighted
+     */
+    @NonNull
+    default OptionalLong mainProtectedMaximum() {
+      return OptionalLong.empty();
+    }
+
     /**
      * Returns an unmodifiable snapshot {@link Map} view of the cache with ordered traversal. The
      * order of iteration is from the entries least likely to be retained (coldest) to the entries
@@ -495,4 +537,29 @@ public interface Policy<K, V> {
     @NonNull
     Map<@NonNull K, @NonNull V> youngest(@NonNegative int limit);
   }
+
+  /** The low-level operations for a cache whose entries are grouped by tags. */
+  interface Tagging<K, V> {
+
+    /**
+     * Returns an unmodifiable snapshot {@link Set} of the keys of the entries that have the tag.
+     * Beware that obtaining the keys is <em>NOT</em> a constant-time operation, as the pending
+     * additions and updates to the cache are applied to the index first.
+     *
+     * @param tag the tag whose entries are being queried
+     * @return a snapshot of the keys that have the tag
+     */
+    @NonNull
+    Set<@NonNull K> keys(@NonNull Object tag);
+
+    /**
+     * Discards all of the entries that have the tag in a single pass. The entries are removed as
+     * if by {@link Cache#invalidateAll(Iterable)}, with the removal listener notified by a single
+     * batch of notifications. An entry that is concurrently added or updated may not be reflected
+     * by the index yet, and therefore may not be discarded.
+     *
+     * @param tag the tag whose entries are to be discarded
+     */
+    void invalidateTag(@NonNull Object tag);
+  }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+/**
+ * A stage that batches the automatic refreshes of stale entries into bulk reloads. The entries are
+ * gathered into a pending batch that is dispatched to {@link AsyncCacheLoader#asyncReloadAll} when
+ * it reaches the maximum size, or when the delay since the batch's first entry was added elapses,
+ * whichever occurs first. Each entry's future is then completed from the batch result.
+ * <p>
+ * The stale entries are added when they are read, and the cache's maintenance tops up a pending
+ * batch with other entries that are due for a refresh (see
+ * {@link BoundedLocalCache#gatherStaleEntries}).
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class RefreshBatcher<K, V> extends Batcher<K, V> {
+  final Supplier<StatsCounter> statsCounter;
+  final AsyncCacheLoader<K, V> cacheLoader;
+
+  RefreshBatcher(Caffeine<?, ?> builder,
+      AsyncCacheLoader<K, V> cacheLoader, Supplier<StatsCounter> statsCounter) {
+    super(builder.getBatchScheduler(), builder.getMaximumRefreshBatchSize(),
+        builder.getRefreshBatchDelayNanos());
+    this.statsCounter = requireNonNull(statsCounter);
+    this.cacheLoader = requireNonNull(cacheLoader);
+  }
+
+  /**
+   * Returns a future that is completed with the entry's reloaded value, or null if it was absent
+   * from the batch result.
+   *
+   * @param key the key of the stale entry
+   * @param oldValue the value currently associated with the key
+   * @param executor the executor that the bulk reload is performed with
+   * @return the future value of the reload
+   */
+  public CompletableFuture<V> reload(K key, V oldValue, Executor executor) {
+    return add(key, requireNonNull(oldValue), executor);
+  }
+
+  /** Reloads the entries in a single bulk call and completes each future from the result. */
+  @Override
+  @SuppressWarnings("FutureReturnValueIgnored")
+  void dispatch(Batch<K, V> batch, Executor executor) {
+    statsCounter.get().recordBatchRefresh(batch.futures.size());
+    try {
+      cacheLoader.asyncReloadAll(batch.oldValues, executor).whenComplete((result, error) ->
+          complete(batch.futures, result, error));
+    } catch (Throwable t) {
+      complete(batch.futures, /* result */ null, t);
+    }
+  }
+}
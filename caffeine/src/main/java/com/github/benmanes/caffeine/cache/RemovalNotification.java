@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A notification of the removal of a single entry. The key and/or value may be {@code null} if they
+ * were already garbage collected.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class RemovalNotification<K, V> {
+  private final @Nullable K key;
+  private final @Nullable V value;
+  private final RemovalCause cause;
+
+  /**
+   * Creates an entry representing a mapping from the specified key to the specified value.
+   *
+   * @param key the key represented by this entry
+   * @param value the value represented by this entry
+   * @param cause the reason for which the entry was removed
+   */
+  public RemovalNotification(@Nullable K key, @Nullable V value, @NonNull RemovalCause cause) {
+    this.cause = requireNonNull(cause);
+    this.value = value;
+    this.key = key;
+  }
+
+  /** Returns the key represented by this entry, or {@code null} if collected. */
+  public @Nullable K getKey() {
+    return key;
+  }
+
+  /** Returns the value represented by this entry, or {@code null} if collected. */
+  public @Nullable V getValue() {
+    return value;
+  }
+
+  /** Returns the reason for which the entry was removed. */
+  public @NonNull RemovalCause getCause() {
+    return cause;
+  }
+
+  /**
+   * Returns {@code true} if there was an automatic removal due to eviction (the cause is neither
+   * {@link RemovalCause#EXPLICIT} nor {@link RemovalCause#REPLACED}).
+   *
+   * @return if the entry was automatically removed due to eviction
+   */
+  public boolean wasEvicted() {
+    return cause.wasEvicted();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    } else if (!(o instanceof RemovalNotification<?, ?>)) {
+      return false;
+    }
+    RemovalNotification<?, ?> notification = (RemovalNotification<?, ?>) o;
+    return Objects.equals(key, notification.key)
+        && Objects.equals(value, notification.value)
+        && (cause == notification.cause);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(key, value, cause);
+  }
+
+  @Override
+  public String toString() {
+    return key + "=" + value + " [" + cause + "]";
+  }
+}
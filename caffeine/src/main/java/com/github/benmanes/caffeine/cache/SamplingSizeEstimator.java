@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.base.UnsafeAccess.UNSAFE;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * An estimator that traverses the object graphs of the key and value, where the shallow size of
+ * each object is derived from the field offsets of the running JVM. A large array of references
+ * is traversed by a stride that visits at most {@link #SAMPLE_SIZE} of its elements, and each
+ * sampled element is scaled to stand in for the elements that were skipped. As the table of a
+ * hash map or the backing array of a list is sampled, the cost of estimating a large collection is
+ * bounded while its size remains an unbiased extrapolation when the elements are similar.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+enum SamplingSizeEstimator implements SizeEstimator<Object, Object> {
+  INSTANCE;
+
+  /** The maximum number of elements of an array that are traversed. */
+  static final int SAMPLE_SIZE = 32;
+  /** The maximum number of objects that are traversed when estimating an entry. */
+  static final int MAXIMUM_VISITS = 8_192;
+
+  static final int OBJECT_ALIGNMENT = 8;
+  static final int REFERENCE_SIZE = UNSAFE.arrayIndexScale(Object[].class);
+  static final int OBJECT_HEADER = UNSAFE.arrayBaseOffset(int[].class) - Integer.BYTES;
+
+  static final ClassValue<Layout> layouts = new ClassValue<Layout>() {
+    @Override protected Layout computeValue(Class<?> type) {
+      return type.isArray() ? Layout.ofArray(type) : Layout.ofInstance(type);
+    }
+  };
+
+  @Override
+  public long estimate(Object key, Object value) {
+    Traversal traversal = new Traversal();
+    traversal.push(key, 1.0);
+    traversal.push(value, 1.0);
+    return traversal.run();
+  }
+
+  /** Returns the shallow size of an instance of the class. */
+  static long shallowSizeOf(Class<?> type) {
+    return layouts.get(type).baseSize;
+  }
+
+  /** Returns the size rounded up to the object alignment. */
+  static long align(long size) {
+    return (size + OBJECT_ALIGNMENT - 1) & ~(OBJECT_ALIGNMENT - 1);
+  }
+
+  /** Returns the number of bytes used to store a field of the type. */
+  static int sizeOf(Class<?> type) {
+    if (!type.isPrimitive()) {
+      return REFERENCE_SIZE;
+    } else if ((type == long.class) || (type == double.class)) {
+      return Long.BYTES;
+    } else if ((type == int.class) || (type == float.class)) {
+      return Integer.BYTES;
+    } else if ((type == short.class) || (type == char.class)) {
+      return Short.BYTES;
+    }
+    return Byte.BYTES;
+  }
+
+  /** The memory layout of a class. */
+  static final class Layout {
+    static final long[] NO_REFERENCES = {};
+
+    /** The shallow size of an instance, or the offset of the first element of an array. */
+    final long baseSize;
+    /** The size of an array element, or zero if not an array. */
+    final int indexScale;
+    /** The offsets of the reference fields that are traversed. */
+    final long[] references;
+    final boolean isReferenceArray;
+
+    Layout(long baseSize, int indexScale, long[] references, boolean isReferenceArray) {
+      this.isReferenceArray = isReferenceArray;
+      this.references = references;
+      this.indexScale = indexScale;
+      this.baseSize = baseSize;
+    }
+
+    boolean isArray() {
+      return (indexScale != 0);
+    }
+
+    static Layout ofArray(Class<?> type) {
+      return new Layout(UNSAFE.arrayBaseOffset(type), UNSAFE.arrayIndexScale(type),
+          NO_REFERENCES, !type.getComponentType().isPrimitive());
+    }
+
+    static Layout ofInstance(Class<?> type) {
+      long[] references = new long[4];
+      long packedSize = OBJECT_HEADER;
+      long fieldsEnd = OBJECT_HEADER;
+      boolean hasOffsets = true;
+      int count = 0;
+
+      for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          int size = sizeOf(field.getType());
+          packedSize += size;
+          if (!hasOffsets) {
+            continue;
+          }
+          try {
+            long offset = UNSAFE.objectFieldOffset(field);
+            fieldsEnd = Math.max(fieldsEnd, offset + size);
+            if (!field.getType().isPrimitive()) {
+              if (count == references.length) {
+                references = Arrays.copyOf(references, 2 * count);
+              }
+              references[count++] = offset;
+            }
+          } catch (UnsupportedOperationException e) {
+            // Hidden classes and records do not expose their field offsets
+            hasOffsets = false;
+          }
+        }
+      }
+
+      // Instances whose references cannot be read are measured without traversing them
+      boolean traverse = hasOffsets && !Reference.class.isAssignableFrom(type);
+      return new Layout(align(hasOffsets ? fieldsEnd : packedSize), 0,
+          traverse ? Arrays.copyOf(references, count) : NO_REFERENCES, false);
+    }
+  }
+
+  /** A depth-first walk of the objects reachable from an entry. */
+  static final class Traversal {
+    final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    final ArrayDeque<Visit> pending = new ArrayDeque<>();
+
+    /** Schedules the object to be visited if it has not been already. */
+    void push(Object object, double scale) {
+      if ((object == null) || (object instanceof Class<?>) || (object instanceof Enum<?>)) {
+        return;
+      } else if (visited.add(object)) {
+        pending.push(new Visit(object, scale));
+      }
+    }
+
+    /** Returns the estimated size of the visited objects. */
+    long run() {
+      double size = 0.0;
+      for (int i = 0; (i < MAXIMUM_VISITS) && !pending.isEmpty(); i++) {
+        Visit visit = pending.pop();
+        Object object = visit.object;
+        Layout layout = layouts.get(object.getClass());
+        if (layout.isArray()) {
+          int length = Array.getLength(object);
+          size += visit.scale * align(layout.baseSize + (long) length * layout.indexScale);
+          if (layout.isReferenceArray) {
+            pushElements((Object[]) object, visit.scale);
+          }
+        } else {
+          size += visit.scale * layout.baseSize;
+          for (long offset : layout.references) {
+            push(UNSAFE.getObject(object, offset), visit.scale);
+          }
+        }
+      }
+      return Math.round(size);
+    }
+
+    /** Schedules a sample of the array's elements, each scaled to stand in for the skipped. */
+    void pushElements(Object[] array, double scale) {
+      int stride = Math.max(1, array.length / SAMPLE_SIZE);
+      int samples = (array.length + stride - 1) / stride;
+      double elementScale = scale * array.length / Math.max(1, samples);
+      for (int i = 0; i < array.length; i += stride) {
+        push(array[i], elementScale);
+      }
+    }
+  }
+
+  static final class Visit {
+    final Object object;
+    final double scale;
+
+    Visit(Object object, double scale) {
+      this.object = object;
+      this.scale = scale;
+    }
+  }
+}
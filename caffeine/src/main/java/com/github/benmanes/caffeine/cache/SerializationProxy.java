@@ -35,18 +35,33 @@ final class SerializationProxy<K, V> implements Serializable {
 
   boolean async;
   boolean weakKeys;
+  boolean loadOutsideLock;
+  boolean embeddedHashTable;
+  boolean doorkeeper;
+  boolean serveStaleOnError;
   boolean weakValues;
   boolean softValues;
   boolean isRecordingStats;
   long refreshAfterWriteNanos;
+  long gracePeriodNanos = UNSET_INT;
+  double earlyRefreshBeta = UNSET_INT;
+  long hedgeDelayNanos = UNSET_INT;
+  double hedgePercentile = UNSET_INT;
+  long loadTimeoutNanos = UNSET_INT;
   long expiresAfterWriteNanos;
   long expiresAfterAccessNanos;
   long maximumSize = UNSET_INT;
   long maximumWeight = UNSET_INT;
+  long maximumMemory = UNSET_INT;
+  int maximumBatchSize = UNSET_INT;
+  long batchDelayNanos;
+  int maximumRefreshBatchSize = UNSET_INT;
+  long refreshBatchDelayNanos;
 
   @Nullable Ticker ticker;
   @Nullable Expiry<?, ?> expiry;
   @Nullable Weigher<?, ?> weigher;
+  @Nullable SizeEstimator<?, ?> sizeEstimator;
   @Nullable CacheWriter<?, ?> writer;
   @Nullable AsyncCacheLoader<?, ?> loader;
   @Nullable RemovalListener<?, ?> removalListener;
@@ -63,6 +78,9 @@ final class SerializationProxy<K, V> implements Serializable {
     if (maximumSize != UNSET_INT) {
       builder.maximumSize(maximumSize);
     }
+    if (sizeEstimator != null) {
+      builder.maximumMemory(maximumMemory, (SizeEstimator<Object, Object>) sizeEstimator);
+    }
     if (weigher != null) {
       builder.maximumWeight(maximumWeight);
       builder.weigher((Weigher<Object, Object>) weigher);
@@ -76,12 +94,44 @@ final class SerializationProxy<K, V> implements Serializable {
     if (expiresAfterAccessNanos > 0) {
       builder.expireAfterAccess(expiresAfterAccessNanos, TimeUnit.NANOSECONDS);
     }
-    if (refreshAfterWriteNanos > 0) {
+    if (gracePeriodNanos != UNSET_INT) {
+      builder.staleWhileRevalidate(gracePeriodNanos, TimeUnit.NANOSECONDS);
+      if (serveStaleOnError) {
+        builder.serveStaleOnError();
+      }
+    } else if (refreshAfterWriteNanos > 0) {
       builder.refreshAfterWrite(refreshAfterWriteNanos, TimeUnit.NANOSECONDS);
     }
+    if (maximumBatchSize != UNSET_INT) {
+      builder.coalesceLoads(maximumBatchSize, batchDelayNanos, TimeUnit.NANOSECONDS);
+    }
+    if (earlyRefreshBeta != UNSET_INT) {
+      builder.earlyRefresh(earlyRefreshBeta);
+    }
+    if (hedgeDelayNanos != UNSET_INT) {
+      builder.hedgeLoads(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+    } else if (hedgePercentile != UNSET_INT) {
+      builder.hedgeLoadsAtPercentile(hedgePercentile);
+    }
+    if (loadTimeoutNanos != UNSET_INT) {
+      builder.loadTimeout(loadTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+    if (maximumRefreshBatchSize != UNSET_INT) {
+      builder.batchRefreshes(maximumRefreshBatchSize,
+          refreshBatchDelayNanos, TimeUnit.NANOSECONDS);
+    }
     if (weakKeys) {
       builder.weakKeys();
     }
+    if (loadOutsideLock) {
+      builder.loadOutsideLock();
+    }
+    if (embeddedHashTable) {
+      builder.embeddedHashTable();
+    }
+    if (doorkeeper) {
+      builder.doorkeeper();
+    }
     if (weakValues) {
       builder.weakValues();
     }
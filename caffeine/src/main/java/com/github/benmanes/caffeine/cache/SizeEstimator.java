@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Estimates the number of bytes retained by a cache entry's key and value. The estimate is used by
+ * {@link Caffeine#maximumMemory(long, SizeEstimator)} to bound the cache by an approximate heap
+ * budget rather than by a relative weight. The cost of the cache's own structures, such as the
+ * entry and hash table node, is added by the cache and should not be included.
+ * <p>
+ * The estimate is taken when an entry is inserted or updated in the cache and is thus effectively
+ * static during the lifetime of the entry, so mutations of the value's object graph are not
+ * reflected.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@FunctionalInterface
+public interface SizeEstimator<K, V> {
+
+  /**
+   * Returns the estimated number of bytes retained by the key and value. Objects that are
+   * reachable from both the key and the value should be counted once.
+   *
+   * @param key the key to estimate
+   * @param value the value to estimate
+   * @return the estimated size of the entry's key and value in bytes; must be non-negative
+   */
+  @NonNegative
+  long estimate(@NonNull K key, @NonNull V value);
+
+  /**
+   * Returns an estimator that traverses the key and value object graphs using the memory layout of
+   * the running JVM. The objects reachable from large arrays are sampled, so the traversal of a
+   * large collection measures a bounded number of its elements and extrapolates the rest. Classes,
+   * enum constants, and objects beyond a traversal limit are not counted.
+   * <p>
+   * The traversal is performed on every write into the cache, so an application that can cheaply
+   * compute the size of its entries should prefer a custom estimator.
+   *
+   * @param <K> the type of keys
+   * @param <V> the type of values
+   * @return an estimator that samples the key and value object graphs
+   */
+  @NonNull
+  static <K, V> SizeEstimator<K, V> sampling() {
+    @SuppressWarnings("unchecked")
+    SizeEstimator<K, V> self = (SizeEstimator<K, V>) SamplingSizeEstimator.INSTANCE;
+    return self;
+  }
+}
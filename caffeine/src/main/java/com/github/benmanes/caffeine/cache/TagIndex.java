@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A secondary index from each tag to the entries that a {@link Tagger} assigned it to. The index is
+ * updated by the cache's policy alongside its eviction and expiration structures, so it includes an
+ * entry for as long as the policy retains that entry. The tags of an entry are retained on its node
+ * so that it can be removed from its tags without a lookup. It is not thread-safe and must be
+ * accessed while holding the eviction lock.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class TagIndex<K, V> {
+  static final Logger logger = Logger.getLogger(TagIndex.class.getName());
+  static final Object[] NO_TAGS = new Object[0];
+
+  final Map<Object, Set<Node<K, V>>> members;
+  final Tagger<K, V> tagger;
+
+  TagIndex(Tagger<K, V> tagger) {
+    this.members = new HashMap<>();
+    this.tagger = tagger;
+  }
+
+  /** Adds the entry to the members of its tags. */
+  void add(Node<K, V> node) {
+    Object[] nodeTags = tagsOf(node);
+    if (nodeTags.length == 0) {
+      return;
+    }
+    node.setTags(nodeTags);
+    for (Object tag : nodeTags) {
+      members.computeIfAbsent(tag, t -> new HashSet<>()).add(node);
+    }
+  }
+
+  /** Reassigns the entry to the tags of its current value. */
+  void update(Node<K, V> node) {
+    remove(node);
+    add(node);
+  }
+
+  /** Removes the entry from the members of its tags. */
+  void remove(Node<K, V> node) {
+    Object[] nodeTags = node.getTags();
+    if (nodeTags == null) {
+      return;
+    }
+    node.setTags(null);
+    for (Object tag : nodeTags) {
+      Set<Node<K, V>> nodes = members.get(tag);
+      if ((nodes != null) && nodes.remove(node) && nodes.isEmpty()) {
+        members.remove(tag);
+      }
+    }
+  }
+
+  /** Returns a snapshot of the entries that have the tag. */
+  List<Node<K, V>> members(Object tag) {
+    Set<Node<K, V>> nodes = members.get(tag);
+    return (nodes == null) ? Collections.emptyList() : new ArrayList<>(nodes);
+  }
+
+  /** Returns the number of tags that have at least one member. */
+  int size() {
+    return members.size();
+  }
+
+  /** Returns the distinct tags of the entry, or none if it was collected or the tagger failed. */
+  Object[] tagsOf(Node<K, V> node) {
+    K key = node.getKey();
+    V value = node.getValue();
+    if ((key == null) || (value == null)) {
+      return NO_TAGS;
+    }
+    try {
+      Set<Object> distinct = new LinkedHashSet<>();
+      for (Object tag : tagger.tags(key, value)) {
+        distinct.add(requireNonNull(tag));
+      }
+      return distinct.isEmpty() ? NO_TAGS : distinct.toArray();
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Exception thrown by tagger", e);
+      return NO_TAGS;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Calculates the tags of cache entries. A tag groups together related entries, such as those that
+ * belong to a tenant or were derived from the same upstream document, so that they can be
+ * discarded together by {@link Policy.Tagging#invalidateTag(Object)}.
+ * <p>
+ * The tags are evaluated when an entry is added to or updated in the cache's policy, which is
+ * performed by the cache's maintenance work. The implementation should therefore be fast and must
+ * not modify the cache.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@FunctionalInterface
+public interface Tagger<K, V> {
+
+  /**
+   * Returns the tags of a cache entry. Tags are compared by their {@link Object#equals} and
+   * {@link Object#hashCode}, and an entry may have any number of tags.
+   *
+   * @param key the key to tag
+   * @param value the value to tag
+   * @return the tags of the entry; must not be null or contain null elements
+   */
+  @NonNull
+  Iterable<@NonNull ?> tags(@NonNull K key, @NonNull V value);
+}
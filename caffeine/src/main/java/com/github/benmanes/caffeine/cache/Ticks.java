@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The encoding of a {@link System#nanoTime()} timestamp as an unsigned 32-bit count of coarse ticks
+ * since an epoch, which allows a node to store its access and write times as ints rather than
+ * longs. A tick is 2^26 ns (~67ms) so that the encoding spans approximately 9.1 years of uptime.
+ * <p>
+ * A timestamp is rounded up to the next tick so that an entry may expire up to one tick late, but
+ * never early. This loss of precision is only acceptable when the expiration duration is much
+ * longer than a tick and the time is not used as a sentinel, so the encoding is restricted to the
+ * configurations accepted by {@link Caffeine#usesCompactTime(boolean)}.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+final class Ticks {
+  static final int SHIFT = 26;
+  static final long TICK = 1L << SHIFT;
+  static final long MASK = 0xFFFFFFFFL;
+
+  /** The shortest fixed expiration duration that may be stored with a tick's precision. */
+  static final long MINIMUM_DURATION = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * The origin of the ticks, which is backdated by a tick so that a timestamp read shortly before
+   * this class was initialized is still encoded exactly.
+   */
+  static final long EPOCH = System.nanoTime() - TICK;
+
+  private Ticks() {}
+
+  /** Returns the number of ticks since the epoch, rounded up. */
+  static int encode(long time) {
+    long elapsed = Math.max(0L, time - EPOCH);
+    return (int) ((elapsed + TICK - 1) >>> SHIFT);
+  }
+
+  /** Returns the timestamp of the encoded number of ticks. */
+  static long decode(int ticks) {
+    return EPOCH + ((ticks & MASK) << SHIFT);
+  }
+}
@@ -232,6 +232,58 @@ final class TimerWheel<K, V> {
     }
   }
 
+  /**
+   * Returns the duration until the next bucket expires, or {@link Long#MAX_VALUE} if none.
+   *
+   * @return the duration until the next bucket expires, or {@link Long#MAX_VALUE} if none
+   */
+  public long getExpirationDelay() {
+    for (int i = 0; i < SHIFT.length; i++) {
+      Node<K, V>[] timerWheel = wheel[i];
+      long ticks = (nanos >> SHIFT[i]);
+
+      long spanMask = SPANS[i] - 1;
+      int start = (int) (ticks & spanMask);
+      int end = start + timerWheel.length;
+      int mask = timerWheel.length - 1;
+      for (int j = start; j < end; j++) {
+        Node<K, V> sentinel = timerWheel[(j & mask)];
+        Node<K, V> next = sentinel.getNextInVariableOrder();
+        if (next == sentinel) {
+          continue;
+        }
+        long buckets = (j - start);
+        long delay = (buckets << SHIFT[i]) - (nanos & spanMask);
+        delay = (delay > 0) ? delay : SPANS[i];
+
+        for (int k = i + 1; k < SHIFT.length; k++) {
+          long nextDelay = peekAhead(k);
+          delay = Math.min(delay, nextDelay);
+        }
+
+        return delay;
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns the duration when the wheel's next bucket expires, or {@link Long#MAX_VALUE} if empty.
+   *
+   * @param index the timing wheel being operated on
+   */
+  long peekAhead(int index) {
+    long ticks = (nanos >> SHIFT[index]);
+    Node<K, V>[] timerWheel = wheel[index];
+
+    long spanMask = SPANS[index] - 1;
+    int mask = timerWheel.length - 1;
+    int probe = (int) ((ticks + 1) & mask);
+    Node<K, V> sentinel = timerWheel[probe];
+    Node<K, V> next = sentinel.getNextInVariableOrder();
+    return (next == sentinel) ? Long.MAX_VALUE : (SPANS[index] - (nanos & spanMask));
+  }
+
   /**
    * Returns an unmodifiable snapshot map roughly ordered by the expiration time. The wheels are
    * evaluated in order, but the timers that fall within the bucket's range are not sorted. Beware
@@ -22,11 +22,13 @@ import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.AbstractCollection;
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -34,12 +36,15 @@ import java.util.Spliterator;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -52,7 +57,10 @@ import com.github.benmanes.caffeine.cache.stats.StatsCounter;
  * @author ben.manes@gmail.com (Ben Manes)
  */
 final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
+  static final Logger logger = Logger.getLogger(UnboundedLocalCache.class.getName());
+
   @Nullable final RemovalListener<K, V> removalListener;
+  @Nullable final PendingLoads<V> pendingLoads;
   final ConcurrentHashMap<K, V> data;
   final StatsCounter statsCounter;
   final boolean isRecordingStats;
@@ -72,6 +80,7 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
     this.writer = builder.getCacheWriter();
     this.executor = builder.getExecutor();
     this.ticker = builder.getTicker();
+    this.pendingLoads = (builder.loadsOutsideLock() && !async) ? new PendingLoads<>() : null;
   }
 
   @Override
@@ -152,7 +161,50 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
   @Override
   public void notifyRemoval(@Nullable K key, @Nullable V value, RemovalCause cause) {
     requireNonNull(removalListener(), "Notification should be guarded with a check");
-    executor.execute(() -> removalListener().onRemoval(key, value, cause));
+    Runnable task = () -> {
+      try {
+        removalListener().onRemoval(key, value, cause);
+      } catch (Throwable t) {
+        logger.log(Level.WARNING, "Exception thrown by removal listener", t);
+      }
+    };
+    try {
+      executor.execute(task);
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, "Exception thrown when submitting removal listener", t);
+      task.run();
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void notifyRemovals(List<RemovalNotification<K, V>> notifications) {
+    requireNonNull(removalListener(), "Notification should be guarded with a check");
+    Runnable task = () -> {
+      RemovalListener<K, V> removalListener = removalListener();
+      if (removalListener instanceof BatchRemovalListener<?, ?>) {
+        try {
+          ((BatchRemovalListener<K, V>) removalListener).onRemovals(notifications);
+        } catch (Throwable t) {
+          logger.log(Level.WARNING, "Exception thrown by removal listener", t);
+        }
+        return;
+      }
+      for (RemovalNotification<K, V> notification : notifications) {
+        try {
+          removalListener.onRemoval(
+              notification.getKey(), notification.getValue(), notification.getCause());
+        } catch (Throwable t) {
+          logger.log(Level.WARNING, "Exception thrown by removal listener", t);
+        }
+      }
+    };
+    try {
+      executor.execute(task);
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, "Exception thrown when submitting removal listener", t);
+      task.run();
+    }
   }
 
   @Override
@@ -228,6 +280,10 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
       return value;
     }
 
+    if (pendingLoads != null) {
+      return loadOutsideLock(key, mappingFunction, recordStats, recordLoad);
+    }
+
     boolean[] missed = new boolean[1];
     value = data.computeIfAbsent(key, k -> {
       // Do not communicate to CacheWriter on a load
@@ -242,6 +298,36 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
     return value;
   }
 
+  /**
+   * Returns the current value from a computeIfAbsent invocation that evaluates the mapping function
+   * outside of the hash bin's lock.
+   */
+  @Nullable V loadOutsideLock(K key, Function<? super K, ? extends V> mappingFunction,
+      boolean recordStats, boolean recordLoad) {
+    boolean[] joined = new boolean[1];
+    @SuppressWarnings("NullAway")
+    V value = pendingLoads.loadOrJoin(key, joined, placeholder -> {
+      V present = data.get(key);
+      if (present != null) {
+        joined[0] = true;
+        return present;
+      }
+      // Do not communicate to CacheWriter on a load
+      V newValue = recordStats
+          ? statsAware(mappingFunction, recordLoad).apply(key)
+          : mappingFunction.apply(key);
+      if (newValue == null) {
+        return null;
+      }
+      V published = data.computeIfAbsent(key, k -> placeholder.discarded ? null : newValue);
+      return (published == null) ? newValue : published;
+    });
+    if (joined[0] && recordStats && (value != null)) {
+      statsCounter.recordHits(1);
+    }
+    return value;
+  }
+
   @Override
   public @Nullable V computeIfPresent(K key,
       BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
@@ -335,12 +421,61 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
 
   @Override
   public void clear() {
+    if (pendingLoads != null) {
+      pendingLoads.discardAll();
+    }
     if (!hasRemovalListener() && (writer == CacheWriter.disabledWriter())) {
       data.clear();
       return;
     }
-    for (K key : data.keySet()) {
-      remove(key);
+    if (!hasRemovalListener()) {
+      for (K key : data.keySet()) {
+        remove(key);
+      }
+      return;
+    }
+
+    // Deliver the notifications as a single task
+    List<RemovalNotification<K, V>> notifications = new ArrayList<>();
+    try {
+      for (K key : data.keySet()) {
+        V value = discard(key);
+        if (value != null) {
+          notifications.add(new RemovalNotification<>(key, value, RemovalCause.EXPLICIT));
+        }
+      }
+    } finally {
+      if (!notifications.isEmpty()) {
+        notifyRemovals(notifications);
+      }
+    }
+  }
+
+  @Override
+  public void invalidateAll(Iterable<?> keys) {
+    if (!hasRemovalListener()) {
+      LocalCache.super.invalidateAll(keys);
+      return;
+    }
+
+    // Deliver the notifications as a single task
+    List<RemovalNotification<K, V>> notifications = new ArrayList<>();
+    try {
+      for (Object key : keys) {
+        if (pendingLoads != null) {
+          pendingLoads.discard(key);
+        }
+        @SuppressWarnings("unchecked")
+        K castKey = (K) key;
+        V value = discard(castKey);
+        if (value != null) {
+          notifications.add(new RemovalNotification<>(castKey, value, RemovalCause.EXPLICIT));
+        }
+      }
+    } finally {
+      if (!notifications.isEmpty()) {
+        notifyRemovals(notifications);
+      }
     }
   }
 
@@ -414,25 +549,30 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
 
   @Override
   public @Nullable V remove(Object key) {
+    if (pendingLoads != null) {
+      pendingLoads.discard(key);
+    }
     @SuppressWarnings("unchecked")
     K castKey = (K) key;
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    V[] oldValue = (V[]) new Object[1];
-
-    if (writer == CacheWriter.disabledWriter()) {
-      oldValue[0] = data.remove(key);
-    } else {
-      data.computeIfPresent(castKey, (k, v) -> {
-        writer.delete(castKey, v, RemovalCause.EXPLICIT);
-        oldValue[0] = v;
-        return null;
-      });
+    V oldValue = discard(castKey);
+    if (hasRemovalListener() && (oldValue != null)) {
+      notifyRemoval(castKey, oldValue, RemovalCause.EXPLICIT);
     }
+    return oldValue;
+  }
 
-    if (hasRemovalListener() && (oldValue[0] != null)) {
-      notifyRemoval(castKey, oldValue[0], RemovalCause.EXPLICIT);
+  /** Removes the mapping for the key, notifying the writer but not the removal listener. */
+  @Nullable V discard(K key) {
+    if (writer == CacheWriter.disabledWriter()) {
+      return data.remove(key);
     }
-
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    V[] oldValue = (V[]) new Object[1];
+    data.computeIfPresent(key, (k, v) -> {
+      writer.delete(key, v, RemovalCause.EXPLICIT);
+      oldValue[0] = v;
+      return null;
+    });
     return oldValue[0];
   }
 
@@ -877,6 +1017,7 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
 
     Object writeReplace() {
       SerializationProxy<K, V> proxy = new SerializationProxy<>();
+      proxy.loadOutsideLock = (cache.pendingLoads != null);
       proxy.isRecordingStats = cache.isRecordingStats;
       proxy.removalListener = cache.removalListener;
       proxy.ticker = cache.ticker;
@@ -918,14 +1059,21 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
     final CacheLoader<? super K, V> loader;
     final Function<K, V> mappingFunction;
     final boolean hasBulkLoader;
+    final @Nullable CoalescingBulkLoader<K, V> coalescer;
+    final ConcurrentMap<K, CompletableFuture<V>> inFlightLoads;
 
     UnboundedLocalLoadingCache(Caffeine<K, V> builder, CacheLoader<? super K, V> loader) {
       super(builder);
       this.loader = loader;
       this.hasBulkLoader = hasLoadAll(loader);
-      this.mappingFunction = key -> {
+      this.coalescer = builder.coalescesLoads()
+          ? new CoalescingBulkLoader<>(builder, loader, cache::statsCounter,
+              (key, value) -> cache.put(key, value, /* notifyWriter */ false))
+          : null;
+      CacheLoader<? super K, V> singleLoader = (coalescer == null) ? loader : coalescer;
+      Function<K, V> loadingFunction = key -> {
         try {
-          return loader.load(key);
+          return singleLoader.load(key);
         } catch (RuntimeException e) {
           throw e;
         } catch (InterruptedException e) {
@@ -935,6 +1083,10 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
           throw new CompletionException(e);
         }
       };
+      this.inFlightLoads = new ConcurrentHashMap<>();
+      this.mappingFunction = hasBulkLoader
+          ? key -> loadOrJoin(key, loadingFunction)
+          : loadingFunction;
     }
 
     @Override
@@ -952,10 +1104,19 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
       return hasBulkLoader;
     }
 
+    @Override
+    public ConcurrentMap<K, CompletableFuture<V>> inFlightLoads() {
+      return inFlightLoads;
+    }
+
     @Override
     Object writeReplace() {
       @SuppressWarnings("unchecked")
       SerializationProxy<K, V> proxy = (SerializationProxy<K, V>) super.writeReplace();
+      if (coalescer != null) {
+        proxy.maximumBatchSize = coalescer.maximumBatchSize;
+        proxy.batchDelayNanos = coalescer.delayNanos;
+      }
       proxy.loader = loader;
       return proxy;
     }
@@ -1023,7 +1184,7 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
 
     @SuppressWarnings("unchecked")
     UnboundedLocalAsyncLoadingCache(Caffeine<K, V> builder, AsyncCacheLoader<? super K, V> loader) {
-      super(loader);
+      super(builder, loader);
       cache = new UnboundedLocalCache<>(
           (Caffeine<K, CompletableFuture<V>>) builder, /* async */ true);
     }
@@ -1048,6 +1209,15 @@ final class UnboundedLocalCache<K, V> implements LocalCache<K, V> {
       proxy.removalListener = cache.removalListener();
       proxy.ticker = cache.ticker;
       proxy.writer = cache.writer;
+      if (coalescer != null) {
+        proxy.maximumBatchSize = coalescer.maximumBatchSize;
+        proxy.batchDelayNanos = coalescer.delayNanos;
+      }
+      if (hedger != null) {
+        proxy.hedgeDelayNanos = hedger.hedgeDelayNanos;
+        proxy.hedgePercentile = hedger.hedgePercentile;
+        proxy.loadTimeoutNanos = hedger.timeoutNanos;
+      }
       proxy.loader = loader;
       proxy.async = true;
       return proxy;
@@ -30,6 +30,8 @@ import com.google.errorprone.annotations.Immutable;
  * Cache statistics are incremented according to the following rules:
  * <ul>
  *   <li>When a cache lookup encounters an existing cache entry {@code hitCount} is incremented.
+ *       If the entry is stale and served during its grace period while it is being reloaded, then
+ *       {@code staleHitCount} is incremented as well.
  *   <li>When a cache lookup first encounters a missing cache entry, a new entry is loaded.
  *   <ul>
  *     <li>After successfully loading an entry {@code missCount} and {@code loadSuccessCount} are
@@ -45,6 +47,11 @@ import com.google.errorprone.annotations.Immutable;
  *       {@code loadSuccessCount} or {@code loadFailureCount} is incremented.
  *   <li>When an entry is evicted from the cache, {@code evictionCount} is incremented and the
  *       weight added to {@code evictionWeight}.
+ *   <li>When individual loads are coalesced into a single bulk load, {@code batchLoadCount} is
+ *       incremented and the number of keys added to {@code totalBatchLoadSize}.
+ *   <li>When the refreshes of stale entries are batched into a single bulk reload,
+ *       {@code refreshBatchCount} is incremented and the number of keys added to
+ *       {@code totalRefreshBatchSize}.
  *   <li>No stats are modified when a cache entry is invalidated or manually removed.
  *   <li>No stats are modified by non-computing operations invoked on the
  *       {@linkplain Cache#asMap asMap} view of the cache.
@@ -58,15 +65,20 @@ import com.google.errorprone.annotations.Immutable;
  */
 @Immutable
 public final class CacheStats {
-  private static final CacheStats EMPTY_STATS = new CacheStats(0, 0, 0, 0, 0, 0, 0);
+  private static final CacheStats EMPTY_STATS = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
 
   private final long hitCount;
+  private final long staleHitCount;
   private final long missCount;
   private final long loadSuccessCount;
   private final long loadFailureCount;
   private final long totalLoadTime;
   private final long evictionCount;
   private final long evictionWeight;
+  private final long batchLoadCount;
+  private final long totalBatchLoadSize;
+  private final long refreshBatchCount;
+  private final long totalRefreshBatchSize;
 
   /**
    * Constructs a new {@code CacheStats} instance.
@@ -104,8 +116,39 @@ public final class CacheStats {
       @NonNegative long loadSuccessCount, @NonNegative long loadFailureCount,
       @NonNegative long totalLoadTime, @NonNegative long evictionCount,
       @NonNegative long evictionWeight) {
+    this(hitCount, missCount, loadSuccessCount, loadFailureCount,
+        totalLoadTime, evictionCount, evictionWeight, 0L, 0L, 0L, 0L, 0L);
+  }
+
+  /**
+   * Constructs a new {@code CacheStats} instance.
+   * <p>
+   * Many parameters of the same type in a row is a bad thing, but this class is not constructed
+   * by end users and is too fine-grained for a builder.
+   *
+   * @param hitCount the number of cache hits
+   * @param missCount the number of cache misses
+   * @param loadSuccessCount the number of successful cache loads
+   * @param loadFailureCount the number of failed cache loads
+   * @param totalLoadTime the total load time (success and failure)
+   * @param evictionCount the number of entries evicted from the cache
+   * @param evictionWeight the sum of weights of entries evicted from the cache
+   * @param batchLoadCount the number of coalesced bulk loads
+   * @param totalBatchLoadSize the sum of the keys loaded by the coalesced bulk loads
+   * @param refreshBatchCount the number of batched bulk reloads
+   * @param totalRefreshBatchSize the sum of the keys reloaded by the batched bulk reloads
+   * @param staleHitCount the number of cache hits that were served a stale value
+   */
+  public CacheStats(@NonNegative long hitCount, @NonNegative long missCount,
+      @NonNegative long loadSuccessCount, @NonNegative long loadFailureCount,
+      @NonNegative long totalLoadTime, @NonNegative long evictionCount,
+      @NonNegative long evictionWeight, @NonNegative long batchLoadCount,
+      @NonNegative long totalBatchLoadSize, @NonNegative long refreshBatchCount,
+      @NonNegative long totalRefreshBatchSize, @NonNegative long staleHitCount) {
     if ((hitCount < 0) || (missCount < 0) || (loadSuccessCount < 0) || (loadFailureCount < 0)
-        || (totalLoadTime < 0) || (evictionCount < 0) || (evictionWeight < 0)) {
+        || (totalLoadTime < 0) || (evictionCount < 0) || (evictionWeight < 0)
+        || (batchLoadCount < 0) || (totalBatchLoadSize < 0)
+        || (refreshBatchCount < 0) || (totalRefreshBatchSize < 0) || (staleHitCount < 0)) {
       throw new IllegalArgumentException();
     }
     this.hitCount = hitCount;
@@ -115,6 +158,11 @@ public final class CacheStats {
     this.totalLoadTime = totalLoadTime;
     this.evictionCount = evictionCount;
     this.evictionWeight = evictionWeight;
+    this.batchLoadCount = batchLoadCount;
+    this.totalBatchLoadSize = totalBatchLoadSize;
+    this.refreshBatchCount = refreshBatchCount;
+    this.totalRefreshBatchSize = totalRefreshBatchSize;
+    this.staleHitCount = staleHitCount;
   }
 
   /**
@@ -295,6 +343,84 @@ public final class CacheStats {
     return evictionWeight;
   }
 
+  /**
+   * Returns the number of times that individual loads were coalesced into a single bulk load.
+   *
+   * @return the number of coalesced bulk loads
+   */
+  @NonNegative
+  public long batchLoadCount() {
+    return batchLoadCount;
+  }
+
+  /**
+   * Returns the total number of keys that were loaded by coalesced bulk loads.
+   *
+   * @return the sum of the keys loaded by the coalesced bulk loads
+   */
+  @NonNegative
+  public long totalBatchLoadSize() {
+    return totalBatchLoadSize;
+  }
+
+  /**
+   * Returns the average number of keys loaded by a coalesced bulk load. This is defined as
+   * {@code totalBatchLoadSize / batchLoadCount}, or {@code 0.0} when {@code batchLoadCount == 0}.
+   *
+   * @return the average number of keys loaded by a coalesced bulk load
+   */
+  @NonNegative
+  public double averageBatchLoadSize() {
+    return (batchLoadCount == 0)
+        ? 0.0
+        : (double) totalBatchLoadSize / batchLoadCount;
+  }
+
+  /**
+   * Returns the number of times that the refreshes of stale entries were batched into a single
+   * bulk reload.
+   *
+   * @return the number of batched bulk reloads
+   */
+  @NonNegative
+  public long refreshBatchCount() {
+    return refreshBatchCount;
+  }
+
+  /**
+   * Returns the total number of keys that were reloaded by batched bulk reloads.
+   *
+   * @return the sum of the keys reloaded by the batched bulk reloads
+   */
+  @NonNegative
+  public long totalRefreshBatchSize() {
+    return totalRefreshBatchSize;
+  }
+
+  /**
+   * Returns the number of individual reload calls that were avoided by batching the refreshes of
+   * stale entries. This is defined as {@code totalRefreshBatchSize - refreshBatchCount}, or
+   * {@code 0} if negative.
+   *
+   * @return the number of reload calls saved by batching refreshes
+   */
+  @NonNegative
+  public long savedRefreshCount() {
+    return Math.max(0L, totalRefreshBatchSize - refreshBatchCount);
+  }
+
+  /**
+   * Returns the number of times that a cache lookup was served a stale value while the entry was
+   * being reloaded, either during the grace period after its expiration or because the reload
+   * failed. These lookups are also counted by {@link #hitCount}.
+   *
+   * @return the number of cache hits that were served a stale value
+   */
+  @NonNegative
+  public long staleHitCount() {
+    return staleHitCount;
+  }
+
   /**
    * Returns a new {@code CacheStats} representing the difference between this {@code CacheStats}
    * and {@code other}. Negative values, which aren't supported by {@code CacheStats} will be
@@ -312,7 +438,12 @@ public final class CacheStats {
         Math.max(0L, loadFailureCount - other.loadFailureCount),
         Math.max(0L, totalLoadTime - other.totalLoadTime),
         Math.max(0L, evictionCount - other.evictionCount),
-        Math.max(0L, evictionWeight - other.evictionWeight));
+        Math.max(0L, evictionWeight - other.evictionWeight),
+        Math.max(0L, batchLoadCount - other.batchLoadCount),
+        Math.max(0L, totalBatchLoadSize - other.totalBatchLoadSize),
+        Math.max(0L, refreshBatchCount - other.refreshBatchCount),
+        Math.max(0L, totalRefreshBatchSize - other.totalRefreshBatchSize),
+        Math.max(0L, staleHitCount - other.staleHitCount));
   }
 
   /**
@@ -331,13 +462,19 @@ public final class CacheStats {
         loadFailureCount + other.loadFailureCount,
         totalLoadTime + other.totalLoadTime,
         evictionCount + other.evictionCount,
-        evictionWeight + other.evictionWeight);
+        evictionWeight + other.evictionWeight,
+        batchLoadCount + other.batchLoadCount,
+        totalBatchLoadSize + other.totalBatchLoadSize,
+        refreshBatchCount + other.refreshBatchCount,
+        totalRefreshBatchSize + other.totalRefreshBatchSize,
+        staleHitCount + other.staleHitCount);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(hitCount, missCount, loadSuccessCount,
-        loadFailureCount, totalLoadTime, evictionCount, evictionWeight);
+    return Objects.hash(hitCount, missCount, loadSuccessCount, loadFailureCount,
+        totalLoadTime, evictionCount, evictionWeight, batchLoadCount, totalBatchLoadSize,
+        refreshBatchCount, totalRefreshBatchSize, staleHitCount);
   }
 
   @Override
@@ -354,7 +491,12 @@ public final class CacheStats {
         && loadFailureCount == other.loadFailureCount
         && totalLoadTime == other.totalLoadTime
         && evictionCount == other.evictionCount
-        && evictionWeight == other.evictionWeight;
+        && evictionWeight == other.evictionWeight
+        && batchLoadCount == other.batchLoadCount
+        && totalBatchLoadSize == other.totalBatchLoadSize
+        && refreshBatchCount == other.refreshBatchCount
+        && totalRefreshBatchSize == other.totalRefreshBatchSize
+        && staleHitCount == other.staleHitCount;
   }
 
   @Override
@@ -366,7 +508,12 @@ public final class CacheStats {
         + "loadFailureCount=" + loadFailureCount + ", "
         + "totalLoadTime=" + totalLoadTime + ", "
         + "evictionCount=" + evictionCount + ", "
-        + "evictionWeight=" + evictionWeight
+        + "evictionWeight=" + evictionWeight + ", "
+        + "batchLoadCount=" + batchLoadCount + ", "
+        + "totalBatchLoadSize=" + totalBatchLoadSize + ", "
+        + "refreshBatchCount=" + refreshBatchCount + ", "
+        + "totalRefreshBatchSize=" + totalRefreshBatchSize + ", "
+        + "staleHitCount=" + staleHitCount
         + '}';
   }
 }
@@ -34,6 +34,11 @@ public final class ConcurrentStatsCounter implements StatsCounter {
   private final LongAdder totalLoadTime;
   private final LongAdder evictionCount;
   private final LongAdder evictionWeight;
+  private final LongAdder batchLoadCount;
+  private final LongAdder totalBatchLoadSize;
+  private final LongAdder refreshBatchCount;
+  private final LongAdder totalRefreshBatchSize;
+  private final LongAdder staleHitCount;
 
   /**
    * Constructs an instance with all counts initialized to zero.
@@ -46,6 +51,11 @@ public final class ConcurrentStatsCounter implements StatsCounter {
     totalLoadTime = new LongAdder();
     evictionCount = new LongAdder();
     evictionWeight = new LongAdder();
+    batchLoadCount = new LongAdder();
+    totalBatchLoadSize = new LongAdder();
+    refreshBatchCount = new LongAdder();
+    totalRefreshBatchSize = new LongAdder();
+    staleHitCount = new LongAdder();
   }
 
   @Override
@@ -82,6 +92,23 @@ public final class ConcurrentStatsCounter implements StatsCounter {
     evictionWeight.add(weight);
   }
 
+  @Override
+  public void recordBatchLoad(int batchSize) {
+    batchLoadCount.increment();
+    totalBatchLoadSize.add(batchSize);
+  }
+
+  @Override
+  public void recordBatchRefresh(int batchSize) {
+    refreshBatchCount.increment();
+    totalRefreshBatchSize.add(batchSize);
+  }
+
+  @Override
+  public void recordStaleHits(int count) {
+    staleHitCount.add(count);
+  }
+
   @Override
   public CacheStats snapshot() {
     return new CacheStats(
@@ -91,7 +118,12 @@ public final class ConcurrentStatsCounter implements StatsCounter {
         loadFailureCount.sum(),
         totalLoadTime.sum(),
         evictionCount.sum(),
-        evictionWeight.sum());
+        evictionWeight.sum(),
+        batchLoadCount.sum(),
+        totalBatchLoadSize.sum(),
+        refreshBatchCount.sum(),
+        totalRefreshBatchSize.sum(),
+        staleHitCount.sum());
   }
 
   /**
@@ -108,6 +140,11 @@ public final class ConcurrentStatsCounter implements StatsCounter {
     totalLoadTime.add(otherStats.totalLoadTime());
     evictionCount.add(otherStats.evictionCount());
     evictionWeight.add(otherStats.evictionWeight());
+    batchLoadCount.add(otherStats.batchLoadCount());
+    totalBatchLoadSize.add(otherStats.totalBatchLoadSize());
+    refreshBatchCount.add(otherStats.refreshBatchCount());
+    totalRefreshBatchSize.add(otherStats.totalRefreshBatchSize());
+    staleHitCount.add(otherStats.staleHitCount());
   }
 
   @Override
@@ -39,6 +39,15 @@ enum DisabledStatsCounter implements StatsCounter {
   @SuppressWarnings("deprecation")
   public void recordEviction() {}
 
+  @Override
+  public void recordBatchLoad(int batchSize) {}
+
+  @Override
+  public void recordBatchRefresh(int batchSize) {}
+
+  @Override
+  public void recordStaleHits(int count) {}
+
   @Override
   public CacheStats snapshot() {
     return CacheStats.empty();
@@ -91,6 +91,61 @@ final class GuardedStatsCounter implements StatsCounter {
     }
   }
 
+  @Override
+  public void recordBatchLoad(int batchSize) {
+    try {
+      delegate.recordBatchLoad(batchSize);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by stats counter", t);
+    }
+  }
+
+  @Override
+  public void recordBatchRefresh(int batchSize) {
+    try {
+      delegate.recordBatchRefresh(batchSize);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by stats counter", t);
+    }
+  }
+
+  @Override
+  public void recordStaleHits(int count) {
+    try {
+      delegate.recordStaleHits(count);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by stats counter", t);
+    }
+  }
+
+  @Override
+  public boolean isRecordingOperationLatency() {
+    try {
+      return delegate.isRecordingOperationLatency();
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by stats counter", t);
+      return false;
+    }
+  }
+
+  @Override
+  public void recordGet(long latency) {
+    try {
+      delegate.recordGet(latency);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by stats counter", t);
+    }
+  }
+
+  @Override
+  public void recordPut(long latency) {
+    try {
+      delegate.recordPut(latency);
+    } catch (Throwable t) {
+      logger.log(Level.WARNING, "Exception thrown by stats counter", t);
+    }
+  }
+
   @Override
   public CacheStats snapshot() {
     try {
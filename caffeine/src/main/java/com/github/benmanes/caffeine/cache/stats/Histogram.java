@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.stats;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * A thread-safe histogram of non-negative values, such as latencies in nanoseconds. The values are
+ * counted in log-linear buckets, where each power of two is divided into eight sub-buckets, so
+ * that a value is reported with a relative error of at most 12.5%. Each bucket is a
+ * {@link LongAdder} so that concurrent recordings are striped rather than contended, and recording
+ * does not allocate unless the striping expands under contention.
+ * <p>
+ * This is used by the {@link LatencyStats} of a {@link HistogramStatsCounter}, and may be used
+ * directly to track the latencies observed by a custom {@link StatsCounter} or loader.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class Histogram {
+  static final int SUB_BUCKET_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  final LongAdder[] buckets;
+  final LongAccumulator max;
+  final LongAdder count;
+  final LongAdder sum;
+
+  /** Creates an empty histogram. */
+  public Histogram() {
+    buckets = new LongAdder[BUCKETS];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+    max = new LongAccumulator(Math::max, 0L);
+    count = new LongAdder();
+    sum = new LongAdder();
+  }
+
+  /**
+   * Records the value, where a negative value is treated as zero.
+   *
+   * @param value the value to record
+   */
+  public void record(long value) {
+    long nonNegative = Math.max(value, 0L);
+    buckets[indexOf(nonNegative)].increment();
+    max.accumulate(nonNegative);
+    count.increment();
+    sum.add(nonNegative);
+  }
+
+  /**
+   * Returns the number of recorded values, which may be inconsistent with concurrent recordings.
+   *
+   * @return the number of recorded values
+   */
+  @NonNegative
+  public long count() {
+    return count.sum();
+  }
+
+  /**
+   * Returns the value that the given percentage of the values are estimated to be less than or
+   * equal to, where the censored values were only observed to exceed their recorded value. This is
+   * equivalent to {@link HistogramSnapshot#percentile(double, HistogramSnapshot)} of the snapshots,
+   * except that the counts are read in place so that the estimate does not allocate and may be
+   * inconsistent with concurrent recordings.
+   *
+   * @param percentile the percentage, in the range of 0 to 100 inclusive
+   * @param censored the lower bounds of the values that were not observed to completion
+   * @return the approximate value at the percentile
+   * @throws IllegalArgumentException if the percentile is not in the range of 0 to 100
+   */
+  @NonNegative
+  public long percentile(double percentile, @NonNull Histogram censored) {
+    if (!((percentile >= 0.0) && (percentile <= 100.0))) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+    }
+    double target = percentile / 100.0;
+    long atRisk = count.sum() + censored.count.sum();
+    double survival = 1.0;
+    for (int i = 0; (i < buckets.length) && (atRisk > 0); i++) {
+      long completed = buckets[i].sum();
+      if (completed > 0) {
+        survival *= 1.0 - ((double) completed / atRisk);
+        if ((1.0 - survival) >= target) {
+          return Math.min(upperBoundOf(i), max.get());
+        }
+      }
+      atRisk -= completed + censored.buckets[i].sum();
+    }
+    return Math.max(max.get(), censored.max.get());
+  }
+
+  /**
+   * Discards the recorded values so that the histogram may be reused. This is not atomic with
+   * concurrent recordings, which may be retained in part or discarded.
+   */
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    max.reset();
+    count.reset();
+    sum.reset();
+  }
+
+  /**
+   * Returns a snapshot of the histogram, which may be inconsistent with concurrent recordings.
+   *
+   * @return a snapshot of the recorded values
+   */
+  @NonNull
+  public HistogramSnapshot snapshot() {
+    long[] counts = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return new HistogramSnapshot(counts, sum.sum(), max.get());
+  }
+
+  /** Returns the index of the bucket that counts the non-negative value. */
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+  }
+
+  /** Returns the smallest value that is counted by the bucket. */
+  static long lowerBoundOf(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = (index >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+    long subBucket = index & (SUB_BUCKETS - 1);
+    return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  /** Returns the largest value that is counted by the bucket. */
+  static long upperBoundOf(int index) {
+    return (index == (BUCKETS - 1)) ? Long.MAX_VALUE : (lowerBoundOf(index + 1) - 1);
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.stats;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+import org.checkerframework.checker.index.qual.NonNegative;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * An immutable snapshot of the distribution of a latency, in nanoseconds. The distribution is
+ * captured in log-linear buckets, so a percentile is reported as the upper bound of the bucket that
+ * contains it with a relative error of at most 12.5%, and is never larger than the maximum recorded
+ * value.
+ * <p>
+ * Instances are obtained from {@link LatencyStats}.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class HistogramSnapshot {
+  private static final HistogramSnapshot EMPTY =
+      new HistogramSnapshot(new long[Histogram.BUCKETS], 0L, 0L);
+
+  private final long[] counts;
+  private final long count;
+  private final long sum;
+  private final long max;
+
+  HistogramSnapshot(long[] counts, long sum, long max) {
+    this.counts = requireNonNull(counts);
+    this.count = Arrays.stream(counts).sum();
+    this.sum = sum;
+    this.max = max;
+  }
+
+  /**
+   * Returns a snapshot with no recorded values.
+   *
+   * @return an empty snapshot
+   */
+  @NonNull
+  public static HistogramSnapshot empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns the number of recorded values.
+   *
+   * @return the number of recorded values
+   */
+  @NonNegative
+  public long count() {
+    return count;
+  }
+
+  /**
+   * Returns the largest recorded value, or {@code 0} if none.
+   *
+   * @return the largest recorded value
+   */
+  @NonNegative
+  public long max() {
+    return max;
+  }
+
+  /**
+   * Returns the arithmetic mean of the recorded values, or {@code 0.0} if none.
+   *
+   * @return the mean of the recorded values
+   */
+  @NonNegative
+  public double mean() {
+    return (count == 0) ? 0.0 : (double) sum / count;
+  }
+
+  /**
+   * Returns the value that the given percentage of the recorded values are less than or equal to,
+   * or {@code 0} if none were recorded.
+   *
+   * @param percentile the percentage, in the range of 0 to 100 inclusive
+   * @return the approximate value at the percentile
+   * @throws IllegalArgumentException if the percentile is not in the range of 0 to 100
+   */
+  @NonNegative
+  public long percentile(double percentile) {
+    if (!((percentile >= 0.0) && (percentile <= 100.0))) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+    } else if (count == 0) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil((percentile / 100.0) * count));
+    long seen = 0L;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(Histogram.upperBoundOf(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Returns the value that the given percentage of the values are estimated to be less than or
+   * equal to, where the censored values were only observed to exceed their recorded value, such as
+   * the elapsed time of an operation that was abandoned before it completed. The distribution is
+   * estimated by the Kaplan-Meier product limit over the buckets, so that a censored value counts
+   * towards the values that are larger than the buckets up to its own, but not beyond it. If too
+   * many values were censored for the percentile to be reached, then the largest recorded value of
+   * either snapshot is returned.
+   *
+   * @param percentile the percentage, in the range of 0 to 100 inclusive
+   * @param censored the lower bounds of the values that were not observed to completion
+   * @return the approximate value at the percentile
+   * @throws IllegalArgumentException if the percentile is not in the range of 0 to 100
+   */
+  @NonNegative
+  public long percentile(double percentile, @NonNull HistogramSnapshot censored) {
+    if (!((percentile >= 0.0) && (percentile <= 100.0))) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+    }
+    double target = percentile / 100.0;
+    long atRisk = count + censored.count;
+    double survival = 1.0;
+    for (int i = 0; (i < counts.length) && (atRisk > 0); i++) {
+      if (counts[i] > 0) {
+        survival *= 1.0 - ((double) counts[i] / atRisk);
+        if ((1.0 - survival) >= target) {
+          return Math.min(Histogram.upperBoundOf(i), max);
+        }
+      }
+      atRisk -= counts[i] + censored.counts[i];
+    }
+    return Math.max(max, censored.max);
+  }
+
+  /**
+   * Returns a new snapshot containing the values of this snapshot and the other.
+   *
+   * @param other the snapshot to combine with
+   * @return the combined snapshot
+   */
+  @NonNull
+  public HistogramSnapshot plus(@NonNull HistogramSnapshot other) {
+    long[] combined = new long[counts.length];
+    for (int i = 0; i < combined.length; i++) {
+      combined[i] = counts[i] + other.counts[i];
+    }
+    return new HistogramSnapshot(combined, sum + other.sum, Math.max(max, other.max));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    } else if (!(o instanceof HistogramSnapshot)) {
+      return false;
+    }
+    HistogramSnapshot other = (HistogramSnapshot) o;
+    return (sum == other.sum) && (max == other.max) && Arrays.equals(counts, other.counts);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * Arrays.hashCode(counts) + Long.hashCode(sum)) + Long.hashCode(max);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + '{'
+        + "count=" + count + ", "
+        + "mean=" + mean() + ", "
+        + "p50=" + percentile(50) + ", "
+        + "p90=" + percentile(90) + ", "
+        + "p99=" + percentile(99) + ", "
+        + "p999=" + percentile(99.9) + ", "
+        + "max=" + max + '}';
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.stats;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+/**
+ * A thread-safe {@link StatsCounter} that, in addition to the counts of a
+ * {@link ConcurrentStatsCounter}, records the distributions of the load latencies and optionally
+ * of the read and write latencies. The distributions are available by {@link #latencySnapshot()}.
+ * <p>
+ * The counter is configured on a cache by supplying it to
+ * {@link com.github.benmanes.caffeine.cache.Caffeine#recordStats(java.util.function.Supplier)}.
+ * The latencies of the {@link Cache#getIfPresent}, {@link Cache#get}, and {@link Cache#put}
+ * operations, and of their asynchronous counterparts, are only recorded if enabled, as they
+ * require reading the time on every operation.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class HistogramStatsCounter implements StatsCounter {
+  private final ConcurrentStatsCounter counter;
+  private final boolean recordOperations;
+  private final Histogram loadSuccess;
+  private final Histogram loadFailure;
+  private final @Nullable Histogram get;
+  private final @Nullable Histogram put;
+
+  /**
+   * Constructs an instance with all counts initialized to zero that records the load latencies.
+   */
+  public HistogramStatsCounter() {
+    this(/* recordOperations */ false);
+  }
+
+  /**
+   * Constructs an instance with all counts initialized to zero.
+   *
+   * @param recordOperations if the latencies of the read and write operations are recorded
+   */
+  public HistogramStatsCounter(boolean recordOperations) {
+    this.counter = new ConcurrentStatsCounter();
+    this.recordOperations = recordOperations;
+    this.loadSuccess = new Histogram();
+    this.loadFailure = new Histogram();
+    this.get = recordOperations ? new Histogram() : null;
+    this.put = recordOperations ? new Histogram() : null;
+  }
+
+  @Override
+  public void recordHits(int count) {
+    counter.recordHits(count);
+  }
+
+  @Override
+  public void recordMisses(int count) {
+    counter.recordMisses(count);
+  }
+
+  @Override
+  public void recordLoadSuccess(long loadTime) {
+    counter.recordLoadSuccess(loadTime);
+    loadSuccess.record(loadTime);
+  }
+
+  @Override
+  public void recordLoadFailure(long loadTime) {
+    counter.recordLoadFailure(loadTime);
+    loadFailure.record(loadTime);
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public void recordEviction() {
+    counter.recordEviction();
+  }
+
+  @Override
+  public void recordEviction(int weight) {
+    counter.recordEviction(weight);
+  }
+
+  @Override
+  public void recordBatchLoad(int batchSize) {
+    counter.recordBatchLoad(batchSize);
+  }
+
+  @Override
+  public void recordBatchRefresh(int batchSize) {
+    counter.recordBatchRefresh(batchSize);
+  }
+
+  @Override
+  public void recordStaleHits(int count) {
+    counter.recordStaleHits(count);
+  }
+
+  @Override
+  public boolean isRecordingOperationLatency() {
+    return recordOperations;
+  }
+
+  @Override
+  public void recordGet(long latency) {
+    if (get != null) {
+      get.record(latency);
+    }
+  }
+
+  @Override
+  public void recordPut(long latency) {
+    if (put != null) {
+      put.record(latency);
+    }
+  }
+
+  @Override
+  public CacheStats snapshot() {
+    return counter.snapshot();
+  }
+
+  /**
+   * Returns a snapshot of the recorded latencies. Note that this may be an inconsistent view, as it
+   * may be interleaved with update operations.
+   *
+   * @return a snapshot of the latency distributions
+   */
+  @NonNull
+  public LatencyStats latencySnapshot() {
+    return new LatencyStats(loadSuccess.snapshot(), loadFailure.snapshot(),
+        (get == null) ? HistogramSnapshot.empty() : get.snapshot(),
+        (put == null) ? HistogramSnapshot.empty() : put.snapshot());
+  }
+
+  @Override
+  public String toString() {
+    return snapshot() + " " + latencySnapshot();
+  }
+}
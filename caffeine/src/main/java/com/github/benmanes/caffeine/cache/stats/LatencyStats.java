@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.stats;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Immutable distributions of the latencies of a cache's operations, in nanoseconds. This
+ * complements the {@link CacheStats} by exposing the percentiles that an average, such as
+ * {@link CacheStats#averageLoadPenalty()}, hides when the latency is multi-modal.
+ * <p>
+ * Instances are obtained from {@link HistogramStatsCounter#latencySnapshot()}.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class LatencyStats {
+  private final HistogramSnapshot loadSuccess;
+  private final HistogramSnapshot loadFailure;
+  private final HistogramSnapshot get;
+  private final HistogramSnapshot put;
+
+  /**
+   * Constructs a new {@code LatencyStats} instance.
+   *
+   * @param loadSuccess the latencies of the successful loads
+   * @param loadFailure the latencies of the failed loads
+   * @param get the latencies of the read operations
+   * @param put the latencies of the write operations
+   */
+  public LatencyStats(@NonNull HistogramSnapshot loadSuccess,
+      @NonNull HistogramSnapshot loadFailure, @NonNull HistogramSnapshot get,
+      @NonNull HistogramSnapshot put) {
+    this.loadSuccess = requireNonNull(loadSuccess);
+    this.loadFailure = requireNonNull(loadFailure);
+    this.get = requireNonNull(get);
+    this.put = requireNonNull(put);
+  }
+
+  /**
+   * Returns the distribution of the time spent successfully loading new values.
+   *
+   * @return the latencies of the successful loads
+   */
+  @NonNull
+  public HistogramSnapshot loadSuccess() {
+    return loadSuccess;
+  }
+
+  /**
+   * Returns the distribution of the time spent on loads that threw an exception or returned null.
+   *
+   * @return the latencies of the failed loads
+   */
+  @NonNull
+  public HistogramSnapshot loadFailure() {
+    return loadFailure;
+  }
+
+  /**
+   * Returns the distribution of the time spent by the cache's read operations, which includes the
+   * time to load on a miss, if recorded.
+   *
+   * @return the latencies of the read operations
+   */
+  @NonNull
+  public HistogramSnapshot get() {
+    return get;
+  }
+
+  /**
+   * Returns the distribution of the time spent by the cache's write operations, if recorded.
+   *
+   * @return the latencies of the write operations
+   */
+  @NonNull
+  public HistogramSnapshot put() {
+    return put;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    } else if (!(o instanceof LatencyStats)) {
+      return false;
+    }
+    LatencyStats other = (LatencyStats) o;
+    return loadSuccess.equals(other.loadSuccess)
+        && loadFailure.equals(other.loadFailure)
+        && get.equals(other.get)
+        && put.equals(other.put);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(loadSuccess, loadFailure, get, put);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + '{'
+        + "loadSuccess=" + loadSuccess + ", "
+        + "loadFailure=" + loadFailure + ", "
+        + "get=" + get + ", "
+        + "put=" + put + '}';
+  }
+}
@@ -93,6 +93,66 @@ public interface StatsCounter {
     recordEviction();
   }
 
+  /**
+   * Records the dispatch of a batch of individual loads that were coalesced into a single bulk
+   * load. This method should be called when a cache configured with
+   * {@link com.github.benmanes.caffeine.cache.Caffeine#coalesceLoads} gathers the keys of
+   * independent misses and loads them together.
+   *
+   * @param batchSize the number of keys loaded by the batch
+   */
+  default void recordBatchLoad(@NonNegative int batchSize) {}
+
+  /**
+   * Records the dispatch of a batch of stale entries that were refreshed by a single bulk reload.
+   * This method should be called when a cache configured with
+   * {@link com.github.benmanes.caffeine.cache.Caffeine#batchRefreshes} gathers the stale entries
+   * found by reads and reloads them together.
+   *
+   * @param batchSize the number of keys reloaded by the batch
+   */
+  default void recordBatchRefresh(@NonNegative int batchSize) {}
+
+  /**
+   * Records cache hits that were served a stale value. This method should be called when a cache
+   * configured with {@link com.github.benmanes.caffeine.cache.Caffeine#staleWhileRevalidate}
+   * returns an expired entry during its grace period, in addition to {@link #recordHits}.
+   *
+   * @param count the number of stale hits to record
+   */
+  default void recordStaleHits(@NonNegative int count) {}
+
+  /**
+   * Returns whether the cache should record the latencies of its read and write operations by
+   * {@link #recordGet} and {@link #recordPut}. This is disabled by default, as it requires reading
+   * the time on every operation.
+   *
+   * @return if the latencies of the read and write operations should be recorded
+   */
+  default boolean isRecordingOperationLatency() {
+    return false;
+  }
+
+  /**
+   * Records the time spent by a read operation, such as
+   * {@link com.github.benmanes.caffeine.cache.Cache#get}, including the time to load the value on a
+   * miss. For an asynchronous cache this is the time until the returned future completes. This
+   * method is only called if {@link #isRecordingOperationLatency()} is enabled.
+   *
+   * @param latency the number of nanoseconds the operation took
+   */
+  default void recordGet(@NonNegative long latency) {}
+
+  /**
+   * Records the time spent by a write operation, such as
+   * {@link com.github.benmanes.caffeine.cache.Cache#put}. For an asynchronous cache this is the
+   * time to insert the future, not to complete it. This method is only called if
+   * {@link #isRecordingOperationLatency()} is enabled.
+   *
+   * @param latency the number of nanoseconds the operation took
+   */
+  default void recordPut(@NonNegative long latency) {}
+
   /**
    * Returns a snapshot of this counter's values. Note that this may be an inconsistent view, as it
    * may be interleaved with update operations.
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.testing.EqualsTester;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@Test(singleThreaded = true)
+public final class BatchRemovalListenerTest {
+  final List<List<RemovalNotification<Integer, Integer>>> batches = new ArrayList<>();
+  final AtomicInteger tasks = new AtomicInteger();
+  final Executor executor = task -> {
+    tasks.incrementAndGet();
+    task.run();
+  };
+
+  @BeforeMethod
+  public void beforeMethod() {
+    batches.clear();
+    tasks.set(0);
+  }
+
+  @Test(dataProvider = "builders")
+  public void invalidateAll(Caffeine<Object, Object> builder) {
+    Cache<Integer, Integer> cache = builder.executor(executor)
+        .removalListener((BatchRemovalListener<Integer, Integer>) batches::add).build();
+    populate(cache, 100);
+    cache.invalidateAll();
+
+    assertThat(tasks.get(), is(clearTasks(cache)));
+    assertThat(batches.size(), is(1));
+    assertThat(batches.get(0).size(), is(100));
+    assertThat(batches.get(0).stream().map(RemovalNotification::getCause)
+        .collect(Collectors.toList()), everyItem(is(RemovalCause.EXPLICIT)));
+  }
+
+  @Test(dataProvider = "builders")
+  public void invalidateAll_plainListener(Caffeine<Object, Object> builder) {
+    AtomicInteger removals = new AtomicInteger();
+    Cache<Integer, Integer> cache = builder.executor(executor)
+        .removalListener((Integer k, Integer v, RemovalCause cause) -> {
+          if (removals.incrementAndGet() == 1) {
+            throw new IllegalStateException();
+          }
+        }).build();
+    populate(cache, 100);
+    cache.invalidateAll();
+
+    assertThat(tasks.get(), is(clearTasks(cache)));
+    assertThat(removals.get(), is(100));
+  }
+
+  @Test(dataProvider = "builders")
+  public void invalidateAll_keys(Caffeine<Object, Object> builder) {
+    Cache<Integer, Integer> cache = builder.executor(executor)
+        .removalListener((BatchRemovalListener<Integer, Integer>) batches::add).build();
+    populate(cache, 100);
+    List<Integer> keys = IntStream.range(50, 150).boxed().collect(Collectors.toList());
+    cache.invalidateAll(keys);
+
+    assertThat(batches.size(), is(1));
+    assertThat(batches.get(0).stream().map(RemovalNotification::getKey)
+        .collect(Collectors.toList()), is(keys.subList(0, 50)));
+    assertThat(cache.estimatedSize(), is(50L));
+  }
+
+  @Test(dataProvider = "builders")
+  public void invalidateAll_keys_failingListener(Caffeine<Object, Object> builder) {
+    AtomicInteger removals = new AtomicInteger();
+    Cache<Integer, Integer> cache = builder.executor(executor)
+        .removalListener((BatchRemovalListener<Integer, Integer>) notifications -> {
+          removals.addAndGet(notifications.size());
+          throw new IllegalStateException();
+        }).build();
+    populate(cache, 100);
+    cache.invalidateAll(IntStream.range(0, 10).boxed().collect(Collectors.toList()));
+    cache.invalidate(10);
+
+    assertThat(removals.get(), is(11));
+    assertThat(cache.estimatedSize(), is(89L));
+  }
+
+  @Test(dataProvider = "builders")
+  public void invalidateAll_rejected(Caffeine<Object, Object> builder) {
+    Cache<Integer, Integer> cache = builder
+        .executor(task -> { throw new RejectedExecutionException(); })
+        .removalListener((BatchRemovalListener<Integer, Integer>) batches::add).build();
+    populate(cache, 100);
+    cache.invalidate(0);
+    cache.invalidateAll(IntStream.range(1, 10).boxed().collect(Collectors.toList()));
+    cache.invalidateAll();
+
+    assertThat(batches.size(), is(3));
+    assertThat(batches.stream().mapToInt(List::size).sum(), is(100));
+  }
+
+  @Test(dataProvider = "builders")
+  public void invalidate(Caffeine<Object, Object> builder) {
+    Cache<Integer, Integer> cache = builder.executor(executor)
+        .removalListener((BatchRemovalListener<Integer, Integer>) batches::add).build();
+    populate(cache, 2);
+    cache.invalidate(1);
+
+    assertThat(batches, contains(contains(
+        new RemovalNotification<>(1, -1, RemovalCause.EXPLICIT))));
+  }
+
+  @Test
+  public void setMaximum() {
+    Cache<Integer, Integer> cache = Caffeine.newBuilder().executor(executor).maximumSize(100)
+        .removalListener((BatchRemovalListener<Integer, Integer>) batches::add).build();
+    populate(cache, 100);
+    cache.cleanUp();
+    tasks.set(0);
+
+    cache.policy().eviction().get().setMaximum(10);
+    assertThat(tasks.get(), is(1));
+    assertThat(batches.size(), is(1));
+    assertThat(batches.get(0).size(), is(90));
+    assertThat(Iterables.getFirst(batches.get(0), null).getCause(), is(RemovalCause.SIZE));
+    assertThat(cache.estimatedSize(), is(10L));
+  }
+
+  @Test
+  public void notification() {
+    new EqualsTester()
+        .addEqualityGroup(new RemovalNotification<>(1, 2, RemovalCause.EXPLICIT),
+            new RemovalNotification<>(1, 2, RemovalCause.EXPLICIT))
+        .addEqualityGroup(new RemovalNotification<>(1, 2, RemovalCause.SIZE))
+        .addEqualityGroup(new RemovalNotification<>(null, null, RemovalCause.COLLECTED))
+        .testEquals();
+    assertThat(new RemovalNotification<>(1, 2, RemovalCause.SIZE).wasEvicted(), is(true));
+    assertThat(new RemovalNotification<>(1, 2, RemovalCause.SIZE).toString(), is("1=2 [SIZE]"));
+  }
+
+  @DataProvider(name = "builders")
+  public Object[][] providesBuilders() {
+    return new Object[][] {
+      { Caffeine.newBuilder() },
+      { Caffeine.newBuilder().maximumSize(1_000) },
+    };
+  }
+
+  /** Returns the number of tasks to clear, as a bounded cache reclaims the entries separately. */
+  private static int clearTasks(Cache<?, ?> cache) {
+    return cache.policy().eviction().isPresent() ? 2 : 1;
+  }
+
+  private void populate(Cache<Integer, Integer> cache, int size) {
+    IntStream.range(0, size).forEach(i -> cache.put(i, -i));
+    tasks.set(0);
+  }
+}
@@ -16,8 +16,10 @@
 package com.github.benmanes.caffeine.cache;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -26,6 +28,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import com.github.benmanes.caffeine.cache.BoundedBuffer.RingBuffer;
 import com.github.benmanes.caffeine.testing.ConcurrentTestHarness;
 
 /**
@@ -81,4 +84,71 @@ public final class BoundedBufferTest {
     assertThat(reads.intValue(), is(buffer.reads()));
     assertThat(reads.intValue(), is(buffer.writes()));
   }
+
+  @Test
+  public void sampling_adapts() {
+    BoundedBuffer<String> buffer = new BoundedBuffer<>();
+    RingBuffer<String> ring = fill(buffer);
+
+    // Mostly dropped, so the sample rate is halved on each drain
+    for (int shift = 1; shift <= BoundedBuffer.MAXIMUM_SAMPLE_SHIFT + 1; shift++) {
+      while (ring.dropped <= BoundedBuffer.SPACED_SIZE) {
+        ring.offer(DUMMY);
+      }
+      buffer.drainTo(e -> {});
+      fill(buffer);
+      assertThat(ring.sampleShift, is(Math.min(shift, BoundedBuffer.MAXIMUM_SAMPLE_SHIFT)));
+    }
+
+    // Rarely dropped, so the sample rate is restored
+    for (int shift = BoundedBuffer.MAXIMUM_SAMPLE_SHIFT - 1; shift >= 0; shift--) {
+      buffer.drainTo(e -> {});
+      assertThat(ring.sampleShift, is(shift));
+    }
+  }
+
+  @Test
+  public void sampling_uniform() {
+    BoundedBuffer<String> buffer = new BoundedBuffer<>();
+    RingBuffer<String> ring = fill(buffer);
+    buffer.drainTo(e -> {});
+    ring.sampleShift = 2;
+
+    int recorded = 0;
+    int skipped = 0;
+    for (int i = 0; i < 10_000; i++) {
+      int result = ring.offer(DUMMY);
+      if (result == Buffer.SKIPPED) {
+        skipped++;
+      } else {
+        recorded++;
+        buffer.drainTo(e -> {});
+        ring.sampleShift = 2;
+      }
+    }
+    assertThat(recorded, is(both(greaterThan(2_000)).and(lessThan(3_000))));
+    assertThat(skipped, is(10_000 - recorded));
+  }
+
+  @Test
+  public void sampling_disabled() {
+    BoundedBuffer<String> buffer = new BoundedBuffer<>(/* adaptiveSampling */ false);
+    RingBuffer<String> ring = fill(buffer);
+    for (int i = 0; i < 10 * BoundedBuffer.SPACED_SIZE; i++) {
+      assertThat(ring.offer(DUMMY), is(Buffer.FULL));
+    }
+    buffer.drainTo(e -> {});
+    assertThat(ring.sampleShift, is(0));
+  }
+
+  /** Fills the calling thread's buffer and returns it. */
+  private static RingBuffer<String> fill(BoundedBuffer<String> buffer) {
+    while (buffer.offer(DUMMY) != Buffer.FULL) {}
+    for (Buffer<String> ring : buffer.table) {
+      if ((ring != null) && (ring.size() == BoundedBuffer.BUFFER_SIZE)) {
+        return (RingBuffer<String>) ring;
+      }
+    }
+    throw new AssertionError();
+  }
 }
@@ -26,16 +26,22 @@ import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
@@ -66,6 +72,7 @@ import com.github.benmanes.caffeine.testing.ConcurrentTestHarness;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.testing.FakeTicker;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
@@ -155,6 +162,32 @@ public final class BoundedLocalCacheTest {
     cache.put(context.absentKey(), context.absentValue());
   }
 
+  @Test
+  public void scheduleCleanUp_expiration() {
+    FakeTicker ticker = new FakeTicker();
+    Scheduler scheduler = Mockito.mock(Scheduler.class);
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .executor(CacheExecutor.DIRECT.create())
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .ticker(ticker::read)
+        .scheduler(scheduler)
+        .build();
+
+    cache.put(1, 1);
+    Mockito.verify(scheduler).schedule(any(), any(),
+        eq(TimeUnit.MINUTES.toNanos(1)), eq(TimeUnit.NANOSECONDS));
+    Mockito.reset(scheduler);
+
+    ticker.advance(30, TimeUnit.SECONDS);
+    cache.put(2, 2);
+    Mockito.verifyZeroInteractions(scheduler);
+
+    ticker.advance(45, TimeUnit.SECONDS);
+    cache.cleanUp();
+    Mockito.verify(scheduler).schedule(any(), any(),
+        eq(TimeUnit.SECONDS.toNanos(15)), eq(TimeUnit.NANOSECONDS));
+  }
+
   @Test
   public void putWeighted_noOverflow() {
     Cache<Integer, Integer> cache = Caffeine.newBuilder()
@@ -267,6 +300,77 @@ public final class BoundedLocalCacheTest {
     assertThat(evictionList, is(equalTo(asList(expect))));
   }
 
+  @Test(dataProvider = "caches")
+  @CacheSpec(compute = Compute.SYNC, implementation = Implementation.Caffeine,
+      population = Population.FULL, maximumSize = Maximum.FULL, weigher = CacheWeigher.DEFAULT)
+  public void adapt_increaseEden(Cache<Integer, Integer> cache, CacheContext context) {
+    BoundedLocalCache<Integer, Integer> localCache = asBoundedLocalCache(cache);
+    prepareForAdaption(cache, localCache, /* edenPercent */ 0.01d);
+
+    long edenSize = localCache.edenWeightedSize();
+    long edenMaximum = localCache.edenMaximum();
+    long protectedMaximum = localCache.mainProtectedMaximum();
+    adapt(localCache, /* recencyBias */ true);
+
+    assertThat(localCache.edenMaximum(), is(greaterThan(edenMaximum)));
+    assertThat(localCache.edenWeightedSize(), is(greaterThan(edenSize)));
+    assertThat(localCache.mainProtectedMaximum(), is(lessThan(protectedMaximum)));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(compute = Compute.SYNC, implementation = Implementation.Caffeine,
+      population = Population.FULL, maximumSize = Maximum.FULL, weigher = CacheWeigher.DEFAULT)
+  public void adapt_decreaseEden(Cache<Integer, Integer> cache, CacheContext context) {
+    BoundedLocalCache<Integer, Integer> localCache = asBoundedLocalCache(cache);
+    prepareForAdaption(cache, localCache, /* edenPercent */ 0.50d);
+
+    long edenSize = localCache.edenWeightedSize();
+    long edenMaximum = localCache.edenMaximum();
+    long protectedMaximum = localCache.mainProtectedMaximum();
+    adapt(localCache, /* recencyBias */ false);
+
+    assertThat(localCache.edenMaximum(), is(lessThan(edenMaximum)));
+    assertThat(localCache.edenWeightedSize(), is(lessThan(edenSize)));
+    assertThat(localCache.mainProtectedMaximum(), is(greaterThan(protectedMaximum)));
+  }
+
+  /** Repopulates the cache so that the eden and main spaces are full. */
+  private static void prepareForAdaption(Cache<Integer, Integer> cache,
+      BoundedLocalCache<Integer, Integer> localCache, double edenPercent) {
+    Map<Integer, Integer> entries = ImmutableMap.copyOf(cache.asMap());
+    localCache.evictionLock.lock();
+    try {
+      long maximum = localCache.maximum();
+      long eden = (long) (edenPercent * maximum);
+      localCache.lazySetEdenMaximum(eden);
+      localCache.lazySetMainProtectedMaximum(
+          (long) (BoundedLocalCache.PERCENT_MAIN_PROTECTED * (maximum - eden)));
+    } finally {
+      localCache.evictionLock.unlock();
+    }
+
+    localCache.clear();
+    cache.putAll(entries);
+    cache.asMap().keySet().forEach(cache::getIfPresent);
+    cache.cleanUp();
+  }
+
+  /** Forces the hill climber to complete a sample period and adapt in the given direction. */
+  private static void adapt(BoundedLocalCache<Integer, Integer> localCache, boolean recencyBias) {
+    localCache.evictionLock.lock();
+    try {
+      int sampleSize = localCache.frequencySketch().sampleSize;
+      double stepSize = Math.abs(localCache.stepSize());
+      localCache.setStepSize(recencyBias ? stepSize : -stepSize);
+      localCache.setPreviousSampleHitRate(0.0);
+      localCache.setHitsInSample(sampleSize);
+      localCache.setMissesInSample(0);
+      localCache.climb();
+    } finally {
+      localCache.evictionLock.unlock();
+    }
+  }
+
   @Test(groups = "slow")
   public void evict_update() {
     Integer key = 0;
@@ -358,6 +462,92 @@ public final class BoundedLocalCacheTest {
     await().untilAtomic(removedValues, is(oldValue + newValue));
   }
 
+  @Test
+  public void clear_batched() {
+    AtomicInteger removed = new AtomicInteger();
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .removalListener((k, v, cause) -> {
+          if (cause == RemovalCause.EXPLICIT) {
+            removed.incrementAndGet();
+          }
+        })
+        .executor(Runnable::run)
+        .maximumSize(Long.MAX_VALUE)
+        .build();
+    BoundedLocalCache<Integer, Integer> localCache = asBoundedLocalCache(cache);
+    int count = (2 * BoundedLocalCache.CLEAR_BATCH_SIZE) + 1;
+    for (int i = 0; i < count; i++) {
+      cache.put(i, -i);
+    }
+
+    Iterator<Node<Integer, Integer>> iterator = localCache.data.values().iterator();
+    assertThat(localCache.clearBatch(iterator, /* onlyIfCleared */ false), is(false));
+    assertThat(localCache.evictionLock.isLocked(), is(false));
+    assertThat(removed.get(), is(BoundedLocalCache.CLEAR_BATCH_SIZE));
+    assertThat(cache.estimatedSize(), is((long) count - BoundedLocalCache.CLEAR_BATCH_SIZE));
+
+    cache.invalidateAll();
+    assertThat(removed.get(), is(count));
+    assertThat(cache.estimatedSize(), is(0L));
+  }
+
+  @Test
+  public void clear_retiresImmediately() {
+    List<Runnable> tasks = new ArrayList<>();
+    AtomicInteger removed = new AtomicInteger();
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .removalListener((k, v, cause) -> {
+          if (cause == RemovalCause.EXPLICIT) {
+            removed.incrementAndGet();
+          }
+        })
+        .executor(tasks::add)
+        .maximumSize(Long.MAX_VALUE)
+        .build();
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, -i);
+    }
+    runAll(tasks);
+
+    cache.invalidateAll();
+    cache.put(0, 0);
+    for (int i = 1; i < 10; i++) {
+      assertThat(cache.getIfPresent(i), is(nullValue()));
+      assertThat(cache.asMap().containsKey(i), is(false));
+    }
+    assertThat(cache.getIfPresent(0), is(0));
+    assertThat(ImmutableMap.copyOf(cache.asMap()), is(ImmutableMap.of(0, 0)));
+
+    runAll(tasks);
+    assertThat(removed.get(), is(10));
+    assertThat(cache.estimatedSize(), is(1L));
+    assertThat(cache.getIfPresent(0), is(0));
+  }
+
+  @Test
+  public void clear_addedDuringSweep() {
+    List<Runnable> tasks = new ArrayList<>();
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .executor(tasks::add)
+        .maximumSize(Long.MAX_VALUE)
+        .build();
+    BoundedLocalCache<Integer, Integer> localCache = asBoundedLocalCache(cache);
+
+    // a write that raced with the clear and was stamped with the prior generation
+    cache.put(1, 1);
+    localCache.data.values().forEach(node -> node.setGeneration(localCache.generation - 1));
+    runAll(tasks);
+
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+    assertThat(cache.estimatedSize(), is(0L));
+  }
+
+  private static void runAll(List<Runnable> tasks) {
+    while (!tasks.isEmpty()) {
+      tasks.remove(0).run();
+    }
+  }
+
   @Test(dataProvider = "caches")
   @CacheSpec(compute = Compute.SYNC, implementation = Implementation.Caffeine,
       population = Population.FULL, maximumSize = Maximum.FULL)
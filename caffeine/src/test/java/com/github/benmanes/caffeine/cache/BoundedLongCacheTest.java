@@ -0,0 +1,241 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.testing.ConcurrentTestHarness;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class BoundedLongCacheTest {
+
+  @Test
+  public void put() {
+    LongCache<Long> cache = newCache(100);
+    cache.put(1L, -1L);
+    cache.put(Long.MIN_VALUE, Long.MAX_VALUE);
+    assertThat(cache.getIfPresent(1L), is(-1L));
+    assertThat(cache.getIfPresent(Long.MIN_VALUE), is(Long.MAX_VALUE));
+    assertThat(cache.getIfPresent(2L), is(nullValue()));
+    assertThat(cache.estimatedSize(), is(2L));
+
+    cache.put(1L, 1L);
+    assertThat(cache.getIfPresent(1L), is(1L));
+    assertThat(cache.estimatedSize(), is(2L));
+    assertThat(cache.stats().hitCount(), is(3L));
+    assertThat(cache.stats().missCount(), is(1L));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void put_nullValue() {
+    newCache(100).put(1L, null);
+  }
+
+  @Test
+  public void get() {
+    LongCache<Long> cache = newCache(100);
+    assertThat(cache.get(1L, key -> -key), is(-1L));
+    assertThat(cache.get(1L, key -> key), is(-1L));
+    assertThat(cache.stats().missCount(), is(1L));
+    assertThat(cache.stats().hitCount(), is(1L));
+    assertThat(cache.stats().loadSuccessCount(), is(1L));
+  }
+
+  @Test
+  public void get_null() {
+    LongCache<Long> cache = newCache(100);
+    assertThat(cache.get(1L, key -> null), is(nullValue()));
+    assertThat(cache.getIfPresent(1L), is(nullValue()));
+    assertThat(cache.stats().loadFailureCount(), is(1L));
+  }
+
+  @Test
+  public void get_failure() {
+    LongCache<Long> cache = newCache(100);
+    try {
+      cache.get(1L, key -> { throw new IllegalStateException(); });
+    } catch (IllegalStateException expected) {}
+    assertThat(cache.getIfPresent(1L), is(nullValue()));
+    assertThat(cache.stats().loadFailureCount(), is(1L));
+    assertThat(cache.get(1L, key -> -key), is(-1L));
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void get_recursive() {
+    LongCache<Long> cache = newCache(100);
+    cache.get(1L, key -> cache.get(key, k -> -k));
+  }
+
+  @Test
+  public void invalidate() {
+    LongCache<Long> cache = newCache(100_000);
+    for (long i = 0; i < 1_000; i++) {
+      cache.put(i, -i);
+    }
+    for (long i = 0; i < 1_000; i += 2) {
+      cache.invalidate(i);
+    }
+    for (long i = 0; i < 1_000; i++) {
+      assertThat(cache.getIfPresent(i), is(((i % 2) == 0) ? null : -i));
+    }
+    assertThat(cache.estimatedSize(), is(500L));
+  }
+
+  @Test
+  public void invalidate_duringLoad() {
+    LongCache<Long> cache = newCache(100);
+    Long value = cache.get(1L, key -> {
+      cache.invalidate(key);
+      return -key;
+    });
+    assertThat(value, is(-1L));
+    assertThat(cache.getIfPresent(1L), is(nullValue()));
+  }
+
+  @Test
+  public void invalidateAll() {
+    LongCache<Long> cache = newCache(100_000);
+    for (long i = 0; i < 1_000; i++) {
+      cache.put(i, -i);
+    }
+    cache.invalidateAll();
+    assertThat(cache.estimatedSize(), is(0L));
+    assertThat(cache.getIfPresent(1L), is(nullValue()));
+
+    cache.put(1L, -1L);
+    assertThat(cache.getIfPresent(1L), is(-1L));
+  }
+
+  @Test
+  public void evict() {
+    LongCache<Long> cache = newCache(500);
+    for (long i = 0; i < 10_000; i++) {
+      cache.put(i, -i);
+    }
+    assertThat(cache.estimatedSize(), is(500L));
+    assertThat(cache.stats().evictionCount(), is(9_500L));
+  }
+
+  @Test
+  public void evict_retainsFrequent() {
+    LongCache<Long> cache = newCache(1_000);
+
+    // A scan of one-hit wonders should not flush the popular entries
+    for (long i = 0; i < 100_000; i++) {
+      cache.get(i % 100, key -> -key);
+      cache.put(100 + i, -i);
+    }
+    int retained = 0;
+    for (long i = 0; i < 100; i++) {
+      if (cache.getIfPresent(i) != null) {
+        retained++;
+      }
+    }
+    assertThat(retained, is(greaterThan(90)));
+    assertThat(cache.estimatedSize(), is(1_000L));
+  }
+
+  @Test
+  public void segments() {
+    BoundedLongCache<?> small = (BoundedLongCache<?>) newCache(10);
+    assertThat(small.segments.length, is(1));
+    assertThat(small.segments[0].maximum, is(10L));
+
+    BoundedLongCache<?> large = (BoundedLongCache<?>) newCache(1_000_001);
+    assertThat(large.segments.length, is(BoundedLongCache.MAXIMUM_SEGMENTS));
+    long maximum = 0L;
+    for (BoundedLongCache.Segment<?> segment : large.segments) {
+      maximum += segment.maximum;
+    }
+    assertThat(maximum, is(1_000_001L));
+  }
+
+  @Test
+  public void read_buffered() {
+    BoundedLongCache<Long> cache = (BoundedLongCache<Long>) newCache(10);
+    BoundedLongCache.Segment<Long> segment = cache.segments[0];
+    cache.put(1L, -1L);
+
+    // Reads do not take the lock, so they neither block nor invalidate the optimistic readers
+    long stamp = segment.lock.readLock();
+    try {
+      for (int i = 0; i < 100; i++) {
+        assertThat(cache.getIfPresent(1L), is(-1L));
+      }
+    } finally {
+      segment.lock.unlockRead(stamp);
+    }
+    assertThat(segment.readBufferMarks.get(0), is(1));
+
+    cache.put(2L, -2L);
+    for (int i = 0; i < BoundedLongCache.Segment.READ_BUFFER_SIZE; i++) {
+      assertThat(segment.readBufferMarks.get(i), is(0));
+    }
+    assertThat(segment.sketch.frequencyLong(1L), is(greaterThan(1)));
+  }
+
+  @Test
+  public void sketch_agesIncrementally() {
+    BoundedLongCache<Long> cache = (BoundedLongCache<Long>) newCache(1 << 16);
+    BoundedLongCache.Segment<Long> segment = cache.segments[0];
+    segment.sketch.startIncrementalReset();
+    assertThat(segment.sketch.isResetting(), is(true));
+
+    for (int i = 0; i < 1 << 10; i++) {
+      segment.put(i, (int) BoundedLongCache.hash(i), (long) -i, false, cache.statsCounter);
+    }
+    assertThat(segment.sketch.isResetting(), is(false));
+  }
+
+  @Test
+  public void concurrent() {
+    int maximum = 1_000;
+    LongCache<Long> cache = newCache(maximum);
+    AtomicInteger mismatches = new AtomicInteger();
+    ConcurrentTestHarness.timeTasks(8, () -> {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int i = 0; i < 10_000; i++) {
+        long key = random.nextLong(2 * maximum);
+        Long value = (random.nextInt(4) == 0)
+            ? cache.getIfPresent(key)
+            : cache.get(key, k -> -k);
+        if ((value != null) && (value != -key)) {
+          mismatches.incrementAndGet();
+        }
+        if (random.nextInt(16) == 0) {
+          cache.invalidate(key);
+        }
+      }
+    });
+    assertThat(mismatches.get(), is(0));
+    assertThat(cache.estimatedSize(), is(lessThanOrEqualTo((long) maximum)));
+  }
+
+  private static LongCache<Long> newCache(long maximumSize) {
+    return Caffeine.newBuilder().maximumSize(maximumSize).recordStats().buildLongKeyed();
+  }
+}
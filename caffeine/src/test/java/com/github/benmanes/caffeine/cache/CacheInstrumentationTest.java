@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.testng.annotations.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class CacheInstrumentationTest {
+
+  @Test
+  public void maintenance() {
+    CountingInstrumentation instrumentation = new CountingInstrumentation();
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .instrumentation(instrumentation)
+        .executor(Runnable::run)
+        .maximumSize(10)
+        .build();
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, -i);
+    }
+    cache.cleanUp();
+
+    assertThat(instrumentation.maintenances.sum(), is(greaterThan(0L)));
+    assertThat(instrumentation.lockWaits.sum(), is(greaterThan(0L)));
+    assertThat(instrumentation.retries.sum(), is(0L));
+    assertThat(instrumentation.callerRuns.sum(), is(0L));
+  }
+
+  @Test
+  public void droppedReads() {
+    CountingInstrumentation instrumentation = new CountingInstrumentation();
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .instrumentation(instrumentation)
+        .executor(task -> {})
+        .maximumSize(10)
+        .build();
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, -i);
+    }
+    cache.cleanUp();
+
+    // The maintenance is never run by the executor, so the read buffer fills up
+    for (int i = 0; i < 1_000; i++) {
+      cache.getIfPresent(1);
+    }
+    assertThat(instrumentation.droppedReads.sum(), is(greaterThan(0L)));
+  }
+
+  @Test
+  public void callerRunsCleanup() {
+    CountingInstrumentation instrumentation = new CountingInstrumentation();
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .instrumentation(instrumentation)
+        .executor(task -> {})
+        .maximumSize(10)
+        .build();
+
+    // The maintenance is never run by the executor, so the write buffer fills up
+    for (int i = 0; i < 2 * BoundedLocalCache.WRITE_BUFFER_MAX; i++) {
+      cache.put(i, -i);
+    }
+    assertThat(instrumentation.callerRuns.sum(), is(greaterThan(0L)));
+    assertThat(instrumentation.retries.sum(), is(greaterThanOrEqualTo(
+        BoundedLocalCache.WRITE_BUFFER_RETRIES * instrumentation.callerRuns.sum())));
+  }
+
+  @Test
+  public void lockWait_policy() {
+    CountingInstrumentation instrumentation = new CountingInstrumentation();
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .instrumentation(instrumentation)
+        .executor(Runnable::run)
+        .maximumWeight(10)
+        .weigher((k, v) -> 1)
+        .build();
+
+    cache.policy().eviction().get().weightedSize();
+    cache.policy().eviction().get().setMaximum(5);
+    assertThat(instrumentation.lockWaits.sum(), is(2L));
+  }
+
+  @Test
+  public void failing() {
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .instrumentation(new FailingInstrumentation())
+        .executor(Runnable::run)
+        .maximumSize(10)
+        .build();
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, -i);
+    }
+    cache.cleanUp();
+
+    assertThat(cache.estimatedSize(), is(10L));
+    assertThat(cache.getIfPresent(99), is(-99));
+  }
+
+  static final class CountingInstrumentation implements CacheInstrumentation {
+    final LongAdder maintenances = new LongAdder();
+    final LongAdder droppedReads = new LongAdder();
+    final LongAdder callerRuns = new LongAdder();
+    final LongAdder lockWaits = new LongAdder();
+    final LongAdder retries = new LongAdder();
+
+    @Override public void recordMaintenance(long durationNanos) {
+      maintenances.increment();
+    }
+    @Override public void recordEvictionLockWait(long waitNanos) {
+      lockWaits.increment();
+    }
+    @Override public void recordDroppedRead() {
+      droppedReads.increment();
+    }
+    @Override public void recordWriteBufferRetry() {
+      retries.increment();
+    }
+    @Override public void recordCallerRunsCleanup() {
+      callerRuns.increment();
+    }
+  }
+
+  static final class FailingInstrumentation implements CacheInstrumentation {
+    @Override public void recordMaintenance(long durationNanos) {
+      throw new IllegalStateException();
+    }
+    @Override public void recordEvictionLockWait(long waitNanos) {
+      throw new IllegalStateException();
+    }
+    @Override public void recordDroppedRead() {
+      throw new IllegalStateException();
+    }
+    @Override public void recordWriteBufferRetry() {
+      throw new IllegalStateException();
+    }
+    @Override public void recordCallerRunsCleanup() {
+      throw new IllegalStateException();
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.testing.FakeTicker;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class CacheSnapshotTest {
+  static final CacheSnapshot.Serializer<Integer, String> serializer =
+      new CacheSnapshot.Serializer<Integer, String>() {
+    @Override public byte[] serializeKey(Integer key) {
+      return ByteBuffer.allocate(Integer.BYTES).putInt(key).array();
+    }
+    @Override public byte[] serializeValue(String value) {
+      return value.getBytes(StandardCharsets.UTF_8);
+    }
+    @Override public Integer deserializeKey(byte[] bytes) {
+      return ByteBuffer.wrap(bytes).getInt();
+    }
+    @Override public String deserializeValue(byte[] bytes) {
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  };
+
+  Path path;
+
+  @BeforeMethod
+  public void before() throws IOException {
+    path = Files.createTempFile("cache", ".snapshot");
+  }
+
+  @AfterMethod
+  public void after() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  @Test
+  public void saveAndRestore() throws IOException {
+    Cache<Integer, String> cache = newBuilder().maximumSize(1_000).build();
+    for (int i = 0; i < 1_000; i++) {
+      cache.put(i, "v" + i);
+    }
+    for (int i = 0; i < 10; i++) {
+      for (int j = 0; j < 10; j++) {
+        cache.getIfPresent(i);
+      }
+    }
+
+    assertThat(CacheSnapshot.save(cache, path, 10, serializer), is(10));
+    Cache<Integer, String> restored = newBuilder().maximumSize(1_000).build();
+    assertThat(CacheSnapshot.restore(restored, path, serializer), is(10));
+    assertThat(restored.estimatedSize(), is(10L));
+    assertThat(restored.policy().eviction().get().hottest(10).keySet(),
+        is(cache.policy().eviction().get().hottest(10).keySet()));
+
+    // The restored entries are protected by their popularity from a scan of new arrivals
+    for (int i = 1_000; i < 5_000; i++) {
+      restored.put(i, "v" + i);
+    }
+    for (int i = 0; i < 10; i++) {
+      assertThat(restored.getIfPresent(i), is("v" + i));
+    }
+  }
+
+  @Test
+  public void save_limit() throws IOException {
+    Cache<Integer, String> cache = newBuilder().maximumSize(10).build();
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, "v" + i);
+    }
+    assertThat(CacheSnapshot.save(cache, path, 0, serializer), is(0));
+
+    Cache<Integer, String> restored = newBuilder().maximumSize(10).build();
+    assertThat(CacheSnapshot.restore(restored, path, serializer), is(0));
+    assertThat(restored.estimatedSize(), is(0L));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void save_unbounded() throws IOException {
+    CacheSnapshot.save(newBuilder().build(), path, 10, serializer);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void save_negativeLimit() throws IOException {
+    CacheSnapshot.save(newBuilder().maximumSize(10).build(), path, -1, serializer);
+  }
+
+  @Test
+  public void restore_unbounded() throws IOException {
+    Cache<Integer, String> cache = newBuilder().maximumSize(10).build();
+    cache.put(1, "a");
+    CacheSnapshot.save(cache, path, 10, serializer);
+
+    Cache<Integer, String> restored = newBuilder().build();
+    assertThat(CacheSnapshot.restore(restored, path, serializer), is(1));
+    assertThat(restored.getIfPresent(1), is("a"));
+  }
+
+  @Test
+  public void restore_expireAfterWrite() throws IOException {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, String> cache = newBuilder().maximumSize(10)
+        .expireAfterWrite(1, TimeUnit.MINUTES).ticker(ticker::read).build();
+    cache.put(1, "a");
+    ticker.advance(30, TimeUnit.SECONDS);
+    cache.put(2, "b");
+    CacheSnapshot.save(cache, path, 10, serializer);
+
+    FakeTicker restoredTicker = new FakeTicker();
+    Cache<Integer, String> restored = newBuilder().maximumSize(10)
+        .expireAfterWrite(1, TimeUnit.MINUTES).ticker(restoredTicker::read).build();
+    assertThat(CacheSnapshot.restore(restored, path, serializer), is(2));
+
+    // The remaining lifetime is carried over rather than restarted
+    restoredTicker.advance(45, TimeUnit.SECONDS);
+    assertThat(restored.getIfPresent(1), is(nullValue()));
+    assertThat(restored.getIfPresent(2), is("b"));
+  }
+
+  @Test
+  public void restore_expireAfterVar() throws IOException {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, String> cache = newBuilder().maximumSize(10)
+        .expireAfter(new Expiry<Integer, String>() {
+          @Override public long expireAfterCreate(Integer key, String value, long currentTime) {
+            return TimeUnit.MINUTES.toNanos(key);
+          }
+          @Override public long expireAfterUpdate(Integer key, String value,
+              long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+          @Override public long expireAfterRead(Integer key, String value,
+              long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        }).ticker(ticker::read).build();
+    cache.put(1, "a");
+    cache.put(3, "c");
+    CacheSnapshot.save(cache, path, 10, serializer);
+
+    FakeTicker restoredTicker = new FakeTicker();
+    Cache<Integer, String> restored = newBuilder().maximumSize(10)
+        .expireAfter(new Expiry<Integer, String>() {
+          @Override public long expireAfterCreate(Integer key, String value, long currentTime) {
+            return Long.MAX_VALUE;
+          }
+          @Override public long expireAfterUpdate(Integer key, String value,
+              long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+          @Override public long expireAfterRead(Integer key, String value,
+              long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        }).ticker(restoredTicker::read).build();
+    CacheSnapshot.restore(restored, path, serializer);
+
+    restoredTicker.advance(2, TimeUnit.MINUTES);
+    assertThat(restored.getIfPresent(1), is(nullValue()));
+    assertThat(restored.getIfPresent(3), is("c"));
+  }
+
+  @Test
+  public void save_hottest() throws IOException {
+    Cache<Integer, String> cache = newBuilder().maximumSize(100).build();
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "v" + i);
+    }
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 5; j++) {
+        cache.getIfPresent(i);
+      }
+    }
+    CacheSnapshot.save(cache, path, 3, serializer);
+
+    Cache<Integer, String> restored = newBuilder().maximumSize(1_000).build();
+    CacheSnapshot.restore(restored, path, serializer);
+    assertThat(restored.asMap().keySet(), containsInAnyOrder(0, 1, 2));
+
+    BoundedLocalCache<Integer, String> local = CacheSnapshot.asBoundedLocalCache(restored);
+    for (int i = 0; i < 3; i++) {
+      assertThat(local.frequencySketch().frequency(i), is(greaterThan(5)));
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void restore_invalid() throws IOException {
+    Files.write(path, new byte[] { 1, 2, 3 });
+    CacheSnapshot.restore(newBuilder().build(), path, serializer);
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void restore_truncated() throws IOException {
+    Cache<Integer, String> cache = newBuilder().maximumSize(10).build();
+    cache.put(1, "a");
+    CacheSnapshot.save(cache, path, 10, serializer);
+
+    byte[] bytes = Files.readAllBytes(path);
+    Files.write(path, java.util.Arrays.copyOf(bytes, bytes.length - 1));
+    CacheSnapshot.restore(newBuilder().build(), path, serializer);
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void restore_corruptedCount() throws IOException {
+    Cache<Integer, String> cache = newBuilder().maximumSize(10).build();
+    cache.put(1, "a");
+    CacheSnapshot.save(cache, path, 10, serializer);
+
+    byte[] bytes = Files.readAllBytes(path);
+    ByteBuffer.wrap(bytes).putInt(2 * Integer.BYTES, Integer.MAX_VALUE);
+    Files.write(path, bytes);
+    CacheSnapshot.restore(newBuilder().build(), path, serializer);
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void restore_corruptedLength() throws IOException {
+    Cache<Integer, String> cache = newBuilder().maximumSize(10).build();
+    cache.put(1, "a");
+    CacheSnapshot.save(cache, path, 10, serializer);
+
+    byte[] bytes = Files.readAllBytes(path);
+    int keyLength = CacheSnapshot.HEADER_SIZE + Integer.BYTES + Long.BYTES;
+    ByteBuffer.wrap(bytes).putInt(keyLength, Integer.MAX_VALUE);
+    Files.write(path, bytes);
+    CacheSnapshot.restore(newBuilder().build(), path, serializer);
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void restore_negativeLength() throws IOException {
+    Cache<Integer, String> cache = newBuilder().maximumSize(10).build();
+    cache.put(1, "a");
+    CacheSnapshot.save(cache, path, 10, serializer);
+
+    byte[] bytes = Files.readAllBytes(path);
+    int keyLength = CacheSnapshot.HEADER_SIZE + Integer.BYTES + Long.BYTES;
+    ByteBuffer.wrap(bytes).putInt(keyLength, -1);
+    Files.write(path, bytes);
+    CacheSnapshot.restore(newBuilder().build(), path, serializer);
+  }
+
+  @Test
+  public void save_temporaryFile() throws IOException {
+    Path directory = Files.createTempDirectory("cache");
+    Path target = directory.resolve("snapshot");
+    Path stale = directory.resolve("snapshot.tmp");
+    try {
+      Files.write(stale, new byte[] { 1, 2, 3 });
+      Cache<Integer, String> cache = newBuilder().maximumSize(10).build();
+      cache.put(1, "a");
+
+      assertThat(CacheSnapshot.save(cache, target, 10, serializer), is(1));
+      assertThat(Files.readAllBytes(stale).length, is(3));
+      try (Stream<Path> files = Files.list(directory)) {
+        assertThat(files.collect(toList()), containsInAnyOrder(target, stale));
+      }
+    } finally {
+      Files.deleteIfExists(target);
+      Files.deleteIfExists(stale);
+      Files.delete(directory);
+    }
+  }
+
+  private static Caffeine<Object, Object> newBuilder() {
+    return Caffeine.newBuilder().executor(Runnable::run);
+  }
+}
@@ -16,6 +16,7 @@
 package com.github.benmanes.caffeine.cache;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
@@ -23,6 +24,8 @@ import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Mockito.verify;
 
 import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -32,10 +35,12 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.github.benmanes.caffeine.cache.Async.AsyncWeigher;
 import com.github.benmanes.caffeine.cache.Policy.Eviction;
 import com.github.benmanes.caffeine.cache.Policy.Expiration;
 import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import com.google.common.testing.FakeTicker;
+import com.google.common.testing.SerializableTester;
 import com.google.common.util.concurrent.MoreExecutors;
 
 /**
@@ -292,6 +297,78 @@ public final class CaffeineTest {
     builder.build();
   }
 
+  /* ---------------- maximumMemory -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void maximumMemory_null() {
+    Caffeine.newBuilder().maximumMemory(1, null);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void maximumMemory_negative() {
+    Caffeine.newBuilder().maximumMemory(-1);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void maximumMemory_twice() {
+    Caffeine.newBuilder().maximumMemory(1).maximumMemory(1);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void maximumMemory_maximumSize() {
+    Caffeine.newBuilder().maximumSize(1).maximumMemory(1);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void maximumMemory_maximumWeight() {
+    Caffeine.newBuilder().maximumMemory(1).maximumWeight(1);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void maximumMemory_weigher() {
+    Caffeine.newBuilder().maximumMemory(1).weigher(Weigher.singletonWeigher());
+  }
+
+  @Test
+  public void maximumMemory() {
+    SizeEstimator<Object, Object> estimator = (k, v) -> 100;
+    Caffeine<?, ?> builder = Caffeine.newBuilder().maximumMemory(1_000, estimator);
+    assertThat(builder.sizeEstimator, is(sameInstance(estimator)));
+    assertThat(builder.maximumWeight, is(1_000L));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().maximumWeight(1_000).toString())));
+
+    Eviction<?, ?> eviction = builder.build().policy().eviction().get();
+    assertThat(eviction.getMaximum(), is(1_000L));
+    assertThat(eviction.isWeighted(), is(true));
+  }
+
+  @Test
+  public void maximumMemory_default() {
+    Caffeine<?, ?> builder = Caffeine.newBuilder().maximumMemory(1_000);
+    assertThat(builder.sizeEstimator, is(SizeEstimator.sampling()));
+    builder.build();
+  }
+
+  @Test
+  public void maximumMemory_serialize() {
+    Cache<Object, Object> cache = SerializableTester.reserialize(
+        Caffeine.newBuilder().maximumMemory(1_000).build());
+    BoundedLocalCache<?, ?> local = ((BoundedLocalCache.BoundedLocalManualCache<?, ?>) cache).cache;
+    assertThat(local.maximum(), is(1_000L));
+    assertThat(local.weigher, is(instanceOf(MemoryWeigher.class)));
+    assertThat(((MemoryWeigher<?, ?>) local.weigher).estimator, is(SizeEstimator.sampling()));
+  }
+
+  @Test
+  public void maximumMemory_serialize_async() {
+    AsyncCache<Object, Object> cache = SerializableTester.reserialize(
+        Caffeine.newBuilder().maximumMemory(1_000).buildAsync());
+    BoundedLocalCache<?, ?> local = ((BoundedLocalCache.BoundedLocalAsyncCache<?, ?>) cache).cache;
+    Weigher<?, ?> weigher = ((AsyncWeigher<?, ?>) local.weigher).delegate;
+    assertThat(local.maximum(), is(1_000L));
+    assertThat(((MemoryWeigher<?, ?>) weigher).estimator, is(SizeEstimator.sampling()));
+  }
+
   /* ---------------- expireAfterAccess -------------- */
 
   @Test(expectedExceptions = IllegalArgumentException.class)
@@ -523,6 +600,658 @@ public final class CaffeineTest {
     builder.build(k -> k);
   }
 
+  /* ---------------- staleWhileRevalidate -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void staleWhileRevalidate_nullTimeUnit() {
+    Caffeine.newBuilder().staleWhileRevalidate(1, null);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void staleWhileRevalidate_nullDuration() {
+    Caffeine.newBuilder().staleWhileRevalidate(null);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void staleWhileRevalidate_negative() {
+    Caffeine.newBuilder().staleWhileRevalidate(-1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void staleWhileRevalidate_duration_negative() {
+    Caffeine.newBuilder().staleWhileRevalidate(Duration.ofMillis(-1));
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void staleWhileRevalidate_twice() {
+    Caffeine.newBuilder().staleWhileRevalidate(1, TimeUnit.MILLISECONDS)
+        .staleWhileRevalidate(1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void staleWhileRevalidate_noCacheLoader() {
+    Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES)
+        .staleWhileRevalidate(1, TimeUnit.MINUTES).build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void staleWhileRevalidate_noExpireAfterWrite() {
+    Caffeine.newBuilder().staleWhileRevalidate(1, TimeUnit.MINUTES).build(loader);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void staleWhileRevalidate_refreshAfterWrite() {
+    Caffeine.newBuilder().expireAfterWrite(2, TimeUnit.MINUTES)
+        .refreshAfterWrite(1, TimeUnit.MINUTES)
+        .staleWhileRevalidate(1, TimeUnit.MINUTES).build(loader);
+  }
+
+  @Test
+  public void staleWhileRevalidate() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES).staleWhileRevalidate(Duration.ofSeconds(1));
+    assertThat(builder.staleWhileRevalidates(), is(true));
+    assertThat(builder.getStaleAfterWriteNanos(), is(TimeUnit.MINUTES.toNanos(1)));
+    assertThat(builder.getRefreshAfterWriteNanos(), is(TimeUnit.MINUTES.toNanos(1)));
+    assertThat(builder.getExpiresAfterWriteNanos(),
+        is(TimeUnit.MINUTES.toNanos(1) + TimeUnit.SECONDS.toNanos(1)));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES).toString())));
+    builder.build(loader);
+    builder.buildAsync(loader);
+  }
+
+  @Test
+  public void staleWhileRevalidate_saturated() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .expireAfterWrite(Long.MAX_VALUE, TimeUnit.NANOSECONDS)
+        .staleWhileRevalidate(1, TimeUnit.MINUTES);
+    assertThat(builder.getExpiresAfterWriteNanos(), is(Long.MAX_VALUE));
+  }
+
+  /* ---------------- serveStaleOnError -------------- */
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void serveStaleOnError_twice() {
+    Caffeine.newBuilder().serveStaleOnError().serveStaleOnError();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void serveStaleOnError_noCacheLoader() {
+    Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES)
+        .staleWhileRevalidate(1, TimeUnit.MINUTES).serveStaleOnError().build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void serveStaleOnError_noStaleWhileRevalidate() {
+    Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES)
+        .serveStaleOnError().build(loader);
+  }
+
+  @Test
+  public void serveStaleOnError() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES)
+        .staleWhileRevalidate(1, TimeUnit.MINUTES).serveStaleOnError();
+    assertThat(builder.servesStaleOnError(), is(true));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES).staleWhileRevalidate(1, TimeUnit.MINUTES)
+        .toString())));
+    builder.build(loader);
+  }
+
+  /* ---------------- earlyRefresh -------------- */
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void earlyRefresh_zero() {
+    Caffeine.newBuilder().earlyRefresh(0.0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void earlyRefresh_negative() {
+    Caffeine.newBuilder().earlyRefresh(-1.0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void earlyRefresh_nan() {
+    Caffeine.newBuilder().earlyRefresh(Double.NaN);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void earlyRefresh_infinite() {
+    Caffeine.newBuilder().earlyRefresh(Double.POSITIVE_INFINITY);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void earlyRefresh_twice() {
+    Caffeine.newBuilder().earlyRefresh(1.0).earlyRefresh(1.0);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void earlyRefresh_noCacheLoader() {
+    Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).earlyRefresh(1.0).build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void earlyRefresh_noDeadline() {
+    Caffeine.newBuilder().maximumSize(10).earlyRefresh(1.0).build(loader);
+  }
+
+  @Test
+  public void earlyRefresh_refreshAfterWrite() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .refreshAfterWrite(1, TimeUnit.MINUTES).earlyRefresh(1.0);
+    assertThat(builder.refreshesEarly(), is(true));
+    assertThat(builder.getRefreshAfterWriteNanos(), is(TimeUnit.MINUTES.toNanos(1)));
+    builder.build(loader);
+    builder.buildAsync(loader);
+  }
+
+  @Test
+  public void earlyRefresh_expireAfterWrite() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES).earlyRefresh(2.0);
+    assertThat(builder.refreshes(), is(false));
+    assertThat(builder.refreshesEarly(), is(true));
+    assertThat(builder.getEarlyRefreshBeta(), is(2.0));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES).toString())));
+    builder.build(loader);
+    builder.buildAsync(loader);
+  }
+
+  /* ---------------- hedgeLoads -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void hedgeLoads_nullTimeUnit() {
+    Caffeine.newBuilder().hedgeLoads(1, null);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void hedgeLoads_nullDuration() {
+    Caffeine.newBuilder().hedgeLoads(null);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void hedgeLoads_negative() {
+    Caffeine.newBuilder().hedgeLoads(-1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void hedgeLoads_twice() {
+    Caffeine.newBuilder().hedgeLoads(Duration.ofMillis(1)).hedgeLoads(Duration.ofMillis(1));
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void hedgeLoads_percentileTwice() {
+    Caffeine.newBuilder().hedgeLoads(Duration.ofMillis(1)).hedgeLoadsAtPercentile(99.0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void hedgeLoads_percentileZero() {
+    Caffeine.newBuilder().hedgeLoadsAtPercentile(0.0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void hedgeLoads_percentileTooLarge() {
+    Caffeine.newBuilder().hedgeLoadsAtPercentile(100.1);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void hedgeLoads_loadingCache() {
+    Caffeine.newBuilder().hedgeLoads(Duration.ofMillis(1)).build(loader);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void hedgeLoads_async() {
+    Caffeine.newBuilder().hedgeLoadsAtPercentile(99.0).buildAsync();
+  }
+
+  @Test
+  public void hedgeLoads() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder().hedgeLoads(Duration.ofMillis(1));
+    assertThat(builder.hedgesLoads(), is(true));
+    assertThat(builder.getHedgeDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(1)));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().toString())));
+    builder.buildAsync(loader);
+  }
+
+  @Test
+  public void hedgeLoads_percentile() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder().hedgeLoadsAtPercentile(99.0);
+    assertThat(builder.hedgesLoads(), is(true));
+    assertThat(builder.getHedgePercentile(), is(99.0));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().toString())));
+    builder.buildAsync(loader);
+  }
+
+  /* ---------------- loadTimeout -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void loadTimeout_nullTimeUnit() {
+    Caffeine.newBuilder().loadTimeout(1, null);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void loadTimeout_zero() {
+    Caffeine.newBuilder().loadTimeout(Duration.ZERO);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void loadTimeout_twice() {
+    Caffeine.newBuilder().loadTimeout(1, TimeUnit.SECONDS).loadTimeout(1, TimeUnit.SECONDS);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void loadTimeout_loadingCache() {
+    Caffeine.newBuilder().loadTimeout(1, TimeUnit.SECONDS).build(loader);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void loadTimeout_cache() {
+    Caffeine.newBuilder().loadTimeout(1, TimeUnit.SECONDS).build();
+  }
+
+  @Test
+  public void loadTimeout() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder().loadTimeout(Duration.ofSeconds(1));
+    assertThat(builder.timesOutLoads(), is(true));
+    assertThat(builder.getLoadTimeoutNanos(), is(TimeUnit.SECONDS.toNanos(1)));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().toString())));
+    builder.buildAsync(loader);
+  }
+
+  /* ---------------- coalesceLoads -------------- */
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void coalesceLoads_zeroBatchSize() {
+    Caffeine.newBuilder().coalesceLoads(0, 1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void coalesceLoads_negativeDelay() {
+    Caffeine.newBuilder().coalesceLoads(1, -1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void coalesceLoads_nullUnit() {
+    Caffeine.newBuilder().coalesceLoads(1, 1, null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void coalesceLoads_twice() {
+    Caffeine.newBuilder().coalesceLoads(1, 1, TimeUnit.MILLISECONDS)
+        .coalesceLoads(1, 1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void coalesceLoads_noCacheLoader() {
+    Caffeine.newBuilder().coalesceLoads(1, 1, TimeUnit.MILLISECONDS).build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void coalesceLoads_noAsyncCacheLoader() {
+    Caffeine.newBuilder().coalesceLoads(1, 1, TimeUnit.MILLISECONDS).buildAsync();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void coalesceLoads_noBulkLoader() {
+    Caffeine.newBuilder().coalesceLoads(1, 1, TimeUnit.MILLISECONDS).build(k -> k);
+  }
+
+  @Test
+  public void coalesceLoads() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .coalesceLoads(10, 1, TimeUnit.MILLISECONDS);
+    assertThat(builder.coalescesLoads(), is(true));
+    assertThat(builder.getMaximumBatchSize(), is(10));
+    assertThat(builder.getBatchDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(1)));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().toString())));
+    builder.build(new BulkLoader());
+    builder.buildAsync(new BulkLoader());
+  }
+
+  @Test
+  public void coalesceLoads_duration() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .coalesceLoads(10, Duration.ofMillis(1));
+    assertThat(builder.getMaximumBatchSize(), is(10));
+    assertThat(builder.getBatchDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(1)));
+    builder.build(new BulkLoader());
+  }
+
+  static final class BulkLoader implements CacheLoader<Object, Object> {
+    @Override public Object load(Object key) {
+      return key;
+    }
+    @Override public Map<Object, Object> loadAll(Iterable<?> keys) {
+      return Collections.emptyMap();
+    }
+  }
+
+  /* ---------------- batchRefreshes -------------- */
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void batchRefreshes_zeroBatchSize() {
+    Caffeine.newBuilder().batchRefreshes(0, 1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void batchRefreshes_negativeDelay() {
+    Caffeine.newBuilder().batchRefreshes(1, -1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void batchRefreshes_nullUnit() {
+    Caffeine.newBuilder().batchRefreshes(1, 1, null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void batchRefreshes_twice() {
+    Caffeine.newBuilder().batchRefreshes(1, 1, TimeUnit.MILLISECONDS)
+        .batchRefreshes(1, 1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void batchRefreshes_noCacheLoader() {
+    Caffeine.newBuilder().batchRefreshes(1, 1, TimeUnit.MILLISECONDS).build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void batchRefreshes_noRefreshAfterWrite() {
+    Caffeine.newBuilder().batchRefreshes(1, 1, TimeUnit.MILLISECONDS)
+        .build(new BulkReloader());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void batchRefreshes_noBulkReloader() {
+    Caffeine.newBuilder().batchRefreshes(1, 1, TimeUnit.MILLISECONDS)
+        .refreshAfterWrite(1, TimeUnit.MILLISECONDS).build(k -> k);
+  }
+
+  @Test
+  public void batchRefreshes() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .refreshAfterWrite(1, TimeUnit.MINUTES)
+        .batchRefreshes(10, 1, TimeUnit.MILLISECONDS);
+    assertThat(builder.batchesRefreshes(), is(true));
+    assertThat(builder.getMaximumRefreshBatchSize(), is(10));
+    assertThat(builder.getRefreshBatchDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(1)));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().toString())));
+    builder.build(new BulkReloader());
+    builder.buildAsync(new BulkReloader());
+  }
+
+  @Test
+  public void batchRefreshes_duration() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .refreshAfterWrite(1, TimeUnit.MINUTES)
+        .batchRefreshes(10, Duration.ofMillis(1));
+    assertThat(builder.getMaximumRefreshBatchSize(), is(10));
+    assertThat(builder.getRefreshBatchDelayNanos(), is(TimeUnit.MILLISECONDS.toNanos(1)));
+    builder.build(new BulkReloader());
+  }
+
+  static final class BulkReloader implements CacheLoader<Object, Object> {
+    @Override public Object load(Object key) {
+      return key;
+    }
+    @Override public Map<Object, Object> reloadAll(Map<?, ?> oldValues) {
+      return Collections.emptyMap();
+    }
+  }
+
+  /* ---------------- loadOutsideLock -------------- */
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void loadOutsideLock_twice() {
+    Caffeine.newBuilder().loadOutsideLock().loadOutsideLock();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void loadOutsideLock_async() {
+    Caffeine.newBuilder().loadOutsideLock().buildAsync();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void loadOutsideLock_asyncLoader() {
+    Caffeine.newBuilder().loadOutsideLock().buildAsync(loader);
+  }
+
+  @Test
+  public void loadOutsideLock() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder().loadOutsideLock();
+    assertThat(builder.loadsOutsideLock(), is(true));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().toString())));
+    builder.build();
+    builder.build(loader);
+  }
+
+  /* ---------------- embeddedHashTable -------------- */
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void embeddedHashTable_twice() {
+    Caffeine.newBuilder().embeddedHashTable().embeddedHashTable();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void embeddedHashTable_unbounded() {
+    Caffeine.newBuilder().embeddedHashTable().build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void embeddedHashTable_weakKeys() {
+    Caffeine.newBuilder().maximumSize(10).weakKeys().embeddedHashTable().build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void embeddedHashTable_softValues() {
+    Caffeine.newBuilder().maximumSize(10).softValues().embeddedHashTable().build(loader);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void embeddedHashTable_expiration() {
+    Caffeine.newBuilder().maximumSize(10).expireAfterAccess(1, TimeUnit.MINUTES)
+        .embeddedHashTable().buildAsync();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void embeddedHashTable_refresh() {
+    Caffeine.newBuilder().maximumSize(10).refreshAfterWrite(1, TimeUnit.MINUTES)
+        .embeddedHashTable().buildAsync(loader);
+  }
+
+  @Test
+  public void embeddedHashTable() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize(10).embeddedHashTable();
+    assertThat(builder.usesEmbeddedHashTable(), is(true));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().maximumSize(10).toString())));
+    builder.build();
+    builder.build(loader);
+    builder.buildAsync();
+    builder.buildAsync(loader);
+  }
+
+  /* ---------------- doorkeeper -------------- */
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void doorkeeper_twice() {
+    Caffeine.newBuilder().doorkeeper().doorkeeper();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void doorkeeper_unbounded() {
+    Caffeine.newBuilder().doorkeeper().build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void doorkeeper_expiration() {
+    Caffeine.newBuilder().expireAfterAccess(1, TimeUnit.MINUTES).doorkeeper().buildAsync(loader);
+  }
+
+  @Test
+  public void doorkeeper() {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize(10).doorkeeper();
+    assertThat(builder.usesDoorkeeper(), is(true));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().maximumSize(10).toString())));
+
+    Cache<Object, Object> cache = builder.build();
+    BoundedLocalCache<?, ?> local = ((BoundedLocalCache.BoundedLocalManualCache<?, ?>) cache).cache;
+    assertThat(local.frequencySketch().useDoorkeeper, is(true));
+    builder.build(loader);
+    builder.buildAsync();
+    builder.buildAsync(loader);
+
+    BoundedLongCache<?> longCache = (BoundedLongCache<?>) builder.buildLongKeyed();
+    assertThat(longCache.segments[0].sketch.useDoorkeeper, is(true));
+  }
+
+  @Test
+  public void doorkeeper_serialize() {
+    Cache<Object, Object> cache = SerializableTester.reserialize(
+        Caffeine.newBuilder().maximumSize(10).doorkeeper().build());
+    BoundedLocalCache<?, ?> local = ((BoundedLocalCache.BoundedLocalManualCache<?, ?>) cache).cache;
+    assertThat(local.frequencySketch().useDoorkeeper, is(true));
+
+    Cache<Object, Object> plain = SerializableTester.reserialize(
+        Caffeine.newBuilder().maximumSize(10).build());
+    local = ((BoundedLocalCache.BoundedLocalManualCache<?, ?>) plain).cache;
+    assertThat(local.frequencySketch().useDoorkeeper, is(false));
+  }
+
+  /* ---------------- tagger -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void tagger_null() {
+    Caffeine.newBuilder().tagger(null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void tagger_twice() {
+    Caffeine.newBuilder().tagger((k, v) -> Collections.emptyList())
+        .tagger((k, v) -> Collections.emptyList());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void tagger_unbounded() {
+    Caffeine.newBuilder().tagger((k, v) -> Collections.emptyList()).build();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void tagger_async() {
+    Caffeine.newBuilder().maximumSize(10).tagger((k, v) -> Collections.emptyList())
+        .buildAsync();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void tagger_asyncLoading() {
+    Caffeine.newBuilder().maximumSize(10).tagger((k, v) -> Collections.emptyList())
+        .buildAsync(loader);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void tagger_longKeyed() {
+    Caffeine.newBuilder().maximumSize(10).tagger((k, v) -> Collections.emptyList())
+        .buildLongKeyed();
+  }
+
+  @Test
+  public void tagger() {
+    Tagger<Object, Object> tagger = (k, v) -> Collections.emptyList();
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES).tagger(tagger);
+    assertThat(builder.getTagger(), is(tagger));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES).toString())));
+    assertThat(builder.build().policy().tagging().isPresent(), is(true));
+    assertThat(builder.build(loader).policy().tagging().isPresent(), is(true));
+    assertThat(Caffeine.newBuilder().maximumSize(10).build().policy().tagging().isPresent(),
+        is(false));
+  }
+
+  /* ---------------- buildLongKeyed -------------- */
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_unbounded() {
+    Caffeine.newBuilder().buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_weighted() {
+    Caffeine.newBuilder().maximumWeight(10).weigher((k, v) -> 1).buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_softValues() {
+    Caffeine.newBuilder().maximumSize(10).softValues().buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_expiration() {
+    Caffeine.newBuilder().maximumSize(10).expireAfterWrite(1, TimeUnit.MINUTES).buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_refresh() {
+    Caffeine.newBuilder().maximumSize(10).refreshAfterWrite(1, TimeUnit.MINUTES).buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_removalListener() {
+    Caffeine.newBuilder().maximumSize(10).removalListener((k, v, c) -> {}).buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_executor() {
+    Caffeine.newBuilder().maximumSize(10).executor(Runnable::run).buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_ticker() {
+    Caffeine.newBuilder().maximumSize(10).ticker(new FakeTicker()::read).buildLongKeyed();
+  }
+
+  @Test
+  public void buildLongKeyed_tickerWithStats() {
+    FakeTicker ticker = new FakeTicker().setAutoIncrementStep(1, TimeUnit.SECONDS);
+    LongCache<Integer> cache = Caffeine.newBuilder().maximumSize(10)
+        .ticker(ticker::read).recordStats().buildLongKeyed();
+    cache.get(1L, key -> 2);
+    assertThat(cache.stats().totalLoadTime(), is(TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_maintenanceService() {
+    MaintenanceService service = MaintenanceService.create(1);
+    try {
+      Caffeine.newBuilder().maximumSize(10).maintenanceService(service).buildLongKeyed();
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_instrumentation() {
+    Caffeine.newBuilder().maximumSize(10)
+        .instrumentation(new CacheInstrumentation() {}).buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_embeddedHashTable() {
+    Caffeine.newBuilder().maximumSize(10).embeddedHashTable().buildLongKeyed();
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void buildLongKeyed_initialCapacity() {
+    Caffeine.newBuilder().maximumSize(10).initialCapacity(10).buildLongKeyed();
+  }
+
+  @Test
+  public void buildLongKeyed() {
+    LongCache<Integer> cache = Caffeine.newBuilder().maximumSize(10).buildLongKeyed();
+    cache.put(1L, 2);
+    assertThat(cache.getIfPresent(1L), is(2));
+  }
+
   /* ---------------- weakKeys -------------- */
 
   @Test(expectedExceptions = IllegalStateException.class)
@@ -584,6 +1313,88 @@ public final class CaffeineTest {
     builder.build();
   }
 
+  /* ---------------- scheduler -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void scheduler_null() {
+    Caffeine.newBuilder().scheduler(null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void scheduler_twice() {
+    Caffeine.newBuilder().scheduler(Scheduler.disabledScheduler())
+        .scheduler(Scheduler.disabledScheduler());
+  }
+
+  @Test
+  public void scheduler_system() {
+    Caffeine<?, ?> builder = Caffeine.newBuilder().scheduler(Scheduler.systemScheduler());
+    assertThat(builder.getScheduler(), is(Scheduler.systemScheduler()));
+    builder.build();
+  }
+
+  @Test
+  public void scheduler_custom() {
+    Scheduler scheduler = (executor, task, delay, unit) -> DisabledFuture.INSTANCE;
+    Caffeine<?, ?> builder = Caffeine.newBuilder().scheduler(scheduler);
+    assertThat(((GuardedScheduler) builder.getScheduler()).delegate, is(scheduler));
+    builder.build();
+  }
+
+  /* ---------------- maintenanceService -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void maintenanceService_null() {
+    Caffeine.newBuilder().maintenanceService(null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void maintenanceService_twice() {
+    MaintenanceService service = MaintenanceService.create(1);
+    try {
+      Caffeine.newBuilder().maintenanceService(service).maintenanceService(service);
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  @Test
+  public void maintenanceService() {
+    MaintenanceService service = MaintenanceService.create(1);
+    try {
+      Caffeine<?, ?> builder = Caffeine.newBuilder().maintenanceService(service);
+      assertThat(builder.getMaintenanceService(), is(service));
+      assertThat(builder.toString(), is(not(Caffeine.newBuilder().toString())));
+      builder.build();
+      builder.maximumSize(10).build();
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  /* ---------------- instrumentation -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void instrumentation_null() {
+    Caffeine.newBuilder().instrumentation(null);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void instrumentation_twice() {
+    Caffeine.newBuilder().instrumentation(new CacheInstrumentation() {})
+        .instrumentation(new CacheInstrumentation() {});
+  }
+
+  @Test
+  public void instrumentation() {
+    CacheInstrumentation instrumentation = new CacheInstrumentation() {};
+    Caffeine<?, ?> builder = Caffeine.newBuilder().instrumentation(instrumentation);
+    assertThat(builder.getInstrumentation(), is(instrumentation));
+    assertThat(builder.toString(), is(not(Caffeine.newBuilder().toString())));
+    builder.build();
+    builder.maximumSize(10).build();
+  }
+
   /* ---------------- ticker -------------- */
 
   @Test(expectedExceptions = NullPointerException.class)
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@Test(singleThreaded = true)
+public final class CoalescingBulkLoaderTest {
+  final List<List<Integer>> batches = new ArrayList<>();
+  final List<Runnable> scheduled = new ArrayList<>();
+
+  final Scheduler scheduler = (executor, command, delay, unit) -> {
+    scheduled.add(() -> executor.execute(command));
+    return new CompletableFuture<Void>();
+  };
+
+  @BeforeMethod
+  public void beforeMethod() {
+    batches.clear();
+    scheduled.clear();
+  }
+
+  @Test
+  public void asyncGet_maximumBatchSize() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(2).buildAsync(new NegatingLoader());
+    CompletableFuture<Integer> first = cache.get(1);
+    assertThat(first.isDone(), is(false));
+
+    CompletableFuture<Integer> second = cache.get(2);
+    assertThat(first.join(), is(-1));
+    assertThat(second.join(), is(-2));
+    assertThat(batches, contains(ImmutableList.of(1, 2)));
+    checkBatchStats(cache.synchronous().stats(), 1, 2);
+  }
+
+  @Test
+  public void asyncGet_delay() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(10).buildAsync(new NegatingLoader());
+    CompletableFuture<Integer> first = cache.get(1);
+    CompletableFuture<Integer> second = cache.get(2);
+    assertThat(scheduled.size(), is(1));
+    assertThat(batches, is(empty()));
+
+    scheduled.get(0).run();
+    assertThat(first.join(), is(-1));
+    assertThat(second.join(), is(-2));
+    assertThat(batches, contains(ImmutableList.of(1, 2)));
+    checkBatchStats(cache.synchronous().stats(), 1, 2);
+  }
+
+  @Test
+  public void asyncGet_delayAfterMaximumBatchSize() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(2).buildAsync(new NegatingLoader());
+    cache.get(1);
+    cache.get(2);
+    CompletableFuture<Integer> third = cache.get(3);
+    assertThat(scheduled.size(), is(2));
+
+    scheduled.get(0).run();
+    assertThat(third.isDone(), is(false));
+    assertThat(batches, contains(ImmutableList.of(1, 2)));
+
+    scheduled.get(1).run();
+    assertThat(third.join(), is(-3));
+    assertThat(batches, contains(ImmutableList.of(1, 2), ImmutableList.of(3)));
+    checkBatchStats(cache.synchronous().stats(), 2, 3);
+  }
+
+  @Test
+  public void asyncGet_sameKey() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(2).buildAsync(new NegatingLoader());
+    CompletableFuture<Integer> first = cache.get(1);
+    assertThat(cache.get(1), is(sameInstance(first)));
+
+    scheduled.get(0).run();
+    assertThat(first.join(), is(-1));
+    assertThat(batches, contains(ImmutableList.of(1)));
+  }
+
+  @Test
+  public void asyncGet_absent() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(1).buildAsync(new NegatingLoader() {
+      @Override public Map<Integer, Integer> loadAll(
+          Iterable<? extends Integer> keys) throws Exception {
+        super.loadAll(keys);
+        return Maps.newHashMap();
+      }
+    });
+    assertThat(cache.get(1).join(), is(nullValue()));
+    assertThat(cache.synchronous().getIfPresent(1), is(nullValue()));
+  }
+
+  @Test
+  public void asyncGet_failure() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(2).buildAsync(new NegatingLoader() {
+      @Override public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+        throw new IllegalStateException();
+      }
+    });
+    CompletableFuture<Integer> first = cache.get(1);
+    CompletableFuture<Integer> second = cache.get(2);
+    assertThat(first.isCompletedExceptionally(), is(true));
+    assertThat(second.isCompletedExceptionally(), is(true));
+    assertThat(cache.synchronous().getIfPresent(1), is(nullValue()));
+    assertThat(cache.synchronous().stats().loadFailureCount(), is(2L));
+  }
+
+  @Test
+  public void asyncGet_throws() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(1).buildAsync(
+        new AsyncCacheLoader<Integer, Integer>() {
+          @Override public CompletableFuture<Integer> asyncLoad(Integer key, Executor executor) {
+            throw new UnsupportedOperationException();
+          }
+          @Override public CompletableFuture<Map<Integer, Integer>> asyncLoadAll(
+              Iterable<? extends Integer> keys, Executor executor) {
+            throw new IllegalStateException();
+          }
+        });
+    CompletableFuture<Integer> future = cache.get(1);
+    assertThat(future.isCompletedExceptionally(), is(true));
+  }
+
+  @Test
+  public void asyncGet_schedulerFails() {
+    AsyncLoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .coalesceLoads(10, 1, TimeUnit.MINUTES)
+        .scheduler((executor, command, delay, unit) -> { throw new IllegalStateException(); })
+        .executor(Runnable::run)
+        .buildAsync(new NegatingLoader());
+    assertThat(cache.get(1).join(), is(-1));
+    assertThat(batches, contains(ImmutableList.of(1)));
+  }
+
+  @Test
+  public void asyncGet_extraEntries() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(1).buildAsync(new ExtraLoader());
+    assertThat(cache.get(1).join(), is(-1));
+    assertThat(cache.synchronous().getIfPresent(2), is(-2));
+  }
+
+  @Test
+  public void syncGet() {
+    LoadingCache<Integer, Integer> cache = newBuilder(1).build(new NegatingLoader());
+    assertThat(cache.get(1), is(-1));
+    assertThat(cache.get(1), is(-1));
+    assertThat(batches, contains(ImmutableList.of(1)));
+    checkBatchStats(cache.stats(), 1, 1);
+  }
+
+  @Test
+  public void syncGet_bounded() {
+    LoadingCache<Integer, Integer> cache = newBuilder(1)
+        .maximumSize(10).build(new NegatingLoader());
+    assertThat(cache.get(1), is(-1));
+    assertThat(batches, contains(ImmutableList.of(1)));
+    checkBatchStats(cache.stats(), 1, 1);
+  }
+
+  @Test
+  public void syncGet_unscheduled() {
+    LoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .coalesceLoads(10, 1, TimeUnit.MILLISECONDS)
+        .executor(Runnable::run)
+        .scheduler(scheduler)
+        .build(new NegatingLoader());
+    assertThat(cache.get(1), is(-1));
+    assertThat(scheduled.size(), is(1));
+    assertThat(batches, contains(ImmutableList.of(1)));
+  }
+
+  @Test
+  public void syncGet_extraEntries() {
+    LoadingCache<Integer, Integer> cache = newBuilder(1).build(new ExtraLoader());
+    assertThat(cache.get(1), is(-1));
+    assertThat(cache.getIfPresent(2), is(-2));
+  }
+
+  @Test
+  public void syncGet_failure() {
+    LoadingCache<Integer, Integer> cache = newBuilder(1).build(new NegatingLoader() {
+      @Override public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+        throw new IllegalStateException();
+      }
+    });
+    try {
+      cache.get(1);
+    } catch (IllegalStateException e) {
+      assertThat(cache.stats().loadFailureCount(), is(1L));
+      return;
+    }
+    throw new AssertionError();
+  }
+
+  @Test
+  public void syncGet_checkedFailure() {
+    LoadingCache<Integer, Integer> cache = newBuilder(1).build(new NegatingLoader() {
+      @Override public Map<Integer, Integer> loadAll(
+          Iterable<? extends Integer> keys) throws Exception {
+        throw new Exception();
+      }
+    });
+    try {
+      cache.get(1);
+    } catch (CompletionException e) {
+      assertThat(e.getCause(), is(instanceOf(Exception.class)));
+      return;
+    }
+    throw new AssertionError();
+  }
+
+  @Test
+  public void complete_nullMap() {
+    CompletableFuture<Integer> future = new CompletableFuture<>();
+    CoalescingBulkLoader.complete(ImmutableMap.of(1, future), /* result */ null, /* error */ null);
+    assertThat(future.isCompletedExceptionally(), is(true));
+  }
+
+  private Caffeine<Object, Object> newBuilder(int maximumBatchSize) {
+    return Caffeine.newBuilder()
+        .coalesceLoads(maximumBatchSize, 1, TimeUnit.MINUTES)
+        .executor(Runnable::run)
+        .scheduler(scheduler)
+        .recordStats();
+  }
+
+  private static void checkBatchStats(CacheStats stats, long batchCount, long batchSize) {
+    assertThat(stats.batchLoadCount(), is(batchCount));
+    assertThat(stats.totalBatchLoadSize(), is(batchSize));
+  }
+
+  class NegatingLoader implements CacheLoader<Integer, Integer> {
+    @Override public Integer load(Integer key) {
+      throw new UnsupportedOperationException();
+    }
+    @Override public Map<Integer, Integer> loadAll(
+        Iterable<? extends Integer> keys) throws Exception {
+      List<Integer> batch = ImmutableList.copyOf(keys);
+      batches.add(batch);
+
+      Map<Integer, Integer> result = Maps.newHashMap();
+      for (Integer key : batch) {
+        result.put(key, -key);
+      }
+      return result;
+    }
+  }
+
+  /** A loader that also returns the mapping of the key that follows each requested key. */
+  final class ExtraLoader extends NegatingLoader {
+    @Override public Map<Integer, Integer> loadAll(
+        Iterable<? extends Integer> keys) throws Exception {
+      Map<Integer, Integer> result = super.loadAll(keys);
+      for (Integer key : ImmutableList.copyOf(result.keySet())) {
+        result.put(key + 1, -(key + 1));
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.testing.CacheContext;
+import com.github.benmanes.caffeine.cache.testing.CacheProvider;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.CacheExpiry;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Compute;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Expire;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Implementation;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Loader;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Population;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.ReferenceType;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Writer;
+import com.github.benmanes.caffeine.cache.testing.CacheValidationListener;
+import com.google.common.testing.FakeTicker;
+import com.google.common.testing.SerializableTester;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@Listeners(CacheValidationListener.class)
+@Test(dataProviderClass = CacheProvider.class)
+public final class EarlyRefreshTest {
+  static final long LOAD_TIME = TimeUnit.SECONDS.toNanos(10);
+  static final long DEADLINE = TimeUnit.MINUTES.toNanos(1);
+
+  @Test
+  public void recordLoadTime() {
+    EarlyRefresh earlyRefresh = new EarlyRefresh(1.0);
+    earlyRefresh.recordLoadTime(0L);
+    assertThat(earlyRefresh.averageLoadTime, is(0L));
+
+    earlyRefresh.recordLoadTime(800L);
+    assertThat(earlyRefresh.averageLoadTime, is(800L));
+
+    earlyRefresh.recordLoadTime(1_600L);
+    assertThat(earlyRefresh.averageLoadTime, is(900L));
+  }
+
+  @Test
+  public void shouldRefresh_noSamples() {
+    EarlyRefresh earlyRefresh = new EarlyRefresh(1.0);
+    assertThat(earlyRefresh.shouldRefresh(DEADLINE - 1, DEADLINE), is(false));
+  }
+
+  @Test
+  public void shouldRefresh_farFromDeadline() {
+    EarlyRefresh earlyRefresh = new EarlyRefresh(1.0);
+    earlyRefresh.recordLoadTime(LOAD_TIME);
+    for (int i = 0; i < 1_000; i++) {
+      assertThat(earlyRefresh.shouldRefresh(0L, TimeUnit.HOURS.toNanos(1)), is(false));
+    }
+  }
+
+  @Test
+  public void shouldRefresh_pastDeadline() {
+    EarlyRefresh earlyRefresh = new EarlyRefresh(1.0);
+    earlyRefresh.recordLoadTime(LOAD_TIME);
+    assertThat(earlyRefresh.shouldRefresh(DEADLINE + 1, DEADLINE), is(true));
+  }
+
+  @Test
+  public void shouldRefresh_probability() {
+    EarlyRefresh earlyRefresh = new EarlyRefresh(1.0);
+    earlyRefresh.recordLoadTime(LOAD_TIME);
+
+    // When the remaining time equals the scaled load time the probability is 1/e (~37%)
+    int refreshes = 0;
+    for (int i = 0; i < 10_000; i++) {
+      if (earlyRefresh.shouldRefresh(DEADLINE - LOAD_TIME, DEADLINE)) {
+        refreshes++;
+      }
+    }
+    assertThat(refreshes, is(both(greaterThan(3_000)).and(lessThan(4_400))));
+  }
+
+  @Test
+  public void shouldRefresh_beta() {
+    EarlyRefresh eager = new EarlyRefresh(4.0);
+    EarlyRefresh lazy = new EarlyRefresh(0.25);
+    eager.recordLoadTime(LOAD_TIME);
+    lazy.recordLoadTime(LOAD_TIME);
+
+    int eagerRefreshes = 0;
+    int lazyRefreshes = 0;
+    for (int i = 0; i < 10_000; i++) {
+      if (eager.shouldRefresh(DEADLINE - LOAD_TIME, DEADLINE)) {
+        eagerRefreshes++;
+      }
+      if (lazy.shouldRefresh(DEADLINE - LOAD_TIME, DEADLINE)) {
+        lazyRefreshes++;
+      }
+    }
+    assertThat(eagerRefreshes, is(greaterThan(lazyRefreshes)));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      refreshAfterWrite = Expire.ONE_MINUTE, earlyRefresh = 1.0, compute = Compute.SYNC)
+  public void load_recordsLoadTime(CacheContext context) {
+    LoadingCache<Integer, Integer> cache = context.build(new CountingLoader(context.ticker()));
+
+    cache.get(1);
+    assertThat(earlyRefresh(cache).averageLoadTime, is(LOAD_TIME));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      refreshAfterWrite = Expire.ONE_MINUTE, earlyRefresh = 1.0, compute = Compute.SYNC,
+      keys = ReferenceType.STRONG, values = ReferenceType.STRONG)
+  public void refresh_desynchronized(CacheContext context) {
+    CountingLoader loader = new CountingLoader(context.ticker());
+    LoadingCache<Integer, Integer> cache = context.build(loader);
+    earlyRefresh(cache).recordLoadTime(LOAD_TIME);
+
+    // A warmup burst that is written at the same time
+    for (int i = 0; i < 1_000; i++) {
+      cache.put(i, i);
+    }
+
+    // A fraction refresh when 5s remain, as the probability is e^(-5/10) (~61%)
+    context.ticker().advance(55, TimeUnit.SECONDS);
+    for (int i = 0; i < 1_000; i++) {
+      cache.getIfPresent(i);
+    }
+    assertThat(loader.reloads.get(), is(both(greaterThan(400)).and(lessThan(800))));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, refreshAfterWrite = Expire.DISABLED,
+      earlyRefresh = 1.0, compute = Compute.SYNC, keys = ReferenceType.STRONG,
+      values = ReferenceType.STRONG)
+  public void refresh_expireAfterWrite(CacheContext context) {
+    CountingLoader loader = new CountingLoader(context.ticker());
+    LoadingCache<Integer, Integer> cache = context.build(loader);
+    earlyRefresh(cache).recordLoadTime(LOAD_TIME);
+
+    for (int i = 0; i < 1_000; i++) {
+      cache.put(i, i);
+    }
+    context.ticker().advance(59, TimeUnit.SECONDS);
+    for (int i = 0; i < 1_000; i++) {
+      cache.getIfPresent(i);
+    }
+    assertThat(loader.reloads.get(), is(greaterThan(800)));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, refreshAfterWrite = Expire.DISABLED,
+      earlyRefresh = 1.0, compute = Compute.ASYNC, keys = ReferenceType.STRONG,
+      values = ReferenceType.STRONG)
+  public void refresh_expireAfterWrite_async(CacheContext context) {
+    CountingLoader loader = new CountingLoader(context.ticker());
+    AsyncLoadingCache<Integer, Integer> cache = context.buildAsync(loader);
+
+    // The initial load is the only sample, so the average must be measured from the async load
+    cache.get(1).join();
+    assertThat(earlyRefresh(cache).averageLoadTime, is(LOAD_TIME));
+
+    context.ticker().advance(59, TimeUnit.SECONDS);
+    for (int i = 0; (i < 1_000) && (loader.reloads.get() == 0); i++) {
+      cache.get(1).join();
+    }
+    assertThat(loader.reloads.get(), is(1));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expiry = CacheExpiry.WRITE, expiryTime = Expire.ONE_MINUTE,
+      refreshAfterWrite = Expire.DISABLED, earlyRefresh = 1.0, compute = Compute.SYNC,
+      keys = ReferenceType.STRONG, values = ReferenceType.STRONG)
+  public void refresh_expireVariably(CacheContext context) {
+    CountingLoader loader = new CountingLoader(context.ticker());
+    LoadingCache<Integer, Integer> cache = context.build(loader);
+    earlyRefresh(cache).recordLoadTime(LOAD_TIME);
+
+    // The entries expire together in the same timer wheel bucket
+    for (int i = 0; i < 1_000; i++) {
+      cache.put(i, i);
+    }
+    context.ticker().advance(59, TimeUnit.SECONDS);
+    for (int i = 0; i < 1_000; i++) {
+      cache.getIfPresent(i);
+    }
+    assertThat(loader.reloads.get(), is(greaterThan(800)));
+    assertThat(cache.policy().refreshAfterWrite().isPresent(), is(false));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, refreshAfterWrite = Expire.DISABLED,
+      earlyRefresh = 1.0, compute = Compute.SYNC)
+  public void refresh_expireAfterWrite_keepsDeadline(CacheContext context) {
+    PendingLoader loader = new PendingLoader();
+    LoadingCache<Integer, Integer> cache = context.build(loader);
+    earlyRefresh(cache).recordLoadTime(LOAD_TIME);
+
+    cache.put(1, 1);
+    context.ticker().advance(59, TimeUnit.SECONDS);
+    while (loader.reloads.get() == 0) {
+      assertThat(cache.getIfPresent(1), is(1));
+    }
+
+    // The in-flight reload does not extend the entry's lifetime past its deadline
+    context.ticker().advance(2, TimeUnit.SECONDS);
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+    assertThat(loader.reloads.get(), is(1));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, refreshAfterWrite = Expire.DISABLED,
+      earlyRefresh = 1.0, loader = Loader.IDENTITY)
+  public void policy_expireAfterWrite(LoadingCache<Integer, Integer> cache, CacheContext context) {
+    assertThat(cache.policy().refreshAfterWrite().isPresent(), is(false));
+    assertThat(cache.policy().expireAfterWrite().isPresent(), is(true));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, refreshAfterWrite = Expire.DISABLED,
+      earlyRefresh = 2.0, compute = Compute.SYNC, loader = Loader.IDENTITY,
+      writer = Writer.DISABLED)
+  public void serialize(LoadingCache<Integer, Integer> cache, CacheContext context) {
+    LoadingCache<Integer, Integer> copy = SerializableTester.reserialize(cache);
+
+    assertThat(earlyRefresh(copy).beta, is(2.0));
+    assertThat(copy.policy().refreshAfterWrite().isPresent(), is(false));
+  }
+
+  private static BoundedLocalCache<?, ?> cache(LoadingCache<?, ?> cache) {
+    return ((BoundedLocalCache.BoundedLocalLoadingCache<?, ?>) cache).cache;
+  }
+
+  private static EarlyRefresh earlyRefresh(LoadingCache<?, ?> cache) {
+    return cache(cache).earlyRefresh;
+  }
+
+  private static EarlyRefresh earlyRefresh(AsyncLoadingCache<?, ?> cache) {
+    return ((BoundedLocalCache.BoundedLocalAsyncLoadingCache<?, ?>) cache).cache.earlyRefresh;
+  }
+
+  /** A loader that takes {@link #LOAD_TIME} to load and counts the reloads. */
+  static final class CountingLoader implements CacheLoader<Integer, Integer> {
+    final AtomicInteger reloads = new AtomicInteger();
+    final FakeTicker ticker;
+
+    CountingLoader(FakeTicker ticker) {
+      this.ticker = ticker;
+    }
+
+    @Override public Integer load(Integer key) {
+      ticker.advance(LOAD_TIME);
+      return key;
+    }
+    @Override public Integer reload(Integer key, Integer oldValue) {
+      reloads.incrementAndGet();
+      return oldValue;
+    }
+  }
+
+  /** A loader whose reloads never complete. */
+  static final class PendingLoader implements CacheLoader<Integer, Integer> {
+    final AtomicInteger reloads = new AtomicInteger();
+
+    @Override public Integer load(Integer key) {
+      return key;
+    }
+    @Override public CompletableFuture<Integer> asyncReload(
+        Integer key, Integer oldValue, Executor executor) {
+      reloads.incrementAndGet();
+      return new CompletableFuture<>();
+    }
+  }
+}
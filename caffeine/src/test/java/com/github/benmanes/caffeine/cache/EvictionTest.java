@@ -27,6 +27,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.mockito.Mockito.verify;
 
 import java.util.Collections;
@@ -600,6 +601,24 @@ public final class EvictionTest {
     assertThat(eviction.getMaximum(), is(Long.MAX_VALUE - Integer.MAX_VALUE)); // impl detail
   }
 
+  /* ---------------- Policy: Partitioning -------------- */
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, maximumSize = Maximum.FULL)
+  public void partitioning(CacheContext context, Eviction<Integer, Integer> eviction) {
+    long eden = eviction.edenMaximum().getAsLong();
+    long mainProtected = eviction.mainProtectedMaximum().getAsLong();
+    assertThat(eden + mainProtected, is(lessThanOrEqualTo(eviction.getMaximum())));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, maximumSize = Maximum.FULL)
+  public void partitioning_setMaximum(CacheContext context, Eviction<Integer, Integer> eviction) {
+    eviction.setMaximum(1_000);
+    assertThat(eviction.edenMaximum().getAsLong(), is(10L));
+    assertThat(eviction.mainProtectedMaximum().getAsLong(), is(792L));
+  }
+
   /* ---------------- Policy: Coldest -------------- */
 
   @CacheSpec(implementation = Implementation.Caffeine, maximumSize = Maximum.FULL)
@@ -17,10 +17,12 @@ package com.github.benmanes.caffeine.cache;
 
 import static com.github.benmanes.caffeine.cache.RandomSeedEnforcer.ensureRandomSeed;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
 
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 import org.testng.annotations.DataProvider;
@@ -61,13 +63,13 @@ public final class FrequencySketchTest {
     assertThat(sketch.sampleSize, is(10 * 2 * size));
   }
 
-  @Test(dataProvider = "sketch")
+  @Test(dataProvider = "sketches")
   public void increment_once(FrequencySketch<Integer> sketch) {
     sketch.increment(item);
     assertThat(sketch.frequency(item), is(1));
   }
 
-  @Test(dataProvider = "sketch")
+  @Test(dataProvider = "sketches")
   public void increment_max(FrequencySketch<Integer> sketch) {
     for (int i = 0; i < 20; i++) {
       sketch.increment(item);
@@ -75,7 +77,7 @@ public final class FrequencySketchTest {
     assertThat(sketch.frequency(item), is(15));
   }
 
-  @Test(dataProvider = "sketch")
+  @Test(dataProvider = "sketches")
   public void increment_distinct(FrequencySketch<Integer> sketch) {
     sketch.increment(item);
     sketch.increment(item + 1);
@@ -84,6 +86,16 @@ public final class FrequencySketchTest {
     assertThat(sketch.frequency(item + 2), is(0));
   }
 
+  @Test(dataProvider = "sketches")
+  public void incrementLong(FrequencySketch<Long> sketch) {
+    long key = ThreadLocalRandom.current().nextLong();
+    sketch.incrementLong(key);
+    sketch.increment(key);
+    assertThat(sketch.frequencyLong(key), is(2));
+    assertThat(sketch.frequency(key), is(2));
+    assertThat(sketch.frequencyLong(key + 1), is(0));
+  }
+
   @Test
   public void reset() {
     boolean reset = false;
@@ -101,9 +113,8 @@ public final class FrequencySketchTest {
     assertThat(sketch.size, lessThanOrEqualTo(sketch.sampleSize / 2));
   }
 
-  @Test
-  public void heavyHitters() {
-    FrequencySketch<Double> sketch = makeSketch(512);
+  @Test(dataProvider = "sketches")
+  public void heavyHitters(FrequencySketch<Double> sketch) {
     for (int i = 100; i < 100_000; i++) {
       sketch.increment((double) i);
     }
@@ -131,13 +142,161 @@ public final class FrequencySketchTest {
     }
   }
 
+  /* ---------------- Blocked -------------- */
+
+  @Test
+  public void ensureCapacity_blocked() {
+    FrequencySketch<Integer> sketch = new FrequencySketch<>();
+    sketch.ensureCapacity(FrequencySketch.BLOCKED_TABLE_THRESHOLD / 2);
+    assertThat(sketch.blocked, is(false));
+
+    sketch.ensureCapacity(FrequencySketch.BLOCKED_TABLE_THRESHOLD);
+    assertThat(sketch.blocked, is(true));
+    assertThat(sketch.blockMask, is((sketch.table.length >>> 3) - 1));
+  }
+
+  @Test
+  public void blocked_countersInBlock() {
+    FrequencySketch<Integer> sketch = makeSketch(512, /* doorkeeper */ false);
+    sketch.blocked = true;
+    sketch.increment(item);
+
+    int block = (sketch.spread(item.hashCode()) & sketch.blockMask) << 3;
+    for (int i = 0; i < sketch.table.length; i++) {
+      boolean inBlock = (i >= block) && (i < block + 8);
+      if (!inBlock) {
+        assertThat(sketch.table[i], is(0L));
+      }
+    }
+    assertThat(sketch.frequency(item), is(1));
+  }
+
+  /* ---------------- Incremental reset -------------- */
+
+  @Test
+  public void ensureCapacity_incremental() {
+    FrequencySketch<Integer> sketch = new FrequencySketch<>();
+    sketch.ensureCapacity(FrequencySketch.INCREMENTAL_RESET_THRESHOLD / 2);
+    assertThat(sketch.incremental, is(false));
+
+    sketch.ensureCapacity(FrequencySketch.INCREMENTAL_RESET_THRESHOLD);
+    assertThat(sketch.incremental, is(true));
+    assertThat(sketch.isResetting(), is(false));
+  }
+
+  @Test
+  public void incrementalReset() {
+    FrequencySketch<Integer> sketch = makeSketch(512, /* doorkeeper */ false);
+    sketch.incremental = true;
+    for (int i = 1; !sketch.isResetting(); i++) {
+      sketch.increment(i);
+    }
+    assertThat(sketch.resetIndex, is(0));
+    assertThat(sketch.size, is(sketch.sampleSize / 2));
+
+    long[] before = sketch.table.clone();
+    sketch.resetChunk(64);
+    assertThat(sketch.resetIndex, is(64));
+    for (int i = 0; i < before.length; i++) {
+      long expected = (i < 64) ? ((before[i] >>> 1) & FrequencySketch.RESET_MASK) : before[i];
+      assertThat(sketch.table[i], is(expected));
+    }
+
+    sketch.ageIncrementally();
+    assertThat(sketch.isResetting(), is(false));
+    assertThat(sketch.size, lessThanOrEqualTo(sketch.sampleSize / 2));
+  }
+
+  @Test
+  public void incrementalReset_completesPrevious() {
+    FrequencySketch<Integer> sketch = makeSketch(512, /* doorkeeper */ true);
+    for (int i = 0; i < sketch.sampleSize / 2; i++) {
+      sketch.increment(i);
+    }
+    long[] before = sketch.table.clone();
+
+    sketch.startIncrementalReset();
+    sketch.resetChunk(64);
+    sketch.startIncrementalReset();
+    assertThat(sketch.resetIndex, is(0));
+    for (int i = 0; i < before.length; i++) {
+      assertThat(sketch.table[i], is((before[i] >>> 1) & FrequencySketch.RESET_MASK));
+    }
+    assertThat(Arrays.stream(sketch.doorkeeper).allMatch(slot -> slot == 0L), is(true));
+  }
+
+  @Test
+  public void ageIncrementally_notResetting() {
+    FrequencySketch<Integer> sketch = makeSketch(512, /* doorkeeper */ false);
+    sketch.increment(item);
+    long[] before = sketch.table.clone();
+
+    sketch.ageIncrementally();
+    assertThat(sketch.table, is(before));
+    new FrequencySketch<Integer>().ageIncrementally();
+  }
+
+  /* ---------------- Doorkeeper -------------- */
+
+  @Test
+  public void doorkeeper_ensureCapacity() {
+    FrequencySketch<Integer> sketch = makeSketch(512, /* doorkeeper */ true);
+    assertThat(sketch.table.length, is(256));
+    assertThat(sketch.sampleSize, is(10 * 512));
+    assertThat(sketch.doorkeeper.length, is(greaterThan(0)));
+    assertThat(sketch.doorkeeperMask, is(sketch.doorkeeper.length - 1));
+
+    int length = sketch.doorkeeper.length;
+    sketch.ensureCapacity(1024);
+    assertThat(sketch.table.length, is(512));
+    assertThat(sketch.doorkeeper.length, is(2 * length));
+  }
+
+  @Test
+  public void doorkeeper_absorbsFirstOccurrence() {
+    FrequencySketch<Integer> sketch = makeSketch(512, /* doorkeeper */ true);
+    sketch.increment(item);
+    assertThat(sketch.frequency(item), is(1));
+    assertThat(Arrays.stream(sketch.table).allMatch(slot -> slot == 0L), is(true));
+
+    sketch.increment(item);
+    assertThat(sketch.frequency(item), is(2));
+    assertThat(Arrays.stream(sketch.table).anyMatch(slot -> slot != 0L), is(true));
+  }
+
+  @Test
+  public void doorkeeper_reset() {
+    FrequencySketch<Integer> sketch = makeSketch(64, /* doorkeeper */ true);
+    sketch.increment(item);
+    assertThat(Arrays.stream(sketch.doorkeeper).anyMatch(slot -> slot != 0L), is(true));
+
+    sketch.reset();
+    assertThat(Arrays.stream(sketch.doorkeeper).allMatch(slot -> slot == 0L), is(true));
+    assertThat(sketch.frequency(item), is(0));
+  }
+
   @DataProvider(name = "sketch")
   public Object[][] providesSketch() {
-    return new Object[][] {{ makeSketch(512) }};
+    return new Object[][] {{ makeSketch(512, /* doorkeeper */ false) }};
+  }
+
+  @DataProvider(name = "sketches")
+  public Object[][] providesSketches() {
+    return new Object[][] {
+      { makeSketch(512, /* doorkeeper */ false) },
+      { makeSketch(512, /* doorkeeper */ true) },
+      { makeBlockedSketch(512) },
+    };
+  }
+
+  private static <E> FrequencySketch<E> makeBlockedSketch(long maximumSize) {
+    FrequencySketch<E> sketch = makeSketch(maximumSize, /* doorkeeper */ false);
+    sketch.blocked = true;
+    return sketch;
   }
 
-  private static <E> FrequencySketch<E> makeSketch(long maximumSize) {
-    FrequencySketch<E> sketch = new FrequencySketch<>();
+  private static <E> FrequencySketch<E> makeSketch(long maximumSize, boolean doorkeeper) {
+    FrequencySketch<E> sketch = new FrequencySketch<>(doorkeeper);
     sketch.ensureCapacity(maximumSize);
     ensureRandomSeed(sketch);
     return sketch;
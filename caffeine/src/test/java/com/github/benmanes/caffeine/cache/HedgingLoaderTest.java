@@ -0,0 +1,360 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Loader;
+import com.google.common.testing.FakeTicker;
+import com.google.common.testing.SerializableTester;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@Test(singleThreaded = true)
+public final class HedgingLoaderTest {
+  final List<CompletableFuture<Integer>> loads = new ArrayList<>();
+  final List<Runnable> scheduled = new ArrayList<>();
+  final List<Long> delays = new ArrayList<>();
+
+  final Scheduler scheduler = (executor, command, delay, unit) -> {
+    scheduled.add(() -> executor.execute(command));
+    delays.add(unit.toNanos(delay));
+    return DisabledFuture.INSTANCE;
+  };
+
+  final AsyncCacheLoader<Integer, Integer> loader = new AsyncCacheLoader<Integer, Integer>() {
+    @Override public CompletableFuture<Integer> asyncLoad(Integer key, Executor executor) {
+      CompletableFuture<Integer> future = new CompletableFuture<>();
+      loads.add(future);
+      return future;
+    }
+  };
+
+  @BeforeMethod
+  public void beforeMethod() {
+    loads.clear();
+    delays.clear();
+    scheduled.clear();
+  }
+
+  @Test
+  public void hedge_slowLoad() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    assertThat(loads.size(), is(1));
+    assertThat(delays.get(0), is(TimeUnit.MILLISECONDS.toNanos(10)));
+
+    scheduled.get(0).run();
+    assertThat(loads.size(), is(2));
+    assertThat(future.isDone(), is(false));
+
+    loads.get(1).complete(-1);
+    assertThat(future.join(), is(-1));
+    assertThat(loads.get(0).isCancelled(), is(true));
+    assertThat(cache.synchronous().getIfPresent(1), is(-1));
+  }
+
+  @Test
+  public void hedge_fastLoad() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    loads.get(0).complete(-1);
+    assertThat(future.join(), is(-1));
+
+    scheduled.get(0).run();
+    assertThat(loads.size(), is(1));
+  }
+
+  @Test
+  public void hedge_absent() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    scheduled.get(0).run();
+
+    loads.get(0).complete(null);
+    assertThat(future.join(), is(nullValue()));
+    assertThat(loads.get(1).isCancelled(), is(true));
+  }
+
+  @Test
+  public void hedge_failsBeforeDelay() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    loads.get(0).completeExceptionally(new IllegalStateException());
+    assertThat(future.isCompletedExceptionally(), is(true));
+
+    scheduled.get(0).run();
+    assertThat(loads.size(), is(1));
+  }
+
+  @Test
+  public void hedge_firstFails() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    scheduled.get(0).run();
+
+    loads.get(0).completeExceptionally(new IllegalStateException());
+    assertThat(future.isDone(), is(false));
+
+    loads.get(1).complete(-1);
+    assertThat(future.join(), is(-1));
+  }
+
+  @Test
+  public void hedge_bothFail() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    scheduled.get(0).run();
+
+    loads.get(1).completeExceptionally(new IllegalStateException());
+    assertThat(future.isDone(), is(false));
+
+    loads.get(0).completeExceptionally(new IllegalArgumentException());
+    assertThat(future.isCompletedExceptionally(), is(true));
+    assertThat(cache.synchronous().getIfPresent(1), is(nullValue()));
+  }
+
+  @Test
+  public void hedge_cancelled() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    future.cancel(/* mayInterruptIfRunning */ false);
+    assertThat(loads.get(0).isCancelled(), is(true));
+
+    scheduled.get(0).run();
+    assertThat(loads.size(), is(1));
+  }
+
+  @Test
+  public void timeout() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .loadTimeout(1, TimeUnit.SECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    assertThat(delays.get(0), is(TimeUnit.SECONDS.toNanos(1)));
+
+    scheduled.get(0).run();
+    try {
+      future.join();
+      throw new AssertionError();
+    } catch (CompletionException e) {
+      assertThat(e.getCause(), is(instanceOf(TimeoutException.class)));
+    }
+    assertThat(loads.get(0).isCancelled(), is(true));
+    assertThat(cache.synchronous().getIfPresent(1), is(nullValue()));
+  }
+
+  @Test
+  public void timeout_completed() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .loadTimeout(1, TimeUnit.SECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    loads.get(0).complete(-1);
+
+    scheduled.get(0).run();
+    assertThat(future.join(), is(-1));
+  }
+
+  @Test
+  public void timeout_hedged() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS)
+        .loadTimeout(1, TimeUnit.SECONDS).buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    scheduled.get(0).run();
+    scheduled.get(1).run();
+
+    assertThat(future.isCompletedExceptionally(), is(true));
+    assertThat(loads.get(0).isCancelled(), is(true));
+    assertThat(loads.get(1).isCancelled(), is(true));
+  }
+
+  @Test
+  public void timeout_refreshKeepsStale() {
+    FakeTicker ticker = new FakeTicker();
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .refreshAfterWrite(1, TimeUnit.MINUTES)
+        .loadTimeout(1, TimeUnit.SECONDS)
+        .ticker(ticker::read)
+        .buildAsync(new AsyncCacheLoader<Integer, Integer>() {
+          @Override public CompletableFuture<Integer> asyncLoad(Integer key, Executor executor) {
+            throw new AssertionError();
+          }
+          @Override public CompletableFuture<Integer> asyncReload(
+              Integer key, Integer oldValue, Executor executor) {
+            return loader.asyncLoad(key, executor);
+          }
+        });
+    cache.put(1, CompletableFuture.completedFuture(1));
+    ticker.advance(2, TimeUnit.MINUTES);
+    assertThat(cache.get(1).join(), is(1));
+    assertThat(loads.size(), is(1));
+
+    scheduled.get(delays.indexOf(TimeUnit.SECONDS.toNanos(1))).run();
+    assertThat(loads.get(0).isCancelled(), is(true));
+    assertThat(cache.get(1).join(), is(1));
+  }
+
+  @Test
+  public void hedge_completedSynchronously() {
+    HedgingLoader<Integer, Integer> hedger = new HedgingLoader<>(newBuilder()
+        .hedgeLoads(10, TimeUnit.MILLISECONDS).loadTimeout(1, TimeUnit.SECONDS), loader);
+    CompletableFuture<Integer> future = hedger.hedge(
+        () -> CompletableFuture.completedFuture(1), Runnable::run);
+    assertThat(future.join(), is(1));
+    assertThat(scheduled.isEmpty(), is(true));
+  }
+
+  @Test
+  public void hedgeDelay_percentile() {
+    HedgingLoader<Integer, Integer> hedger = new HedgingLoader<>(
+        Caffeine.newBuilder().hedgeLoadsAtPercentile(90.0), loader);
+    assertThat(hedger.hedgeDelay(), is(HedgingLoader.NO_HEDGE));
+
+    int samples = 4 * HedgingLoader.MINIMUM_SAMPLES;
+    for (int i = 1; i <= samples; i++) {
+      hedger.recordLatency(i * 1_000L, /* censored */ false);
+    }
+    long expected = (long) (0.9 * samples * 1_000L);
+    assertThat(hedger.hedgeDelay(), is(both(greaterThanOrEqualTo(expected))
+        .and(lessThanOrEqualTo(2 * expected))));
+  }
+
+  @Test
+  public void hedgeDelay_censored() {
+    HedgingLoader<Integer, Integer> hedger = new HedgingLoader<>(
+        Caffeine.newBuilder().hedgeLoadsAtPercentile(50.0), loader);
+    for (int i = 0; i < HedgingLoader.MINIMUM_SAMPLES; i++) {
+      hedger.recordLatency(1_000L, /* censored */ false);
+    }
+    assertThat(hedger.hedgeDelay(), is(lessThanOrEqualTo(2_000L)));
+
+    // The cancelled loads were slower than the completed ones, so the median is not yet observed
+    for (int i = 0; i < 3 * HedgingLoader.MINIMUM_SAMPLES; i++) {
+      hedger.recordLatency(1_000_000L, /* censored */ true);
+    }
+    assertThat(hedger.hedgeDelay(), is(greaterThanOrEqualTo(1_000_000L)));
+  }
+
+  @Test
+  public void hedgeDelay_recalculatedPeriodically() {
+    HedgingLoader<Integer, Integer> hedger = new HedgingLoader<>(
+        Caffeine.newBuilder().hedgeLoadsAtPercentile(50.0), loader);
+    for (int i = 1; i < HedgingLoader.MINIMUM_SAMPLES; i++) {
+      hedger.recordLatency(1_000L, /* censored */ false);
+    }
+    assertThat(hedger.hedgeDelay(), is(HedgingLoader.NO_HEDGE));
+
+    hedger.recordLatency(1_000L, /* censored */ false);
+    assertThat(hedger.hedgeDelay(), is(both(greaterThanOrEqualTo(1_000L))
+        .and(lessThanOrEqualTo(2_000L))));
+  }
+
+  @Test
+  public void attempt_cancelledIsCensored() {
+    FakeTicker ticker = new FakeTicker();
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder()
+        .hedgeLoadsAtPercentile(50.0)
+        .loadTimeout(1, TimeUnit.SECONDS)
+        .ticker(ticker::read)
+        .buildAsync(loader);
+    CompletableFuture<Integer> future = cache.get(1);
+    ticker.advance(1, TimeUnit.SECONDS);
+    scheduled.get(0).run();
+
+    HedgingLoader<?, ?> hedger = ((LocalAsyncLoadingCache<?, ?>) cache).hedger;
+    assertThat(future.isCompletedExceptionally(), is(true));
+    assertThat(loads.get(0).isCancelled(), is(true));
+    assertThat(hedger.completedLatencies[0].count(), is(0L));
+    assertThat(hedger.censoredLatencies[0].count(), is(1L));
+    assertThat(hedger.censoredLatencies[0].snapshot().max(), is(TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  @Test
+  public void hedgeDelay_fixed() {
+    HedgingLoader<Integer, Integer> hedger = new HedgingLoader<>(
+        Caffeine.newBuilder().hedgeLoads(5, TimeUnit.SECONDS), loader);
+    assertThat(hedger.hedgeDelay(), is(TimeUnit.SECONDS.toNanos(5)));
+  }
+
+  @Test
+  public void hedgeDelay_timeoutOnly() {
+    HedgingLoader<Integer, Integer> hedger = new HedgingLoader<>(
+        Caffeine.newBuilder().loadTimeout(5, TimeUnit.SECONDS), loader);
+    assertThat(hedger.hedgeDelay(), is(HedgingLoader.NO_HEDGE));
+  }
+
+  @Test
+  public void recordLatency_decays() {
+    HedgingLoader<Integer, Integer> hedger = new HedgingLoader<>(
+        Caffeine.newBuilder().hedgeLoadsAtPercentile(50.0), loader);
+    for (int i = 0; i < HedgingLoader.SAMPLE_PERIOD; i++) {
+      hedger.recordLatency(1_000_000L, /* censored */ false);
+    }
+    assertThat(hedger.completedLatencies[0].count(), is(0L));
+    assertThat(hedger.completedLatencies[1].count(), is((long) HedgingLoader.SAMPLE_PERIOD));
+
+    // The distribution follows the loader as it becomes faster
+    for (int i = 0; i < 2 * HedgingLoader.SAMPLE_PERIOD; i++) {
+      hedger.recordLatency(1_000L, /* censored */ false);
+    }
+    assertThat(hedger.completedLatencies[0].count(), is(0L));
+    assertThat(hedger.completedLatencies[1].snapshot().max(), is(1_000L));
+    assertThat(hedger.hedgeDelay(), is(both(greaterThanOrEqualTo(1_000L))
+        .and(lessThanOrEqualTo(2_000L))));
+  }
+
+  @Test
+  public void serialize() {
+    AsyncLoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .hedgeLoadsAtPercentile(99.0)
+        .loadTimeout(1, TimeUnit.SECONDS)
+        .buildAsync(Loader.IDENTITY);
+    AsyncLoadingCache<Integer, Integer> copy = SerializableTester.reserialize(cache);
+
+    HedgingLoader<?, ?> hedger = ((LocalAsyncLoadingCache<?, ?>) copy).hedger;
+    assertThat(hedger.hedgePercentile, is(99.0));
+    assertThat(hedger.timeoutNanos, is(TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  private Caffeine<Object, Object> newBuilder() {
+    return Caffeine.newBuilder().executor(Runnable::run).scheduler(scheduler);
+  }
+}
@@ -24,9 +24,11 @@ import static com.github.benmanes.caffeine.testing.Awaits.await;
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
@@ -38,9 +40,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -62,10 +66,12 @@ import com.github.benmanes.caffeine.cache.testing.CacheSpec.Writer;
 import com.github.benmanes.caffeine.cache.testing.CacheValidationListener;
 import com.github.benmanes.caffeine.cache.testing.CheckNoWriter;
 import com.github.benmanes.caffeine.cache.testing.RemovalNotification;
+import com.github.benmanes.caffeine.testing.ConcurrentTestHarness;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.primitives.Ints;
 
 /**
@@ -326,6 +332,118 @@ public final class LoadingCacheTest {
     assertThat(result, is(equalTo(ImmutableMap.of(key, value))));
   }
 
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      compute = Compute.SYNC, writer = Writer.DISABLED)
+  public void getAll_inFlight(CacheContext context) {
+    Queue<Set<Integer>> loads = new ConcurrentLinkedQueue<>();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    LoadingCache<Integer, Integer> cache = context.build(new CacheLoader<Integer, Integer>() {
+      @Override public Integer load(Integer key) {
+        loads.add(ImmutableSet.of(key));
+        return -key;
+      }
+      @Override public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+        Set<Integer> batch = ImmutableSet.copyOf(keys);
+        loads.add(batch);
+        if (batch.contains(1)) {
+          release.join();
+        }
+        return Maps.toMap(batch, key -> -key);
+      }
+    });
+
+    CompletableFuture<Map<Integer, Integer>> first = CompletableFuture.supplyAsync(
+        () -> cache.getAll(ImmutableList.of(1, 2)), ConcurrentTestHarness::execute);
+    await().until(() -> loads.size() == 1);
+
+    CompletableFuture<Map<Integer, Integer>> second = CompletableFuture.supplyAsync(
+        () -> cache.getAll(ImmutableList.of(2, 3)), ConcurrentTestHarness::execute);
+    CompletableFuture<Integer> third = CompletableFuture.supplyAsync(
+        () -> cache.get(2), ConcurrentTestHarness::execute);
+    await().until(() -> waitingOn(cache, 2) == 2);
+    release.complete(null);
+
+    assertThat(first.join(), is(ImmutableMap.of(1, -1, 2, -2)));
+    assertThat(second.join(), is(ImmutableMap.of(2, -2, 3, -3)));
+    assertThat(third.join(), is(-2));
+    assertThat(loads, contains(ImmutableSet.of(1, 2), ImmutableSet.of(3)));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      compute = Compute.SYNC, writer = Writer.DISABLED)
+  public void getAll_inFlight_get(CacheContext context) {
+    Queue<Set<Integer>> loads = new ConcurrentLinkedQueue<>();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    LoadingCache<Integer, Integer> cache = context.build(new CacheLoader<Integer, Integer>() {
+      @Override public Integer load(Integer key) {
+        loads.add(ImmutableSet.of(key));
+        release.join();
+        return -key;
+      }
+      @Override public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+        Set<Integer> batch = ImmutableSet.copyOf(keys);
+        loads.add(batch);
+        return Maps.toMap(batch, key -> -key);
+      }
+    });
+
+    CompletableFuture<Integer> first = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> loads.size() == 1);
+
+    CompletableFuture<Map<Integer, Integer>> second = CompletableFuture.supplyAsync(
+        () -> cache.getAll(ImmutableList.of(1, 2)), ConcurrentTestHarness::execute);
+    await().until(() -> waitingOn(cache, 1) == 1);
+    release.complete(null);
+
+    assertThat(first.join(), is(-1));
+    assertThat(second.join(), is(ImmutableMap.of(1, -1, 2, -2)));
+    assertThat(loads, contains(ImmutableSet.of(1), ImmutableSet.of(2)));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      compute = Compute.SYNC, writer = Writer.DISABLED)
+  public void getAll_inFlight_failure(CacheContext context) {
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    AtomicBoolean loading = new AtomicBoolean();
+    LoadingCache<Integer, Integer> cache = context.build(new CacheLoader<Integer, Integer>() {
+      @Override public Integer load(Integer key) {
+        throw new UnsupportedOperationException();
+      }
+      @Override public Map<Integer, Integer> loadAll(Iterable<? extends Integer> keys) {
+        loading.set(true);
+        release.join();
+        throw new IllegalStateException();
+      }
+    });
+
+    CompletableFuture<Map<Integer, Integer>> first = CompletableFuture.supplyAsync(
+        () -> cache.getAll(ImmutableList.of(1)), ConcurrentTestHarness::execute);
+    await().untilTrue(loading);
+    CompletableFuture<Integer> second = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> waitingOn(cache, 1) == 1);
+    release.complete(null);
+
+    try {
+      second.join();
+      Assert.fail();
+    } catch (CompletionException e) {
+      assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+    }
+    await().until(first::isCompletedExceptionally);
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+  }
+
+  /** Returns the number of callers waiting on the in-flight load of the key. */
+  private static int waitingOn(LoadingCache<Integer, Integer> cache, Integer key) {
+    CompletableFuture<?> future = ((LocalLoadingCache<?, ?>) cache).inFlightLoads().get(key);
+    return (future == null) ? 0 : future.getNumberOfDependents();
+  }
+
   /* ---------------- refresh -------------- */
 
   @CheckNoWriter
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.testing.Awaits.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.MaintenanceService.Metrics;
+import com.github.benmanes.caffeine.cache.MaintenanceService.Registration;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class MaintenanceServiceTest {
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void create_zeroThreads() {
+    MaintenanceService.create(0);
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void create_nullThreadFactory() {
+    MaintenanceService.create(1, null);
+  }
+
+  @Test
+  public void maintenance() {
+    MaintenanceService service = MaintenanceService.create(2);
+    try {
+      Cache<Integer, Integer> first = newCache(service);
+      Cache<Integer, Integer> second = newCache(service);
+      for (int i = 0; i < 1_000; i++) {
+        first.put(i, -i);
+        second.put(i, -i);
+      }
+
+      for (Cache<Integer, Integer> cache : new Cache[] { first, second }) {
+        Metrics metrics = service.metrics(cache).get();
+        await().until(() -> metrics.maintenanceCount() > 0);
+        await().until(() -> cache.estimatedSize() == 100);
+        assertThat(metrics.totalMaintenanceTime(), is(greaterThan(0L)));
+        assertThat(metrics.maxMaintenanceTime(), is(greaterThan(0L)));
+      }
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  @Test
+  public void metrics_unregistered() {
+    MaintenanceService service = MaintenanceService.create(1);
+    MaintenanceService other = MaintenanceService.create(1);
+    try {
+      assertThat(service.metrics(Caffeine.newBuilder().build()), is(Optional.empty()));
+      assertThat(service.metrics(Caffeine.newBuilder().maximumSize(10).build()),
+          is(Optional.empty()));
+      assertThat(service.metrics(newCache(other)), is(Optional.empty()));
+    } finally {
+      service.shutdown();
+      other.shutdown();
+    }
+  }
+
+  @Test
+  public void metrics_async() {
+    MaintenanceService service = MaintenanceService.create(1);
+    try {
+      AsyncCache<Integer, Integer> cache = Caffeine.newBuilder()
+          .maintenanceService(service).maximumSize(10).buildAsync();
+      assertThat(service.metrics(cache.synchronous()).isPresent(), is(true));
+    } finally {
+      service.shutdown();
+    }
+  }
+
+  @Test
+  public void take_prioritizesPendingWork() {
+    // The threads do not perform any work so that the queue may be inspected
+    MaintenanceService service = MaintenanceService.create(1, runnable -> new Thread(() -> {}));
+    BoundedLocalCache<Integer, Integer> idle = boundedCache(service);
+    BoundedLocalCache<Integer, Integer> busy = boundedCache(service);
+    BoundedLocalCache<Integer, Integer> quiet = boundedCache(service);
+
+    idle.put(1, 1);
+    busy.put(1, 1);
+    busy.put(2, 2);
+    busy.put(3, 3);
+    quiet.put(1, 1);
+    assertThat(service.pending.size(), is(3));
+
+    // The requests are treated as recent so that none are drained for having waited too long
+    long recent = System.nanoTime() + TimeUnit.HOURS.toNanos(1);
+    service.pending.forEach(registration -> registration.scheduledTime = recent);
+
+    Registration registration = service.take();
+    assertThat(registration.cache, is(sameInstance(busy)));
+    assertThat(service.take().cache, is(sameInstance(idle)));
+    assertThat(service.take().cache, is(sameInstance(quiet)));
+
+    service.shutdown();
+    assertThat(service.take(), is(nullValue()));
+  }
+
+  @Test
+  public void take_agesWaitingCaches() {
+    MaintenanceService service = MaintenanceService.create(1, runnable -> new Thread(() -> {}));
+    BoundedLocalCache<Integer, Integer> quiet = boundedCache(service);
+    BoundedLocalCache<Integer, Integer> busy = boundedCache(service);
+
+    quiet.put(1, 1);
+    busy.put(1, 1);
+    busy.put(2, 2);
+    busy.put(3, 3);
+
+    // The quiet cache is drained first once it has waited for longer than the bound
+    quiet.maintenanceRegistration.scheduledTime =
+        System.nanoTime() - (2 * MaintenanceService.MAXIMUM_LAG);
+    busy.maintenanceRegistration.scheduledTime = System.nanoTime() + TimeUnit.HOURS.toNanos(1);
+    assertThat(service.take().cache, is(sameInstance(quiet)));
+    assertThat(service.take().cache, is(sameInstance(busy)));
+    service.shutdown();
+  }
+
+  @Test
+  public void shutdown() {
+    MaintenanceService service = MaintenanceService.create(1);
+    Cache<Integer, Integer> cache = newCache(service);
+    service.shutdown();
+    assertThat(service.isShutdown(), is(true));
+    assertThat(boundedCache(service).maintenanceRegistration.schedule(), is(false));
+
+    // Maintenance is performed by the caller after the service is shut down
+    for (int i = 0; i < 1_000; i++) {
+      cache.put(i, -i);
+    }
+    cache.cleanUp();
+    assertThat(cache.estimatedSize(), is(100L));
+  }
+
+  private static Cache<Integer, Integer> newCache(MaintenanceService service) {
+    return Caffeine.newBuilder().maintenanceService(service)
+        .executor(Runnable::run).maximumSize(100).build();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static BoundedLocalCache<Integer, Integer> boundedCache(MaintenanceService service) {
+    Cache<Integer, Integer> cache = newCache(service);
+    return (BoundedLocalCache<Integer, Integer>) ((LocalManualCache<?, ?>) cache).cache();
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.cache.MemoryPressureController.GROWTH_INTERVAL;
+import static com.github.benmanes.caffeine.cache.MemoryPressureController.MAJOR_GC_ACTION;
+import static com.github.benmanes.caffeine.cache.MemoryPressureController.SHRINK_INTERVAL;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+
+import org.mockito.Mockito;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class MemoryPressureControllerTest {
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void create_invalidThreshold() {
+    MemoryPressureController.create(1.5);
+  }
+
+  @Test
+  public void create() {
+    MemoryPressureController controller = MemoryPressureController.create();
+    Cache<Integer, Integer> cache = newCache(100);
+    controller.register(cache);
+    System.gc();
+    controller.shutdown();
+
+    assertThat(controller.emitters.isEmpty(), is(true));
+    assertThat(maximum(cache), is(100L));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void register_unbounded() {
+    newController().register(Caffeine.newBuilder().build());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void register_shutdown() {
+    MemoryPressureController controller = newController();
+    controller.shutdown();
+    controller.register(newCache(100));
+  }
+
+  @Test
+  public void register_twice() {
+    MemoryPressureController controller = newController();
+    Cache<Integer, Integer> cache = newCache(100);
+    controller.register(cache);
+    controller.register(cache);
+    assertThat(controller.registrations.size(), is(1));
+  }
+
+  @Test
+  public void shrink() {
+    MemoryPressureController controller = newController();
+    Cache<Integer, Integer> cache = newCache(1_000);
+    for (int i = 0; i < 1_000; i++) {
+      cache.put(i, -i);
+    }
+    controller.register(cache);
+
+    controller.onCollection(0.90, 0L);
+    assertThat(maximum(cache), is(750L));
+    assertThat(cache.estimatedSize(), is(750L));
+
+    controller.onCollection(0.90, SHRINK_INTERVAL);
+    assertThat(maximum(cache), is(562L));
+    assertThat(cache.estimatedSize(), is(562L));
+  }
+
+  @Test
+  public void shrink_rateLimited() {
+    MemoryPressureController controller = newController();
+    Cache<Integer, Integer> cache = newCache(1_000);
+    controller.register(cache);
+
+    controller.onCollection(0.90, 0L);
+    controller.onCollection(0.90, SHRINK_INTERVAL - 1);
+    assertThat(maximum(cache), is(750L));
+
+    controller.onCollection(0.90, SHRINK_INTERVAL);
+    assertThat(maximum(cache), is(562L));
+  }
+
+  @Test
+  public void shrink_minimum() {
+    MemoryPressureController controller = newController();
+    Cache<Integer, Integer> cache = newCache(1_000);
+    controller.register(cache);
+    for (int i = 0; i < 100; i++) {
+      controller.onCollection(1.0, i * SHRINK_INTERVAL);
+    }
+    assertThat(maximum(cache), is(50L));
+  }
+
+  @Test
+  public void grow() {
+    MemoryPressureController controller = newController();
+    Cache<Integer, Integer> cache = newCache(1_000);
+    controller.register(cache);
+    controller.onCollection(0.90, 0L);
+    assertThat(maximum(cache), is(750L));
+
+    // Within the hysteresis band
+    controller.onCollection(0.80, GROWTH_INTERVAL);
+    assertThat(maximum(cache), is(750L));
+
+    // Before the growth interval has elapsed
+    controller.onCollection(0.50, GROWTH_INTERVAL - 1);
+    assertThat(maximum(cache), is(750L));
+
+    long now = 0L;
+    for (int i = 1; i <= 5; i++) {
+      now += GROWTH_INTERVAL;
+      controller.onCollection(0.50, now);
+      assertThat(maximum(cache), is(750L + 50 * i));
+    }
+    for (int i = 0; i < 10; i++) {
+      now += GROWTH_INTERVAL;
+      controller.onCollection(0.50, now);
+    }
+    assertThat(maximum(cache), is(1_000L));
+  }
+
+  @Test
+  public void grow_youngCollection() {
+    MemoryPressureController controller = newController();
+    Cache<Integer, Integer> cache = newCache(1_000);
+    controller.register(cache);
+    controller.onCollection(0.90, 0L);
+    assertThat(maximum(cache), is(750L));
+
+    // The usage after the last collection of the tenured pools does not shrink the cache
+    controller.onYoungCollection(0.90, SHRINK_INTERVAL);
+    assertThat(maximum(cache), is(750L));
+
+    controller.onYoungCollection(0.50, GROWTH_INTERVAL);
+    assertThat(maximum(cache), is(800L));
+  }
+
+  @Test
+  public void watch() {
+    MemoryPoolMXBean pool = Mockito.mock(MemoryPoolMXBean.class);
+    when(pool.getName()).thenReturn("old");
+    when(pool.getUsage()).thenReturn(usage(0));
+    when(pool.isCollectionUsageThresholdSupported()).thenReturn(true);
+    when(pool.getCollectionUsageThreshold()).thenReturn(10L);
+
+    MemoryPressureController controller = newController();
+    controller.watch(ManagementFactory.getMemoryMXBean(), ImmutableList.of(pool));
+    verify(pool).setCollectionUsageThreshold(850L);
+    assertThat(controller.emitters.size(), is(1));
+
+    controller.shutdown();
+    verify(pool).setCollectionUsageThreshold(10L);
+    assertThat(controller.emitters.isEmpty(), is(true));
+  }
+
+  @Test
+  public void liveFraction() {
+    MemoryPressureController controller = newController();
+    assertThat(controller.liveFraction(ImmutableMap.of("old", usage(900))), is(0.90));
+    assertThat(controller.liveFraction(ImmutableMap.of("eden", usage(900))), is(0.0));
+  }
+
+  @Test
+  public void unregister() {
+    MemoryPressureController controller = newController();
+    Cache<Integer, Integer> cache = newCache(1_000);
+    controller.register(cache);
+    controller.onCollection(0.90, 0L);
+    controller.unregister(cache);
+
+    assertThat(maximum(cache), is(1_000L));
+    assertThat(controller.registrations.isEmpty(), is(true));
+  }
+
+  @Test
+  public void shutdown() {
+    MemoryPressureController controller = newController();
+    Cache<Integer, Integer> cache = newCache(1_000);
+    controller.register(cache);
+    controller.onCollection(0.90, 0L);
+    controller.shutdown();
+    assertThat(maximum(cache), is(1_000L));
+
+    controller.onCollection(0.90, SHRINK_INTERVAL);
+    assertThat(maximum(cache), is(1_000L));
+  }
+
+  @Test
+  public void tenuredUsage_youngCollection() {
+    MemoryPressureController controller = newController();
+    Map<String, MemoryUsage> before = ImmutableMap.of("old", usage(800), "eden", usage(500));
+    Map<String, MemoryUsage> after = ImmutableMap.of("old", usage(900), "eden", usage(0));
+    assertThat(controller.tenuredUsage("end of minor GC", before, after), is(-1.0));
+  }
+
+  @Test
+  public void tenuredUsage_mixedCollection() {
+    MemoryPressureController controller = newController();
+    Map<String, MemoryUsage> before = ImmutableMap.of("old", usage(950), "eden", usage(500));
+    Map<String, MemoryUsage> after = ImmutableMap.of("old", usage(900), "eden", usage(0));
+    assertThat(controller.tenuredUsage("end of minor GC", before, after), is(0.90));
+  }
+
+  @Test
+  public void tenuredUsage_majorCollection() {
+    MemoryPressureController controller = newController();
+    Map<String, MemoryUsage> usage = ImmutableMap.of("old", usage(900), "eden", usage(0));
+    assertThat(controller.tenuredUsage(MAJOR_GC_ACTION, usage, usage), is(0.90));
+  }
+
+  private static MemoryPressureController newController() {
+    return new MemoryPressureController(0.85, ImmutableSet.of("old"), Runnable::run);
+  }
+
+  private static MemoryUsage usage(long used) {
+    return new MemoryUsage(0L, used, 1_000L, 1_000L);
+  }
+
+  private static Cache<Integer, Integer> newCache(long maximumSize) {
+    return Caffeine.newBuilder().executor(Runnable::run).maximumSize(maximumSize).build();
+  }
+
+  private static long maximum(Cache<?, ?> cache) {
+    return cache.policy().eviction().get().getMaximum();
+  }
+}
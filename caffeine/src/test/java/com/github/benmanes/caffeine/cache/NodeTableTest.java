@@ -0,0 +1,289 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.cache.IsValidAsyncCache.validAsyncCache;
+import static com.github.benmanes.caffeine.cache.IsValidCache.validCache;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.testing.ConcurrentTestHarness;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class NodeTableTest {
+
+  @Test
+  public void put() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(16);
+    Node<Integer, Integer> first = newNode(1);
+    Node<Integer, Integer> second = newNode(1);
+
+    assertThat(table.put(1, first), is(nullValue()));
+    assertThat(table.put(1, second), is(sameInstance(first)));
+    assertThat(table.get(1), is(sameInstance(second)));
+    assertThat(table.size(), is(1));
+  }
+
+  @Test
+  public void putIfAbsent() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(16);
+    Node<Integer, Integer> node = newNode(1);
+
+    assertThat(table.putIfAbsent(1, node), is(nullValue()));
+    assertThat(table.putIfAbsent(1, newNode(1)), is(sameInstance(node)));
+    assertThat(table.get(1), is(sameInstance(node)));
+  }
+
+  @Test
+  public void remove() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(16);
+    Node<Integer, Integer> node = newNode(1);
+    table.put(1, node);
+
+    assertThat(table.remove(1, newNode(1)), is(false));
+    assertThat(table.remove(1), is(sameInstance(node)));
+    assertThat(table.remove(1), is(nullValue()));
+    assertThat(table.isEmpty(), is(true));
+  }
+
+  @Test
+  public void replace() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(16);
+    Node<Integer, Integer> first = newNode(1);
+    Node<Integer, Integer> second = newNode(1);
+
+    assertThat(table.replace(1, first), is(nullValue()));
+    table.put(1, first);
+    assertThat(table.replace(1, second, first), is(false));
+    assertThat(table.replace(1, first, second), is(true));
+    assertThat(table.get(1), is(sameInstance(second)));
+  }
+
+  @Test
+  public void compute() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(16);
+    Node<Integer, Integer> node = newNode(1);
+
+    assertThat(table.computeIfPresent(1, (k, n) -> newNode(1)), is(nullValue()));
+    assertThat(table.computeIfAbsent(1, k -> node), is(sameInstance(node)));
+    assertThat(table.computeIfAbsent(1, k -> newNode(1)), is(sameInstance(node)));
+
+    Node<Integer, Integer> replaced = table.compute(1, (k, n) -> newNode(1));
+    assertThat(table.get(1), is(sameInstance(replaced)));
+    assertThat(table.computeIfPresent(1, (k, n) -> null), is(nullValue()));
+    assertThat(table.containsKey(1), is(false));
+    assertThat(table.size(), is(0));
+  }
+
+  @Test
+  public void compute_retiredKey() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(16);
+    table.put(1, newNode(1));
+
+    // The node is found by identity after the computation retires its key
+    table.computeIfPresent(1, (k, n) -> {
+      n.retire();
+      return null;
+    });
+    assertThat(table.isEmpty(), is(true));
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void compute_recursive() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(16);
+    table.computeIfAbsent(1, k -> table.computeIfAbsent(k, key -> newNode(1)));
+  }
+
+  @Test
+  public void resize() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(0);
+    int length = table.table.length();
+    for (int i = 0; i < 10_000; i++) {
+      table.put(i, newNode(i));
+    }
+    assertThat(table.table.length() > length, is(true));
+    assertThat(table.transfer, is(nullValue()));
+    assertThat(table.size(), is(10_000));
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(table.get(i).getKey(), is(i));
+    }
+  }
+
+  @Test
+  public void compute_inFlight() throws InterruptedException {
+    NodeTable<Integer, Integer> table = new NodeTable<>(0);
+    int length = table.table.length();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    Thread loader = new Thread(() -> table.computeIfAbsent(0, k -> {
+      started.countDown();
+      Uninterruptibles.awaitUninterruptibly(done);
+      return newNode(0);
+    }));
+    loader.start();
+    started.await();
+
+    // The other keys are written and the table is resized while the computation is in flight
+    for (int i = 1; i < 10_000; i++) {
+      table.put(i, newNode(i));
+      table.computeIfPresent(i, (k, n) -> newNode((Integer) k));
+    }
+    assertThat(table.table.length() > length, is(true));
+    assertThat(table.get(0), is(nullValue()));
+    assertThat(table.size(), is(9_999));
+
+    done.countDown();
+    loader.join();
+    assertThat(table.get(0).getKey(), is(0));
+    assertThat(table.size(), is(10_000));
+  }
+
+  @Test
+  public void iterator() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(16);
+    for (int i = 0; i < 100; i++) {
+      table.put(i, newNode(i));
+    }
+    Set<Object> keys = table.values().stream()
+        .map(Node::getKey).collect(Collectors.toSet());
+    assertThat(keys, is(new HashSet<>(table.keySet())));
+    assertThat(table.entrySet().size(), is(100));
+
+    for (Iterator<Object> iterator = table.keySet().iterator(); iterator.hasNext();) {
+      if (((Integer) iterator.next() % 2) == 0) {
+        iterator.remove();
+      }
+    }
+    assertThat(table.size(), is(50));
+
+    table.clear();
+    assertThat(table.isEmpty(), is(true));
+    assertThat(table.values().iterator().hasNext(), is(false));
+  }
+
+  @Test
+  public void iterator_resize() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(0);
+    int initial = table.table.length() / 2;
+    for (int i = 0; i < initial; i++) {
+      table.put(i, newNode(i));
+    }
+
+    // The existing mappings are visited exactly once while the table is resized
+    Iterator<Object> iterator = table.keySet().iterator();
+    Set<Object> seen = new HashSet<>();
+    for (int i = initial; iterator.hasNext(); i++) {
+      assertThat(seen.add(iterator.next()), is(true));
+      table.put(i, newNode(i));
+    }
+    for (int i = 0; i < initial; i++) {
+      assertThat(seen.contains(i), is(true));
+    }
+  }
+
+  @Test
+  public void concurrent() {
+    NodeTable<Integer, Integer> table = new NodeTable<>(0);
+    AtomicInteger mismatches = new AtomicInteger();
+    ConcurrentTestHarness.timeTasks(8, () -> {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int i = 0; i < 10_000; i++) {
+        int key = random.nextInt(5_000);
+        Node<Integer, Integer> node = (random.nextInt(4) == 0)
+            ? table.get(key)
+            : table.computeIfAbsent(key, k -> newNode((Integer) k));
+        if ((node != null) && !node.getKey().equals(key)) {
+          mismatches.incrementAndGet();
+        }
+        if (random.nextInt(8) == 0) {
+          table.remove(key);
+        }
+      }
+    });
+    assertThat(mismatches.get(), is(0));
+    assertThat((long) table.values().size(), is(table.mappingCount()));
+  }
+
+  @Test
+  public void cache() {
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .maximumSize(100).embeddedHashTable().executor(Runnable::run).build();
+    for (int i = 0; i < 1_000; i++) {
+      cache.put(i, -i);
+      cache.get(i % 10, k -> -k);
+    }
+    cache.asMap().computeIfPresent(1, (k, v) -> v - 1);
+
+    BoundedLocalCache<Integer, Integer> local = (BoundedLocalCache<Integer, Integer>) cache.asMap();
+    assertThat(local.data, is(instanceOf(NodeTable.class)));
+    assertThat(local.nodeFactory, is(instanceOf(PSMSE.class)));
+    assertThat(cache.estimatedSize(), is(lessThanOrEqualTo(100L)));
+    assertThat(cache.getIfPresent(1), is(-2));
+    assertThat(cache, is(validCache()));
+  }
+
+  @Test
+  public void cache_weighted() {
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .maximumWeight(100).weigher((Integer k, Integer v) -> k % 3)
+        .embeddedHashTable().executor(Runnable::run).build();
+    for (int i = 0; i < 1_000; i++) {
+      cache.put(i, -i);
+    }
+
+    BoundedLocalCache<Integer, Integer> local = (BoundedLocalCache<Integer, Integer>) cache.asMap();
+    assertThat(local.nodeFactory, is(instanceOf(PSMWE.class)));
+    assertThat(cache.policy().eviction().get().weightedSize().getAsLong(),
+        is(lessThanOrEqualTo(100L)));
+    assertThat(cache, is(validCache()));
+  }
+
+  @Test
+  public void cache_async() {
+    AsyncLoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .maximumSize(10).embeddedHashTable().executor(Runnable::run).buildAsync(k -> -k);
+    for (int i = 0; i < 100; i++) {
+      assertThat(cache.get(i).join(), is(-i));
+    }
+    cache.synchronous().invalidate(99);
+    assertThat(cache.synchronous().asMap().keySet(), containsInAnyOrder(
+        cache.synchronous().asMap().keySet().toArray()));
+    assertThat(cache.synchronous().estimatedSize(), is(lessThanOrEqualTo(10L)));
+    assertThat(cache, is(validAsyncCache()));
+  }
+
+  private static Node<Integer, Integer> newNode(int key) {
+    return new PSMSE<Integer, Integer>().newNode(key, null, -key, null, 1, 0L);
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@Test(singleThreaded = true)
+public final class PacerTest {
+  private static final long NOW = ThreadLocalRandom.current().nextLong();
+
+  @Mock Scheduler scheduler;
+  @Mock Executor executor;
+  @Mock Runnable command;
+  @Mock Future<?> future;
+
+  Pacer pacer;
+
+  @BeforeMethod
+  public void beforeMethod() {
+    MockitoAnnotations.initMocks(this);
+    pacer = new Pacer(scheduler);
+  }
+
+  @Test
+  public void schedule_initialize() {
+    long delay = ThreadLocalRandom.current().nextInt(Math.toIntExact(Pacer.TOLERANCE));
+    doReturnFuture();
+    pacer.schedule(executor, command, NOW, delay);
+
+    assertThat(pacer.future, is(sameInstance(future)));
+    assertThat(pacer.nextFireTime, is(NOW + Pacer.TOLERANCE));
+    verify(scheduler).schedule(executor, command, Pacer.TOLERANCE, TimeUnit.NANOSECONDS);
+  }
+
+  @Test
+  public void schedule_initialize_recurse() {
+    long delay = ThreadLocalRandom.current().nextInt(Math.toIntExact(Pacer.TOLERANCE));
+    when(scheduler.schedule(executor, command, Pacer.TOLERANCE, TimeUnit.NANOSECONDS))
+        .then(invocation -> {
+          assertThat(pacer.future, is(nullValue()));
+          assertThat(pacer.nextFireTime, is(NOW + Pacer.TOLERANCE));
+          pacer.schedule(executor, command, NOW, delay);
+          return future;
+        });
+
+    pacer.schedule(executor, command, NOW, delay);
+    assertThat(pacer.future, is(sameInstance(future)));
+    assertThat(pacer.nextFireTime, is(NOW + Pacer.TOLERANCE));
+    verify(scheduler).schedule(executor, command, Pacer.TOLERANCE, TimeUnit.NANOSECONDS);
+  }
+
+  @Test
+  public void schedule_cancel_schedule() {
+    long fireTime = NOW + Pacer.TOLERANCE;
+    doReturnFuture();
+    pacer.schedule(executor, command, NOW, Pacer.TOLERANCE);
+    assertThat(pacer.nextFireTime, is(fireTime));
+    assertThat(pacer.future, is(sameInstance(future)));
+
+    pacer.cancel();
+    verify(future).cancel(false);
+    assertThat(pacer.nextFireTime, is(0L));
+    assertThat(pacer.future, is(nullValue()));
+
+    pacer.schedule(executor, command, NOW, Pacer.TOLERANCE);
+    assertThat(pacer.nextFireTime, is(fireTime));
+    assertThat(pacer.future, is(sameInstance(future)));
+  }
+
+  @Test
+  public void scheduled_afterNextFireTime_skip() {
+    pacer.nextFireTime = NOW + Pacer.TOLERANCE;
+    pacer.future = future;
+
+    long expectedNextFireTime = pacer.nextFireTime;
+    pacer.schedule(executor, command, NOW, 2 * Pacer.TOLERANCE);
+
+    assertThat(pacer.future, is(sameInstance(future)));
+    assertThat(pacer.nextFireTime, is(expectedNextFireTime));
+    verifyNoMoreInteractions(scheduler, executor, command, future);
+  }
+
+  @Test
+  public void schedule_beforeNextFireTime_skip() {
+    pacer.nextFireTime = NOW + 2 * Pacer.TOLERANCE;
+    pacer.future = future;
+
+    long expectedNextFireTime = pacer.nextFireTime;
+    long delay = Pacer.TOLERANCE + Math.max(1, ThreadLocalRandom.current().nextInt(
+        Math.toIntExact(Pacer.TOLERANCE)));
+    pacer.schedule(executor, command, NOW, delay);
+
+    assertThat(pacer.future, is(sameInstance(future)));
+    assertThat(pacer.nextFireTime, is(expectedNextFireTime));
+    verifyNoMoreInteractions(scheduler, executor, command, future);
+  }
+
+  @Test
+  public void schedule_beforeNextFireTime_minimumDelay() {
+    pacer.nextFireTime = NOW + 3 * Pacer.TOLERANCE;
+    pacer.future = future;
+
+    long delay = ThreadLocalRandom.current().nextInt(Math.toIntExact(Pacer.TOLERANCE));
+    doReturnFuture();
+    pacer.schedule(executor, command, NOW, delay);
+
+    assertThat(pacer.future, is(sameInstance(future)));
+    assertThat(pacer.nextFireTime, is(NOW + Pacer.TOLERANCE));
+
+    verify(future).cancel(false);
+    verify(scheduler).schedule(executor, command, Pacer.TOLERANCE, TimeUnit.NANOSECONDS);
+    verifyNoMoreInteractions(scheduler, executor, command, future);
+  }
+
+  @Test
+  public void schedule_beforeNextFireTime_customDelay() {
+    pacer.nextFireTime = NOW + 4 * Pacer.TOLERANCE;
+    pacer.future = future;
+
+    long delay = 2 * Pacer.TOLERANCE;
+    doReturnFuture();
+    pacer.schedule(executor, command, NOW, delay);
+
+    assertThat(pacer.future, is(sameInstance(future)));
+    assertThat(pacer.nextFireTime, is(NOW + delay));
+
+    verify(future).cancel(false);
+    verify(scheduler).schedule(executor, command, delay, TimeUnit.NANOSECONDS);
+    verifyNoMoreInteractions(scheduler, executor, command, future);
+  }
+
+  @Test
+  public void schedule_afterFired() {
+    pacer.nextFireTime = NOW - Pacer.TOLERANCE;
+    pacer.future = future;
+
+    long delay = 2 * Pacer.TOLERANCE;
+    doReturnFuture();
+    pacer.schedule(executor, command, NOW, delay);
+
+    assertThat(pacer.nextFireTime, is(NOW + delay));
+    verify(scheduler).schedule(executor, command, delay, TimeUnit.NANOSECONDS);
+  }
+
+  @Test
+  public void cancel_initialize() {
+    pacer.cancel();
+    assertThat(pacer.nextFireTime, is(0L));
+    assertThat(pacer.future, is(nullValue()));
+  }
+
+  @Test
+  public void cancel_scheduled() {
+    pacer.nextFireTime = NOW + Pacer.TOLERANCE;
+    pacer.future = future;
+
+    pacer.cancel();
+    verify(future).cancel(false);
+    assertThat(pacer.nextFireTime, is(0L));
+    assertThat(pacer.future, is(nullValue()));
+  }
+
+  private void doReturnFuture() {
+    Mockito.doReturn(future).when(scheduler).schedule(any(), any(), anyLong(), any());
+  }
+}
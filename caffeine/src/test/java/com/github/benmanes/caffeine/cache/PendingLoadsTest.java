@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.testing.Awaits.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.testing.ConcurrentTestHarness;
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.SerializableTester;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class PendingLoadsTest {
+
+  @Test(dataProvider = "builders")
+  public void get(Caffeine<Object, Object> builder) {
+    LoadingCache<Integer, Integer> cache = builder.build(key -> -key);
+    assertThat(cache.get(1), is(-1));
+    assertThat(cache.get(1), is(-1));
+    assertThat(cache.stats().missCount(), is(1L));
+    assertThat(cache.stats().hitCount(), is(1L));
+    assertThat(pendingLoads(cache).placeholders.isEmpty(), is(true));
+  }
+
+  @Test(dataProvider = "builders")
+  public void get_null(Caffeine<Object, Object> builder) {
+    Cache<Integer, Integer> cache = builder.build();
+    assertThat(cache.get(1, key -> null), is(nullValue()));
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+  }
+
+  @Test(dataProvider = "builders")
+  public void get_sameKey(Caffeine<Object, Object> builder) {
+    AtomicInteger loads = new AtomicInteger();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    LoadingCache<Integer, Integer> cache = builder.build(key -> {
+      loads.incrementAndGet();
+      release.join();
+      return -key;
+    });
+
+    CompletableFuture<Integer> first = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> loads.get() == 1);
+    CompletableFuture<Integer> second = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> waitingOn(cache, 1) == 1);
+    release.complete(null);
+
+    assertThat(first.join(), is(-1));
+    assertThat(second.join(), is(-1));
+    assertThat(loads.get(), is(1));
+    assertThat(cache.stats().missCount(), is(1L));
+    assertThat(cache.stats().hitCount(), is(1L));
+  }
+
+  @Test(dataProvider = "builders")
+  public void get_doesNotBlockWrites(Caffeine<Object, Object> builder) {
+    AtomicInteger loads = new AtomicInteger();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    LoadingCache<Integer, Integer> cache = builder.build(key -> {
+      loads.incrementAndGet();
+      release.join();
+      return -key;
+    });
+
+    CompletableFuture<Integer> future = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> loads.get() == 1);
+
+    assertThat(cache.get(2, key -> key), is(2));
+    cache.put(1, 1);
+    release.complete(null);
+
+    assertThat(future.join(), is(1));
+    assertThat(cache.getIfPresent(1), is(1));
+  }
+
+  @Test(dataProvider = "builders")
+  public void get_invalidated(Caffeine<Object, Object> builder) {
+    AtomicInteger loads = new AtomicInteger();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    LoadingCache<Integer, Integer> cache = builder.build(key -> {
+      if (loads.incrementAndGet() == 1) {
+        release.join();
+      }
+      return -key;
+    });
+
+    CompletableFuture<Integer> future = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> loads.get() == 1);
+    cache.invalidate(1);
+    release.complete(null);
+
+    assertThat(future.join(), is(-1));
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+    assertThat(cache.get(1), is(-1));
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test(dataProvider = "builders")
+  public void get_invalidateAll(Caffeine<Object, Object> builder) {
+    AtomicInteger loads = new AtomicInteger();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    LoadingCache<Integer, Integer> cache = builder.build(key -> {
+      loads.incrementAndGet();
+      release.join();
+      return -key;
+    });
+
+    CompletableFuture<Integer> future = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> loads.get() == 1);
+    cache.invalidateAll();
+    assertThat(pendingLoads(cache).placeholders.isEmpty(), is(true));
+    release.complete(null);
+
+    assertThat(future.join(), is(-1));
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+  }
+
+  @Test(dataProvider = "builders")
+  public void get_failure(Caffeine<Object, Object> builder) {
+    AtomicInteger loads = new AtomicInteger();
+    CompletableFuture<Void> release = new CompletableFuture<>();
+    LoadingCache<Integer, Integer> cache = builder.build(key -> {
+      if (loads.incrementAndGet() == 1) {
+        release.join();
+        throw new IllegalStateException();
+      }
+      return -key;
+    });
+
+    CompletableFuture<Integer> first = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> loads.get() == 1);
+    CompletableFuture<Integer> second = CompletableFuture.supplyAsync(
+        () -> cache.get(1), ConcurrentTestHarness::execute);
+    await().until(() -> waitingOn(cache, 1) == 1);
+    release.complete(null);
+
+    for (CompletableFuture<Integer> future : ImmutableList.of(first, second)) {
+      try {
+        future.join();
+        Assert.fail();
+      } catch (CompletionException e) {
+        assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+      }
+    }
+    assertThat(pendingLoads(cache).placeholders.isEmpty(), is(true));
+    assertThat(cache.get(1), is(-1));
+  }
+
+  @Test(dataProvider = "builders", expectedExceptions = IllegalStateException.class)
+  public void get_recursive(Caffeine<Object, Object> builder) {
+    Cache<Integer, Integer> cache = builder.build();
+    cache.get(1, key -> cache.get(key, k -> -k));
+  }
+
+  @Test(dataProvider = "builders")
+  public void serialize(Caffeine<Object, Object> builder) {
+    Cache<Integer, Integer> cache = SerializableTester.reserialize(builder.build());
+    assertThat(pendingLoads(cache), is(not(nullValue())));
+  }
+
+  @DataProvider(name = "builders")
+  public Object[][] providesBuilders() {
+    return new Object[][] {
+      { Caffeine.newBuilder().loadOutsideLock().recordStats() },
+      { Caffeine.newBuilder().loadOutsideLock().recordStats().maximumSize(100) },
+    };
+  }
+
+  /** Returns the number of callers waiting on the in-flight load of the key. */
+  private static int waitingOn(Cache<Integer, Integer> cache, Integer key) {
+    CompletableFuture<?> future = pendingLoads(cache).placeholders.get(key);
+    return (future == null) ? 0 : future.getNumberOfDependents();
+  }
+
+  private static PendingLoads<?> pendingLoads(Cache<?, ?> cache) {
+    LocalCache<?, ?> localCache = ((LocalManualCache<?, ?>) cache).cache();
+    return (localCache instanceof BoundedLocalCache<?, ?>)
+        ? ((BoundedLocalCache<?, ?>) localCache).pendingLoads
+        : ((UnboundedLocalCache<?, ?>) localCache).pendingLoads;
+  }
+}
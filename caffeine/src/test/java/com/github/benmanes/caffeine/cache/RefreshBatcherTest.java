@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.testing.FakeTicker;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@Test(singleThreaded = true)
+public final class RefreshBatcherTest {
+  final List<Map<Integer, Integer>> batches = new ArrayList<>();
+  final List<Runnable> scheduled = new ArrayList<>();
+  final FakeTicker ticker = new FakeTicker();
+
+  final Scheduler scheduler = (executor, command, delay, unit) -> {
+    scheduled.add(() -> executor.execute(command));
+    return new CompletableFuture<Void>();
+  };
+
+  @BeforeMethod
+  public void beforeMethod() {
+    batches.clear();
+    scheduled.clear();
+  }
+
+  @Test
+  public void refresh_delay() {
+    LoadingCache<Integer, Integer> cache = newBuilder(10).build(new NegatingReloader());
+    populateStale(cache);
+
+    assertThat(cache.get(1), is(1));
+    assertThat(cache.get(2), is(2));
+    assertThat(scheduled.size(), is(1));
+    assertThat(batches, is(empty()));
+
+    scheduled.get(0).run();
+    assertThat(batches, contains(ImmutableMap.of(1, 1, 2, 2)));
+    assertThat(cache.getIfPresent(1), is(-1));
+    assertThat(cache.getIfPresent(2), is(-2));
+    checkBatchStats(cache.stats(), 1, 2);
+    assertThat(cache.stats().savedRefreshCount(), is(1L));
+  }
+
+  @Test
+  public void refresh_maximumBatchSize() {
+    LoadingCache<Integer, Integer> cache = newBuilder(2).build(new NegatingReloader());
+    populateStale(cache);
+
+    cache.get(1);
+    assertThat(batches, is(empty()));
+
+    cache.get(2);
+    assertThat(batches, contains(ImmutableMap.of(1, 1, 2, 2)));
+    assertThat(cache.getIfPresent(1), is(-1));
+    assertThat(cache.getIfPresent(2), is(-2));
+    checkBatchStats(cache.stats(), 1, 2);
+  }
+
+  @Test
+  public void refresh_gathersDuringMaintenance() {
+    LoadingCache<Integer, Integer> cache = newBuilder(10)
+        .expireAfterWrite(10, TimeUnit.MINUTES)
+        .build(new NegatingReloader());
+    cache.putAll(ImmutableMap.of(1, 1, 2, 2, 3, 3));
+    ticker.advance(2, TimeUnit.MINUTES);
+    cache.put(4, 4);
+
+    assertThat(cache.get(1), is(1));
+    cache.cleanUp();
+    new ArrayList<>(scheduled).forEach(Runnable::run);
+    assertThat(batches, contains(ImmutableMap.of(1, 1, 2, 2, 3, 3)));
+    assertThat(cache.getIfPresent(2), is(-2));
+    assertThat(cache.getIfPresent(4), is(4));
+    checkBatchStats(cache.stats(), 1, 3);
+  }
+
+  @Test
+  public void refresh_schedulerFails() {
+    LoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .scheduler((executor, command, delay, unit) -> { throw new IllegalStateException(); })
+        .batchRefreshes(10, 1, TimeUnit.MINUTES)
+        .refreshAfterWrite(1, TimeUnit.MINUTES)
+        .executor(Runnable::run)
+        .ticker(ticker::read)
+        .build(new NegatingReloader());
+    populateStale(cache);
+
+    assertThat(cache.get(1), is(1));
+    assertThat(batches, contains(ImmutableMap.of(1, 1)));
+    assertThat(cache.getIfPresent(1), is(-1));
+  }
+
+  @Test
+  public void refresh_absent() {
+    LoadingCache<Integer, Integer> cache = newBuilder(1).build(new NegatingReloader() {
+      @Override public Map<Integer, Integer> reloadAll(
+          Map<? extends Integer, ? extends Integer> oldValues) {
+        super.reloadAll(oldValues);
+        return Maps.newHashMap();
+      }
+    });
+    populateStale(cache);
+
+    cache.get(1);
+    assertThat(batches.size(), is(1));
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+  }
+
+  @Test
+  public void refresh_failure() {
+    LoadingCache<Integer, Integer> cache = newBuilder(2).build(new NegatingReloader() {
+      @Override public Map<Integer, Integer> reloadAll(
+          Map<? extends Integer, ? extends Integer> oldValues) {
+        throw new IllegalStateException();
+      }
+    });
+    populateStale(cache);
+
+    cache.get(1);
+    cache.get(2);
+    assertThat(cache.stats().loadFailureCount(), is(2L));
+    checkBatchStats(cache.stats(), 1, 2);
+    assertThat(ImmutableMap.copyOf(cache.asMap()), is(ImmutableMap.of(1, 1, 2, 2)));
+  }
+
+  @Test
+  public void refresh_async() {
+    AsyncLoadingCache<Integer, Integer> cache = newBuilder(2).buildAsync(new NegatingReloader());
+    cache.synchronous().putAll(ImmutableMap.of(1, 1, 2, 2));
+    ticker.advance(2, TimeUnit.MINUTES);
+
+    assertThat(cache.get(1).join(), is(1));
+    assertThat(cache.get(2).join(), is(2));
+    assertThat(batches, contains(ImmutableMap.of(1, 1, 2, 2)));
+    assertThat(cache.synchronous().getIfPresent(1), is(-1));
+    assertThat(cache.synchronous().getIfPresent(2), is(-2));
+    checkBatchStats(cache.synchronous().stats(), 1, 2);
+  }
+
+  private void populateStale(LoadingCache<Integer, Integer> cache) {
+    cache.putAll(ImmutableMap.of(1, 1, 2, 2));
+    ticker.advance(2, TimeUnit.MINUTES);
+  }
+
+  private Caffeine<Object, Object> newBuilder(int maximumBatchSize) {
+    return Caffeine.newBuilder()
+        .batchRefreshes(maximumBatchSize, 1, TimeUnit.MINUTES)
+        .refreshAfterWrite(1, TimeUnit.MINUTES)
+        .executor(Runnable::run)
+        .scheduler(scheduler)
+        .ticker(ticker::read)
+        .recordStats();
+  }
+
+  private static void checkBatchStats(CacheStats stats, long batchCount, long batchSize) {
+    assertThat(stats.refreshBatchCount(), is(batchCount));
+    assertThat(stats.totalRefreshBatchSize(), is(batchSize));
+  }
+
+  class NegatingReloader implements CacheLoader<Integer, Integer> {
+    @Override public Integer load(Integer key) {
+      return key;
+    }
+    @Override public Map<Integer, Integer> reloadAll(
+        Map<? extends Integer, ? extends Integer> oldValues) {
+      batches.add(ImmutableMap.copyOf(oldValues));
+
+      Map<Integer, Integer> result = Maps.newHashMap();
+      for (Integer key : oldValues.keySet()) {
+        result.put(key, -key);
+      }
+      return result;
+    }
+  }
+}
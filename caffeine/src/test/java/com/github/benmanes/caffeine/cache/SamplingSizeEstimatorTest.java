@@ -0,0 +1,111 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.base.UnsafeAccess.UNSAFE;
+import static com.github.benmanes.caffeine.cache.SamplingSizeEstimator.OBJECT_HEADER;
+import static com.github.benmanes.caffeine.cache.SamplingSizeEstimator.align;
+import static com.github.benmanes.caffeine.cache.SamplingSizeEstimator.shallowSizeOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.Policy.Eviction;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class SamplingSizeEstimatorTest {
+  final SizeEstimator<Object, Object> estimator = SizeEstimator.sampling();
+
+  @Test
+  public void object() {
+    assertThat(shallowSizeOf(Object.class), is(align(OBJECT_HEADER)));
+    assertThat(estimator.estimate(new Object(), new Object()), is(2 * align(OBJECT_HEADER)));
+  }
+
+  @Test
+  public void primitiveArray() {
+    long expected = align(UNSAFE.arrayBaseOffset(byte[].class) + 100);
+    assertThat(estimator.estimate(new byte[100], new byte[0]),
+        is(expected + align(UNSAFE.arrayBaseOffset(byte[].class))));
+  }
+
+  @Test
+  public void shared() {
+    Object shared = new long[16];
+    long size = estimator.estimate(shared, shared);
+    assertThat(size, is(align(UNSAFE.arrayBaseOffset(long[].class) + 16 * Long.BYTES)));
+
+    Object[] array = { shared, shared };
+    assertThat(estimator.estimate(array, shared),
+        is(size + align(UNSAFE.arrayBaseOffset(Object[].class) + 2L * UNSAFE.arrayIndexScale(
+            Object[].class))));
+  }
+
+  @Test
+  public void ignored() {
+    assertThat(estimator.estimate(Object.class, TimeUnit.SECONDS), is(0L));
+  }
+
+  @Test
+  public void sampled() {
+    List<long[]> list = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      list.add(new long[4]);
+    }
+    long element = align(UNSAFE.arrayBaseOffset(long[].class) + 4 * Long.BYTES);
+    long size = estimator.estimate(list, new Object());
+    assertThat(size, is(both(greaterThan(10_000 * element)).and(lessThan(11_000 * element))));
+  }
+
+  @Test
+  public void entryOverhead() {
+    long strong = MemoryWeigher.entryOverhead(Caffeine.newBuilder().maximumMemory(0), false);
+    long weakKeys = MemoryWeigher.entryOverhead(
+        Caffeine.newBuilder().maximumMemory(0).weakKeys(), false);
+    long async = MemoryWeigher.entryOverhead(Caffeine.newBuilder().maximumMemory(0), true);
+    assertThat(strong, is(greaterThan(0L)));
+    assertThat(weakKeys, is(greaterThan(strong)));
+    assertThat(async, is(greaterThan(strong)));
+  }
+
+  @Test
+  public void maximumMemory() {
+    long maximum = 1 << 20;
+    Cache<Integer, byte[]> cache = Caffeine.newBuilder()
+        .executor(Runnable::run)
+        .maximumMemory(maximum)
+        .build();
+    for (int i = 0; i < 10_000; i++) {
+      cache.put(i, new byte[1024]);
+    }
+    cache.cleanUp();
+
+    Eviction<Integer, byte[]> eviction = cache.policy().eviction().get();
+    assertThat(eviction.weightedSize().getAsLong(), is(lessThanOrEqualTo(maximum)));
+    assertThat(cache.estimatedSize(), is(both(greaterThan(512L)).and(lessThan(1024L))));
+  }
+}
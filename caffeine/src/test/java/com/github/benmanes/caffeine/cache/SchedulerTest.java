@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static com.github.benmanes.caffeine.testing.Awaits.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mockito.Mockito;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class SchedulerTest {
+  private final Runnable noop = () -> {};
+
+  @Test(dataProvider = "schedulers", expectedExceptions = NullPointerException.class)
+  public void schedule_nullExecutor(Scheduler scheduler) {
+    scheduler.schedule(null, noop, 1, TimeUnit.MINUTES);
+  }
+
+  @Test(dataProvider = "schedulers", expectedExceptions = NullPointerException.class)
+  public void schedule_nullRunnable(Scheduler scheduler) {
+    scheduler.schedule(MoreExecutors.directExecutor(), null, 1, TimeUnit.MINUTES);
+  }
+
+  @Test(dataProvider = "schedulers", expectedExceptions = NullPointerException.class)
+  public void schedule_nullUnit(Scheduler scheduler) {
+    scheduler.schedule(MoreExecutors.directExecutor(), noop, 1, null);
+  }
+
+  @Test(dataProvider = "schedulers")
+  public void schedule(Scheduler scheduler) {
+    AtomicBoolean executed = new AtomicBoolean();
+    Future<?> future = scheduler.schedule(MoreExecutors.directExecutor(),
+        () -> executed.set(true), 1L, TimeUnit.NANOSECONDS);
+    assertThat(future, is(not(nullValue())));
+
+    if (scheduler != Scheduler.disabledScheduler()) {
+      await().untilTrue(executed);
+    }
+  }
+
+  @DataProvider(name = "schedulers")
+  public Object[][] providesSchedulers() {
+    return new Object[][] {
+      { Scheduler.disabledScheduler() },
+      { Scheduler.systemScheduler() },
+      { Scheduler.forScheduledExecutorService(
+          Executors.newSingleThreadScheduledExecutor()) },
+    };
+  }
+
+  /* ---------------- disabled -------------- */
+
+  @Test
+  public void disabledScheduler() {
+    Future<?> future = Scheduler.disabledScheduler()
+        .schedule(Runnable::run, noop, 1, TimeUnit.MINUTES);
+    assertThat(future, is(DisabledFuture.INSTANCE));
+  }
+
+  @Test
+  public void disabledFuture() throws Exception {
+    assertThat(DisabledFuture.INSTANCE.get(), is(nullValue()));
+    assertThat(DisabledFuture.INSTANCE.get(0, TimeUnit.SECONDS), is(nullValue()));
+    assertThat(DisabledFuture.INSTANCE.isDone(), is(true));
+    assertThat(DisabledFuture.INSTANCE.isCancelled(), is(false));
+    assertThat(DisabledFuture.INSTANCE.cancel(false), is(false));
+    assertThat(DisabledFuture.INSTANCE.cancel(true), is(false));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void disabledFuture_null() throws Exception {
+    DisabledFuture.INSTANCE.get(0, null);
+  }
+
+  /* ---------------- guarded -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void guardedScheduler_null() {
+    Scheduler.guardedScheduler(null);
+  }
+
+  @Test
+  public void guardedScheduler_nullFuture() {
+    Scheduler scheduler = Mockito.mock(Scheduler.class);
+    Executor executor = Mockito.mock(Executor.class);
+    Future<?> future = Scheduler.guardedScheduler(scheduler)
+        .schedule(executor, noop, 1L, TimeUnit.MINUTES);
+    verify(scheduler).schedule(executor, noop, 1L, TimeUnit.MINUTES);
+    assertThat(future, is(DisabledFuture.INSTANCE));
+  }
+
+  @Test
+  public void guardedScheduler_exception() {
+    Future<?> future = Scheduler.guardedScheduler((r, e, d, u) -> {
+      throw new IllegalStateException();
+    }).schedule(Runnable::run, noop, 1, TimeUnit.MINUTES);
+    assertThat(future, is(DisabledFuture.INSTANCE));
+  }
+
+  @Test
+  public void guardedScheduler_idempotent() {
+    Scheduler scheduler = Scheduler.guardedScheduler(Scheduler.disabledScheduler());
+    assertThat(Scheduler.guardedScheduler(scheduler), is(sameInstance(scheduler)));
+  }
+
+  /* ---------------- ScheduledExecutorService -------------- */
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void scheduledExecutorService_null() {
+    Scheduler.forScheduledExecutorService(null);
+  }
+
+  @Test
+  public void scheduledExecutorService_schedule() {
+    ScheduledExecutorService scheduledExecutor = Mockito.mock(ScheduledExecutorService.class);
+    Scheduler scheduler = Scheduler.forScheduledExecutorService(scheduledExecutor);
+    Future<?> future = scheduler.schedule(Runnable::run, noop, 1L, TimeUnit.MINUTES);
+    verify(scheduledExecutor).schedule(any(Runnable.class), eq(1L), eq(TimeUnit.MINUTES));
+    assertThat(future, is(nullValue()));
+  }
+
+  @Test
+  public void scheduledExecutorService_shutdown() {
+    ScheduledExecutorService scheduledExecutor = Mockito.mock(ScheduledExecutorService.class);
+    when(scheduledExecutor.isShutdown()).thenReturn(true);
+
+    Scheduler scheduler = Scheduler.forScheduledExecutorService(scheduledExecutor);
+    Future<?> future = scheduler.schedule(Runnable::run, noop, 1L, TimeUnit.MINUTES);
+    verify(scheduledExecutor, never())
+        .schedule(any(Runnable.class), anyLong(), any());
+    assertThat(future, is(DisabledFuture.INSTANCE));
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Listeners;
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.testing.CacheContext;
+import com.github.benmanes.caffeine.cache.testing.CacheProvider;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Compute;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Expire;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Implementation;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Loader;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Population;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Stats;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.Writer;
+import com.github.benmanes.caffeine.cache.testing.CacheValidationListener;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.testing.SerializableTester;
+
+/**
+ * The test cases for caches that serve stale entries while revalidating them.
+ *
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+@Listeners(CacheValidationListener.class)
+@Test(dataProviderClass = CacheProvider.class)
+public final class StaleWhileRevalidateTest {
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE,
+      loader = Loader.NEGATIVE, stats = Stats.ENABLED)
+  public void fresh(LoadingCache<Integer, Integer> cache, CacheContext context) {
+    assertThat(cache.get(1), is(-1));
+    context.ticker().advance(59, TimeUnit.SECONDS);
+    assertThat(cache.get(1), is(-1));
+    assertThat(cache.stats().loadCount(), is(1L));
+    assertThat(cache.stats().hitCount(), is(1L));
+    assertThat(cache.stats().staleHitCount(), is(0L));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE,
+      stats = Stats.ENABLED)
+  public void stale_reloads(CacheContext context) {
+    ControlledLoader loader = new ControlledLoader();
+    LoadingCache<Integer, Integer> cache = context.build(loader);
+
+    cache.put(1, 1);
+    context.ticker().advance(61, TimeUnit.SECONDS);
+    assertThat(cache.get(1), is(1));
+    assertThat(cache.getIfPresent(1), is(1));
+    assertThat(loader.reloads.size(), is(1));
+    assertThat(cache.stats().staleHitCount(), is(2L));
+
+    loader.reloads.get(0).complete(2);
+    assertThat(cache.get(1), is(2));
+    assertThat(loader.reloads.size(), is(1));
+    assertThat(cache.stats().hitCount(), is(3L));
+    assertThat(cache.stats().staleHitCount(), is(2L));
+    assertThat(cache.stats().loadSuccessCount(), is(1L));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE,
+      loader = Loader.NEGATIVE, stats = Stats.ENABLED, compute = Compute.SYNC)
+  public void stale_getAllPresent(LoadingCache<Integer, Integer> cache, CacheContext context) {
+    cache.put(1, 1);
+    context.ticker().advance(61, TimeUnit.SECONDS);
+    cache.put(2, 2);
+    assertThat(cache.getAllPresent(ImmutableList.of(1, 2, 3)), is(ImmutableMap.of(1, 1, 2, 2)));
+    assertThat(cache.stats().hitCount(), is(2L));
+    assertThat(cache.stats().staleHitCount(), is(1L));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE,
+      loader = Loader.NEGATIVE, stats = Stats.ENABLED)
+  public void stale_expiresAfterGracePeriod(
+      LoadingCache<Integer, Integer> cache, CacheContext context) {
+    cache.put(1, 1);
+    context.ticker().advance(2, TimeUnit.MINUTES);
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+    assertThat(cache.get(1), is(-1));
+    assertThat(cache.stats().loadCount(), is(1L));
+    assertThat(cache.stats().staleHitCount(), is(0L));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE)
+  public void stale_pendingReloadExpires(CacheContext context) {
+    ControlledLoader loader = new ControlledLoader();
+    LoadingCache<Integer, Integer> cache = context.build(loader);
+
+    cache.put(1, 1);
+    context.ticker().advance(61, TimeUnit.SECONDS);
+    assertThat(cache.get(1), is(1));
+    assertThat(loader.reloads.size(), is(1));
+
+    context.ticker().advance(1, TimeUnit.MINUTES);
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+    cache.cleanUp();
+    assertThat(cache.estimatedSize(), is(0L));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE,
+      stats = Stats.ENABLED)
+  public void reloadFailure_discardsStale(CacheContext context) {
+    ControlledLoader loader = new ControlledLoader();
+    LoadingCache<Integer, Integer> cache = context.build(loader);
+
+    cache.put(1, 1);
+    context.ticker().advance(61, TimeUnit.SECONDS);
+    assertThat(cache.get(1), is(1));
+    loader.reloads.get(0).completeExceptionally(new IllegalStateException());
+
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+    assertThat(cache.get(1), is(-1));
+    assertThat(loader.loads.get(), is(1));
+    assertThat(cache.stats().loadFailureCount(), is(1L));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE,
+      serveStaleOnError = true, stats = Stats.ENABLED)
+  public void reloadFailure_serveStaleOnError(CacheContext context) {
+    ControlledLoader loader = new ControlledLoader();
+    LoadingCache<Integer, Integer> cache = context.build(loader);
+
+    cache.put(1, 1);
+    context.ticker().advance(61, TimeUnit.SECONDS);
+    assertThat(cache.get(1), is(1));
+    loader.reloads.get(0).completeExceptionally(new IllegalStateException());
+
+    assertThat(cache.getIfPresent(1), is(1));
+    assertThat(loader.reloads.size(), is(2));
+    assertThat(cache.stats().loadFailureCount(), is(1L));
+    assertThat(cache.stats().staleHitCount(), is(2L));
+
+    context.ticker().advance(1, TimeUnit.MINUTES);
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE,
+      compute = Compute.ASYNC, stats = Stats.ENABLED)
+  public void async_stale_reloads(CacheContext context) {
+    ControlledLoader loader = new ControlledLoader();
+    AsyncLoadingCache<Integer, Integer> cache = context.buildAsync(loader);
+
+    cache.put(1, CompletableFuture.completedFuture(1));
+    context.ticker().advance(61, TimeUnit.SECONDS);
+    assertThat(cache.get(1).join(), is(1));
+    assertThat(loader.reloads.size(), is(1));
+    assertThat(cache.synchronous().stats().staleHitCount(), is(1L));
+
+    loader.reloads.get(0).complete(2);
+    assertThat(cache.get(1).join(), is(2));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE)
+  public void policy(LoadingCache<Integer, Integer> cache, CacheContext context) {
+    Policy<Integer, Integer> policy = cache.policy();
+    assertThat(policy.expireAfterWrite().get().getExpiresAfter(TimeUnit.SECONDS), is(120L));
+    assertThat(policy.refreshAfterWrite().get().getExpiresAfter(TimeUnit.SECONDS), is(60L));
+  }
+
+  @Test(dataProvider = "caches")
+  @CacheSpec(implementation = Implementation.Caffeine, population = Population.EMPTY,
+      expireAfterWrite = Expire.ONE_MINUTE, staleWhileRevalidate = Expire.ONE_MINUTE,
+      serveStaleOnError = true, compute = Compute.SYNC, loader = Loader.IDENTITY,
+      writer = Writer.DISABLED)
+  public void serialize(LoadingCache<Integer, Integer> cache, CacheContext context) {
+    LoadingCache<Integer, Integer> copy = SerializableTester.reserialize(cache);
+
+    BoundedLocalCache<?, ?> original =
+        ((BoundedLocalCache.BoundedLocalLoadingCache<?, ?>) cache).cache;
+    BoundedLocalCache<?, ?> reserialized =
+        ((BoundedLocalCache.BoundedLocalLoadingCache<?, ?>) copy).cache;
+    assertThat(reserialized.staleAfterWriteNanos, is(original.staleAfterWriteNanos));
+    assertThat(reserialized.expiresAfterWriteNanos(), is(original.expiresAfterWriteNanos()));
+    assertThat(reserialized.refreshAfterWriteNanos(), is(original.refreshAfterWriteNanos()));
+    assertThat(reserialized.serveStaleOnError, is(true));
+  }
+
+  /** A loader whose reloads are completed by the test. */
+  static final class ControlledLoader implements CacheLoader<Integer, Integer> {
+    final List<CompletableFuture<Integer>> reloads = new ArrayList<>();
+    final AtomicInteger loads = new AtomicInteger();
+
+    @Override public Integer load(Integer key) {
+      loads.incrementAndGet();
+      return -key;
+    }
+    @Override public CompletableFuture<Integer> asyncReload(
+        Integer key, Integer oldValue, Executor executor) {
+      CompletableFuture<Integer> reload = new CompletableFuture<>();
+      reloads.add(reload);
+      return reload;
+    }
+  }
+}
@@ -121,7 +121,7 @@ public final class Stresser {
     System.out.printf("Pending reads: %,d; writes: %,d%n", local.readBuffer.size(), pendingWrites);
     System.out.printf("Drain status = %s (%s)%n", STATUS[drainStatus], drainStatus);
     System.out.printf("Evictions = %,d%n", cache.stats().evictionCount());
-    System.out.printf("Size = %,d (max: %,d)%n", local.data.mappingCount(), operation.maxEntries);
+    System.out.printf("Size = %,d (max: %,d)%n", local.estimatedSize(), operation.maxEntries);
     System.out.printf("Lock = [%s%n", StringUtils.substringAfter(
         local.evictionLock.toString(), "["));
     System.out.printf("Pending tasks = %,d%n",
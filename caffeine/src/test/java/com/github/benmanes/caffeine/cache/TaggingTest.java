@@ -0,0 +1,269 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.Policy.Tagging;
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.FakeTicker;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class TaggingTest {
+
+  /** Tags an entry by its tenant, the value's prefix, and by the key's parity. */
+  static final Tagger<Integer, String> tagger = (key, value) -> ImmutableList.of(
+      value.substring(0, value.indexOf(':')), ((key % 2) == 0) ? "even" : "odd");
+
+  @Test
+  public void tagging_absent() {
+    Cache<Integer, String> cache = Caffeine.newBuilder().maximumSize(10).build();
+    assertThat(cache.policy().tagging().isPresent(), is(false));
+  }
+
+  @Test
+  public void keys() {
+    Cache<Integer, String> cache = newBuilder(100).build();
+    cache.put(1, "a:1");
+    cache.put(2, "a:2");
+    cache.put(3, "b:3");
+
+    Tagging<Integer, String> tagging = cache.policy().tagging().get();
+    assertThat(tagging.keys("a"), containsInAnyOrder(1, 2));
+    assertThat(tagging.keys("b"), contains(3));
+    assertThat(tagging.keys("odd"), containsInAnyOrder(1, 3));
+    assertThat(tagging.keys("c"), is(empty()));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void keys_null() {
+    newBuilder(100).build().policy().tagging().get().keys(null);
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void keys_unmodifiable() {
+    Cache<Integer, String> cache = newBuilder(100).build();
+    cache.put(1, "a:1");
+    cache.policy().tagging().get().keys("a").clear();
+  }
+
+  @Test
+  public void invalidateTag() {
+    List<List<RemovalNotification<Integer, String>>> batches = new ArrayList<>();
+    Cache<Integer, String> cache = newBuilder(100)
+        .removalListener((BatchRemovalListener<Integer, String>) batches::add)
+        .build();
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, ((i < 5) ? "a:" : "b:") + i);
+    }
+
+    Tagging<Integer, String> tagging = cache.policy().tagging().get();
+    tagging.invalidateTag("a");
+    assertThat(cache.asMap().keySet(), containsInAnyOrder(5, 6, 7, 8, 9));
+    assertThat(tagging.keys("a"), is(empty()));
+    assertThat(tagging.keys("even"), containsInAnyOrder(6, 8));
+
+    assertThat(batches.size(), is(1));
+    assertThat(batches.get(0).size(), is(5));
+    for (RemovalNotification<Integer, String> notification : batches.get(0)) {
+      assertThat(notification.getCause(), is(RemovalCause.EXPLICIT));
+      assertThat(notification.getValue(), is("a:" + notification.getKey()));
+    }
+  }
+
+  @Test
+  public void invalidateTag_absent() {
+    Cache<Integer, String> cache = newBuilder(100).build();
+    cache.put(1, "a:1");
+    cache.policy().tagging().get().invalidateTag("b");
+    assertThat(cache.getIfPresent(1), is("a:1"));
+  }
+
+  @Test(expectedExceptions = NullPointerException.class)
+  public void invalidateTag_null() {
+    newBuilder(100).build().policy().tagging().get().invalidateTag(null);
+  }
+
+  @Test
+  public void update_retags() {
+    Cache<Integer, String> cache = newBuilder(100).build();
+    Tagging<Integer, String> tagging = cache.policy().tagging().get();
+
+    cache.put(1, "a:1");
+    cache.put(1, "b:1");
+    assertThat(tagging.keys("a"), is(empty()));
+    assertThat(tagging.keys("b"), contains(1));
+
+    cache.asMap().replace(1, "c:1");
+    assertThat(tagging.keys("b"), is(empty()));
+    assertThat(tagging.keys("c"), contains(1));
+
+    cache.asMap().compute(1, (k, v) -> "d:1");
+    assertThat(tagging.keys("c"), is(empty()));
+    assertThat(tagging.keys("d"), contains(1));
+
+    tagging.invalidateTag("c");
+    assertThat(cache.getIfPresent(1), is("d:1"));
+  }
+
+  @Test
+  public void remove_untags() {
+    Cache<Integer, String> cache = newBuilder(100).build();
+    cache.put(1, "a:1");
+    cache.put(2, "a:2");
+    cache.invalidate(1);
+    cache.asMap().remove(2, "a:2");
+    cache.cleanUp();
+
+    assertThat(cache.policy().tagging().get().keys("a"), is(empty()));
+    assertThat(tagIndex(cache).size(), is(0));
+  }
+
+  @Test
+  public void eviction_untags() {
+    Cache<Integer, String> cache = newBuilder(10).build();
+    List<Node<Integer, String>> nodes = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      cache.put(i, "a:" + i);
+      nodes.add(bounded(cache).data.get(i));
+    }
+    cache.cleanUp();
+
+    TagIndex<Integer, String> tagIndex = tagIndex(cache);
+    assertThat(tagIndex.members("a").size(), is(10));
+    assertThat(cache.policy().tagging().get().keys("a"), is(cache.asMap().keySet()));
+    for (Node<Integer, String> node : nodes) {
+      if (cache.asMap().containsKey(node.getKey())) {
+        String parity = ((node.getKey() % 2) == 0) ? "even" : "odd";
+        assertThat(node.getTags(), is(new Object[] { "a", parity }));
+      } else {
+        assertThat(node.getTags(), is(nullValue()));
+      }
+    }
+  }
+
+  @Test
+  public void expiration_untags() {
+    FakeTicker ticker = new FakeTicker();
+    Cache<Integer, String> cache = Caffeine.newBuilder()
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .ticker(ticker::read)
+        .executor(Runnable::run)
+        .tagger(tagger)
+        .build();
+    cache.put(1, "a:1");
+    ticker.advance(30, TimeUnit.SECONDS);
+    cache.put(2, "a:2");
+
+    ticker.advance(45, TimeUnit.SECONDS);
+    assertThat(cache.policy().tagging().get().keys("a"), contains(2));
+
+    cache.cleanUp();
+    assertThat(tagIndex(cache).members("a").size(), is(1));
+
+    ticker.advance(1, TimeUnit.MINUTES);
+    cache.cleanUp();
+    assertThat(tagIndex(cache).size(), is(0));
+  }
+
+  @Test
+  public void clear_untags() {
+    Cache<Integer, String> cache = newBuilder(100).build();
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, "a:" + i);
+    }
+    cache.invalidateAll();
+    assertThat(tagIndex(cache).size(), is(0));
+  }
+
+  @Test
+  public void tagger_failure() {
+    Cache<Integer, String> cache = newBuilder(100).build();
+    cache.put(1, "missing separator");
+    cache.put(2, "a:2");
+
+    assertThat(cache.getIfPresent(1), is("missing separator"));
+    assertThat(cache.policy().tagging().get().keys("a"), contains(2));
+  }
+
+  @Test
+  public void tagger_untagged() {
+    Cache<Integer, String> cache = Caffeine.newBuilder()
+        .tagger((Integer key, String value) -> Collections.emptyList())
+        .executor(Runnable::run)
+        .maximumSize(100)
+        .build();
+    cache.put(1, "a:1");
+    cache.cleanUp();
+    assertThat(tagIndex(cache).size(), is(0));
+    assertThat(bounded(cache).data.get(1).getTags(), is(nullValue()));
+  }
+
+  @Test
+  public void loadingCache() {
+    LoadingCache<Integer, String> cache = newBuilder(100).build(key -> "a:" + key);
+    cache.getAll(ImmutableList.of(1, 2, 3));
+
+    Tagging<Integer, String> tagging = cache.policy().tagging().get();
+    assertThat(tagging.keys("a"), containsInAnyOrder(1, 2, 3));
+    tagging.invalidateTag("odd");
+    assertThat(cache.getIfPresent(1), is(nullValue()));
+    assertThat(cache.asMap().keySet(), everyItem(is(2)));
+  }
+
+  @Test
+  public void embeddedHashTable() {
+    Cache<Integer, String> cache = newBuilder(100).embeddedHashTable().build();
+    cache.put(1, "a:1");
+    cache.put(2, "b:2");
+
+    Tagging<Integer, String> tagging = cache.policy().tagging().get();
+    assertThat(tagging.keys("a"), contains(1));
+    assertThat(bounded(cache).data.get(2).getTags(), is(new Object[] { "b", "even" }));
+    tagging.invalidateTag("even");
+    assertThat(cache.asMap().keySet(), contains(1));
+  }
+
+  private static Caffeine<Integer, String> newBuilder(long maximumSize) {
+    return Caffeine.newBuilder()
+        .executor(Runnable::run)
+        .maximumSize(maximumSize)
+        .tagger(tagger);
+  }
+
+  private static TagIndex<Integer, String> tagIndex(Cache<Integer, String> cache) {
+    return bounded(cache).tagIndex;
+  }
+
+  private static BoundedLocalCache<Integer, String> bounded(Cache<Integer, String> cache) {
+    return ((BoundedLocalCache.BoundedLocalManualCache<Integer, String>) cache).cache;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class TicksTest {
+
+  @Test(dataProvider = "times")
+  public void encode_roundsUp(long time) {
+    long decoded = Ticks.decode(Ticks.encode(time));
+    assertThat(decoded - time >= 0L, is(true));
+    assertThat(decoded - time, is(lessThan(Ticks.TICK)));
+  }
+
+  @Test
+  public void encode_beforeEpoch() {
+    assertThat(Ticks.encode(Ticks.EPOCH - Ticks.TICK), is(0));
+    assertThat(Ticks.decode(0), is(Ticks.EPOCH));
+  }
+
+  @Test
+  public void encode_unsigned() {
+    long time = Ticks.EPOCH + (Ticks.TICK * (Integer.MAX_VALUE + 1L));
+    assertThat(Ticks.encode(time), is(Integer.MIN_VALUE));
+    assertThat(Ticks.decode(Ticks.encode(time)), is(time));
+  }
+
+  @Test
+  public void selection_systemTicker() {
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .expireAfterAccess(1, TimeUnit.MINUTES)
+        .expireAfterWrite(1, TimeUnit.MINUTES)
+        .maximumSize(100)
+        .build();
+    BoundedLocalCache<Integer, Integer> local = asLocal(cache);
+    assertThat(local.nodeFactory.getClass().getSimpleName(), is("PSCAWMS"));
+
+    long now = System.nanoTime();
+    cache.put(1, 1);
+    Node<?, ?> node = local.data.get(local.nodeFactory.newLookupKey(1));
+    assertThat(node.getAccessTime() - now >= 0L, is(true));
+    assertThat(node.getWriteTime() - now >= 0L, is(true));
+    assertThat(cache.getIfPresent(1), is(1));
+  }
+
+  @Test(dataProvider = "incompatible")
+  public void selection_incompatible(Caffeine<Object, Object> builder) {
+    Cache<Integer, Integer> cache = builder.build(key -> key);
+    String nodeType = asLocal(cache).nodeFactory.getClass().getSimpleName();
+    assertThat(nodeType, not(startsWith("PSC")));
+  }
+
+  @DataProvider(name = "times")
+  public Object[][] providesTimes() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return new Object[][] {
+      { Ticks.EPOCH }, { Ticks.EPOCH + 1 }, { Ticks.EPOCH + Ticks.TICK },
+      { Ticks.EPOCH + Ticks.TICK + 1 }, { System.nanoTime() },
+      { System.nanoTime() + random.nextLong(TimeUnit.DAYS.toNanos(3_000)) },
+    };
+  }
+
+  @DataProvider(name = "incompatible")
+  public Object[][] providesIncompatible() {
+    return new Object[][] {
+      { Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MILLISECONDS) },
+      { Caffeine.newBuilder().expireAfterAccess(1, TimeUnit.MINUTES).ticker(() -> 0L) },
+      { Caffeine.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES)
+          .refreshAfterWrite(1, TimeUnit.SECONDS) },
+      { Caffeine.newBuilder().expireAfter(new Expiry<Object, Object>() {
+          @Override public long expireAfterCreate(Object key, Object value, long currentTime) {
+            return TimeUnit.MINUTES.toNanos(1);
+          }
+          @Override public long expireAfterUpdate(Object key, Object value,
+              long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+          @Override public long expireAfterRead(Object key, Object value,
+              long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        }) },
+    };
+  }
+
+  private static BoundedLocalCache<Integer, Integer> asLocal(Cache<Integer, Integer> cache) {
+    return (BoundedLocalCache<Integer, Integer>) cache.asMap();
+  }
+}
@@ -20,6 +20,7 @@ import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
@@ -246,6 +247,43 @@ public final class TimerWheelTest {
     return args.iterator();
   }
 
+  @Test
+  public void getExpirationDelay_empty() {
+    assertThat(timerWheel.getExpirationDelay(), is(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void getExpirationDelay_firstWheel() {
+    long delay = TimeUnit.SECONDS.toNanos(1);
+    timerWheel.schedule(new Timer(delay));
+    assertThat(timerWheel.getExpirationDelay(), is(lessThanOrEqualTo(SPANS[0])));
+  }
+
+  @Test
+  public void getExpirationDelay_lastWheel() {
+    long delay = TimeUnit.DAYS.toNanos(14);
+    timerWheel.schedule(new Timer(delay));
+    assertThat(timerWheel.getExpirationDelay(), is(lessThanOrEqualTo(delay)));
+  }
+
+  @Test
+  public void getExpirationDelay_hierarchy() {
+    when(cache.evictEntry(any(), any(), anyLong())).thenReturn(true);
+
+    long t15 = TimeUnit.SECONDS.toNanos(15);
+    long t80 = TimeUnit.MINUTES.toNanos(80);
+    timerWheel.schedule(new Timer(t15));
+    timerWheel.schedule(new Timer(t80));
+    assertThat(timerWheel.getExpirationDelay(), is(lessThanOrEqualTo(t15)));
+
+    long t45 = TimeUnit.SECONDS.toNanos(45);
+    timerWheel.advance(t45);
+    assertThat(timerWheel.getExpirationDelay(), is(lessThanOrEqualTo(t80 - t45)));
+
+    timerWheel.advance(TimeUnit.HOURS.toNanos(2));
+    assertThat(timerWheel.getExpirationDelay(), is(Long.MAX_VALUE));
+  }
+
   @Test(dataProvider = "snapshot")
   public void snapshot(boolean ascending, int limit, long nanos, Function<Long, Long> transformer) {
     int count = 21;
@@ -36,6 +36,13 @@ public final class CacheStatsTest {
         loadFailureCount, totalLoadTime, evictionCount, evictionWeight);
   }
 
+  @Test(dataProvider = "badBatchArgs", expectedExceptions = IllegalArgumentException.class)
+  public void invalid_batch(int batchLoadCount, int totalBatchLoadSize,
+      int refreshBatchCount, int totalRefreshBatchSize, int staleHitCount) {
+    new CacheStats(0, 0, 0, 0, 0, 0, 0, batchLoadCount,
+        totalBatchLoadSize, refreshBatchCount, totalRefreshBatchSize, staleHitCount);
+  }
+
   @Test
   public void empty() {
     CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0, 0);
@@ -66,6 +73,56 @@ public final class CacheStatsTest {
     assertThat(stats, hasToString(expected.toString()));
   }
 
+  @Test
+  public void batchLoad() {
+    CacheStats stats = new CacheStats(11, 13, 17, 19, 23, 27, 54, 3, 12, 0, 0, 0);
+    assertThat(stats.batchLoadCount(), is(3L));
+    assertThat(stats.totalBatchLoadSize(), is(12L));
+    assertThat(stats.averageBatchLoadSize(), is(4.0));
+    assertThat(CacheStats.empty().averageBatchLoadSize(), is(0.0));
+
+    assertThat(stats, is(not(equalTo(new CacheStats(11, 13, 17, 19, 23, 27, 54)))));
+    assertThat(stats.hashCode(), is(not(new CacheStats(11, 13, 17, 19, 23, 27, 54).hashCode())));
+
+    CacheStats other = new CacheStats(0, 0, 0, 0, 0, 0, 0, 5, 10, 0, 0, 0);
+    assertThat(other.minus(stats), is(new CacheStats(0, 0, 0, 0, 0, 0, 0, 2, 0, 0, 0, 0)));
+    assertThat(stats.plus(other).batchLoadCount(), is(8L));
+    assertThat(stats.plus(other).totalBatchLoadSize(), is(22L));
+  }
+
+  @Test
+  public void refreshBatch() {
+    CacheStats stats = new CacheStats(11, 13, 17, 19, 23, 27, 54, 0, 0, 3, 12, 0);
+    assertThat(stats.refreshBatchCount(), is(3L));
+    assertThat(stats.totalRefreshBatchSize(), is(12L));
+    assertThat(stats.savedRefreshCount(), is(9L));
+    assertThat(CacheStats.empty().savedRefreshCount(), is(0L));
+
+    assertThat(stats, is(not(equalTo(new CacheStats(11, 13, 17, 19, 23, 27, 54)))));
+    assertThat(stats.hashCode(), is(not(new CacheStats(11, 13, 17, 19, 23, 27, 54).hashCode())));
+
+    CacheStats other = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 5, 10, 0);
+    assertThat(other.minus(stats), is(new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 2, 0, 0)));
+    assertThat(other.minus(stats).savedRefreshCount(), is(0L));
+    assertThat(stats.plus(other).refreshBatchCount(), is(8L));
+    assertThat(stats.plus(other).totalRefreshBatchSize(), is(22L));
+  }
+
+  @Test
+  public void staleHit() {
+    CacheStats stats = new CacheStats(11, 13, 17, 19, 23, 27, 54, 0, 0, 0, 0, 7);
+    assertThat(stats.staleHitCount(), is(7L));
+    assertThat(CacheStats.empty().staleHitCount(), is(0L));
+
+    assertThat(stats, is(not(equalTo(new CacheStats(11, 13, 17, 19, 23, 27, 54)))));
+    assertThat(stats.hashCode(), is(not(new CacheStats(11, 13, 17, 19, 23, 27, 54).hashCode())));
+
+    CacheStats other = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 10);
+    assertThat(other.minus(stats), is(new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3)));
+    assertThat(stats.minus(other).staleHitCount(), is(0L));
+    assertThat(stats.plus(other).staleHitCount(), is(17L));
+  }
+
   @Test
   public void minus() {
     CacheStats one = new CacheStats(11, 13, 17, 19, 23, 27, 54);
@@ -106,6 +163,17 @@ public final class CacheStatsTest {
     assertThat(stats.evictionWeight(), is(evictionWeight));
   }
 
+  @DataProvider(name = "badBatchArgs")
+  public Object[][] providesBadBatchArgs() {
+    return new Object[][] {
+        { -1,  0,  0,  0,  0 },
+        {  0, -1,  0,  0,  0 },
+        {  0,  0, -1,  0,  0 },
+        {  0,  0,  0, -1,  0 },
+        {  0,  0,  0,  0, -1 },
+    };
+  }
+
   @DataProvider(name = "badArgs")
   public Object[][] providesBadArgs() {
     return new Object[][] {
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2019 Ben Manes. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.benmanes.caffeine.cache.stats;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.testng.annotations.Test;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.testing.FakeTicker;
+
+/**
+ * @author ben.manes@gmail.com (Ben Manes)
+ */
+public final class HistogramStatsCounterTest {
+
+  @Test
+  public void buckets() {
+    for (int i = 0; i < Histogram.BUCKETS; i++) {
+      long lower = Histogram.lowerBoundOf(i);
+      long upper = Histogram.upperBoundOf(i);
+      assertThat(Histogram.indexOf(lower), is(i));
+      assertThat(Histogram.indexOf(upper), is(i));
+      if (i > 0) {
+        assertThat(Histogram.upperBoundOf(i - 1), is(lower - 1));
+      }
+    }
+    assertThat(Histogram.indexOf(Long.MAX_VALUE), is(Histogram.BUCKETS - 1));
+  }
+
+  @Test
+  public void buckets_relativeError() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < 10_000; i++) {
+      long value = random.nextLong(Long.MAX_VALUE >>> random.nextInt(63));
+      long upper = Histogram.upperBoundOf(Histogram.indexOf(value));
+      assertThat((double) (upper - value), is(lessThanOrEqualTo(0.125 * value)));
+    }
+  }
+
+  @Test
+  public void percentile() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    histogram.record(-1);
+    HistogramSnapshot snapshot = histogram.snapshot();
+
+    assertThat(snapshot.count(), is(101L));
+    assertThat(snapshot.max(), is(100L));
+    assertThat(snapshot.percentile(0), is(0L));
+    assertThat(snapshot.percentile(100), is(100L));
+    assertThat(snapshot.percentile(50), is(51L));
+    assertThat(snapshot.mean(), is(5050.0 / 101));
+  }
+
+  @Test
+  public void percentile_empty() {
+    assertThat(HistogramSnapshot.empty().percentile(99), is(0L));
+    assertThat(HistogramSnapshot.empty().mean(), is(0.0));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void percentile_invalid() {
+    HistogramSnapshot.empty().percentile(101);
+  }
+
+  @Test
+  public void percentile_censored() {
+    Histogram completed = new Histogram();
+    Histogram early = new Histogram();
+    Histogram late = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      completed.record(i);
+      early.record(0);
+      late.record(1_000);
+    }
+    HistogramSnapshot snapshot = completed.snapshot();
+
+    // Values censored before any completion do not shift the distribution
+    assertThat(snapshot.percentile(50, early.snapshot()), is(snapshot.percentile(50)));
+    assertThat(snapshot.percentile(50, HistogramSnapshot.empty()), is(snapshot.percentile(50)));
+
+    // Values censored after every completion leave half of the distribution unobserved
+    assertThat(snapshot.percentile(25, late.snapshot()),
+        is(both(greaterThanOrEqualTo(50L)).and(lessThanOrEqualTo(56L))));
+    assertThat(snapshot.percentile(75, late.snapshot()), is(1_000L));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void percentile_censored_invalid() {
+    HistogramSnapshot.empty().percentile(-1, HistogramSnapshot.empty());
+  }
+
+  @Test
+  public void percentile_censored_inPlace() {
+    Histogram completed = new Histogram();
+    Histogram censored = new Histogram();
+    for (int i = 1; i <= 100; i++) {
+      completed.record(i);
+      censored.record(10 * i);
+    }
+    for (double percentile : new double[] { 0, 25, 50, 75, 90, 100 }) {
+      assertThat(completed.percentile(percentile, censored),
+          is(completed.snapshot().percentile(percentile, censored.snapshot())));
+    }
+    assertThat(completed.count(), is(100L));
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void percentile_censored_inPlace_invalid() {
+    new Histogram().percentile(101, new Histogram());
+  }
+
+  @Test
+  public void reset() {
+    Histogram histogram = new Histogram();
+    histogram.record(1_000);
+    histogram.reset();
+    assertThat(histogram.count(), is(0L));
+    assertThat(histogram.snapshot(), is(HistogramSnapshot.empty()));
+
+    histogram.record(10);
+    assertThat(histogram.snapshot().max(), is(10L));
+  }
+
+  @Test
+  public void plus() {
+    Histogram first = new Histogram();
+    Histogram second = new Histogram();
+    first.record(10);
+    second.record(1_000);
+    HistogramSnapshot combined = first.snapshot().plus(second.snapshot());
+    assertThat(combined.count(), is(2L));
+    assertThat(combined.max(), is(1_000L));
+    assertThat(combined.percentile(50), is(10L));
+  }
+
+  @Test
+  public void loads() {
+    HistogramStatsCounter counter = new HistogramStatsCounter();
+    counter.recordLoadSuccess(1_000);
+    counter.recordLoadSuccess(1_000_000);
+    counter.recordLoadFailure(5);
+    counter.recordGet(1);
+    counter.recordPut(1);
+
+    LatencyStats latencies = counter.latencySnapshot();
+    assertThat(counter.isRecordingOperationLatency(), is(false));
+    assertThat(latencies.loadSuccess().count(), is(2L));
+    assertThat(latencies.loadSuccess().max(), is(1_000_000L));
+    assertThat(latencies.loadFailure().percentile(50), is(5L));
+    assertThat(latencies.get(), is(HistogramSnapshot.empty()));
+    assertThat(latencies.put(), is(HistogramSnapshot.empty()));
+    assertThat(counter.snapshot(), is(new CacheStats(0, 0, 2, 1, 1_001_005, 0, 0)));
+  }
+
+  @Test
+  public void operations() {
+    FakeTicker ticker = new FakeTicker();
+    HistogramStatsCounter counter = new HistogramStatsCounter(/* recordOperations */ true);
+    LoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .recordStats(() -> counter)
+        .ticker(ticker::read)
+        .build(key -> {
+          ticker.advance(100);
+          return -key;
+        });
+
+    cache.get(1);
+    cache.get(1);
+    cache.put(2, 2);
+    cache.getIfPresent(2);
+
+    LatencyStats latencies = counter.latencySnapshot();
+    assertThat(latencies.loadSuccess().count(), is(1L));
+    assertThat(latencies.get().count(), is(3L));
+    assertThat(latencies.get().max(), is(100L));
+    assertThat(latencies.put().count(), is(1L));
+    assertThat(counter.snapshot().hitCount(), is(2L));
+  }
+
+  @Test
+  public void operations_bounded() {
+    HistogramStatsCounter counter = new HistogramStatsCounter(/* recordOperations */ true);
+    Cache<Integer, Integer> cache = Caffeine.newBuilder()
+        .recordStats(() -> counter)
+        .maximumSize(10)
+        .build();
+    cache.get(1, key -> -key);
+    cache.put(2, 2);
+    cache.getIfPresent(3);
+
+    LatencyStats latencies = counter.latencySnapshot();
+    assertThat(latencies.get().count(), is(2L));
+    assertThat(latencies.put().count(), is(1L));
+  }
+
+  @Test
+  public void operations_async() {
+    FakeTicker ticker = new FakeTicker();
+    CompletableFuture<Integer> pending = new CompletableFuture<>();
+    HistogramStatsCounter counter = new HistogramStatsCounter(/* recordOperations */ true);
+    AsyncLoadingCache<Integer, Integer> cache = Caffeine.newBuilder()
+        .recordStats(() -> counter)
+        .executor(Runnable::run)
+        .ticker(ticker::read)
+        .buildAsync((key, executor) -> pending);
+
+    CompletableFuture<Integer> future = cache.get(1);
+    assertThat(counter.latencySnapshot().get().count(), is(0L));
+    ticker.advance(100);
+    pending.complete(-1);
+    assertThat(future.join(), is(-1));
+
+    cache.put(2, CompletableFuture.completedFuture(2));
+    cache.getIfPresent(2);
+    cache.synchronous().put(3, 3);
+    cache.synchronous().getIfPresent(3);
+
+    // the asynchronous put is also recorded as a load of its future
+    LatencyStats latencies = counter.latencySnapshot();
+    assertThat(latencies.loadSuccess().count(), is(2L));
+    assertThat(latencies.get().count(), is(3L));
+    assertThat(latencies.get().max(), is(100L));
+    assertThat(latencies.put().count(), is(2L));
+  }
+}
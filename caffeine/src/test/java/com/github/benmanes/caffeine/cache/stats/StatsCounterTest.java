@@ -41,6 +41,9 @@ public final class StatsCounterTest {
     counter.recordMisses(1);
     counter.recordLoadSuccess(1);
     counter.recordLoadFailure(1);
+    counter.recordBatchLoad(1);
+    counter.recordBatchRefresh(1);
+    counter.recordStaleHits(1);
     assertThat(counter.snapshot(), is(new CacheStats(0, 0, 0, 0, 0, 0, 0)));
     assertThat(counter.toString(), is(new CacheStats(0, 0, 0, 0, 0, 0, 0).toString()));
 
@@ -67,6 +70,45 @@ public final class StatsCounterTest {
     assertThat(counter.snapshot(), is(new CacheStats(2, 2, 2, 2, 4, 4, 20)));
   }
 
+  @Test
+  public void enabled_batchLoad() {
+    ConcurrentStatsCounter counter = new ConcurrentStatsCounter();
+    counter.recordBatchLoad(3);
+    counter.recordBatchLoad(5);
+    CacheStats expected = new CacheStats(0, 0, 0, 0, 0, 0, 0, 2, 8, 0, 0, 0);
+    assertThat(counter.snapshot(), is(expected));
+    assertThat(counter.snapshot().averageBatchLoadSize(), is(4.0));
+
+    counter.incrementBy(counter);
+    assertThat(counter.snapshot(), is(new CacheStats(0, 0, 0, 0, 0, 0, 0, 4, 16, 0, 0, 0)));
+  }
+
+  @Test
+  public void enabled_batchRefresh() {
+    ConcurrentStatsCounter counter = new ConcurrentStatsCounter();
+    counter.recordBatchRefresh(3);
+    counter.recordBatchRefresh(5);
+    CacheStats expected = new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 2, 8, 0);
+    assertThat(counter.snapshot(), is(expected));
+    assertThat(counter.snapshot().savedRefreshCount(), is(6L));
+
+    counter.incrementBy(counter);
+    assertThat(counter.snapshot(), is(new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 4, 16, 0)));
+  }
+
+  @Test
+  public void enabled_staleHits() {
+    ConcurrentStatsCounter counter = new ConcurrentStatsCounter();
+    counter.recordHits(3);
+    counter.recordStaleHits(2);
+    counter.recordStaleHits(1);
+    CacheStats expected = new CacheStats(3, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3);
+    assertThat(counter.snapshot(), is(expected));
+
+    counter.incrementBy(counter);
+    assertThat(counter.snapshot(), is(new CacheStats(6, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 6)));
+  }
+
   @Test
   public void concurrent() {
     StatsCounter counter = new ConcurrentStatsCounter();
@@ -106,6 +148,12 @@ public final class StatsCounterTest {
     doThrow(NullPointerException.class).when(statsCounter).recordEviction(anyInt());
     doThrow(NullPointerException.class).when(statsCounter).recordLoadSuccess(anyLong());
     doThrow(NullPointerException.class).when(statsCounter).recordLoadFailure(anyLong());
+    doThrow(NullPointerException.class).when(statsCounter).recordBatchLoad(anyInt());
+    doThrow(NullPointerException.class).when(statsCounter).recordBatchRefresh(anyInt());
+    doThrow(NullPointerException.class).when(statsCounter).recordStaleHits(anyInt());
+    doThrow(NullPointerException.class).when(statsCounter).recordGet(anyLong());
+    doThrow(NullPointerException.class).when(statsCounter).recordPut(anyLong());
+    when(statsCounter.isRecordingOperationLatency()).thenThrow(new NullPointerException());
 
     StatsCounter guarded = StatsCounter.guardedStatsCounter(statsCounter);
     guarded.recordHits(1);
@@ -114,6 +162,12 @@ public final class StatsCounterTest {
     guarded.recordEviction(10);
     guarded.recordLoadSuccess(1);
     guarded.recordLoadFailure(1);
+    guarded.recordBatchLoad(1);
+    guarded.recordBatchRefresh(1);
+    guarded.recordStaleHits(1);
+    guarded.recordGet(1);
+    guarded.recordPut(1);
+    assertThat(guarded.isRecordingOperationLatency(), is(false));
     assertThat(guarded.snapshot(), is(CacheStats.empty()));
 
     verify(statsCounter).recordHits(1);
@@ -122,5 +176,10 @@ public final class StatsCounterTest {
     verify(statsCounter).recordEviction(10);
     verify(statsCounter).recordLoadSuccess(1);
     verify(statsCounter).recordLoadFailure(1);
+    verify(statsCounter).recordBatchLoad(1);
+    verify(statsCounter).recordBatchRefresh(1);
+    verify(statsCounter).recordStaleHits(1);
+    verify(statsCounter).recordGet(1);
+    verify(statsCounter).recordPut(1);
   }
 }
@@ -52,6 +52,7 @@ import com.github.benmanes.caffeine.cache.testing.CacheSpec.CacheWeigher;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Compute;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Expiration;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Expire;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.HashTable;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Implementation;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.InitialCapacity;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Listener;
@@ -81,6 +82,7 @@ public final class CacheContext {
   final Expiry<Integer, Integer> expiry;
   final Map<Integer, Integer> original;
   final Implementation implementation;
+  final HashTable hashTable;
   final Listener removalListenerType;
   final CacheExecutor cacheExecutor;
   final ReferenceType valueStrength;
@@ -97,11 +99,14 @@ public final class CacheContext {
   final Compute compute;
   final Advance advance;
   final Expire refresh;
+  final Expire stale;
   final Loader loader;
   final Writer writer;
   final Stats stats;
 
   final boolean isAsyncLoading;
+  final boolean serveStaleOnError;
+  final double earlyRefresh;
 
   Cache<?, ?> cache;
   AsyncCache<?, ?> asyncCache;
@@ -121,10 +126,11 @@ public final class CacheContext {
 
   public CacheContext(InitialCapacity initialCapacity, Stats stats, CacheWeigher weigher,
       Maximum maximumSize, CacheExpiry expiryType, Expire afterAccess, Expire afterWrite,
-      Expire refresh, Advance advance, ReferenceType keyStrength, ReferenceType valueStrength,
-      CacheExecutor cacheExecutor, Listener removalListenerType, Population population,
-      boolean isLoading, boolean isAsyncLoading, Compute compute, Loader loader, Writer writer,
-      Implementation implementation, CacheSpec cacheSpec) {
+      Expire refresh, Expire stale, Advance advance, ReferenceType keyStrength,
+      ReferenceType valueStrength, CacheExecutor cacheExecutor, Listener removalListenerType,
+      Population population, boolean isLoading, boolean isAsyncLoading, Compute compute,
+      Loader loader, Writer writer, Implementation implementation, HashTable hashTable,
+      CacheSpec cacheSpec) {
     this.initialCapacity = requireNonNull(initialCapacity);
     this.stats = requireNonNull(stats);
     this.weigher = requireNonNull(weigher);
@@ -132,6 +138,7 @@ public final class CacheContext {
     this.afterAccess = requireNonNull(afterAccess);
     this.afterWrite = requireNonNull(afterWrite);
     this.refresh = requireNonNull(refresh);
+    this.stale = requireNonNull(stale);
     this.advance = requireNonNull(advance);
     this.keyStrength = requireNonNull(keyStrength);
     this.valueStrength = requireNonNull(valueStrength);
@@ -146,11 +153,14 @@ public final class CacheContext {
     this.cacheWriter = writer.create();
     this.ticker = new SerializableFakeTicker();
     this.implementation = requireNonNull(implementation);
+    this.hashTable = requireNonNull(hashTable);
     this.original = new LinkedHashMap<>();
     this.initialSize = -1;
     this.compute = compute;
     this.expiryType = expiryType;
     this.expiryTime = cacheSpec.expiryTime();
+    this.serveStaleOnError = cacheSpec.serveStaleOnError();
+    this.earlyRefresh = cacheSpec.earlyRefresh();
     this.expiry = expiryType.createExpiry(expiryTime);
   }
 
@@ -275,6 +285,22 @@ public final class CacheContext {
     return refresh;
   }
 
+  public boolean staleWhileRevalidates() {
+    return (stale != Expire.DISABLED);
+  }
+
+  public Expire staleWhileRevalidate() {
+    return stale;
+  }
+
+  public boolean serveStaleOnError() {
+    return serveStaleOnError;
+  }
+
+  public boolean refreshesEarly() {
+    return (earlyRefresh != 0.0);
+  }
+
   /** The initial entries in the cache, iterable in insertion order. */
   public Map<Integer, Integer> original() {
     initialSize(); // lazy initialize
@@ -440,6 +466,10 @@ public final class CacheContext {
     return implementation;
   }
 
+  public HashTable hashTable() {
+    return hashTable;
+  }
+
   public boolean isCaffeine() {
     return (implementation == Implementation.Caffeine);
   }
@@ -467,6 +497,9 @@ public final class CacheContext {
         .add("afterAccess", afterAccess)
         .add("afterWrite", afterWrite)
         .add("refreshAfterWrite", refresh)
+        .add("staleWhileRevalidate", stale)
+        .add("serveStaleOnError", serveStaleOnError)
+        .add("earlyRefresh", earlyRefresh)
         .add("keyStrength", keyStrength)
         .add("valueStrength", valueStrength)
         .add("compute", compute)
@@ -478,6 +511,7 @@ public final class CacheContext {
         .add("initialCapacity", initialCapacity)
         .add("stats", stats)
         .add("implementation", implementation)
+        .add("hashTable", hashTable)
         .toString();
   }
 
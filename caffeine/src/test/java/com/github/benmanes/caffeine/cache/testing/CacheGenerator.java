@@ -32,6 +32,7 @@ import com.github.benmanes.caffeine.cache.testing.CacheSpec.CacheExpiry;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.CacheWeigher;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Compute;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Expire;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.HashTable;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Implementation;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.InitialCapacity;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Listener;
@@ -114,6 +115,7 @@ final class CacheGenerator {
         ImmutableSet.copyOf(cacheSpec.expireAfterAccess()),
         ImmutableSet.copyOf(cacheSpec.expireAfterWrite()),
         ImmutableSet.copyOf(cacheSpec.refreshAfterWrite()),
+        ImmutableSet.copyOf(cacheSpec.staleWhileRevalidate()),
         ImmutableSet.copyOf(cacheSpec.advanceOnPopulation()),
         ImmutableSet.copyOf(keys),
         ImmutableSet.copyOf(values),
@@ -125,7 +127,8 @@ final class CacheGenerator {
         ImmutableSet.copyOf(computations),
         ImmutableSet.copyOf(cacheSpec.loader()),
         ImmutableSet.copyOf(cacheSpec.writer()),
-        ImmutableSet.copyOf(implementations));
+        ImmutableSet.copyOf(implementations),
+        ImmutableSet.copyOf(cacheSpec.hashTable()));
   }
 
   /** Returns the set of options filtered if a specific type is specified. */
@@ -150,6 +153,7 @@ final class CacheGenerator {
         (Expire) combination.get(index++),
         (Expire) combination.get(index++),
         (Expire) combination.get(index++),
+        (Expire) combination.get(index++),
         (Advance) combination.get(index++),
         (ReferenceType) combination.get(index++),
         (ReferenceType) combination.get(index++),
@@ -162,6 +166,7 @@ final class CacheGenerator {
         (Loader) combination.get(index++),
         (Writer) combination.get(index++),
         (Implementation) combination.get(index++),
+        (HashTable) combination.get(index++),
         cacheSpec);
   }
 
@@ -179,13 +184,26 @@ final class CacheGenerator {
         && ((context.implementation() != Implementation.Caffeine)
             || (context.expireAfterAccess() != Expire.DISABLED)
             || (context.expireAfterWrite() != Expire.DISABLED));
+    boolean hashTableIncompatible = (context.hashTable() == HashTable.EMBEDDED)
+        && (!context.isCaffeine() || (context.maximum() == Maximum.DISABLED)
+            || !context.isStrongKeys() || !context.isStrongValues()
+            || context.expires() || context.refreshes());
+    boolean staleIncompatible = (context.staleWhileRevalidates()
+        && (!context.isCaffeine() || !context.isLoading()
+            || !context.expiresAfterWrite() || context.refreshes()))
+        || (context.serveStaleOnError() && !context.staleWhileRevalidates());
+    boolean earlyRefreshIncompatible = context.refreshesEarly()
+        && (!context.isCaffeine() || !context.isLoading()
+            || (!context.refreshes() && !context.expiresAfterWrite()
+                && !context.expiresVariably()));
     boolean expirationIncompatible = (cacheSpec.mustExpireWithAnyOf().length > 0)
         && !Arrays.stream(cacheSpec.mustExpireWithAnyOf()).anyMatch(context::expires);
 
     boolean skip = asyncIncompatible || asyncLoaderIncompatible
         || refreshIncompatible || weigherIncompatible
         || expiryIncompatible || expirationIncompatible
-        || referenceIncompatible;
+        || referenceIncompatible || hashTableIncompatible
+        || staleIncompatible || earlyRefreshIncompatible;
     return !skip;
   }
 
@@ -95,6 +95,25 @@ public @interface CacheSpec {
     Guava
   }
 
+  /* ---------------- Hash table -------------- */
+
+  /** The hash table that holds the entries, each resulting in a new combination. */
+  HashTable[] hashTable() default {
+    HashTable.DEFAULT,
+    HashTable.EMBEDDED
+  };
+
+  enum HashTable {
+    /** A flag indicating that the entries are held in a {@code ConcurrentHashMap}. */
+    DEFAULT,
+
+    /**
+     * A flag indicating that the nodes are chained in the embedded hash table, which is skipped for
+     * the configurations that do not support it.
+     */
+    EMBEDDED
+  }
+
   /* ---------------- Initial capacity -------------- */
 
   InitialCapacity[] initialCapacity() default {
@@ -260,6 +279,17 @@ public @interface CacheSpec {
     Expire.FOREVER
   };
 
+  /** The stale-while-revalidate grace period, each resulting in a new combination. */
+  Expire[] staleWhileRevalidate() default {
+    Expire.DISABLED
+  };
+
+  /** Indicates if a stale entry is served when its reload fails. */
+  boolean serveStaleOnError() default false;
+
+  /** The scaling factor of a probabilistic early refresh, or zero if disabled. */
+  double earlyRefresh() default 0.0;
+
   /** The variable expiration setting, each resulting in a new combination. */
   CacheExpiry[] expiry() default {
     CacheExpiry.DISABLED,
@@ -26,6 +26,7 @@ import com.github.benmanes.caffeine.cache.testing.CacheSpec.CacheExecutor;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.CacheExpiry;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.CacheWeigher;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Expire;
+import com.github.benmanes.caffeine.cache.testing.CacheSpec.HashTable;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.InitialCapacity;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Listener;
 import com.github.benmanes.caffeine.cache.testing.CacheSpec.Maximum;
@@ -59,6 +60,9 @@ public final class CaffeineCacheFromContext {
         builder.maximumWeight(context.maximumWeight());
       }
     }
+    if (context.hashTable == HashTable.EMBEDDED) {
+      builder.embeddedHashTable();
+    }
     if (context.expiryType() != CacheExpiry.DISABLED) {
       builder.expireAfter(context.expiry);
     }
@@ -71,6 +75,15 @@ public final class CaffeineCacheFromContext {
     if (context.refresh != Expire.DISABLED) {
       builder.refreshAfterWrite(context.refresh.timeNanos(), TimeUnit.NANOSECONDS);
     }
+    if (context.stale != Expire.DISABLED) {
+      builder.staleWhileRevalidate(context.stale.timeNanos(), TimeUnit.NANOSECONDS);
+    }
+    if (context.serveStaleOnError) {
+      builder.serveStaleOnError();
+    }
+    if (context.refreshesEarly()) {
+      builder.earlyRefresh(context.earlyRefresh);
+    }
     if (context.expires() || context.refreshes()) {
       SerializableTicker ticker = context.ticker()::read;
       builder.ticker(ticker);
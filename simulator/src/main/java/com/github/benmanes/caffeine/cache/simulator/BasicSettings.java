@@ -138,6 +138,9 @@ public class BasicSettings {
       public double countersMultiplier() {
         return config().getDouble("tiny-lfu.count-min-4.counters-multiplier");
       }
+      public boolean blocked() {
+        return config().getBoolean("tiny-lfu.count-min-4.blocked");
+      }
       public IncrementalSettings incremental() {
         return new IncrementalSettings();
       }